@@ -0,0 +1,10 @@
+# this script compiles many source files in one compiler process, e.g.
+#   ./batch.bash -o out tests/ extra.mx
+# every .mx file(or .mx file in a directory) is compiled to an .s file in the output directory.
+# a line with the status and compile time of every file goes to stdout, and diagnostics go to stderr.
+# paths are relative to the current directory, so this script does not cd.
+
+set -e
+ROOT="$(dirname "$0")"
+export CCHK="java -classpath $ROOT/lib/antlr-4.7.2-complete.jar:$ROOT/bin MxCompiler.Main --batch"
+$CCHK "$@"
@@ -0,0 +1,10 @@
+# Build the compiler and the benchmark harness, and then run the benchmark.
+# All arguments are passed to MxCompiler.Benchmark.CompilerBenchmark, e.g.
+#   ./bench.bash --size large --iterations 20
+#   ./bench.bash --input code.txt --csv result.csv
+set -e
+cd "$(dirname "$0")"
+mkdir -p bin benchmark/bin
+find ./src -name *.java | javac -d bin -classpath "lib/antlr-4.7.2-complete.jar" @/dev/stdin
+find ./benchmark/src -name *.java | javac -d benchmark/bin -classpath "lib/antlr-4.7.2-complete.jar:bin" @/dev/stdin
+java -cp "lib/antlr-4.7.2-complete.jar:bin:benchmark/bin" MxCompiler.Benchmark.CompilerBenchmark "$@"
@@ -0,0 +1,423 @@
+package MxCompiler.Benchmark;
+
+import MxCompiler.Backend.CodeEmitter;
+import MxCompiler.Compiler;
+import MxCompiler.RISCV.Instruction.ASMInstruction;
+import MxCompiler.RISCV.Operand.GlobalVariable;
+import MxCompiler.Utilities.CompilationContext;
+import MxCompiler.Utilities.CompilationError;
+import MxCompiler.Utilities.ErrorHandler;
+import MxCompiler.Utilities.Options;
+import MxCompiler.Utilities.Profiler;
+import org.antlr.v4.runtime.CharStreams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Benchmark harness of the compiler pipeline(see bench.bash).
+// A program(generated by ProgramGenerator, or read from a file) is compiled repeatedly in one JVM.
+// After warm-up iterations, every measured iteration records the time of each phase(Parser, Checker,
+// IRBuilder, every optimization pass, InstructionSelector, RegisterAllocator, CodeEmitter, ...) via
+// Profiler, together with the end-to-end time, and the mean, standard deviation and minimum are reported.
+// Every phase starts from exactly the output of the previous one, just as in a real compilation.
+// With --throughput n, the program is instead compiled by 1, 2, 4, ..., n threads at the same time(one Compiler
+// shared by all threads, and a CompilationContext for every compilation), and the number of compilations per
+// second is reported for every thread count. Every output must be the same as the output of a single compilation.
+// With --emitter, the program is compiled once and only emitted repeatedly, by CodeEmitter and by a baseline which
+// builds a string for every line and prints it through a PrintWriter, and the time and bytes allocated by each
+// emission are reported. Large programs(e.g. --size large) give assembly of several megabytes.
+public class CompilerBenchmark {
+    private int functions = 50;
+    private int loopDepth = 2;
+    private int classes = 4;
+    private int fields = 8;
+    private int stringChain = 8;
+    private long seed = 1;
+    private String inputFile = null;
+    private String dumpFile = null;
+    private String csvFile = null;
+    private int warmUp = 5;
+    private int iterations = 10;
+    private int threads = 1;
+    private boolean linearScan = false;
+    private int throughputThreads = 0;
+    private boolean emitter = false;
+
+    private final Map<String, ArrayList<Long>> samples = new LinkedHashMap<>();
+    // {threads, compilations per second} of the throughput benchmark.
+    private final ArrayList<double[]> throughputs = new ArrayList<>();
+    // emitter -> bytes allocated by every measured emission
+    private final Map<String, ArrayList<Long>> allocations = new LinkedHashMap<>();
+    private long emittedBytes;
+
+    public static void main(String[] args) throws IOException {
+        CompilerBenchmark benchmark = new CompilerBenchmark();
+        benchmark.parseArguments(args);
+        benchmark.run();
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--linear-scan")) {
+                linearScan = true;
+                continue;
+            }
+            if (arg.equals("--emitter")) {
+                emitter = true;
+                continue;
+            }
+            if (i + 1 >= args.length)
+                throw new RuntimeException("Missing value of \"" + arg + "\".");
+            String value = args[++i];
+            switch (arg) {
+                case "--size":
+                    setSize(value);
+                    break;
+                case "--functions":
+                    functions = Integer.parseInt(value);
+                    break;
+                case "--loop-depth":
+                    loopDepth = Integer.parseInt(value);
+                    break;
+                case "--classes":
+                    classes = Integer.parseInt(value);
+                    break;
+                case "--fields":
+                    fields = Integer.parseInt(value);
+                    break;
+                case "--string-chain":
+                    stringChain = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--input":
+                    inputFile = value;
+                    break;
+                case "--dump":
+                    dumpFile = value;
+                    break;
+                case "--csv":
+                    csvFile = value;
+                    break;
+                case "--warm-up":
+                    warmUp = Integer.parseInt(value);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(value);
+                    break;
+                case "-j":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--throughput":
+                    throughputThreads = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new RuntimeException("Unknown option \"" + arg + "\".");
+            }
+        }
+    }
+
+    // Presets of the generated program.
+    private void setSize(String size) {
+        switch (size) {
+            case "small":
+                functions = 10;
+                loopDepth = 1;
+                classes = 2;
+                fields = 4;
+                stringChain = 4;
+                break;
+            case "medium":
+                functions = 50;
+                loopDepth = 2;
+                classes = 4;
+                fields = 8;
+                stringChain = 8;
+                break;
+            case "large":
+                functions = 200;
+                loopDepth = 3;
+                classes = 16;
+                fields = 32;
+                stringChain = 32;
+                break;
+            default:
+                throw new RuntimeException("Unknown size \"" + size + "\".");
+        }
+    }
+
+    private void run() throws IOException {
+        String source;
+        if (inputFile != null)
+            source = new String(Files.readAllBytes(Paths.get(inputFile)));
+        else
+            source = new ProgramGenerator(functions, loopDepth, classes, fields, stringChain, seed).generate();
+        if (dumpFile != null)
+            Files.write(Paths.get(dumpFile), source.getBytes());
+
+        Options options = new Options();
+        options.setLinearScan(linearScan);
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+
+        System.out.println("Program: " + (inputFile != null ? inputFile : "generated(functions=" + functions
+                + ", loop depth=" + loopDepth + ", classes=" + classes + ", fields=" + fields
+                + ", string chain=" + stringChain + ", seed=" + seed + ")")
+                + ", " + source.length() + " bytes");
+        if (throughputThreads > 0) {
+            runThroughput(source, new Compiler(options, pool));
+            reportThroughput(System.out);
+            if (csvFile != null) {
+                try (PrintStream os = new PrintStream(new FileOutputStream(csvFile))) {
+                    writeThroughputCSV(os);
+                }
+            }
+            return;
+        }
+        if (emitter) {
+            runEmitter(source, new Compiler(options, pool));
+            report(System.out);
+            reportAllocations(System.out);
+            if (csvFile != null) {
+                try (PrintStream os = new PrintStream(new FileOutputStream(csvFile))) {
+                    writeCSV(os);
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < warmUp; i++)
+            compile(source, options, pool);
+        samples.clear();
+        for (int i = 0; i < iterations; i++)
+            compile(source, options, pool);
+
+        report(System.out);
+        if (csvFile != null) {
+            try (PrintStream os = new PrintStream(new FileOutputStream(csvFile))) {
+                writeCSV(os);
+            }
+        }
+    }
+
+    private void compile(String source, Options options, ForkJoinPool pool) {
+        ErrorHandler errorHandler = new ErrorHandler(new PrintStream(OutputStream.nullOutputStream()));
+        Profiler profiler = new Profiler(true);
+        Compiler compiler = new Compiler(options, pool);
+
+        long start = System.nanoTime();
+        MxCompiler.RISCV.Module ASMModule;
+        try {
+            ASMModule = compiler.compile(CharStreams.fromString(source), new CompilationContext(errorHandler, profiler));
+        } catch (CompilationError e) {
+            throw new RuntimeException("The benchmark program has compilation errors.");
+        }
+        if (ASMModule != null) {
+            profiler.start("CodeEmitter");
+            new CodeEmitter(OutputStream.nullOutputStream(), true).run(ASMModule);
+            profiler.end(false);
+        }
+        long total = System.nanoTime() - start;
+
+        for (Map.Entry<String, Long> entry : profiler.getTimes().entrySet())
+            samples.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(entry.getValue());
+        samples.computeIfAbsent("Total", k -> new ArrayList<>()).add(total);
+    }
+
+    private void runThroughput(String source, Compiler compiler) {
+        byte[] expected = compileToBytes(source, compiler);
+        ArrayList<Integer> threadCounts = new ArrayList<>();
+        for (int n = 1; n < throughputThreads; n *= 2)
+            threadCounts.add(n);
+        threadCounts.add(throughputThreads);
+
+        for (int n : threadCounts) {
+            ExecutorService executor = Executors.newFixedThreadPool(n);
+            try {
+                compileConcurrently(source, compiler, expected, executor, n, warmUp);
+                long start = System.nanoTime();
+                compileConcurrently(source, compiler, expected, executor, n, iterations);
+                long time = System.nanoTime() - start;
+                throughputs.add(new double[]{n, 1e9 * n * iterations / time});
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    // Every one of n threads compiles the program count times.
+    private void compileConcurrently(String source, Compiler compiler, byte[] expected,
+                                     ExecutorService executor, int n, int count) {
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < count; j++) {
+                    if (!Arrays.equals(compileToBytes(source, compiler), expected))
+                        throw new RuntimeException("Compilations at the same time produce different outputs.");
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException(e.getCause() != null ? e.getCause() : e);
+            }
+        }
+    }
+
+    private byte[] compileToBytes(String source, Compiler compiler) {
+        ErrorHandler errorHandler = new ErrorHandler(new PrintStream(OutputStream.nullOutputStream()));
+        MxCompiler.RISCV.Module ASMModule;
+        try {
+            ASMModule = compiler.compile(CharStreams.fromString(source), new CompilationContext(errorHandler));
+        } catch (CompilationError e) {
+            throw new RuntimeException("The benchmark program has compilation errors.");
+        }
+        ByteArrayOutputStream asm = new ByteArrayOutputStream();
+        if (ASMModule != null)
+            new CodeEmitter(asm, true).run(ASMModule);
+        return asm.toByteArray();
+    }
+
+    private void runEmitter(String source, Compiler compiler) {
+        ErrorHandler errorHandler = new ErrorHandler(new PrintStream(OutputStream.nullOutputStream()));
+        MxCompiler.RISCV.Module ASMModule;
+        try {
+            ASMModule = compiler.compile(CharStreams.fromString(source), new CompilationContext(errorHandler));
+        } catch (CompilationError e) {
+            throw new RuntimeException("The benchmark program has compilation errors.");
+        }
+        if (ASMModule == null)
+            throw new RuntimeException("The benchmark program cannot be lowered.");
+        emittedBytes = compileToBytes(source, compiler).length;
+
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < warmUp + iterations; i++) {
+            for (String name : new String[]{"CodeEmitter", "String per line"}) {
+                long startBytes = bean.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                if (name.equals("CodeEmitter"))
+                    new CodeEmitter(OutputStream.nullOutputStream(), true).run(ASMModule);
+                else
+                    emitStringPerLine(ASMModule, OutputStream.nullOutputStream());
+                long time = System.nanoTime() - start;
+                long bytes = bean.getCurrentThreadAllocatedBytes() - startBytes;
+                if (i >= warmUp) {
+                    samples.computeIfAbsent(name, k -> new ArrayList<>()).add(time);
+                    allocations.computeIfAbsent(name, k -> new ArrayList<>()).add(bytes);
+                }
+            }
+        }
+    }
+
+    // The baseline of --emitter: the same assembly with a string built for every line.
+    private void emitStringPerLine(MxCompiler.RISCV.Module module, OutputStream os) {
+        PrintWriter writer = new PrintWriter(os);
+        writer.println("\t.text");
+        writer.println("");
+        for (MxCompiler.RISCV.Function function : module.getFunctionMap().values()) {
+            String name = function.getName();
+            writer.println("\t.globl\t" + name + " ".repeat(Integer.max(1, 24 - name.length()))
+                    + "# -- Begin function " + name);
+            writer.println("\t.p2align\t2");
+            writer.println(name + ":" + " ".repeat(Integer.max(1, 31 - name.length())) + "# @" + name);
+            for (MxCompiler.RISCV.BasicBlock block : function.getBlocks()) {
+                String blockName = block.getAsmName();
+                writer.println(blockName + ":" + " ".repeat(40 - 1 - blockName.length()) + "# " + block.getName());
+                for (ASMInstruction ptr = block.getInstHead(); ptr != null; ptr = ptr.getNextInst())
+                    writer.println(ptr.emitCode());
+            }
+            writer.println(" ".repeat(40) + "# -- End function");
+            writer.println("");
+        }
+        writer.println("");
+        writer.println("\t.section\t.sdata,\"aw\",@progbits");
+        for (GlobalVariable gv : module.getGlobalVariableMap().values()) {
+            if (!gv.isString())
+                writer.println("\t.globl\t" + gv.getName() + "\n\t.p2align\t2");
+            else if (gv.isLengthPrefixed())
+                writer.println("\t.p2align\t2\n\t.word\t" + gv.getStringLength());
+            writer.println(gv.getName() + ":");
+            writer.println(gv.emitCode());
+            writer.println("");
+        }
+        writer.close();
+    }
+
+    private void reportAllocations(PrintStream os) {
+        os.printf(Locale.ROOT, "Assembly: %d bytes%n", emittedBytes);
+        os.printf("%-28s %16s%n", "Emitter", "allocated(KB)");
+        for (Map.Entry<String, ArrayList<Long>> entry : allocations.entrySet()) {
+            double sum = 0;
+            for (long bytes : entry.getValue())
+                sum += bytes;
+            os.printf(Locale.ROOT, "%-28s %16.1f%n", entry.getKey(), sum / entry.getValue().size() / 1024);
+        }
+    }
+
+    private void reportThroughput(PrintStream os) {
+        os.printf("%-10s %16s %10s %12s%n", "threads", "compilations/s", "speedup", "efficiency");
+        double base = throughputs.get(0)[1];
+        for (double[] throughput : throughputs) {
+            os.printf(Locale.ROOT, "%-10d %16.2f %10.2f %11.1f%%%n", (int) throughput[0], throughput[1],
+                    throughput[1] / base, 100 * throughput[1] / base / throughput[0]);
+        }
+    }
+
+    private void writeThroughputCSV(PrintStream os) {
+        os.println("threads,compilations_per_s,speedup");
+        double base = throughputs.get(0)[1];
+        for (double[] throughput : throughputs)
+            os.printf(Locale.ROOT, "%d,%.3f,%.3f%n", (int) throughput[0], throughput[1], throughput[1] / base);
+    }
+
+    private void report(PrintStream os) {
+        os.printf("%-28s %12s %12s %12s%n", "Phase", "mean(ms)", "stddev(ms)", "min(ms)");
+        for (Map.Entry<String, ArrayList<Long>> entry : samples.entrySet()) {
+            double[] statistics = computeStatistics(entry.getValue());
+            os.printf(Locale.ROOT, "%-28s %12.3f %12.3f %12.3f%n",
+                    entry.getKey(), statistics[0], statistics[1], statistics[2]);
+        }
+    }
+
+    private void writeCSV(PrintStream os) {
+        os.println("phase,mean_ms,stddev_ms,min_ms");
+        for (Map.Entry<String, ArrayList<Long>> entry : samples.entrySet()) {
+            double[] statistics = computeStatistics(entry.getValue());
+            os.printf(Locale.ROOT, "%s,%.3f,%.3f,%.3f%n",
+                    entry.getKey(), statistics[0], statistics[1], statistics[2]);
+        }
+    }
+
+    // Return {mean, standard deviation, minimum} in milliseconds.
+    private double[] computeStatistics(ArrayList<Long> values) {
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        for (long value : values) {
+            sum += value / 1e6;
+            min = Math.min(min, value / 1e6);
+        }
+        double mean = sum / values.size();
+        double variance = 0;
+        for (long value : values)
+            variance += (value / 1e6 - mean) * (value / 1e6 - mean);
+        variance /= values.size();
+        return new double[]{mean, Math.sqrt(variance), min};
+    }
+}
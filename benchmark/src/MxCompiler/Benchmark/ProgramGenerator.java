@@ -0,0 +1,135 @@
+package MxCompiler.Benchmark;
+
+import java.util.Random;
+
+// Generate a synthetic Mx program for benchmarking the compiler. The program is semantically correct,
+// and every function is reachable from main, so that no optimization can simply remove it.
+//   functions:   number of functions, each of which calls an earlier one
+//   loopDepth:   depth of the loop nest in every function
+//   classes:     number of classes
+//   fields:      number of fields(and getters) of every class
+//   stringChain: number of operands of the string concatenation in every function
+public class ProgramGenerator {
+    private int functions;
+    private int loopDepth;
+    private int classes;
+    private int fields;
+    private int stringChain;
+    private Random random;
+
+    private StringBuilder code;
+
+    public ProgramGenerator(int functions, int loopDepth, int classes, int fields, int stringChain, long seed) {
+        this.functions = functions;
+        this.loopDepth = loopDepth;
+        this.classes = classes;
+        this.fields = fields;
+        this.stringChain = stringChain;
+        this.random = new Random(seed);
+    }
+
+    public String generate() {
+        code = new StringBuilder();
+        line("int counter = 0;");
+        line("int[] table;");
+        line("");
+        for (int i = 0; i < classes; i++)
+            generateClass(i);
+        for (int i = 0; i < functions; i++)
+            generateFunction(i);
+        generateMain();
+        return code.toString();
+    }
+
+    private void generateClass(int id) {
+        line("class C" + id + " {");
+        for (int i = 0; i < fields; i++)
+            line("    int f" + i + ";");
+        line("    C" + id + " next;");
+        line("    C" + id + "() {");
+        for (int i = 0; i < fields; i++)
+            line("        f" + i + " = " + random.nextInt(100) + ";");
+        line("        next = null;");
+        line("    }");
+        for (int i = 0; i < fields; i++) {
+            line("    int get" + i + "() { return f" + i + " + counter; }");
+            line("    void set" + i + "(int x) { f" + i + " = x; counter = counter + 1; }");
+        }
+        line("    int sum() {");
+        StringBuilder sum = new StringBuilder("0");
+        for (int i = 0; i < fields; i++)
+            sum.append(" + f").append(i);
+        line("        return " + sum + ";");
+        line("    }");
+        line("};");
+        line("");
+    }
+
+    private void generateFunction(int id) {
+        line("int f" + id + "(int n, int x) {");
+        line("    int s = " + random.nextInt(100) + ";");
+        line("    int[] a = new int[n + 4];");
+        for (int d = 0; d < loopDepth; d++)
+            line("    int i" + d + ";");
+
+        String indent = "    ";
+        for (int d = 0; d < loopDepth; d++) {
+            line(indent + "for (i" + d + " = 0; i" + d + " < n; i" + d + "++) {");
+            indent += "    ";
+        }
+        String index = loopDepth > 0 ? "i" + (loopDepth - 1) : "0";
+        line(indent + "a[" + index + "] = a[" + index + " + 1] + x * " + (random.nextInt(9) + 1) + ";");
+        line(indent + "if ((s + " + index + ") % 3 == 0) s = s + a[" + index + "];");
+        line(indent + "else s = s - (a[" + index + "] >> " + (random.nextInt(3) + 1) + ");");
+        for (int d = loopDepth - 1; d >= 0; d--) {
+            indent = indent.substring(4);
+            line(indent + "}");
+        }
+
+        if (classes > 0 && fields > 0) {
+            int c = random.nextInt(classes);
+            int f = random.nextInt(fields);
+            line("    C" + c + " obj = new C" + c + "();");
+            line("    obj.next = new C" + c + "();");
+            line("    obj.set" + f + "(s);");
+            line("    s = s + obj.get" + f + "() + obj.next.sum();");
+        }
+
+        if (stringChain > 0) {
+            StringBuilder chain = new StringBuilder("\"s" + id + "\"");
+            for (int i = 1; i < stringChain; i++) {
+                if (i % 2 == 0)
+                    chain.append(" + toString(s + ").append(i).append(")");
+                else
+                    chain.append(" + \"").append((char) ('a' + random.nextInt(26))).append("\"");
+            }
+            line("    string str = " + chain + ";");
+            line("    s = s + str.length() + str.ord(0);");
+        }
+
+        if (id > 0)
+            line("    if (n > 1) s = s + f" + random.nextInt(id) + "(n - 1, s % 100);");
+        line("    table[" + (id % 8) + "] = table[" + (id % 8) + "] + s;");
+        line("    return s;");
+        line("}");
+        line("");
+    }
+
+    private void generateMain() {
+        line("int main() {");
+        line("    table = new int[8];");
+        line("    int total = 0;");
+        for (int i = 0; i < functions; i++)
+            line("    total = total + f" + i + "(" + (random.nextInt(3) + 1) + ", " + random.nextInt(10) + ");");
+        line("    printlnInt(total);");
+        line("    int k;");
+        line("    for (k = 0; k < 8; k++) printlnInt(table[k]);");
+        line("    printlnInt(counter);");
+        line("    return 0;");
+        line("}");
+    }
+
+    private void line(String s) {
+        code.append(s).append('\n');
+    }
+}
@@ -63,15 +63,18 @@ getString:                              # @getString
 	sw	s0, 8(sp)
 	.cfi_offset ra, -4
 	.cfi_offset s0, -8
-	addi	a0, zero, 257
+	addi	a0, zero, 261
 	mv	a1, zero
 	call	malloc
-	mv	s0, a0
+	addi	s0, a0, 4
 	lui	a0, %hi(.L.str)
 	addi	a0, a0, %lo(.L.str)
 	mv	a1, s0
 	call	__isoc99_scanf
 	mv	a0, s0
+	call	strlen
+	sw	a0, -4(s0)
+	mv	a0, s0
 	lw	s0, 8(sp)
 	lw	ra, 12(sp)
 	addi	sp, sp, 16
@@ -147,9 +150,12 @@ toString:                               # @toString
 	bltu	a4, a0, .LBB6_3
 	j	.LBB6_6
 .LBB6_4:
-	addi	a0, zero, 2
+	addi	a0, zero, 6
 	mv	a1, zero
 	call	malloc
+	addi	a0, a0, 4
+	addi	a1, zero, 1
+	sw	a1, -4(a0)
 	addi	a1, zero, 48
 	sb	a1, 0(a0)
 	sb	zero, 1(a0)
@@ -160,9 +166,11 @@ toString:                               # @toString
 	slli	a0, s1, 24
 	srai	s4, a0, 24
 	add	s2, s4, s3
-	addi	a0, s2, 1
+	addi	a0, s2, 5
 	srai	a1, a0, 31
 	call	malloc
+	addi	a0, a0, 4
+	sw	s2, -4(a0)
 	bgtz	s5, .LBB6_8
 # %bb.7:
 	addi	a1, zero, 45
@@ -565,32 +573,42 @@ toString:                               # @toString
 	.type	__string_concatenate,@function
 __string_concatenate:                   # @__string_concatenate
 # %bb.0:
-	addi	sp, sp, -16
-	sw	ra, 12(sp)
-	sw	s0, 8(sp)
-	sw	s1, 4(sp)
-	sw	s2, 0(sp)
+	addi	sp, sp, -32
+	sw	ra, 28(sp)
+	sw	s0, 24(sp)
+	sw	s1, 20(sp)
+	sw	s2, 16(sp)
+	sw	s3, 12(sp)
 	mv	s2, a1
 	mv	s1, a0
 	call	strlen
-	mv	s0, a0
+	mv	s3, a0
 	mv	a0, s2
 	call	strlen
-	add	a0, a0, s0
-	addi	a0, a0, 1
+	mv	s0, a0
+	add	a0, a0, s3
+	addi	a0, a0, 5
 	srai	a1, a0, 31
 	call	malloc
-	mv	s0, a0
+	add	a1, s0, s3
+	sw	a1, 0(a0)
+	addi	a0, a0, 4
 	mv	a1, s1
-	call	strcat
-	mv	a0, s0
+	mv	s1, a0
+	mv	a2, s3
+	call	memcpy
+	add	a0, s1, s3
+	addi	a2, s0, 1
 	mv	a1, s2
-	lw	s2, 0(sp)
-	lw	s1, 4(sp)
-	lw	s0, 8(sp)
-	lw	ra, 12(sp)
-	addi	sp, sp, 16
-	tail	strcat
+	call	memcpy
+	mv	a0, s1
+	lw	s3, 12(sp)
+	lw	s2, 16(sp)
+	lw	s1, 20(sp)
+	lw	s0, 24(sp)
+	lw	ra, 28(sp)
+	addi	sp, sp, 32
+	ret
 .Lfunc_end7:
 	.size	__string_concatenate, .Lfunc_end7-__string_concatenate
                                         # -- End function
@@ -713,9 +731,11 @@ __string_substring:                     # @__string_substring
 	mv	s3, a1
 	mv	s2, a0
 	sub	s0, a2, a1
-	addi	a0, s0, 1
+	addi	a0, s0, 5
 	srai	a1, a0, 31
 	call	malloc
+	sw	s0, 0(a0)
+	addi	a0, a0, 4
 	addi	a1, zero, 1
 	mv	s1, a0
 	blt	s0, a1, .LBB15_2
@@ -798,6 +818,230 @@ __array_size:                           # @__array_size
 .Lfunc_end18:
 	.size	__array_size, .Lfunc_end18-__array_size
                                         # -- End function
+	.globl	__pgo_write             # -- Begin function __pgo_write
+	.p2align	2
+	.type	__pgo_write,@function
+__pgo_write:                            # @__pgo_write
+	.cfi_startproc
+# %bb.0:
+	addi	sp, sp, -16
+	.cfi_def_cfa_offset 16
+	sw	ra, 12(sp)
+	sw	s0, 8(sp)
+	.cfi_offset ra, -4
+	.cfi_offset s0, -8
+	mv	s0, a0
+	lui	a0, %hi(__pgo_file)
+	lw	a0, %lo(__pgo_file)(a0)
+	bnez	a0, .LBB19_2
+# %bb.1:
+	lui	a0, %hi(.L.str.4)
+	addi	a0, a0, %lo(.L.str.4)
+	lui	a1, %hi(.L.str.5)
+	addi	a1, a1, %lo(.L.str.5)
+	call	fopen
+	lui	a1, %hi(__pgo_file)
+	sw	a0, %lo(__pgo_file)(a1)
+.LBB19_2:
+	lui	a1, %hi(.L.str.6)
+	addi	a1, a1, %lo(.L.str.6)
+	mv	a2, s0
+	lw	s0, 8(sp)
+	lw	ra, 12(sp)
+	addi	sp, sp, 16
+	tail	fprintf
+.Lfunc_end19:
+	.size	__pgo_write, .Lfunc_end19-__pgo_write
+	.cfi_endproc
+                                        # -- End function
+	.p2align	2
+	.type	__lstring_compare,@function
+__lstring_compare:                      # @__lstring_compare
+# %bb.0:
+	lw	a2, -4(a0)
+	lw	a3, -4(a1)
+	mv	a4, a2
+	blt	a2, a3, .LBB20_2
+# %bb.1:
+	mv	a4, a3
+.LBB20_2:
+	mv	a5, zero
+	addi	a6, a4, -3
+.LBB20_3:                               # =>This Inner Loop Header: Depth=1
+	bge	a5, a6, .LBB20_6
+# %bb.4:                                #   in Loop: Header=BB20_3 Depth=1
+	add	a7, a0, a5
+	lw	a7, 0(a7)
+	add	t0, a1, a5
+	lw	t0, 0(t0)
+	bne	a7, t0, .LBB20_6
+# %bb.5:                                #   in Loop: Header=BB20_3 Depth=1
+	addi	a5, a5, 4
+	j	.LBB20_3
+.LBB20_6:                               # =>This Inner Loop Header: Depth=1
+	bge	a5, a4, .LBB20_9
+# %bb.7:                                #   in Loop: Header=BB20_6 Depth=1
+	add	a7, a0, a5
+	lbu	a7, 0(a7)
+	add	t0, a1, a5
+	lbu	t0, 0(t0)
+	addi	a5, a5, 1
+	beq	a7, t0, .LBB20_6
+# %bb.8:
+	sub	a0, a7, t0
+	ret
+.LBB20_9:
+	sub	a0, a2, a3
+	ret
+.Lfunc_end20:
+	.size	__lstring_compare, .Lfunc_end20-__lstring_compare
+                                        # -- End function
+	.globl	__lstring_concatenate   # -- Begin function __lstring_concatenate
+	.p2align	2
+	.type	__lstring_concatenate,@function
+__lstring_concatenate:                  # @__lstring_concatenate
+# %bb.0:
+	addi	sp, sp, -32
+	sw	ra, 28(sp)
+	sw	s0, 24(sp)
+	sw	s1, 20(sp)
+	sw	s2, 16(sp)
+	sw	s3, 12(sp)
+	mv	s2, a1
+	mv	s1, a0
+	lw	s3, -4(a0)
+	lw	s0, -4(a1)
+	add	a0, s0, s3
+	addi	a0, a0, 5
+	srai	a1, a0, 31
+	call	malloc
+	add	a1, s0, s3
+	sw	a1, 0(a0)
+	addi	a0, a0, 4
+	mv	a1, s1
+	mv	s1, a0
+	mv	a2, s3
+	call	memcpy
+	add	a0, s1, s3
+	addi	a2, s0, 1
+	mv	a1, s2
+	call	memcpy
+	mv	a0, s1
+	lw	s3, 12(sp)
+	lw	s2, 16(sp)
+	lw	s1, 20(sp)
+	lw	s0, 24(sp)
+	lw	ra, 28(sp)
+	addi	sp, sp, 32
+	ret
+.Lfunc_end21:
+	.size	__lstring_concatenate, .Lfunc_end21-__lstring_concatenate
+                                        # -- End function
+	.globl	__lstring_equal         # -- Begin function __lstring_equal
+	.p2align	2
+	.type	__lstring_equal,@function
+__lstring_equal:                        # @__lstring_equal
+# %bb.0:
+	lw	a2, -4(a0)
+	lw	a3, -4(a1)
+	bne	a2, a3, .LBB22_2
+# %bb.1:
+	addi	sp, sp, -16
+	sw	ra, 12(sp)
+	call	__lstring_compare
+	seqz	a0, a0
+	lw	ra, 12(sp)
+	addi	sp, sp, 16
+	ret
+.LBB22_2:
+	mv	a0, zero
+	ret
+.Lfunc_end22:
+	.size	__lstring_equal, .Lfunc_end22-__lstring_equal
+                                        # -- End function
+	.globl	__lstring_notEqual      # -- Begin function __lstring_notEqual
+	.p2align	2
+	.type	__lstring_notEqual,@function
+__lstring_notEqual:                     # @__lstring_notEqual
+# %bb.0:
+	lw	a2, -4(a0)
+	lw	a3, -4(a1)
+	bne	a2, a3, .LBB23_2
+# %bb.1:
+	addi	sp, sp, -16
+	sw	ra, 12(sp)
+	call	__lstring_compare
+	snez	a0, a0
+	lw	ra, 12(sp)
+	addi	sp, sp, 16
+	ret
+.LBB23_2:
+	addi	a0, zero, 1
+	ret
+.Lfunc_end23:
+	.size	__lstring_notEqual, .Lfunc_end23-__lstring_notEqual
+                                        # -- End function
+	.globl	__lstring_lessThan      # -- Begin function __lstring_lessThan
+	.p2align	2
+	.type	__lstring_lessThan,@function
+__lstring_lessThan:                     # @__lstring_lessThan
+# %bb.0:
+	addi	sp, sp, -16
+	sw	ra, 12(sp)
+	call	__lstring_compare
+	srli	a0, a0, 31
+	lw	ra, 12(sp)
+	addi	sp, sp, 16
+	ret
+.Lfunc_end24:
+	.size	__lstring_lessThan, .Lfunc_end24-__lstring_lessThan
+                                        # -- End function
+	.globl	__lstring_greaterThan   # -- Begin function __lstring_greaterThan
+	.p2align	2
+	.type	__lstring_greaterThan,@function
+__lstring_greaterThan:                  # @__lstring_greaterThan
+# %bb.0:
+	addi	sp, sp, -16
+	sw	ra, 12(sp)
+	call	__lstring_compare
+	sgtz	a0, a0
+	lw	ra, 12(sp)
+	addi	sp, sp, 16
+	ret
+.Lfunc_end25:
+	.size	__lstring_greaterThan, .Lfunc_end25-__lstring_greaterThan
+                                        # -- End function
+	.globl	__lstring_lessEqual     # -- Begin function __lstring_lessEqual
+	.p2align	2
+	.type	__lstring_lessEqual,@function
+__lstring_lessEqual:                    # @__lstring_lessEqual
+# %bb.0:
+	addi	sp, sp, -16
+	sw	ra, 12(sp)
+	call	__lstring_compare
+	slti	a0, a0, 1
+	lw	ra, 12(sp)
+	addi	sp, sp, 16
+	ret
+.Lfunc_end26:
+	.size	__lstring_lessEqual, .Lfunc_end26-__lstring_lessEqual
+                                        # -- End function
+	.globl	__lstring_greaterEqual  # -- Begin function __lstring_greaterEqual
+	.p2align	2
+	.type	__lstring_greaterEqual,@function
+__lstring_greaterEqual:                 # @__lstring_greaterEqual
+# %bb.0:
+	addi	sp, sp, -16
+	sw	ra, 12(sp)
+	call	__lstring_compare
+	not	a0, a0
+	srli	a0, a0, 31
+	lw	ra, 12(sp)
+	addi	sp, sp, 16
+	ret
+.Lfunc_end27:
+	.size	__lstring_greaterEqual, .Lfunc_end27-__lstring_greaterEqual
+                                        # -- End function
 	.type	.L.str,@object          # @.str
 	.section	.rodata.str1.1,"aMS",@progbits,1
 .L.str:
@@ -814,5 +1058,24 @@ __array_size:                           # @__array_size
 	.asciz	"%d\n"
 	.size	.L.str.3, 4
 
+	.type	.L.str.4,@object        # @.str.4
+.L.str.4:
+	.asciz	"mx.profdata"
+	.size	.L.str.4, 12
+
+	.type	.L.str.5,@object        # @.str.5
+.L.str.5:
+	.asciz	"w"
+	.size	.L.str.5, 2
+
+	.type	.L.str.6,@object        # @.str.6
+.L.str.6:
+	.asciz	"%u\n"
+	.size	.L.str.6, 4
+
+	.type	__pgo_file,@object      # @__pgo_file
+	.local	__pgo_file
+	.comm	__pgo_file,4,4
+
 	.ident	"clang version 6.0.0-1ubuntu2 (tags/RELEASE_600/final)"
 	.section	".note.GNU-stack","",@progbits
@@ -19,8 +19,9 @@ void printlnInt(int n) {
 }
 
 char* getString() {
-    char* buffer = (char*)malloc(sizeof(char) * 257);
+    char* buffer = (char*)malloc(sizeof(char) * 261) + 4;
     scanf("%s", buffer);
+    *(((int*)buffer) - 1) = strlen(buffer);
     return buffer;
 }
 
@@ -32,7 +33,8 @@ int getInt() {
 
 char* toString(int i) {
     if (i == 0) {
-        char* res = (char*)malloc(sizeof(char) * 2);
+        char* res = (char*)malloc(sizeof(char) * 6) + 4;
+        *(((int*)res) - 1) = 1;
         res[0] = '0';
         res[1] = '\0';
         return res;
@@ -51,7 +53,8 @@ char* toString(int i) {
         i /= 10;
     }
 
-    char* res = (char*)malloc(sizeof(char) * (neg + len + 1));
+    char* res = (char*)malloc(sizeof(char) * (neg + len + 5)) + 4;
+    *(((int*)res) - 1) = neg + len;
     if (neg > 0)
         res[0] = '-';
     char p = 0;
@@ -66,9 +69,10 @@ char* toString(int i) {
 char* __string_concatenate(char* str1, char* str2) {
     int len1 = strlen(str1);
     int len2 = strlen(str2);
-    char* res = (char*)malloc(sizeof(char) * (len1 + len2 + 1));
-    strcat(res, str1);
-    strcat(res, str2);
+    char* res = (char*)malloc(sizeof(char) * (len1 + len2 + 5)) + 4;
+    *(((int*)res) - 1) = len1 + len2;
+    memcpy(res, str1, len1);
+    memcpy(res + len1, str2, len2 + 1);
     return res;
 }
 
@@ -102,7 +106,8 @@ int __string_length(char* str) {
 
 char* __string_substring(char* str, int left, int right) {
     int len = right - left;
-    char* res = (char*)malloc(sizeof(char) * (len + 1));
+    char* res = (char*)malloc(sizeof(char) * (len + 5)) + 4;
+    *(((int*)res) - 1) = len;
     int p = 0;
     while (p < len) {
         res[p] = str[left + p];
@@ -126,3 +131,73 @@ int __string_ord(char* str, int pos) {
 int __array_size(char* arr) {
     return *(((int*)arr) - 1);
 }
+
+static FILE* __pgo_file = NULL;
+
+// Append a value to the profile of a program instrumented by --pgo-generate.
+// The file is flushed by exit() when main returns.
+void __pgo_write(int value) {
+    if (__pgo_file == NULL)
+        __pgo_file = fopen("mx.profdata", "w");
+    fprintf(__pgo_file, "%u\n", value);
+}
+
+// ------ Length-prefixed strings ------
+// Strings are always allocated with their length in the 4 bytes before them, like arrays.
+// With --prefixed-strings, the compiler loads length() from there and calls __lstring_* instead of
+// __string_*, which never search for '\0'.
+
+static int __lstring_length(char* str) {
+    return *(((int*)str) - 1);
+}
+
+// Compare a word at a time while both strings have 4 more bytes, then byte by byte.
+// Strings are word aligned, since their headers are.
+static int __lstring_compare(char* str1, char* str2) {
+    int len1 = __lstring_length(str1);
+    int len2 = __lstring_length(str2);
+    int len = len1 < len2 ? len1 : len2;
+    int p = 0;
+    while (p < len - 3 && *((int*)(str1 + p)) == *((int*)(str2 + p)))
+        p += 4;
+    while (p < len) {
+        if (str1[p] != str2[p])
+            return (unsigned char)str1[p] - (unsigned char)str2[p];
+        p++;
+    }
+    return len1 - len2;
+}
+
+char* __lstring_concatenate(char* str1, char* str2) {
+    int len1 = __lstring_length(str1);
+    int len2 = __lstring_length(str2);
+    char* res = (char*)malloc(sizeof(char) * (len1 + len2 + 5)) + 4;
+    *(((int*)res) - 1) = len1 + len2;
+    memcpy(res, str1, len1);
+    memcpy(res + len1, str2, len2 + 1);
+    return res;
+}
+
+char __lstring_equal(char* str1, char* str2) {
+    return __lstring_length(str1) == __lstring_length(str2) && __lstring_compare(str1, str2) == 0;
+}
+
+char __lstring_notEqual(char* str1, char* str2) {
+    return __lstring_length(str1) != __lstring_length(str2) || __lstring_compare(str1, str2) != 0;
+}
+
+char __lstring_lessThan(char* str1, char* str2) {
+    return __lstring_compare(str1, str2) < 0;
+}
+
+char __lstring_greaterThan(char* str1, char* str2) {
+    return __lstring_compare(str1, str2) > 0;
+}
+
+char __lstring_lessEqual(char* str1, char* str2) {
+    return __lstring_compare(str1, str2) <= 0;
+}
+
+char __lstring_greaterEqual(char* str1, char* str2) {
+    return __lstring_compare(str1, str2) >= 0;
+}
@@ -0,0 +1,45 @@
+# Build the compiler, then compile and run every program in benchmark/regression and compare its output with
+# the .ans file next to it(a .in file, if any, is the input). Every program is compiled with and without
+# --prefixed-strings, and with UTF-8 as the default charset, so that non-ASCII characters take several bytes.
+# The RISC-V simulator is given as the arguments, and is called as "<simulator> <assembly> <runtime>", e.g.
+#   ./regression.bash ./ravel.sh
+set -e
+if [ $# -eq 0 ]; then
+    echo "usage: $0 <simulator> [arguments]" >&2
+    exit 2
+fi
+# Programs are run in a temporary directory, so a relative path of the simulator is resolved first.
+simulator="$1"
+shift
+if [ -e "$simulator" ]; then
+    simulator="$(cd "$(dirname "$simulator")" && pwd)/$(basename "$simulator")"
+fi
+cd "$(dirname "$0")"
+root="$(pwd)"
+mkdir -p bin
+find ./src -name *.java | javac -d bin -classpath "lib/antlr-4.7.2-complete.jar" @/dev/stdin
+work="$(mktemp -d)"
+trap 'rm -rf "$work"' EXIT
+
+failed=0
+for program in benchmark/regression/*.mx; do
+    name="${program%.mx}"
+    input=/dev/null
+    if [ -f "$name.in" ]; then
+        input="$root/$name.in"
+    fi
+    cp "$program" "$work/code.txt"
+    for options in "" "--prefixed-strings"; do
+        if (cd "$work" && java -Dfile.encoding=UTF-8 -classpath "$root/lib/antlr-4.7.2-complete.jar:$root/bin" \
+                    MxCompiler.Main $options > /dev/null) \
+                && (cd "$work" && "$simulator" "$@" output.s "$root/builtin.s" < "$input" > output.txt) \
+                && cmp -s "$work/output.txt" "$name.ans"; then
+            echo "PASS  $program $options"
+        else
+            echo "FAIL  $program $options"
+            failed=$((failed + 1))
+        fi
+    done
+done
+echo "$failed failed."
+[ $failed -eq 0 ]
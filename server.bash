@@ -0,0 +1,9 @@
+# this script starts a long-lived compiler process reading requests from stdin.
+# request:  "<n>\n" followed by n bytes of source code.
+# response: "OK <n>\n" followed by n bytes of asm code, or
+#           "ERROR <n>\n" followed by n bytes of diagnostics.
+
+set -e
+cd "$(dirname "$0")"
+export CCHK="java -classpath ./lib/antlr-4.7.2-complete.jar:./bin MxCompiler.Main --server"
+$CCHK
@@ -11,16 +11,33 @@ import MxCompiler.RISCV.Instruction.Branch.UnaryBranch;
 import MxCompiler.RISCV.Module;
 import MxCompiler.RISCV.Operand.GlobalVariable;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 
+// Instructions and operands append their code to one reusable StringBuilder(see ASMInstruction.emitCode()),
+// which is encoded into a reusable byte buffer and written out whenever it is larger than BUFFER_SIZE,
+// so that emitting builds no string per line.
 public class CodeEmitter implements ASMVisitor {
-    private File outputFile;
+    static private final int BUFFER_SIZE = 1 << 16;
+
+    private FileChannel channel;
     private OutputStream os;
-    private PrintWriter writer;
+    private boolean printToStdout;
+
+    private StringBuilder builder;
+    private char[] chars;
+    private ByteBuffer bytes;
+    private CharsetEncoder encoder;
     private String indent;
 
     private int functionCnt;
@@ -28,85 +45,154 @@ public class CodeEmitter implements ASMVisitor {
 
     public CodeEmitter(String filename, boolean printRealASM) {
         this.printRealASM = printRealASM;
+        this.printToStdout = printRealASM;
+        os = null;
         if (filename != null) {
             try {
-                outputFile = new File(filename);
-                assert outputFile.exists() || outputFile.createNewFile();
-                os = new FileOutputStream(filename);
-                writer = new PrintWriter(os);
+                channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
             } catch (Exception e) {
                 e.printStackTrace();
                 throw new RuntimeException(e.getMessage());
             }
-        } else {
-            os = null;
-            writer = null;
-        }
+        } else
+            channel = null;
+
+        initBuffers();
+    }
+
+    // Emit into the given stream only, without echoing to stdout.
+    public CodeEmitter(OutputStream os, boolean printRealASM) {
+        this.printRealASM = printRealASM;
+        this.printToStdout = false;
+        this.os = os;
+        channel = null;
 
+        initBuffers();
+    }
+
+    private void initBuffers() {
+        builder = new StringBuilder(BUFFER_SIZE + 256);
+        chars = new char[BUFFER_SIZE + 256];
+        // A FileChannel writes a direct buffer without copying it, while streams need an array.
+        boolean toChannelOnly = os == null && !printToStdout;
+        bytes = toChannelOnly ? ByteBuffer.allocateDirect(BUFFER_SIZE * 2) : ByteBuffer.allocate(BUFFER_SIZE * 2);
+        // Encoded like a PrintWriter, i.e. in the default charset with unmappable characters replaced.
+        encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
         indent = "\t";
     }
 
     public void run(Module module) {
         module.accept(this);
+        flush();
 
-        if (os != null) {
-            try {
-                writer.close();
+        try {
+            if (channel != null)
+                channel.close();
+            if (os != null)
                 os.close();
-            } catch (Exception e) {
-                e.printStackTrace();
-                throw new RuntimeException(e.getMessage());
-            }
+            if (printToStdout)
+                System.out.flush();
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new RuntimeException(e.getMessage());
         }
     }
 
-    private void print(String string) {
-        if (printRealASM)
-            System.out.print(string);
-        if (os != null)
-            writer.print(string);
+    // Called at the end of lines only, so that a character is never split.
+    private void endLine() {
+        builder.append('\n');
+        if (builder.length() >= BUFFER_SIZE)
+            flush();
     }
 
-    private void println(String string) {
-        if (printRealASM)
-            System.out.println(string);
-        if (os != null)
-            writer.println(string);
+    private void flush() {
+        int length = builder.length();
+        if (length == 0)
+            return;
+        if (chars.length < length)
+            chars = new char[length];
+        builder.getChars(0, length, chars, 0);
+        builder.setLength(0);
+
+        CharBuffer charBuffer = CharBuffer.wrap(chars, 0, length);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(charBuffer, bytes, true);
+            bytes.flip();
+            write(bytes);
+            bytes.clear();
+            if (result.isUnderflow())
+                break;
+        }
+    }
+
+    private void write(ByteBuffer buffer) {
+        try {
+            if (buffer.hasArray()) {
+                if (printToStdout)
+                    System.out.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+                if (os != null)
+                    os.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+            }
+            if (channel != null) {
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    private void appendSpaces(int cnt) {
+        for (int i = 0; i < cnt; i++)
+            builder.append(' ');
     }
 
     @Override
     public void visit(Module module) {
-        println(indent + ".text");
-        println("");
+        builder.append(indent).append(".text");
+        endLine();
+        endLine();
 
         functionCnt = 0;
         for (Function function : module.getFunctionMap().values())
             function.accept(this);
 
-        println("");
+        endLine();
 
-        println(indent + ".section\t.sdata,\"aw\",@progbits");
+        builder.append(indent).append(".section\t.sdata,\"aw\",@progbits");
+        endLine();
         for (GlobalVariable gv : module.getGlobalVariableMap().values())
             gv.accept(this);
     }
 
     @Override
     public void visit(Function function) {
-        print(indent + ".globl" + indent + function.getName());
-        print(" ".repeat(Integer.max(1, 24 - function.getName().length())));
-        println("# -- Begin function " + function.getName());
-        println(indent + ".p2align" + indent + "2");
-
-        print(function.getName() + ":" + " ".repeat(Integer.max(1, 31 - function.getName().length())));
-        println("# @" + function.getName());
+        String name = function.getName();
+        builder.append(indent).append(".globl").append(indent).append(name);
+        appendSpaces(Integer.max(1, 24 - name.length()));
+        builder.append("# -- Begin function ").append(name);
+        endLine();
+        builder.append(indent).append(".p2align").append(indent).append('2');
+        endLine();
+
+        builder.append(name).append(':');
+        appendSpaces(Integer.max(1, 31 - name.length()));
+        builder.append("# @").append(name);
+        endLine();
 
         ArrayList<BasicBlock> blocks = function.getBlocks();
         for (BasicBlock block : blocks)
             block.accept(this);
 
 //        println(".Lfunc_end" + functionCnt + ":");
-        println(" ".repeat(40) + "# -- End function");
-        println("");
+        appendSpaces(40);
+        builder.append("# -- End function");
+        endLine();
+        endLine();
 
         functionCnt++;
     }
@@ -114,14 +200,18 @@ public class CodeEmitter implements ASMVisitor {
     @Override
     public void visit(BasicBlock block) {
         String name = block.getAsmName();
-        println(name + ":" + " ".repeat(40 - 1 - name.length()) + "# " + block.getName());
+        builder.append(name).append(':');
+        appendSpaces(40 - 1 - name.length());
+        builder.append("# ").append(block.getName());
+        endLine();
 
         ASMInstruction ptr = block.getInstHead();
         while (ptr != null) {
             if (printRealASM)
-                println(ptr.emitCode());
+                ptr.emitCode(builder);
             else
-                println(indent + ptr.toString());
+                builder.append(indent).append(ptr.toString());
+            endLine();
             ptr = ptr.getNextInst();
         }
     }
@@ -129,12 +219,21 @@ public class CodeEmitter implements ASMVisitor {
     @Override
     public void visit(GlobalVariable gv) {
         if (!gv.isString()) {
-            println(indent + ".globl" + indent + gv.getName());
-            println(indent + ".p2align" + indent + "2");
+            builder.append(indent).append(".globl").append(indent).append(gv.getName());
+            endLine();
+            builder.append(indent).append(".p2align").append(indent).append('2');
+            endLine();
+        } else if (gv.isLengthPrefixed()) {
+            builder.append(indent).append(".p2align").append(indent).append('2');
+            endLine();
+            builder.append(indent).append(".word").append(indent).append(gv.getStringLength());
+            endLine();
         }
-        println(gv.getName() + ":");
-        println(gv.emitCode());
-        println("");
+        builder.append(gv.getName()).append(':');
+        endLine();
+        gv.emitCode(builder);
+        endLine();
+        endLine();
     }
 
     @Override
@@ -206,4 +305,9 @@ public class CodeEmitter implements ASMVisitor {
     public void visit(ReturnInst inst) {
 
     }
+
+    @Override
+    public void visit(TailCallInst inst) {
+
+    }
 }
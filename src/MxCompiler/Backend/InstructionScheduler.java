@@ -0,0 +1,327 @@
+package MxCompiler.Backend;
+
+import MxCompiler.RISCV.BasicBlock;
+import MxCompiler.RISCV.Function;
+import MxCompiler.RISCV.Instruction.*;
+import MxCompiler.RISCV.Instruction.Branch.Branch;
+import MxCompiler.RISCV.Module;
+import MxCompiler.RISCV.Operand.Address.Address;
+import MxCompiler.RISCV.Operand.Address.BaseOffsetAddr;
+import MxCompiler.RISCV.Operand.Address.StackLocation;
+import MxCompiler.RISCV.Operand.Immediate.IntImmediate;
+import MxCompiler.RISCV.Operand.Register.PhysicalRegister;
+import MxCompiler.RISCV.Operand.Register.VirtualRegister;
+
+import java.util.*;
+
+// List scheduling of every basic block for an in-order single-issue pipeline(see LatencyModel).
+// A block is split into regions by barriers, which are never moved:
+//   - calls, tail calls, returns, branches and jumps, since they have implicit uses and defs,
+//   - before register allocation, instructions accessing pre-colored VRs except zero, e.g. moves of
+//     arguments, which must stay next to the call since the call does not use them,
+//   - after register allocation, instructions accessing sp, since stack locations are relative to sp.
+// In a region, a dependency DAG is built from def-use, use-def and def-def of registers(physical registers
+// after register allocation), and from stores and other memory accesses which may alias. Then instructions
+// are issued cycle by cycle, choosing the ready instruction with the longest latency-weighted path to the
+// end of the region.
+// Before register allocation, once too many values defined in the region are live, the instruction which
+// frees the most registers(or the first one in the original order) is chosen instead, so that scheduling does
+// not cause spills. Moves and defs of VRs related by moves are not reordered with each other's uses either,
+// so that the moves can still be coalesced.
+public class InstructionScheduler extends ASMPass {
+    static private final int pressureLimit = 8;
+
+    private final LatencyModel latencyModel;
+    private final boolean allocated;
+    private final Set<VirtualRegister> preColored;
+    // VRs of the function related by moves, before register allocation.
+    private Map<VirtualRegister, Set<VirtualRegister>> moveRelated;
+
+    // A node of the dependency DAG.
+    static private class Node {
+        private ASMInstruction instruction;
+        private int index; // position in the region
+        private int latency;
+        private ArrayList<Node> successors;
+        private ArrayList<Integer> edgeLatencies;
+        private int predecessorCnt;
+        private int height; // the longest path to the end of the region
+        private int earliest; // the earliest cycle when all operands are ready
+
+        // Memory access: address, whether it is a store, and the version of the base register.
+        private Address address;
+        private boolean store;
+        private int baseVersion;
+
+        Node(ASMInstruction instruction, int index, int latency) {
+            this.instruction = instruction;
+            this.index = index;
+            this.latency = latency;
+            successors = new ArrayList<>();
+            edgeLatencies = new ArrayList<>();
+            predecessorCnt = 0;
+            height = 0;
+            earliest = 0;
+        }
+    }
+
+    // allocated: whether registers have been allocated.
+    public InstructionScheduler(Module module, LatencyModel latencyModel, boolean allocated) {
+        super(module);
+        this.latencyModel = latencyModel;
+        this.allocated = allocated;
+        preColored = new LinkedHashSet<>(PhysicalRegister.vrs.values());
+    }
+
+    @Override
+    public void run() {
+        for (Function function : module.getFunctionMap().values()) {
+            computeMoveRelated(function);
+            for (BasicBlock block : function.getBlocks())
+                scheduleBlock(block);
+        }
+    }
+
+    private void computeMoveRelated(Function function) {
+        moveRelated = new LinkedHashMap<>();
+        if (allocated)
+            return;
+        for (BasicBlock block : function.getBlocks()) {
+            ASMInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                if (ptr instanceof MoveInst) {
+                    VirtualRegister rd = ((MoveInst) ptr).getRd();
+                    VirtualRegister rs = ((MoveInst) ptr).getRs();
+                    moveRelated.computeIfAbsent(rd, k -> new LinkedHashSet<>()).add(rs);
+                    moveRelated.computeIfAbsent(rs, k -> new LinkedHashSet<>()).add(rd);
+                }
+                ptr = ptr.getNextInst();
+            }
+        }
+    }
+
+    private void scheduleBlock(BasicBlock block) {
+        ArrayList<ASMInstruction> region = new ArrayList<>();
+        ASMInstruction ptr = block.getInstHead();
+        while (ptr != null) {
+            ASMInstruction next = ptr.getNextInst();
+            if (isBarrier(ptr)) {
+                scheduleRegion(block, region);
+                region = new ArrayList<>();
+            } else
+                region.add(ptr);
+            ptr = next;
+        }
+        scheduleRegion(block, region);
+    }
+
+    private boolean isBarrier(ASMInstruction instruction) {
+        if (instruction instanceof CallInst || instruction instanceof TailCallInst
+                || instruction instanceof ReturnInst || instruction instanceof Branch
+                || instruction instanceof JumpInst)
+            return true;
+        for (VirtualRegister vr : instruction.getDefUseUnion()) {
+            if (allocated ? vr.getColorPR() == PhysicalRegister.prs.get("sp")
+                    : preColored.contains(vr) && vr != PhysicalRegister.zeroVR)
+                return true;
+        }
+        return false;
+    }
+
+    private Object getKey(VirtualRegister vr) {
+        return allocated ? vr.getColorPR() : vr;
+    }
+
+    private void scheduleRegion(BasicBlock block, ArrayList<ASMInstruction> region) {
+        if (region.size() <= 1)
+            return;
+        ArrayList<Node> nodes = buildDAG(region);
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            Node node = nodes.get(i);
+            node.height = node.latency;
+            for (int j = 0; j < node.successors.size(); j++)
+                node.height = Integer.max(node.height, node.edgeLatencies.get(j) + node.successors.get(j).height);
+        }
+        ArrayList<ASMInstruction> order = listSchedule(nodes);
+
+        ASMInstruction prev = region.get(0).getPrevInst();
+        ASMInstruction next = region.get(region.size() - 1).getNextInst();
+        for (ASMInstruction instruction : order) {
+            instruction.setPrevInst(prev);
+            if (prev == null)
+                block.setInstHead(instruction);
+            else
+                prev.setNextInst(instruction);
+            prev = instruction;
+        }
+        prev.setNextInst(next);
+        if (next == null)
+            block.setInstTail(prev);
+        else
+            next.setPrevInst(prev);
+    }
+
+    private ArrayList<Node> buildDAG(ArrayList<ASMInstruction> region) {
+        ArrayList<Node> nodes = new ArrayList<>();
+        Map<Object, Node> lastDef = new LinkedHashMap<>();
+        Map<Object, ArrayList<Node>> usesSinceDef = new LinkedHashMap<>();
+        Map<Object, Integer> version = new LinkedHashMap<>();
+        ArrayList<Node> memoryAccesses = new ArrayList<>();
+
+        for (ASMInstruction instruction : region) {
+            Node node = new Node(instruction, nodes.size(), latencyModel.getLatency(instruction));
+            nodes.add(node);
+
+            for (VirtualRegister use : instruction.getUse()) {
+                Node def = lastDef.get(getKey(use));
+                if (def != null)
+                    addEdge(def, node, def.latency);
+            }
+
+            if (instruction instanceof LoadInst || instruction instanceof StoreInst) {
+                node.store = instruction instanceof StoreInst;
+                node.address = node.store ? ((StoreInst) instruction).getAddr() : ((LoadInst) instruction).getAddr();
+                if (node.address instanceof BaseOffsetAddr)
+                    node.baseVersion = version.getOrDefault(getKey(((BaseOffsetAddr) node.address).getBase()), 0);
+                for (Node access : memoryAccesses) {
+                    if ((access.store || node.store) && mayAlias(access, node))
+                        addEdge(access, node, 1);
+                }
+                memoryAccesses.add(node);
+            }
+
+            for (VirtualRegister def : instruction.getDef()) {
+                Object key = getKey(def);
+                for (Node use : usesSinceDef.getOrDefault(key, new ArrayList<>()))
+                    addEdge(use, node, 1);
+                // If x and y are related by a move(e.g. a copy of phi), x is defined after uses of y as before,
+                // or x and y would interfere and the move could not be coalesced.
+                for (VirtualRegister partner : moveRelated.getOrDefault(def, new LinkedHashSet<>())) {
+                    for (Node use : usesSinceDef.getOrDefault(partner, new ArrayList<>()))
+                        addEdge(use, node, 1);
+                }
+                if (lastDef.containsKey(key))
+                    addEdge(lastDef.get(key), node, 1);
+                lastDef.put(key, node);
+                usesSinceDef.put(key, new ArrayList<>());
+                version.merge(key, 1, Integer::sum);
+            }
+            for (VirtualRegister use : instruction.getUse()) {
+                if (!instruction.getDef().contains(use))
+                    usesSinceDef.computeIfAbsent(getKey(use), k -> new ArrayList<>()).add(node);
+            }
+        }
+        return nodes;
+    }
+
+    private void addEdge(Node from, Node to, int latency) {
+        if (from == to)
+            return;
+        from.successors.add(to);
+        from.edgeLatencies.add(latency);
+        to.predecessorCnt++;
+    }
+
+    // Stack locations never alias the heap or global variables, since Mx cannot take addresses of locals.
+    // Accesses with the same base register(not redefined in between) alias only if their words overlap.
+    private boolean mayAlias(Node a, Node b) {
+        if (a.address instanceof StackLocation || b.address instanceof StackLocation) {
+            if (!(a.address instanceof StackLocation) || !(b.address instanceof StackLocation))
+                return false;
+            StackLocation location1 = ((StackLocation) a.address);
+            StackLocation location2 = ((StackLocation) b.address);
+            if (location1.getOffset() == -1 || location2.getOffset() == -1)
+                return location1 == location2;
+            return location1.getOffset() == location2.getOffset();
+        }
+        BaseOffsetAddr address1 = ((BaseOffsetAddr) a.address);
+        BaseOffsetAddr address2 = ((BaseOffsetAddr) b.address);
+        if (getKey(address1.getBase()) != getKey(address2.getBase()) || a.baseVersion != b.baseVersion
+                || !(address1.getOffset() instanceof IntImmediate) || !(address2.getOffset() instanceof IntImmediate))
+            return true;
+        int offset1 = ((IntImmediate) address1.getOffset()).getValue();
+        int offset2 = ((IntImmediate) address2.getOffset()).getValue();
+        return Math.abs(offset1 - offset2) < 4;
+    }
+
+    private ArrayList<ASMInstruction> listSchedule(ArrayList<Node> nodes) {
+        // Register pressure: remaining uses in the region, and values defined in the region which are still used.
+        Map<VirtualRegister, Integer> remainingUses = new LinkedHashMap<>();
+        Set<VirtualRegister> live = new LinkedHashSet<>();
+        for (Node node : nodes) {
+            for (VirtualRegister use : node.instruction.getUse())
+                remainingUses.merge(use, 1, Integer::sum);
+        }
+
+        ArrayList<Node> ready = new ArrayList<>();
+        for (Node node : nodes) {
+            if (node.predecessorCnt == 0)
+                ready.add(node);
+        }
+        ArrayList<ASMInstruction> order = new ArrayList<>();
+        int cycle = 0;
+        while (!ready.isEmpty()) {
+            boolean pressed = !allocated && live.size() >= pressureLimit;
+            Node best = null;
+            int bestDelta = 0;
+            for (Node node : ready) {
+                int delta = pressed ? computePressureDelta(node, remainingUses, live) : 0;
+                if (best == null || isBetter(node, delta, best, bestDelta, cycle, pressed)) {
+                    best = node;
+                    bestDelta = delta;
+                }
+            }
+            ready.remove(best);
+            order.add(best.instruction);
+            cycle = Integer.max(cycle, best.earliest);
+
+            for (VirtualRegister use : best.instruction.getUse()) {
+                if (remainingUses.merge(use, -1, Integer::sum) == 0)
+                    live.remove(use);
+            }
+            for (VirtualRegister def : best.instruction.getDef()) {
+                if (remainingUses.getOrDefault(def, 0) > 0)
+                    live.add(def);
+            }
+            for (int i = 0; i < best.successors.size(); i++) {
+                Node successor = best.successors.get(i);
+                successor.earliest = Integer.max(successor.earliest, cycle + best.edgeLatencies.get(i));
+                if (--successor.predecessorCnt == 0)
+                    ready.add(successor);
+            }
+            cycle++;
+        }
+        assert order.size() == nodes.size();
+        return order;
+    }
+
+    // Number of values made live minus number of values freed by node.
+    private int computePressureDelta(Node node, Map<VirtualRegister, Integer> remainingUses,
+                                     Set<VirtualRegister> live) {
+        int delta = 0;
+        for (VirtualRegister def : node.instruction.getDef()) {
+            if (remainingUses.getOrDefault(def, 0) > 0 && !live.contains(def))
+                delta++;
+        }
+        for (VirtualRegister use : node.instruction.getUse()) {
+            if (live.contains(use) && remainingUses.get(use) == 1)
+                delta--;
+        }
+        return delta;
+    }
+
+    // Under register pressure, instructions are chosen by the change of pressure and then in the original order.
+    private boolean isBetter(Node node, int delta, Node best, int bestDelta, int cycle, boolean pressed) {
+        if (pressed)
+            return delta != bestDelta ? delta < bestDelta : node.index < best.index;
+        boolean available = node.earliest <= cycle;
+        boolean bestAvailable = best.earliest <= cycle;
+        if (available != bestAvailable)
+            return available;
+        if (node.height != best.height)
+            return node.height > best.height;
+        if (node.earliest != best.earliest)
+            return node.earliest < best.earliest;
+        return node.index < best.index;
+    }
+}
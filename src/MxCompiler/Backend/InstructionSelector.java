@@ -64,6 +64,8 @@ public class InstructionSelector implements IRVisitor {
             if (IRGlobalVariable.getType() instanceof ArrayType) {
                 assert IRGlobalVariable.getInit() instanceof ConstString;
                 gv.setString(((ConstString) init).getValue());
+                if (module.hasPrefixedStrings())
+                    gv.setLengthPrefixed();
             } else if (IRGlobalVariable.getType() instanceof IntegerType
                     && ((IntegerType) IRGlobalVariable.getType()).getBitWidth() == IntegerType.BitWidth.int1) {
                 assert init instanceof ConstBool;
@@ -102,18 +104,8 @@ public class InstructionSelector implements IRVisitor {
         StackFrame stackFrame = new StackFrame(currentFunction);
         currentFunction.setStackFrame(stackFrame);
 
-        // ------ Save return address ------
-        VirtualRegister savedRA = new VirtualRegister(PhysicalRegister.raVR.getName() + ".save");
-        currentFunction.getSymbolTable().putASM(savedRA.getName(), savedRA);
-        currentBlock.addInstruction(new MxCompiler.RISCV.Instruction.MoveInst(currentBlock,
-                savedRA, PhysicalRegister.raVR));
-
-        // ------ Save callee-save registers ------
-        for (VirtualRegister vr : PhysicalRegister.calleeSaveVRs) {
-            VirtualRegister savedVR = new VirtualRegister(vr.getName() + ".save");
-            currentFunction.getSymbolTable().putASM(savedVR.getName(), savedVR);
-            currentBlock.addInstruction(new MxCompiler.RISCV.Instruction.MoveInst(currentBlock, savedVR, vr));
-        }
+        // ra and callee-save registers are saved after register allocation, only if they are written
+        // (see RegisterAllocator.saveRegisters()).
 
         // ------ Parameters ------
         ArrayList<Parameter> IRParameters = function.getParameters();
@@ -137,6 +129,15 @@ public class InstructionSelector implements IRVisitor {
         // ------ Blocks ------
         for (BasicBlock block : function.getBlocks())
             block.accept(this);
+
+        // The exit block is unreachable if every return is a tail call.
+        for (MxCompiler.RISCV.BasicBlock block : currentFunction.getBlocks()) {
+            if (block != currentFunction.getEntranceBlock() && block.getPredecessors().isEmpty()) {
+                for (MxCompiler.RISCV.BasicBlock successor : block.getSuccessors())
+                    successor.getPredecessors().remove(block);
+                currentFunction.splitBlockFromFunction(block);
+            }
+        }
     }
 
     @Override
@@ -144,11 +145,53 @@ public class InstructionSelector implements IRVisitor {
         currentBlock = currentFunction.getBlockMap().get(block.getName());
         IRInstruction ptr = block.getInstHead();
         while (ptr != null) {
+            if (ptr instanceof CallInst && isTailCall((CallInst) ptr)) {
+                // The rest of the block(copies of the result and the return) is replaced by the tail call.
+                selectTailCall((CallInst) ptr);
+                break;
+            }
             ptr.accept(this);
             ptr = ptr.getInstNext();
         }
     }
 
+    // A call is in tail position if it is only followed by copies of its result and the return of
+    // the last copy, where the return may be in the exit block after "br exitBlock".
+    // Arguments on the stack would be in the frame of the caller, which is released before the jump,
+    // so calls with more than 8 arguments are never tail calls.
+    private boolean isTailCall(CallInst inst) {
+        if (inst.getParameters().size() > 8)
+            return false;
+        Operand value = inst.isVoidCall() ? null : inst.getResult();
+        IRInstruction ptr = inst.getInstNext();
+        while (ptr instanceof MoveInst) {
+            if (value == null || ((MoveInst) ptr).getSource() != value)
+                return false;
+            value = ptr.getResult();
+            ptr = ptr.getInstNext();
+        }
+        if (ptr instanceof BranchInst && !((BranchInst) ptr).isConditional())
+            ptr = ((BranchInst) ptr).getThenBlock().getInstHead();
+        if (!(ptr instanceof ReturnInst))
+            return false;
+        return ((ReturnInst) ptr).getType() instanceof VoidType || ((ReturnInst) ptr).getReturnValue() == value;
+    }
+
+    private void selectTailCall(CallInst inst) {
+        ArrayList<Operand> parameters = inst.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            VirtualRegister parameter = getVROfOperand(parameters.get(i));
+            currentBlock.addInstruction(new MxCompiler.RISCV.Instruction.MoveInst(currentBlock,
+                    PhysicalRegister.argVR.get(i), parameter));
+        }
+        currentBlock.addInstruction(new TailCallInst(currentBlock, getCallee(inst), parameters.size()));
+
+        // The callee returns to the caller of this function directly.
+        for (MxCompiler.RISCV.BasicBlock successor : currentBlock.getSuccessors())
+            successor.getPredecessors().remove(currentBlock);
+        currentBlock.getSuccessors().clear();
+    }
+
     @Override
     public void visit(ReturnInst inst) {
         if (!(inst.getType() instanceof VoidType)) {
@@ -157,17 +200,6 @@ public class InstructionSelector implements IRVisitor {
                     PhysicalRegister.argVR.get(0), returnValue));
         }
 
-        // ------ Recover saved callee-save registers ------
-        for (VirtualRegister vr : PhysicalRegister.calleeSaveVRs) {
-            VirtualRegister savedVR = currentFunction.getSymbolTable().getVR(vr.getName() + ".save");
-            currentBlock.addInstruction(new MxCompiler.RISCV.Instruction.MoveInst(currentBlock, vr, savedVR));
-        }
-
-        VirtualRegister savedRA = currentFunction.getSymbolTable().getVR(
-                PhysicalRegister.raVR.getName() + ".save");
-        currentBlock.addInstruction(new MxCompiler.RISCV.Instruction.MoveInst(currentBlock,
-                PhysicalRegister.raVR, savedRA));
-
         currentBlock.addInstruction(new MxCompiler.RISCV.Instruction.ReturnInst(currentBlock));
     }
 
@@ -615,13 +647,16 @@ public class InstructionSelector implements IRVisitor {
         // Do nothing.
     }
 
-    @Override
-    public void visit(CallInst inst) {
-        MxCompiler.RISCV.Function callee;
+    private MxCompiler.RISCV.Function getCallee(CallInst inst) {
         if (ASMModule.getFunctionMap().containsKey(inst.getFunction().getName()))
-            callee = ASMModule.getFunctionMap().get(inst.getFunction().getName());
+            return ASMModule.getFunctionMap().get(inst.getFunction().getName());
         else
-            callee = ASMModule.getExternalFunctionMap().get(inst.getFunction().getName());
+            return ASMModule.getExternalFunctionMap().get(inst.getFunction().getName());
+    }
+
+    @Override
+    public void visit(CallInst inst) {
+        MxCompiler.RISCV.Function callee = getCallee(inst);
         ArrayList<Operand> parameters = inst.getParameters();
 
         for (int i = 0; i < Integer.min(8, parameters.size()); i++) {
@@ -652,7 +687,7 @@ public class InstructionSelector implements IRVisitor {
         }
 
         MxCompiler.RISCV.Instruction.CallInst callInst = new MxCompiler.RISCV.Instruction.CallInst(currentBlock,
-                callee);
+                callee, Integer.min(8, parameters.size()));
         currentBlock.addInstruction(callInst);
 
         if (!inst.isVoidCall()) {
@@ -0,0 +1,112 @@
+package MxCompiler.Backend;
+
+import MxCompiler.RISCV.Operand.Register.VirtualRegister;
+
+import java.util.*;
+
+// Interference graph of a function, in which every virtual register has a dense integer id.
+// adjSet is a triangular bit matrix, or a hash set of edge indices if the graph is too large.
+// Adjacency lists are arrays of ids.
+public class InterferenceGraph {
+    // The bit matrix of n nodes costs n * (n - 1) / 2 bits, i.e. 4MB for 8192 nodes.
+    static final private int maxMatrixSize = 8192;
+
+    private final Map<VirtualRegister, Integer> idMap;
+    private final ArrayList<VirtualRegister> vrs;
+
+    private long[] matrix;
+    private Set<Long> edgeSet;
+
+    private int[][] adjList;
+    private int[] adjListSize;
+    private int[] degree;
+
+    public InterferenceGraph(Collection<VirtualRegister> nodes) {
+        idMap = new LinkedHashMap<>();
+        vrs = new ArrayList<>();
+        for (VirtualRegister vr : nodes) {
+            if (!idMap.containsKey(vr)) {
+                idMap.put(vr, vrs.size());
+                vrs.add(vr);
+            }
+        }
+
+        int n = vrs.size();
+        if (n <= maxMatrixSize) {
+            matrix = new long[(int) ((edgeIndex(n, 0) + 63) >>> 6)];
+            edgeSet = null;
+        } else {
+            matrix = null;
+            edgeSet = new LinkedHashSet<>();
+        }
+        adjList = new int[n][];
+        adjListSize = new int[n];
+        degree = new int[n];
+    }
+
+    public int size() {
+        return vrs.size();
+    }
+
+    public int getId(VirtualRegister vr) {
+        assert idMap.containsKey(vr);
+        return idMap.get(vr);
+    }
+
+    public VirtualRegister getVR(int id) {
+        return vrs.get(id);
+    }
+
+    // Index of (u, v) in the lower triangle, where u > v.
+    static private long edgeIndex(int u, int v) {
+        return (long) u * (u - 1) / 2 + v;
+    }
+
+    public boolean hasEdge(int u, int v) {
+        if (u == v)
+            return false;
+        long index = u > v ? edgeIndex(u, v) : edgeIndex(v, u);
+        if (matrix != null)
+            return (matrix[(int) (index >>> 6)] & (1L << index)) != 0;
+        else
+            return edgeSet.contains(index);
+    }
+
+    // Add (u, v) & (v, u) to adjSet. Return false if the edge already exists.
+    public boolean addEdge(int u, int v) {
+        assert u != v;
+        long index = u > v ? edgeIndex(u, v) : edgeIndex(v, u);
+        if (matrix != null) {
+            int word = (int) (index >>> 6);
+            if ((matrix[word] & (1L << index)) != 0)
+                return false;
+            matrix[word] |= 1L << index;
+            return true;
+        } else
+            return edgeSet.add(index);
+    }
+
+    public void addAdjacent(int u, int v) {
+        if (adjList[u] == null)
+            adjList[u] = new int[4];
+        else if (adjListSize[u] == adjList[u].length)
+            adjList[u] = Arrays.copyOf(adjList[u], adjList[u].length * 2);
+        adjList[u][adjListSize[u]++] = v;
+    }
+
+    public int getAdjListSize(int u) {
+        return adjListSize[u];
+    }
+
+    public int getAdjacent(int u, int i) {
+        return adjList[u][i];
+    }
+
+    public int getDegree(int u) {
+        return degree[u];
+    }
+
+    public void setDegree(int u, int degree) {
+        this.degree[u] = degree;
+    }
+}
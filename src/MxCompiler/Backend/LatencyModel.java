@@ -0,0 +1,68 @@
+package MxCompiler.Backend;
+
+import MxCompiler.RISCV.Instruction.ASMInstruction;
+import MxCompiler.RISCV.Instruction.BinaryInst.RTypeBinary;
+import MxCompiler.RISCV.Instruction.LoadInst;
+
+// Latencies of an in-order RV32IM pipeline in cycles, i.e. the distance between an instruction and the
+// first instruction which uses its result without a stall. The default is a classic 5-stage pipeline with
+// a pipelined multiplier and an iterative divider. It is configured by "--latency alu=1,load=3,mul=3,div=20",
+// where omitted classes keep their defaults(see InstructionScheduler).
+public class LatencyModel {
+    private int alu;
+    private int load;
+    private int mul;
+    private int div;
+
+    public LatencyModel() {
+        alu = 1;
+        load = 3;
+        mul = 3;
+        div = 20;
+    }
+
+    static public LatencyModel parse(String spec) {
+        LatencyModel model = new LatencyModel();
+        for (String item : spec.split(",")) {
+            String[] pair = item.split("=");
+            int latency;
+            try {
+                latency = pair.length == 2 ? Integer.parseInt(pair[1]) : -1;
+            } catch (NumberFormatException e) {
+                latency = -1;
+            }
+            if (latency < 1)
+                throw new RuntimeException("Invalid latency \"" + item + "\".");
+            switch (pair[0]) {
+                case "alu":
+                    model.alu = latency;
+                    break;
+                case "load":
+                    model.load = latency;
+                    break;
+                case "mul":
+                    model.mul = latency;
+                    break;
+                case "div":
+                    model.div = latency;
+                    break;
+                default:
+                    throw new RuntimeException("Unknown instruction class \"" + pair[0] + "\".");
+            }
+        }
+        return model;
+    }
+
+    public int getLatency(ASMInstruction instruction) {
+        if (instruction instanceof LoadInst)
+            return load;
+        if (instruction instanceof RTypeBinary) {
+            RTypeBinary.OpName op = ((RTypeBinary) instruction).getOp();
+            if (op == RTypeBinary.OpName.mul)
+                return mul;
+            if (op == RTypeBinary.OpName.div || op == RTypeBinary.OpName.rem)
+                return div;
+        }
+        return alu;
+    }
+}
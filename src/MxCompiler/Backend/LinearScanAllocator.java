@@ -0,0 +1,298 @@
+// Implement "Linear Scan Register Allocation"(Poletto & Sarkar, TOPLAS 1999), which is much faster than
+// graph coloring on huge functions, at the cost of more spills and moves.
+
+package MxCompiler.Backend;
+
+import MxCompiler.Optim.LoopOptim.LoopAnalysis;
+import MxCompiler.RISCV.BasicBlock;
+import MxCompiler.RISCV.Function;
+import MxCompiler.RISCV.Instruction.ASMInstruction;
+import MxCompiler.RISCV.Instruction.MoveInst;
+import MxCompiler.RISCV.Module;
+import MxCompiler.RISCV.Operand.Register.PhysicalRegister;
+import MxCompiler.RISCV.Operand.Register.VirtualRegister;
+
+import java.util.*;
+
+// Instructions are numbered in DFS order, where an instruction with number i reads its uses at 2i and
+// writes its defs at 2i + 1. Every VR which is not pre-colored gets a single live interval covering all
+// positions where it is live(lifetime holes are ignored). Pre-colored VRs get exact live ranges instead,
+// so that a VR is never assigned a physical register which is live inside its interval, e.g. a
+// caller-save register across a call.
+// Spilled VRs are rewritten as in graph coloring(see RegisterAllocator.rewriteProgram), and then
+// allocation is done again.
+public class LinearScanAllocator extends ASMPass {
+    private Function function;
+    private final LoopAnalysis loopAnalysis;
+
+    private final ArrayList<PhysicalRegister> registers;
+    private final Map<PhysicalRegister, Integer> registerId;
+    private final Set<VirtualRegister> preColored;
+
+    public LinearScanAllocator(Module module, LoopAnalysis loopAnalysis) {
+        super(module);
+        this.loopAnalysis = loopAnalysis;
+
+        registers = new ArrayList<>(PhysicalRegister.allocatablePRs.values());
+        registerId = new LinkedHashMap<>();
+        for (int i = 0; i < registers.size(); i++)
+            registerId.put(registers.get(i), i);
+        preColored = new LinkedHashSet<>(PhysicalRegister.vrs.values());
+    }
+
+    // ------ Data Structures ------
+    private Map<VirtualRegister, Interval> intervals;
+    private Map<VirtualRegister, Double> spillCost;
+    private Map<VirtualRegister, ArrayList<VirtualRegister>> moveHints;
+    // Sorted and disjoint live ranges of every allocatable physical register, indexed by registerId.
+    private int[][] fixedStart;
+    private int[][] fixedEnd;
+    private Set<VirtualRegister> spilledNodes;
+
+    static private class Interval {
+        private VirtualRegister vr;
+        private int start;
+        private int end;
+        private double spillRatio;
+
+        Interval(VirtualRegister vr, int position) {
+            this.vr = vr;
+            this.start = position;
+            this.end = position;
+        }
+
+        void extend(int position) {
+            start = Integer.min(start, position);
+            end = Integer.max(end, position);
+        }
+    }
+    // ------ Data Structure End ------
+
+    @Override
+    public void run() {
+        for (Function function : module.getFunctionMap().values())
+            run(function);
+    }
+
+    public void run(Function function) {
+        this.function = function;
+        while (true) {
+            new LivenessAnalysis(module).run(function);
+            computeSpillCost();
+            buildIntervals();
+            linearScan();
+
+            if (!spilledNodes.isEmpty())
+                RegisterAllocator.rewriteProgram(function, spilledNodes);
+            else
+                break;
+        }
+
+        RegisterAllocator.finishAllocation(function);
+    }
+
+    // Compute the spill cost of every virtual register(\sum (weight of block * number of defs/uses)).
+    private void computeSpillCost() {
+        spillCost = new LinkedHashMap<>();
+        for (BasicBlock block : function.getDFSOrder()) {
+            double weight = RegisterAllocator.computeBlockWeight(block, loopAnalysis.getBlockDepth(block));
+            ASMInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                for (VirtualRegister def : ptr.getDef())
+                    spillCost.merge(def, weight, Double::sum);
+                for (VirtualRegister use : ptr.getUse())
+                    spillCost.merge(use, weight, Double::sum);
+                ptr = ptr.getNextInst();
+            }
+        }
+    }
+
+    private void buildIntervals() {
+        intervals = new LinkedHashMap<>();
+        moveHints = new LinkedHashMap<>();
+        Map<VirtualRegister, ArrayList<int[]>> fixedRanges = new LinkedHashMap<>();
+
+        int position = 0;
+        for (BasicBlock block : function.getDFSOrder()) {
+            ArrayList<ASMInstruction> instructions = new ArrayList<>();
+            ASMInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                instructions.add(ptr);
+                ptr = ptr.getNextInst();
+            }
+            int blockStart = position;
+            int blockEnd = instructions.isEmpty() ? blockStart : blockStart + 2 * instructions.size() - 1;
+
+            // live contains VRs which are not pre-colored, and openRanges maps every live pre-colored VR
+            // to the end of its current live range.
+            Set<VirtualRegister> live = new LinkedHashSet<>();
+            Map<VirtualRegister, Integer> openRanges = new LinkedHashMap<>();
+            for (VirtualRegister vr : block.getLiveOut()) {
+                if (preColored.contains(vr))
+                    openRanges.put(vr, blockEnd);
+                else {
+                    live.add(vr);
+                    extendInterval(vr, blockEnd);
+                }
+            }
+            for (int i = instructions.size() - 1; i >= 0; i--) {
+                ASMInstruction inst = instructions.get(i);
+                int usePosition = blockStart + 2 * i;
+                int defPosition = usePosition + 1;
+
+                for (VirtualRegister def : inst.getDef()) {
+                    if (preColored.contains(def)) {
+                        Integer end = openRanges.remove(def);
+                        addFixedRange(fixedRanges, def, defPosition, end == null ? defPosition : end);
+                    } else {
+                        live.remove(def);
+                        extendInterval(def, defPosition);
+                    }
+                }
+                for (VirtualRegister use : inst.getUse()) {
+                    if (preColored.contains(use))
+                        openRanges.putIfAbsent(use, usePosition);
+                    else {
+                        live.add(use);
+                        extendInterval(use, usePosition);
+                    }
+                }
+
+                if (inst instanceof MoveInst) {
+                    VirtualRegister rd = ((MoveInst) inst).getRd();
+                    VirtualRegister rs = ((MoveInst) inst).getRs();
+                    moveHints.computeIfAbsent(rd, k -> new ArrayList<>()).add(rs);
+                    moveHints.computeIfAbsent(rs, k -> new ArrayList<>()).add(rd);
+                }
+            }
+            for (VirtualRegister vr : live)
+                extendInterval(vr, blockStart);
+            for (Map.Entry<VirtualRegister, Integer> entry : openRanges.entrySet())
+                addFixedRange(fixedRanges, entry.getKey(), blockStart, entry.getValue());
+
+            position = blockEnd + 1;
+        }
+
+        fixedStart = new int[registers.size()][];
+        fixedEnd = new int[registers.size()][];
+        for (int i = 0; i < registers.size(); i++)
+            mergeFixedRanges(i, fixedRanges.getOrDefault(PhysicalRegister.vrs.get(registers.get(i).getName()),
+                    new ArrayList<>()));
+
+        for (Interval interval : intervals.values()) {
+            interval.spillRatio = interval.vr.computeSpillRatio(spillCost.getOrDefault(interval.vr, 0.0),
+                    interval.end - interval.start + 1);
+        }
+    }
+
+    private void extendInterval(VirtualRegister vr, int position) {
+        Interval interval = intervals.get(vr);
+        if (interval == null)
+            intervals.put(vr, new Interval(vr, position));
+        else
+            interval.extend(position);
+    }
+
+    private void addFixedRange(Map<VirtualRegister, ArrayList<int[]>> fixedRanges,
+                               VirtualRegister vr, int start, int end) {
+        fixedRanges.computeIfAbsent(vr, k -> new ArrayList<>()).add(new int[]{start, end});
+    }
+
+    private void mergeFixedRanges(int id, ArrayList<int[]> ranges) {
+        ranges.sort(Comparator.comparingInt(range -> range[0]));
+        int[] start = new int[ranges.size()];
+        int[] end = new int[ranges.size()];
+        int cnt = 0;
+        for (int[] range : ranges) {
+            if (cnt > 0 && range[0] <= end[cnt - 1] + 1)
+                end[cnt - 1] = Integer.max(end[cnt - 1], range[1]);
+            else {
+                start[cnt] = range[0];
+                end[cnt] = range[1];
+                cnt++;
+            }
+        }
+        fixedStart[id] = Arrays.copyOf(start, cnt);
+        fixedEnd[id] = Arrays.copyOf(end, cnt);
+    }
+
+    // Check whether the physical register with registerId id is live somewhere in [start, end].
+    private boolean conflictWithFixedRanges(int id, int start, int end) {
+        int[] starts = fixedStart[id];
+        int l = 0;
+        int r = starts.length - 1;
+        int last = -1; // The last range starting no later than end.
+        while (l <= r) {
+            int mid = (l + r) >>> 1;
+            if (starts[mid] <= end) {
+                last = mid;
+                l = mid + 1;
+            } else
+                r = mid - 1;
+        }
+        return last != -1 && fixedEnd[id][last] >= start;
+    }
+
+    private void linearScan() {
+        spilledNodes = new LinkedHashSet<>();
+        ArrayList<Interval> sortedIntervals = new ArrayList<>(intervals.values());
+        sortedIntervals.sort(Comparator.comparingInt(interval -> interval.start));
+        for (Interval interval : sortedIntervals)
+            interval.vr.clearColoringData();
+
+        // active[i] is the interval currently assigned to registers[i], and it is expired if its end
+        // is earlier than the start of current interval.
+        Interval[] active = new Interval[registers.size()];
+        for (Interval current : sortedIntervals) {
+            int id = selectFreeRegister(current, active);
+            if (id == -1) {
+                // Spill the interval with the smallest spill ratio among current and the active intervals
+                // whose registers are available for current.
+                double minRatio = current.spillRatio;
+                for (int i = 0; i < registers.size(); i++) {
+                    if (active[i] != null && active[i].end >= current.start && active[i].spillRatio < minRatio
+                            && !conflictWithFixedRanges(i, current.start, current.end)) {
+                        minRatio = active[i].spillRatio;
+                        id = i;
+                    }
+                }
+                if (id == -1) {
+                    assert current.spillRatio != Double.POSITIVE_INFINITY;
+                    spilledNodes.add(current.vr);
+                    continue;
+                }
+                spilledNodes.add(active[id].vr);
+            }
+            active[id] = current;
+            current.vr.setColorPR(registers.get(id));
+        }
+    }
+
+    // Select a free register for an interval: registers of move-related VRs first(so that the move
+    // instruction can be removed), and then caller-save registers. Return -1 if there is no free register.
+    private int selectFreeRegister(Interval interval, Interval[] active) {
+        for (VirtualRegister hint : moveHints.getOrDefault(interval.vr, new ArrayList<>())) {
+            if (hint.hasAColor() && registerId.containsKey(hint.getColorPR())) {
+                int id = registerId.get(hint.getColorPR());
+                if (isFree(id, interval, active))
+                    return id;
+            }
+        }
+
+        int res = -1;
+        for (int i = 0; i < registers.size(); i++) {
+            if (isFree(i, interval, active)) {
+                if (PhysicalRegister.callerSavePRs.containsKey(registers.get(i).getName()))
+                    return i;
+                if (res == -1)
+                    res = i;
+            }
+        }
+        return res;
+    }
+
+    private boolean isFree(int id, Interval interval, Interval[] active) {
+        return (active[id] == null || active[id].end < interval.start)
+                && !conflictWithFixedRanges(id, interval.start, interval.end);
+    }
+}
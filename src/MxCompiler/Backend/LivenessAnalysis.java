@@ -6,10 +6,11 @@ import MxCompiler.RISCV.Instruction.ASMInstruction;
 import MxCompiler.RISCV.Module;
 import MxCompiler.RISCV.Operand.Register.VirtualRegister;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
+// VRs of a function are numbered, and UEVar, varKill, liveIn and liveOut of every block are dense bitsets.
+// Blocks are visited by a worklist which starts in post-order(successors first), and a block is visited
+// again only if liveIn of one of its successors changes.
 public class LivenessAnalysis extends ASMPass {
     public LivenessAnalysis(Module module) {
         super(module);
@@ -21,33 +22,136 @@ public class LivenessAnalysis extends ASMPass {
             computeLiveOutSet(function);
     }
 
+    // Compute liveOut of a single function only.
+    public void run(Function function) {
+        computeLiveOutSet(function);
+    }
+
     private void computeLiveOutSet(Function function) {
-        ArrayList<BasicBlock> dfsOrder = function.getDFSOrder();
-        for (BasicBlock block : dfsOrder)
+        ArrayList<BasicBlock> postOrder = getPostOrder(function);
+        int n = postOrder.size();
+        Map<BasicBlock, Integer> blockId = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++)
+            blockId.put(postOrder.get(i), i);
+
+        Map<VirtualRegister, Integer> vrId = new LinkedHashMap<>();
+        ArrayList<VirtualRegister> vrs = new ArrayList<>();
+        for (BasicBlock block : postOrder) {
             computeUEVarAndVarKill(block);
+            for (VirtualRegister vr : block.getUEVar())
+                numberVR(vr, vrId, vrs);
+            for (VirtualRegister vr : block.getVarKill())
+                numberVR(vr, vrId, vrs);
+        }
+        int words = (vrs.size() + 63) >>> 6;
+
+        long[][] UEVar = new long[n][];
+        long[][] varKill = new long[n][];
+        long[][] liveIn = new long[n][];
+        long[][] liveOut = new long[n][];
+        int[][] successors = new int[n][];
+        int[][] predecessors = new int[n][];
+        int[] predecessorCnt = new int[n];
+        for (int i = 0; i < n; i++) {
+            BasicBlock block = postOrder.get(i);
+            UEVar[i] = toBitSet(block.getUEVar(), vrId, words);
+            varKill[i] = toBitSet(block.getVarKill(), vrId, words);
+            liveIn[i] = UEVar[i].clone();
+            liveOut[i] = new long[words];
+
+            successors[i] = new int[block.getSuccessors().size()];
+            int j = 0;
+            for (BasicBlock successor : block.getSuccessors()) {
+                successors[i][j++] = blockId.get(successor);
+                predecessorCnt[blockId.get(successor)]++;
+            }
+        }
+        for (int i = 0; i < n; i++)
+            predecessors[i] = new int[predecessorCnt[i]];
+        Arrays.fill(predecessorCnt, 0);
+        for (int i = 0; i < n; i++) {
+            for (int successor : successors[i])
+                predecessors[successor][predecessorCnt[successor]++] = i;
+        }
 
-        for (int i = dfsOrder.size() - 1; i >= 0; i--) {
-            BasicBlock block = dfsOrder.get(i);
-            block.setLiveOut(new HashSet<>());
+        // liveOut(b) = union of liveIn(s) for every successor s
+        // liveIn(b) = UEVar(b) + (liveOut(b) - varKill(b))
+        ArrayDeque<Integer> workList = new ArrayDeque<>();
+        boolean[] inWorkList = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            workList.offer(i);
+            inWorkList[i] = true;
         }
+        while (!workList.isEmpty()) {
+            int b = workList.poll();
+            inWorkList[b] = false;
+
+            long[] out = liveOut[b];
+            for (int successor : successors[b]) {
+                long[] in = liveIn[successor];
+                for (int k = 0; k < words; k++)
+                    out[k] |= in[k];
+            }
 
-        boolean changed = true;
-        while (changed) {
-            changed = false;
-            for (int i = dfsOrder.size() - 1; i >= 0; i--) {
-                BasicBlock block = dfsOrder.get(i);
-                Set<VirtualRegister> liveOut = computeLiveOutSet(block);
-                if (!block.getLiveOut().equals(liveOut)) {
-                    block.setLiveOut(liveOut);
+            boolean changed = false;
+            long[] in = liveIn[b];
+            for (int k = 0; k < words; k++) {
+                long newIn = UEVar[b][k] | (out[k] & ~varKill[b][k]);
+                if (newIn != in[k]) {
+                    in[k] = newIn;
                     changed = true;
                 }
             }
+            if (changed) {
+                for (int predecessor : predecessors[b]) {
+                    if (!inWorkList[predecessor]) {
+                        workList.offer(predecessor);
+                        inWorkList[predecessor] = true;
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i++)
+            postOrder.get(i).setLiveOut(toSet(liveOut[i], vrs));
+    }
+
+    private ArrayList<BasicBlock> getPostOrder(Function function) {
+        ArrayList<BasicBlock> postOrder = new ArrayList<>();
+        Set<BasicBlock> visit = new LinkedHashSet<>();
+        Deque<DFSFrame> stack = new ArrayDeque<>();
+        stack.push(new DFSFrame(function.getEntranceBlock()));
+        visit.add(function.getEntranceBlock());
+        while (!stack.isEmpty()) {
+            DFSFrame top = stack.peek();
+            if (top.successors.hasNext()) {
+                BasicBlock successor = top.successors.next();
+                if (!visit.contains(successor)) {
+                    visit.add(successor);
+                    stack.push(new DFSFrame(successor));
+                }
+            } else {
+                postOrder.add(top.block);
+                stack.pop();
+            }
+        }
+        return postOrder;
+    }
+
+    // A block with the iterator of its unvisited successors, used by the non-recursive DFS.
+    private static class DFSFrame {
+        private BasicBlock block;
+        private Iterator<BasicBlock> successors;
+
+        DFSFrame(BasicBlock block) {
+            this.block = block;
+            this.successors = block.getSuccessors().iterator();
         }
     }
 
     private void computeUEVarAndVarKill(BasicBlock block) {
-        Set<VirtualRegister> UEVar = new HashSet<>();
-        Set<VirtualRegister> varKill = new HashSet<>();
+        Set<VirtualRegister> UEVar = new LinkedHashSet<>();
+        Set<VirtualRegister> varKill = new LinkedHashSet<>();
 
         ASMInstruction ptr = block.getInstHead();
         while (ptr != null) {
@@ -59,17 +163,31 @@ public class LivenessAnalysis extends ASMPass {
         block.setVarKill(varKill);
     }
 
-    private Set<VirtualRegister> computeLiveOutSet(BasicBlock block) {
-        Set<VirtualRegister> liveOut = new HashSet<>();
-        for (BasicBlock successor : block.getSuccessors()) {
-            Set<VirtualRegister> intersection = new HashSet<>(successor.getLiveOut());
-            intersection.removeAll(successor.getVarKill());
+    private void numberVR(VirtualRegister vr, Map<VirtualRegister, Integer> vrId, ArrayList<VirtualRegister> vrs) {
+        if (!vrId.containsKey(vr)) {
+            vrId.put(vr, vrs.size());
+            vrs.add(vr);
+        }
+    }
 
-            Set<VirtualRegister> union = new HashSet<>(successor.getUEVar());
-            union.addAll(intersection);
+    private long[] toBitSet(Set<VirtualRegister> set, Map<VirtualRegister, Integer> vrId, int words) {
+        long[] bitSet = new long[words];
+        for (VirtualRegister vr : set) {
+            int id = vrId.get(vr);
+            bitSet[id >>> 6] |= 1L << id;
+        }
+        return bitSet;
+    }
 
-            liveOut.addAll(union);
+    private Set<VirtualRegister> toSet(long[] bitSet, ArrayList<VirtualRegister> vrs) {
+        Set<VirtualRegister> set = new LinkedHashSet<>();
+        for (int k = 0; k < bitSet.length; k++) {
+            long word = bitSet[k];
+            while (word != 0) {
+                set.add(vrs.get((k << 6) + Long.numberOfTrailingZeros(word)));
+                word &= word - 1;
+            }
         }
-        return liveOut;
+        return set;
     }
 }
@@ -0,0 +1,686 @@
+package MxCompiler.Backend;
+
+import MxCompiler.RISCV.ASMVisitor;
+import MxCompiler.RISCV.BasicBlock;
+import MxCompiler.RISCV.Function;
+import MxCompiler.RISCV.Instruction.*;
+import MxCompiler.RISCV.Instruction.BinaryInst.ITypeBinary;
+import MxCompiler.RISCV.Instruction.BinaryInst.RTypeBinary;
+import MxCompiler.RISCV.Instruction.Branch.BinaryBranch;
+import MxCompiler.RISCV.Instruction.Branch.Branch;
+import MxCompiler.RISCV.Instruction.Branch.UnaryBranch;
+import MxCompiler.RISCV.Module;
+import MxCompiler.RISCV.Operand.Address.Address;
+import MxCompiler.RISCV.Operand.Address.BaseOffsetAddr;
+import MxCompiler.RISCV.Operand.Address.StackLocation;
+import MxCompiler.RISCV.Operand.GlobalVariable;
+import MxCompiler.RISCV.Operand.Immediate.Immediate;
+import MxCompiler.RISCV.Operand.Immediate.IntImmediate;
+import MxCompiler.RISCV.Operand.Immediate.RelocationImmediate;
+import MxCompiler.RISCV.Operand.Register.PhysicalRegister;
+import MxCompiler.RISCV.Operand.Register.VirtualRegister;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.*;
+
+// Encode a RISC-V module into RV32IM machine code and write a relocatable ELF object, so that the program links
+// without an assembler(see Options "--object"). The object has the same code and data as the assembly of
+// CodeEmitter, with pseudo instructions expanded as an assembler does(mv, li, la, seqz, beqz, ble, call, ...).
+//
+// Branches, jumps and calls between functions of the module are resolved here, while addresses of global
+// variables and calls to external(builtin) functions are left to the linker by relocations.
+// Relaxation: a branch out of its range(+-4 KiB) becomes an inverted branch over a jal, and a call within
+// the range of jal(+-1 MiB) becomes a single jal instead of auipc + jalr. Instructions are first assumed to be
+// short, and the module is encoded again whenever an instruction turns long. Since instructions never shrink,
+// this ends when one pass changes nothing, and then every offset is the same as in the previous pass.
+public class ObjectEmitter implements ASMVisitor {
+    // A growable little-endian byte array.
+    static private class Section {
+        private byte[] bytes = new byte[1 << 12];
+        private int size = 0;
+
+        public int size() {
+            return size;
+        }
+
+        public void clear() {
+            size = 0;
+        }
+
+        public void writeByte(int value) {
+            if (size == bytes.length)
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            bytes[size++] = (byte) value;
+        }
+
+        public void writeHalf(int value) {
+            writeByte(value);
+            writeByte(value >> 8);
+        }
+
+        public void writeWord(int value) {
+            writeHalf(value);
+            writeHalf(value >> 16);
+        }
+
+        public void writeBytes(byte[] values) {
+            for (byte value : values)
+                writeByte(value);
+        }
+
+        public void writeSection(Section section) {
+            for (int i = 0; i < section.size; i++)
+                writeByte(section.bytes[i]);
+        }
+
+        public void align(int alignment) {
+            while (size % alignment != 0)
+                writeByte(0);
+        }
+
+        public void writeTo(OutputStream os) throws IOException {
+            os.write(bytes, 0, size);
+        }
+    }
+
+    static private class Relocation {
+        private int offset;
+        private String symbol;
+        private int type;
+
+        public Relocation(int offset, String symbol, int type) {
+            this.offset = offset;
+            this.symbol = symbol;
+            this.type = type;
+        }
+    }
+
+    static private class Symbol {
+        private String name;
+        private int value;
+        private int size;
+        private int info;
+        private int sectionIndex;
+
+        public Symbol(String name, int value, int size, int info, int sectionIndex) {
+            this.name = name;
+            this.value = value;
+            this.size = size;
+            this.info = info;
+            this.sectionIndex = sectionIndex;
+        }
+    }
+
+    // ------ RISC-V ELF constants ------
+    static private final int R_RISCV_CALL_PLT = 19;
+    static private final int R_RISCV_PCREL_HI20 = 23;
+    static private final int R_RISCV_PCREL_LO12_I = 24;
+    static private final int R_RISCV_HI20 = 26;
+    static private final int R_RISCV_LO12_I = 27;
+    static private final int R_RISCV_LO12_S = 28;
+
+    static private final int OP_IMM = 0x13;
+    static private final int OP = 0x33;
+    static private final int LOAD = 0x03;
+    static private final int STORE = 0x23;
+    static private final int BRANCH = 0x63;
+    static private final int LUI = 0x37;
+    static private final int AUIPC = 0x17;
+    static private final int JAL = 0x6f;
+    static private final int JALR = 0x67;
+
+    static private final int ZERO = 0;
+    static private final int RA = 1;
+    static private final int SP = 2;
+    static private final int T1 = 6;
+
+    static private final int TEXT_INDEX = 1;
+    static private final int DATA_INDEX = 2;
+
+    static private final Map<String, Integer> registerNumbers;
+
+    static {
+        registerNumbers = new LinkedHashMap<>();
+        for (int i = 0; i < PhysicalRegister.prNames.length; i++)
+            registerNumbers.put(PhysicalRegister.prNames[i], i);
+    }
+
+    // ------ END ------
+
+    private OutputStream os;
+    private Module module;
+
+    private Section text;
+    private Section data;
+    private ArrayList<Relocation> relocations;
+    private Map<String, Integer> pcrelLabelOffsets;
+    private Map<GlobalVariable, Integer> dataOffsets;
+
+    // Offsets of the current pass, and those of the previous pass for the blocks and functions not reached yet.
+    private Map<BasicBlock, Integer> blockOffsets;
+    private Map<Function, Integer> functionOffsets;
+    private Map<Function, Integer> functionSizes;
+    private Map<BasicBlock, Integer> lastBlockOffsets;
+    private Map<Function, Integer> lastFunctionOffsets;
+    // Branches out of range and calls out of the range of jal, which only grows.
+    private Set<ASMInstruction> longInstructions;
+    private boolean changed;
+
+    public ObjectEmitter(OutputStream os) {
+        this.os = os;
+
+        text = new Section();
+        data = new Section();
+        relocations = new ArrayList<>();
+        pcrelLabelOffsets = new LinkedHashMap<>();
+        dataOffsets = new LinkedHashMap<>();
+        blockOffsets = new LinkedHashMap<>();
+        functionOffsets = new LinkedHashMap<>();
+        functionSizes = new LinkedHashMap<>();
+        longInstructions = new LinkedHashSet<>();
+    }
+
+    public void run(Module module) {
+        int pass = 0;
+        do {
+            changed = false;
+            module.accept(this);
+            pass++;
+        } while (pass == 1 || changed);
+
+        for (GlobalVariable gv : module.getGlobalVariableMap().values())
+            gv.accept(this);
+
+        try {
+            writeELF();
+            os.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void visit(Module module) {
+        this.module = module;
+        lastBlockOffsets = blockOffsets;
+        lastFunctionOffsets = functionOffsets;
+        blockOffsets = new LinkedHashMap<>();
+        functionOffsets = new LinkedHashMap<>();
+        functionSizes = new LinkedHashMap<>();
+        text.clear();
+        relocations.clear();
+        pcrelLabelOffsets.clear();
+
+        for (Function function : module.getFunctionMap().values())
+            function.accept(this);
+    }
+
+    @Override
+    public void visit(Function function) {
+        text.align(4);
+        int offset = text.size();
+        functionOffsets.put(function, offset);
+        for (BasicBlock block : function.getBlocks())
+            block.accept(this);
+        functionSizes.put(function, text.size() - offset);
+    }
+
+    @Override
+    public void visit(BasicBlock block) {
+        blockOffsets.put(block, text.size());
+        ASMInstruction ptr = block.getInstHead();
+        while (ptr != null) {
+            ptr.accept(this);
+            ptr = ptr.getNextInst();
+        }
+    }
+
+    @Override
+    public void visit(GlobalVariable gv) {
+        if (!gv.isString()) {
+            data.align(4);
+            dataOffsets.put(gv, data.size());
+            if (gv.isBool())
+                data.writeByte(gv.getBoolByte());
+            else
+                data.writeWord(gv.getWord());
+        } else {
+            if (gv.isLengthPrefixed()) {
+                data.align(4);
+                data.writeWord(gv.getStringLength());
+            }
+            dataOffsets.put(gv, data.size());
+            // Encoded as the assembly is written(see CodeEmitter), and .asciz appends a '\0'.
+            data.writeBytes(gv.getString().getBytes(Charset.defaultCharset()));
+            data.writeByte(0);
+        }
+    }
+
+    @Override
+    public void visit(MoveInst inst) {
+        emit(iType(0, reg(inst.getRs()), 0, reg(inst.getRd()), OP_IMM));
+    }
+
+    @Override
+    public void visit(UnaryInst inst) {
+        int rd = reg(inst.getRd());
+        int rs = reg(inst.getRs());
+        switch (inst.getOp()) {
+            case seqz: // sltiu rd, rs, 1
+                emit(iType(1, rs, 3, rd, OP_IMM));
+                break;
+            case snez: // sltu rd, zero, rs
+                emit(rType(0, rs, ZERO, 3, rd));
+                break;
+            case sltz: // slt rd, rs, zero
+                emit(rType(0, ZERO, rs, 2, rd));
+                break;
+            case sgtz: // slt rd, zero, rs
+                emit(rType(0, rs, ZERO, 2, rd));
+                break;
+        }
+    }
+
+    @Override
+    public void visit(ITypeBinary inst) {
+        int funct3;
+        switch (inst.getOp()) {
+            case addi: funct3 = 0; break;
+            case slli: funct3 = 1; break;
+            case slti: funct3 = 2; break;
+            case xori: funct3 = 4; break;
+            case srai: funct3 = 5; break;
+            case ori: funct3 = 6; break;
+            case andi: funct3 = 7; break;
+            default: throw new RuntimeException();
+        }
+        int imm;
+        if (inst.getOp() == ITypeBinary.OpName.slli || inst.getOp() == ITypeBinary.OpName.srai) {
+            imm = ((IntImmediate) inst.getImmediate()).getValue();
+            if (imm < 0 || imm > 31)
+                throw new RuntimeException("Shift amount " + imm + " is out of range.");
+            if (inst.getOp() == ITypeBinary.OpName.srai)
+                imm |= 0x400;
+        } else
+            imm = lowImmediate(inst.getImmediate(), R_RISCV_LO12_I);
+        emit(iType(imm, reg(inst.getRs1()), funct3, reg(inst.getRd()), OP_IMM));
+    }
+
+    @Override
+    public void visit(RTypeBinary inst) {
+        int funct7 = 0;
+        int funct3;
+        switch (inst.getOp()) {
+            case add: funct3 = 0; break;
+            case sub: funct7 = 0x20; funct3 = 0; break;
+            case sll: funct3 = 1; break;
+            case slt: funct3 = 2; break;
+            case xor: funct3 = 4; break;
+            case sra: funct7 = 0x20; funct3 = 5; break;
+            case or: funct3 = 6; break;
+            case and: funct3 = 7; break;
+            case mul: funct7 = 1; funct3 = 0; break;
+            case div: funct7 = 1; funct3 = 4; break;
+            case rem: funct7 = 1; funct3 = 6; break;
+            default: throw new RuntimeException();
+        }
+        emit(rType(funct7, reg(inst.getRs2()), reg(inst.getRs1()), funct3, reg(inst.getRd())));
+    }
+
+    @Override
+    public void visit(LoadAddressInst inst) {
+        // auipc rd, %pcrel_hi(gv); addi rd, rd, %pcrel_lo(label of the auipc)
+        int rd = reg(inst.getRd());
+        String label = ".Lpcrel_hi" + pcrelLabelOffsets.size();
+        pcrelLabelOffsets.put(label, text.size());
+        relocations.add(new Relocation(text.size(), inst.getGlobalVariable().getName(), R_RISCV_PCREL_HI20));
+        emit(uType(0, rd, AUIPC));
+        relocations.add(new Relocation(text.size(), label, R_RISCV_PCREL_LO12_I));
+        emit(iType(0, rd, 0, rd, OP_IMM));
+    }
+
+    @Override
+    public void visit(LoadImmediate inst) {
+        int rd = reg(inst.getRd());
+        int value = ((IntImmediate) inst.getImmediate()).getValue();
+        if (fits(value, 12)) {
+            emit(iType(value, ZERO, 0, rd, OP_IMM));
+            return;
+        }
+        int low = (value << 20) >> 20;
+        emit(uType((value - low) >>> 12, rd, LUI));
+        if (low != 0)
+            emit(iType(low, rd, 0, rd, OP_IMM));
+    }
+
+    @Override
+    public void visit(LoadUpperImmediate inst) {
+        Immediate immediate = inst.getImmediate();
+        int imm;
+        if (immediate instanceof RelocationImmediate) {
+            assert ((RelocationImmediate) immediate).getType() == RelocationImmediate.Type.high;
+            relocations.add(new Relocation(text.size(),
+                    ((RelocationImmediate) immediate).getGlobalVariable().getName(), R_RISCV_HI20));
+            imm = 0;
+        } else
+            imm = ((IntImmediate) immediate).getValue();
+        emit(uType(imm, reg(inst.getRd()), LUI));
+    }
+
+    @Override
+    public void visit(LoadInst inst) {
+        int funct3 = inst.getByteSize() == LoadInst.ByteSize.lb ? 0 : 2;
+        int[] baseOffset = baseOffset(inst.getAddr(), R_RISCV_LO12_I);
+        emit(iType(baseOffset[1], baseOffset[0], funct3, reg(inst.getRd()), LOAD));
+    }
+
+    @Override
+    public void visit(StoreInst inst) {
+        int funct3 = inst.getByteSize() == StoreInst.ByteSize.sb ? 0 : 2;
+        int[] baseOffset = baseOffset(inst.getAddr(), R_RISCV_LO12_S);
+        int imm = baseOffset[1];
+        emit(((imm >> 5) & 0x7f) << 25 | reg(inst.getRs()) << 20 | baseOffset[0] << 15 | funct3 << 12
+                | (imm & 0x1f) << 7 | STORE);
+    }
+
+    @Override
+    public void visit(JumpInst inst) {
+        int offset = getOffset(inst.getDest()) - text.size();
+        if (!fits(offset, 21))
+            throw new RuntimeException("Jump to " + inst.getDest().getAsmName() + " is out of range.");
+        emit(jType(offset, ZERO));
+    }
+
+    @Override
+    public void visit(BinaryBranch inst) {
+        int rs1 = reg(inst.getRs1());
+        int rs2 = reg(inst.getRs2());
+        switch (inst.getOp()) {
+            case beq: emitBranch(inst, 0, rs1, rs2); break;
+            case bne: emitBranch(inst, 1, rs1, rs2); break;
+            case blt: emitBranch(inst, 4, rs1, rs2); break;
+            case bge: emitBranch(inst, 5, rs1, rs2); break;
+            case ble: emitBranch(inst, 5, rs2, rs1); break;
+            case bgt: emitBranch(inst, 4, rs2, rs1); break;
+        }
+    }
+
+    @Override
+    public void visit(UnaryBranch inst) {
+        int rs = reg(inst.getRs1());
+        switch (inst.getOp()) {
+            case beqz: emitBranch(inst, 0, rs, ZERO); break;
+            case bnez: emitBranch(inst, 1, rs, ZERO); break;
+            case bltz: emitBranch(inst, 4, rs, ZERO); break;
+            case bgez: emitBranch(inst, 5, rs, ZERO); break;
+            case blez: emitBranch(inst, 5, ZERO, rs); break;
+            case bgtz: emitBranch(inst, 4, ZERO, rs); break;
+        }
+    }
+
+    @Override
+    public void visit(CallInst inst) {
+        emitCall(inst, inst.getCallee(), RA, RA);
+    }
+
+    @Override
+    public void visit(ReturnInst inst) {
+        emit(iType(0, RA, 0, ZERO, JALR));
+    }
+
+    @Override
+    public void visit(TailCallInst inst) {
+        emitCall(inst, inst.getCallee(), ZERO, T1);
+    }
+
+    private void emitBranch(Branch inst, int funct3, int rs1, int rs2) {
+        int target = getOffset(inst.getThenBlock());
+        if (!longInstructions.contains(inst)) {
+            if (fits(target - text.size(), 13)) {
+                emit(bType(target - text.size(), rs2, rs1, funct3));
+                return;
+            }
+            longInstructions.add(inst);
+            changed = true;
+        }
+        // The inverted branch skips the jal. Inverting beq/bne and blt/bge flips the lowest bit of funct3.
+        emit(bType(8, rs2, rs1, funct3 ^ 1));
+        if (!fits(target - text.size(), 21))
+            throw new RuntimeException("Branch to " + inst.getThenBlock().getAsmName() + " is out of range.");
+        emit(jType(target - text.size(), ZERO));
+    }
+
+    private void emitCall(ASMInstruction inst, Function callee, int rd, int scratch) {
+        if (module.getFunctionMap().get(callee.getName()) != callee) {
+            // auipc scratch, 0; jalr rd, 0(scratch) with R_RISCV_CALL_PLT
+            relocations.add(new Relocation(text.size(), callee.getName(), R_RISCV_CALL_PLT));
+            emit(uType(0, scratch, AUIPC));
+            emit(iType(0, scratch, 0, rd, JALR));
+            return;
+        }
+
+        int offset = getOffset(callee) - text.size();
+        if (!longInstructions.contains(inst)) {
+            if (fits(offset, 21)) {
+                emit(jType(offset, rd));
+                return;
+            }
+            longInstructions.add(inst);
+            changed = true;
+        }
+        int low = (offset << 20) >> 20;
+        emit(uType((offset - low) >>> 12, scratch, AUIPC));
+        emit(iType(low, scratch, 0, rd, JALR));
+    }
+
+    // Offsets of blocks and functions not reached in this pass are taken from the previous pass. In the first
+    // pass, they are assumed to be here, i.e. in range.
+    private int getOffset(BasicBlock block) {
+        if (blockOffsets.containsKey(block))
+            return blockOffsets.get(block);
+        return lastBlockOffsets.getOrDefault(block, text.size());
+    }
+
+    private int getOffset(Function function) {
+        if (functionOffsets.containsKey(function))
+            return functionOffsets.get(function);
+        return lastFunctionOffsets.getOrDefault(function, text.size());
+    }
+
+    // Return {base register, 12-bit offset}.
+    private int[] baseOffset(Address addr, int relocationType) {
+        if (addr instanceof StackLocation) {
+            int offset = ((StackLocation) addr).getOffset();
+            if (!fits(offset, 12))
+                throw new RuntimeException("Stack offset " + offset + " is out of range.");
+            return new int[]{SP, offset};
+        }
+        BaseOffsetAddr baseOffsetAddr = (BaseOffsetAddr) addr;
+        return new int[]{reg(baseOffsetAddr.getBase()), lowImmediate(baseOffsetAddr.getOffset(), relocationType)};
+    }
+
+    // A 12-bit immediate, where %lo(gv) is left to the linker.
+    private int lowImmediate(Immediate immediate, int relocationType) {
+        if (immediate instanceof RelocationImmediate) {
+            assert ((RelocationImmediate) immediate).getType() == RelocationImmediate.Type.low;
+            relocations.add(new Relocation(text.size(),
+                    ((RelocationImmediate) immediate).getGlobalVariable().getName(), relocationType));
+            return 0;
+        }
+        int value = ((IntImmediate) immediate).getValue();
+        if (!fits(value, 12))
+            throw new RuntimeException("Immediate " + value + " is out of range.");
+        return value;
+    }
+
+    private void emit(int instruction) {
+        text.writeWord(instruction);
+    }
+
+    static private int reg(VirtualRegister vr) {
+        assert vr.hasAColor();
+        return registerNumbers.get(vr.getColorPR().getName());
+    }
+
+    // Whether value fits in a signed immediate of the given width.
+    static private boolean fits(int value, int bits) {
+        return value >= -(1 << (bits - 1)) && value < (1 << (bits - 1));
+    }
+
+    static private int rType(int funct7, int rs2, int rs1, int funct3, int rd) {
+        return funct7 << 25 | rs2 << 20 | rs1 << 15 | funct3 << 12 | rd << 7 | OP;
+    }
+
+    static private int iType(int imm, int rs1, int funct3, int rd, int opcode) {
+        return (imm & 0xfff) << 20 | rs1 << 15 | funct3 << 12 | rd << 7 | opcode;
+    }
+
+    static private int bType(int imm, int rs2, int rs1, int funct3) {
+        return ((imm >> 12) & 1) << 31 | ((imm >> 5) & 0x3f) << 25 | rs2 << 20 | rs1 << 15 | funct3 << 12
+                | ((imm >> 1) & 0xf) << 8 | ((imm >> 11) & 1) << 7 | BRANCH;
+    }
+
+    static private int uType(int imm20, int rd, int opcode) {
+        return (imm20 & 0xfffff) << 12 | rd << 7 | opcode;
+    }
+
+    static private int jType(int imm, int rd) {
+        return ((imm >> 20) & 1) << 31 | ((imm >> 1) & 0x3ff) << 21 | ((imm >> 11) & 1) << 20
+                | ((imm >> 12) & 0xff) << 12 | rd << 7 | JAL;
+    }
+
+    // ------ ELF ------
+    // Sections: null, .text, .sdata, .symtab, .strtab, .rela.text, .shstrtab
+    private void writeELF() throws IOException {
+        // Local symbols come first.
+        ArrayList<Symbol> symbols = new ArrayList<>();
+        symbols.add(new Symbol("", 0, 0, 0, 0));
+        symbols.add(new Symbol("", 0, 0, symbolInfo(0, 3), TEXT_INDEX)); // STB_LOCAL, STT_SECTION
+        symbols.add(new Symbol("", 0, 0, symbolInfo(0, 3), DATA_INDEX));
+        for (Map.Entry<String, Integer> entry : pcrelLabelOffsets.entrySet())
+            symbols.add(new Symbol(entry.getKey(), entry.getValue(), 0, symbolInfo(0, 0), TEXT_INDEX));
+        for (GlobalVariable gv : module.getGlobalVariableMap().values()) {
+            if (gv.isString()) {
+                symbols.add(new Symbol(gv.getName(), dataOffsets.get(gv),
+                        gv.getString().getBytes(Charset.defaultCharset()).length + 1, symbolInfo(0, 1), DATA_INDEX));
+            }
+        }
+        int firstGlobal = symbols.size();
+        for (Function function : module.getFunctionMap().values()) {
+            symbols.add(new Symbol(function.getName(), functionOffsets.get(function), functionSizes.get(function),
+                    symbolInfo(1, 2), TEXT_INDEX)); // STB_GLOBAL, STT_FUNC
+        }
+        for (GlobalVariable gv : module.getGlobalVariableMap().values()) {
+            if (!gv.isString()) {
+                symbols.add(new Symbol(gv.getName(), dataOffsets.get(gv), gv.isBool() ? 1 : 4,
+                        symbolInfo(1, 1), DATA_INDEX)); // STB_GLOBAL, STT_OBJECT
+            }
+        }
+        Map<String, Integer> symbolIndices = new LinkedHashMap<>();
+        for (int i = 0; i < symbols.size(); i++) {
+            if (!symbols.get(i).name.isEmpty())
+                symbolIndices.put(symbols.get(i).name, i);
+        }
+        for (Relocation relocation : relocations) {
+            if (!symbolIndices.containsKey(relocation.symbol)) { // external functions
+                symbolIndices.put(relocation.symbol, symbols.size());
+                symbols.add(new Symbol(relocation.symbol, 0, 0, symbolInfo(1, 0), 0));
+            }
+        }
+
+        Section strtab = new Section();
+        strtab.writeByte(0);
+        Section symtab = new Section();
+        for (Symbol symbol : symbols) {
+            if (symbol.name.isEmpty())
+                symtab.writeWord(0);
+            else {
+                symtab.writeWord(strtab.size());
+                strtab.writeBytes(symbol.name.getBytes(Charset.defaultCharset()));
+                strtab.writeByte(0);
+            }
+            symtab.writeWord(symbol.value);
+            symtab.writeWord(symbol.size);
+            symtab.writeByte(symbol.info);
+            symtab.writeByte(0);
+            symtab.writeHalf(symbol.sectionIndex);
+        }
+
+        Section rela = new Section();
+        for (Relocation relocation : relocations) {
+            rela.writeWord(relocation.offset);
+            rela.writeWord(symbolIndices.get(relocation.symbol) << 8 | relocation.type);
+            rela.writeWord(0); // addend
+        }
+
+        Section shstrtab = new Section();
+        String[] sectionNames = {"", ".text", ".sdata", ".symtab", ".strtab", ".rela.text", ".shstrtab"};
+        int[] nameOffsets = new int[sectionNames.length];
+        for (int i = 0; i < sectionNames.length; i++) {
+            nameOffsets[i] = shstrtab.size();
+            shstrtab.writeBytes(sectionNames[i].getBytes(Charset.defaultCharset()));
+            shstrtab.writeByte(0);
+        }
+
+        // Lay out the file: ELF header, sections(word-aligned) and section headers.
+        Section[] contents = {null, text, data, symtab, strtab, rela, shstrtab};
+        int[] offsets = new int[contents.length];
+        int offset = 52;
+        for (int i = 1; i < contents.length; i++) {
+            offset = (offset + 3) & ~3;
+            offsets[i] = offset;
+            offset += contents[i].size();
+        }
+        int sectionHeaderOffset = (offset + 3) & ~3;
+
+        Section file = new Section();
+        file.writeBytes(new byte[]{0x7f, 'E', 'L', 'F', 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0}); // ELF32, LSB
+        file.writeHalf(1); // ET_REL
+        file.writeHalf(243); // EM_RISCV
+        file.writeWord(1); // EV_CURRENT
+        file.writeWord(0); // entry
+        file.writeWord(0); // program headers
+        file.writeWord(sectionHeaderOffset);
+        file.writeWord(0); // flags: no compressed instructions, soft-float ABI
+        file.writeHalf(52);
+        file.writeHalf(0);
+        file.writeHalf(0);
+        file.writeHalf(40);
+        file.writeHalf(contents.length);
+        file.writeHalf(contents.length - 1); // .shstrtab
+        for (int i = 1; i < contents.length; i++) {
+            file.align(4);
+            file.writeSection(contents[i]);
+        }
+        file.align(4);
+
+        writeSectionHeader(file, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+        writeSectionHeader(file, nameOffsets[1], 1, 0x6, offsets[1], text.size(), 0, 0, 4, 0); // AX
+        writeSectionHeader(file, nameOffsets[2], 1, 0x3, offsets[2], data.size(), 0, 0, 4, 0); // WA
+        writeSectionHeader(file, nameOffsets[3], 2, 0, offsets[3], symtab.size(), 4, firstGlobal, 4, 16);
+        writeSectionHeader(file, nameOffsets[4], 3, 0, offsets[4], strtab.size(), 0, 0, 1, 0);
+        writeSectionHeader(file, nameOffsets[5], 4, 0x40, offsets[5], rela.size(), 3, TEXT_INDEX, 4, 12);
+        writeSectionHeader(file, nameOffsets[6], 3, 0, offsets[6], shstrtab.size(), 0, 0, 1, 0);
+        file.writeTo(os);
+    }
+
+    static private int symbolInfo(int bind, int type) {
+        return bind << 4 | type;
+    }
+
+    static private void writeSectionHeader(Section file, int name, int type, int flags, int offset, int size,
+                                           int link, int info, int alignment, int entrySize) {
+        file.writeWord(name);
+        file.writeWord(type);
+        file.writeWord(flags);
+        file.writeWord(0); // address
+        file.writeWord(offset);
+        file.writeWord(size);
+        file.writeWord(link);
+        file.writeWord(info);
+        file.writeWord(alignment);
+        file.writeWord(entrySize);
+    }
+}
@@ -3,11 +3,12 @@ package MxCompiler.Backend;
 import MxCompiler.RISCV.BasicBlock;
 import MxCompiler.RISCV.Function;
 import MxCompiler.RISCV.Instruction.*;
+import MxCompiler.RISCV.Instruction.Branch.Branch;
 import MxCompiler.RISCV.Module;
 import MxCompiler.RISCV.Operand.Address.Address;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 public class PeepholeOptimization extends ASMPass {
@@ -27,28 +28,71 @@ public class PeepholeOptimization extends ASMPass {
 
     }
 
+    // Blocks are laid out in chains of jumps, so that the jumps become fall-throughs.
+    // With a profile(see ProfileAnnotator), the hotter successor of a branch is the destination of the jump, and
+    // blocks which are never executed are moved to the end of the function.
     private void rearrangeBlocks(Function function) {
+        boolean profiled = function.getEntranceBlock().getProfileCount() > 0;
+        if (profiled) {
+            for (BasicBlock block : function.getBlocks())
+                jumpToHotterSuccessor(block);
+        }
+
         ArrayList<BasicBlock> dfsOrder = function.getDFSOrder();
-        Set<BasicBlock> positionFixed = new HashSet<>();
+        Set<BasicBlock> positionFixed = new LinkedHashSet<>();
+        ArrayList<BasicBlock> coldBlocks = new ArrayList<>();
 
         for (BasicBlock block : dfsOrder) {
             if (positionFixed.contains(block))
                 continue;
-            BasicBlock curBlock = block;
-            BasicBlock lastBlock = null;
-            while (true) {
-                positionFixed.add(curBlock);
-                if (lastBlock != null) {
-                    function.splitBlockFromFunction(curBlock);
-                    function.addBasicBlockNext(lastBlock, curBlock);
-                    lastBlock.removeTailJump();
-                }
-                if (!(curBlock.getInstTail() instanceof JumpInst)
-                        || positionFixed.contains(((JumpInst) curBlock.getInstTail()).getDest()))
-                    break;
-                lastBlock = curBlock;
-                curBlock = ((JumpInst) curBlock.getInstTail()).getDest();
+            if (profiled && block.getProfileCount() == 0) {
+                coldBlocks.add(block);
+                continue;
+            }
+            layoutChain(function, block, positionFixed, profiled);
+        }
+        for (BasicBlock block : coldBlocks) {
+            if (positionFixed.contains(block))
+                continue;
+            function.splitBlockFromFunction(block);
+            function.addBasicBlock(block);
+            layoutChain(function, block, positionFixed, profiled);
+        }
+    }
+
+    private void layoutChain(Function function, BasicBlock block, Set<BasicBlock> positionFixed, boolean profiled) {
+        BasicBlock curBlock = block;
+        BasicBlock lastBlock = null;
+        while (true) {
+            positionFixed.add(curBlock);
+            if (lastBlock != null) {
+                function.splitBlockFromFunction(curBlock);
+                function.addBasicBlockNext(lastBlock, curBlock);
+                lastBlock.removeTailJump();
             }
+            if (!(curBlock.getInstTail() instanceof JumpInst)
+                    || positionFixed.contains(((JumpInst) curBlock.getInstTail()).getDest()))
+                break;
+            BasicBlock dest = ((JumpInst) curBlock.getInstTail()).getDest();
+            // Cold blocks are not pulled into hot chains.
+            if (profiled && curBlock.getProfileCount() != 0 && dest.getProfileCount() == 0)
+                break;
+            lastBlock = curBlock;
+            curBlock = dest;
+        }
+    }
+
+    private void jumpToHotterSuccessor(BasicBlock block) {
+        if (!(block.getInstTail() instanceof JumpInst) || !(block.getInstTail().getPrevInst() instanceof Branch))
+            return;
+        JumpInst jump = ((JumpInst) block.getInstTail());
+        Branch branch = ((Branch) jump.getPrevInst());
+        BasicBlock thenBlock = branch.getThenBlock();
+        BasicBlock elseBlock = jump.getDest();
+        if (elseBlock.getProfileCount() >= 0 && thenBlock.getProfileCount() > elseBlock.getProfileCount()) {
+            branch.negate();
+            branch.setThenBlock(elseBlock);
+            jump.setDest(thenBlock);
         }
     }
 
@@ -12,48 +12,35 @@ import MxCompiler.RISCV.Operand.Address.StackLocation;
 import MxCompiler.RISCV.Operand.Immediate.IntImmediate;
 import MxCompiler.RISCV.Operand.Register.PhysicalRegister;
 import MxCompiler.RISCV.Operand.Register.VirtualRegister;
-import MxCompiler.Utilities.Pair;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class RegisterAllocator extends ASMPass {
-    private static class Edge extends Pair<VirtualRegister, VirtualRegister> {
-        public Edge(VirtualRegister first, VirtualRegister second) {
-            super(first, second);
-            if (first.hashCode() > second.hashCode()) {
-                setFirst(second);
-                setSecond(first);
-            }
-        }
-
-        @Override
-        public int hashCode() {
-            return toString().hashCode();
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (!(obj instanceof Edge))
-                return false;
-            return toString().equals(obj.toString());
-        }
-
-        @Override
-        public String toString() {
-            return "(" + getFirst().getName() + ", " + getSecond().getName() + ")";
-        }
-    }
-
     final private int K = PhysicalRegister.allocatablePRs.size();
     // K represents the number of allocatable physical registers.
 
+    // Functions with more VRs than this are allocated by LinearScanAllocator, since building
+    // and coloring their interference graphs is too slow.
+    static final private int linearScanThreshold = 4000;
+
     private Function function;
     private final LoopAnalysis loopAnalysis;
+    private final ForkJoinPool pool;
+    private final boolean linearScan;
 
 
     public RegisterAllocator(Module module, LoopAnalysis loopAnalysis) {
+        this(module, loopAnalysis, null, false);
+    }
+
+    // Functions are allocated in parallel on pool(null means sequentially).
+    // If linearScan is true, every function is allocated by LinearScanAllocator.
+    public RegisterAllocator(Module module, LoopAnalysis loopAnalysis, ForkJoinPool pool, boolean linearScan) {
         super(module);
         this.loopAnalysis = loopAnalysis;
+        this.pool = pool;
+        this.linearScan = linearScan;
     }
 
     // ------ Data Structures ------
@@ -76,18 +63,44 @@ public class RegisterAllocator extends ASMPass {
     private Set<MoveInst> workListMoves;
     private Set<MoveInst> activeMoves;
 
-    private Set<Edge> adjSet;
-    // adjList is contained in every VirtualRegister.
-    // degree is contained in every VirtualRegister.
-    // moveList is contained in every VirtualRegister.
-    // alias is contained in every VirtualRegister.
+    // adjSet, adjList and degree are contained in the interference graph.
+    private InterferenceGraph graph;
+    private boolean[] selected; // Whether a node is in selectStack, indexed by id in graph.
+    // Pre-colored VRs are shared by all functions, so the following members are kept here
+    // instead of in VirtualRegister.
+    private Map<VirtualRegister, Set<MoveInst>> moveList;
+    private Map<VirtualRegister, VirtualRegister> alias;
+    private Map<VirtualRegister, Double> spillCost;
     // color is contained in every VirtualRegister.
 
     // ------ Data Structure End ------
 
+    // Functions are allocated callee first, level by level(see RegisterUsage), so that calls to allocated
+    // functions only define the registers changed by the callees. Functions of a level never call each other
+    // unless they are in a cycle, so they are allocated in parallel, and the result is the same as sequentially.
     @Override
     public void run() {
-        for (Function function : module.getFunctionMap().values())
+        RegisterUsage registerUsage = new RegisterUsage(module);
+        for (ArrayList<Function> functions : registerUsage.computeLevels()) {
+            for (Function function : functions)
+                registerUsage.restrictCalls(function);
+            if (pool == null || functions.size() == 1) {
+                for (Function function : functions)
+                    allocate(function);
+            } else {
+                // Every function is allocated by its own RegisterAllocator, so that no data structure is shared.
+                pool.submit(() -> functions.parallelStream().forEach(function ->
+                        new RegisterAllocator(module, loopAnalysis, null, linearScan).allocate(function))).join();
+            }
+            for (Function function : functions)
+                registerUsage.summarize(function);
+        }
+    }
+
+    private void allocate(Function function) {
+        if (linearScan || function.getSymbolTable().getAllVRs().size() > linearScanThreshold)
+            new LinearScanAllocator(module, loopAnalysis).run(function);
+        else
             runGraphColoring(function);
     }
 
@@ -96,7 +109,7 @@ public class RegisterAllocator extends ASMPass {
         while (true) {
             initializeDataStructures();
             computeSpillCost();
-            new LivenessAnalysis(module).run();
+            new LivenessAnalysis(module).run(function);
             build();
             makeWorkList();
 
@@ -116,65 +129,99 @@ public class RegisterAllocator extends ASMPass {
             assignColors();
 
             if (!spilledNodes.isEmpty())
-                rewriteProgram();
+                rewriteProgram(function, spilledNodes);
             else
                 break;
         }
 
-        checkEveryVRHasAColor();
-        removeRedundantMoveInst();
-        function.getStackFrame().computeFrameSize();
-        moveStackPointer();
+        finishAllocation(function);
     }
 
     private void initializeDataStructures() {
-        preColored = new HashSet<>();
-        initial = new HashSet<>();
+        preColored = new LinkedHashSet<>();
+        initial = new LinkedHashSet<>();
         simplifyWorkList = new LinkedHashSet<>();
         freezeWorkList = new LinkedHashSet<>();
         spillWorkList = new LinkedHashSet<>();
-        spilledNodes = new HashSet<>();
-        coalescedNodes = new HashSet<>();
-        coloredNodes = new HashSet<>();
+        spilledNodes = new LinkedHashSet<>();
+        coalescedNodes = new LinkedHashSet<>();
+        coloredNodes = new LinkedHashSet<>();
         selectStack = new Stack<>();
 
-        coalescedMoves = new HashSet<>();
-        constrainedMoves = new HashSet<>();
-        frozenMoves = new HashSet<>();
+        coalescedMoves = new LinkedHashSet<>();
+        constrainedMoves = new LinkedHashSet<>();
+        frozenMoves = new LinkedHashSet<>();
         workListMoves = new LinkedHashSet<>();
-        activeMoves = new HashSet<>();
+        activeMoves = new LinkedHashSet<>();
 
-        adjSet = new HashSet<>();
+        moveList = new LinkedHashMap<>();
+        alias = new LinkedHashMap<>();
+        spillCost = new LinkedHashMap<>();
 
 
         initial.addAll(function.getSymbolTable().getAllVRs());
         preColored.addAll(PhysicalRegister.vrs.values());
         initial.removeAll(preColored);
 
+        // Every VR appearing in the function gets an id in the interference graph.
+        Set<VirtualRegister> nodes = new LinkedHashSet<>(preColored);
+        nodes.addAll(initial);
+        for (BasicBlock block : function.getBlocks()) {
+            ASMInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                nodes.addAll(ptr.getDef());
+                nodes.addAll(ptr.getUse());
+                ptr = ptr.getNextInst();
+            }
+        }
+        graph = new InterferenceGraph(nodes);
+        selected = new boolean[graph.size()];
 
         for (VirtualRegister vr : initial)
             vr.clearColoringData();
         int inf = 1000000000;
         for (VirtualRegister vr : preColored)
-            vr.setDegree(inf);
+            graph.setDegree(graph.getId(vr), inf);
+    }
+
+    private int getDegree(VirtualRegister n) {
+        return graph.getDegree(graph.getId(n));
     }
 
-    // Compute the spill cost of every virtual register(\sum (10^depth * number of defs/uses)).
+    private Set<MoveInst> getMoveList(VirtualRegister n) {
+        return moveList.computeIfAbsent(n, k -> new LinkedHashSet<>());
+    }
+
+    private double computeSpillRatio(VirtualRegister n) {
+        return n.computeSpillRatio(spillCost.getOrDefault(n, 0.0), getDegree(n));
+    }
+
+    // Compute the spill cost of every virtual register(\sum (weight of block * number of defs/uses)).
     private void computeSpillCost() {
         ArrayList<BasicBlock> dfsOrder = function.getDFSOrder();
         for (BasicBlock block : dfsOrder) {
-            int depth = loopAnalysis.getBlockDepth(block);
+            double weight = computeBlockWeight(block, loopAnalysis.getBlockDepth(block));
             ASMInstruction ptr = block.getInstHead();
             while (ptr != null) {
                 for (VirtualRegister def : ptr.getDef())
-                    def.increaseSpillCost(Math.pow(10, depth));
+                    spillCost.merge(def, weight, Double::sum);
                 for (VirtualRegister use : ptr.getUse())
-                    use.increaseSpillCost(Math.pow(10, depth));
+                    spillCost.merge(use, weight, Double::sum);
                 ptr = ptr.getNextInst();
             }
         }
     }
 
+    // Estimated executions of block per call of its function: the ratio of the profile counts of block and the
+    // entrance if both are known(see ProfileAnnotator), or 10^depth otherwise.
+    static double computeBlockWeight(BasicBlock block, int depth) {
+        long count = block.getProfileCount();
+        long entranceCount = block.getFunction().getEntranceBlock().getProfileCount();
+        if (count >= 0 && entranceCount > 0)
+            return ((double) count) / entranceCount;
+        return Math.pow(10, depth);
+    }
+
     // Build interference graph.
     private void build() {
         ArrayList<BasicBlock> dfsOrder = function.getDFSOrder();
@@ -185,7 +232,7 @@ public class RegisterAllocator extends ASMPass {
                 if (ptr instanceof MoveInst) {
                     live.removeAll(ptr.getUse());
                     for (VirtualRegister n : ptr.getDefUseUnion())
-                        n.getMoveList().add(((MoveInst) ptr));
+                        getMoveList(n).add(((MoveInst) ptr));
                     workListMoves.add(((MoveInst) ptr));
                 }
 
@@ -205,16 +252,18 @@ public class RegisterAllocator extends ASMPass {
 
     // Add edges (u, v) & (v, u) to interference graph.
     private void addEdge(VirtualRegister u, VirtualRegister v) {
-        if (!adjSet.contains(new Edge(u, v)) && u != v) {
-            adjSet.add(new Edge(u, v));
-            adjSet.add(new Edge(v, u));
+        if (u == v)
+            return;
+        int uId = graph.getId(u);
+        int vId = graph.getId(v);
+        if (graph.addEdge(uId, vId)) {
             if (!preColored.contains(u)) {
-                u.getAdjList().add(v);
-                u.increaseDegree();
+                graph.addAdjacent(uId, vId);
+                graph.setDegree(uId, graph.getDegree(uId) + 1);
             }
             if (!preColored.contains(v)) {
-                v.getAdjList().add(u);
-                v.increaseDegree();
+                graph.addAdjacent(vId, uId);
+                graph.setDegree(vId, graph.getDegree(vId) + 1);
             }
         }
     }
@@ -222,7 +271,7 @@ public class RegisterAllocator extends ASMPass {
     // For each virtual register which is not pre-colored, add it to one of the work lists.
     private void makeWorkList() {
         for (VirtualRegister n : initial) {
-            if (n.getDegree() >= K)
+            if (getDegree(n) >= K)
                 spillWorkList.add(n);
             else if (moveRelated(n))
                 freezeWorkList.add(n);
@@ -233,24 +282,34 @@ public class RegisterAllocator extends ASMPass {
     }
 
     // Get the current neighbors of a virtual register n.
-    private Set<VirtualRegister> adjacent(VirtualRegister n) {
-        Set<VirtualRegister> res = new HashSet<>(n.getAdjList());
-        res.removeAll(selectStack);
-        res.removeAll(coalescedNodes);
+    private ArrayList<VirtualRegister> adjacent(VirtualRegister n) {
+        int id = graph.getId(n);
+        ArrayList<VirtualRegister> res = new ArrayList<>();
+        for (int i = 0; i < graph.getAdjListSize(id); i++) {
+            int w = graph.getAdjacent(id, i);
+            if (!selected[w] && !coalescedNodes.contains(graph.getVR(w)))
+                res.add(graph.getVR(w));
+        }
         return res;
     }
 
     // Get the current move instructions related to a virtual register n.
     private Set<MoveInst> nodeMoves(VirtualRegister n) {
-        Set<MoveInst> res = new HashSet<>(activeMoves);
-        res.addAll(workListMoves);
-        res.retainAll(n.getMoveList());
+        Set<MoveInst> res = new LinkedHashSet<>();
+        for (MoveInst m : getMoveList(n)) {
+            if (activeMoves.contains(m) || workListMoves.contains(m))
+                res.add(m);
+        }
         return res;
     }
 
     // Check whether a virtual register n has related move instructions.
     private boolean moveRelated(VirtualRegister n) {
-        return !nodeMoves(n).isEmpty();
+        for (MoveInst m : getMoveList(n)) {
+            if (activeMoves.contains(m) || workListMoves.contains(m))
+                return true;
+        }
+        return false;
     }
 
     // Remove a node whose current degree is no more than K from the interference graph.
@@ -259,16 +318,17 @@ public class RegisterAllocator extends ASMPass {
         VirtualRegister n = simplifyWorkList.iterator().next();
         simplifyWorkList.remove(n);
         selectStack.push(n);
+        selected[graph.getId(n)] = true;
         for (VirtualRegister m : adjacent(n))
             decrementDegree(m);
     }
 
     // Decrease the degree of m by 1.
     private void decrementDegree(VirtualRegister m) {
-        int d = m.getDegree();
-        m.setDegree(d - 1);
+        int d = getDegree(m);
+        graph.setDegree(graph.getId(m), d - 1);
         if (d == K) {
-            Set<VirtualRegister> union = new HashSet<>(adjacent(m));
+            Set<VirtualRegister> union = new LinkedHashSet<>(adjacent(m));
             union.add(m);
             enableMoves(union);
             spillWorkList.remove(m);
@@ -293,7 +353,7 @@ public class RegisterAllocator extends ASMPass {
 
     // Move a virtual register u from freezeWorkList to simplifyWorkList.
     private void addWorkList(VirtualRegister u) {
-        if (!preColored.contains(u) && !moveRelated(u) && u.getDegree() < K) {
+        if (!preColored.contains(u) && !moveRelated(u) && getDegree(u) < K) {
             freezeWorkList.remove(u);
             simplifyWorkList.add(u);
         }
@@ -301,14 +361,14 @@ public class RegisterAllocator extends ASMPass {
 
     // George's condition for conservative coalescing.
     private boolean OK(VirtualRegister t, VirtualRegister r) {
-        return t.getDegree() < K || preColored.contains(t) || adjSet.contains(new Edge(t, r));
+        return getDegree(t) < K || preColored.contains(t) || graph.hasEdge(graph.getId(t), graph.getId(r));
     }
 
     // Briggs's condition for conservative coalescing.
     private boolean conservative(Set<VirtualRegister> nodes) {
         int k = 0;
         for (VirtualRegister n : nodes) {
-            if (n.getDegree() >= K)
+            if (getDegree(n) >= K)
                 k++;
         }
         return k < K;
@@ -332,12 +392,12 @@ public class RegisterAllocator extends ASMPass {
             v = y;
         }
 
-        Set<VirtualRegister> unionAdjacentNode = new HashSet<>(adjacent(u));
+        Set<VirtualRegister> unionAdjacentNode = new LinkedHashSet<>(adjacent(u));
         unionAdjacentNode.addAll(adjacent(v));
         if (u == v) {
             coalescedMoves.add(m);
             addWorkList(u);
-        } else if (preColored.contains(v) || adjSet.contains(new Edge(u, v))) {
+        } else if (preColored.contains(v) || graph.hasEdge(graph.getId(u), graph.getId(v))) {
             constrainedMoves.add(m);
             addWorkList(u);
             addWorkList(v);
@@ -366,10 +426,10 @@ public class RegisterAllocator extends ASMPass {
         else
             spillWorkList.remove(v);
         coalescedNodes.add(v);
-        v.setAlias(u);
-        u.getMoveList().addAll(v.getMoveList());
+        alias.put(v, u);
+        getMoveList(u).addAll(getMoveList(v));
 
-        Set<VirtualRegister> nodes = new HashSet<>();
+        Set<VirtualRegister> nodes = new LinkedHashSet<>();
         nodes.add(v);
         enableMoves(nodes);
 
@@ -377,7 +437,7 @@ public class RegisterAllocator extends ASMPass {
             addEdge(t, u);
             decrementDegree(t);
         }
-        if (u.getDegree() >= K && freezeWorkList.contains(u)) {
+        if (getDegree(u) >= K && freezeWorkList.contains(u)) {
             freezeWorkList.remove(u);
             spillWorkList.add(u);
         }
@@ -386,9 +446,9 @@ public class RegisterAllocator extends ASMPass {
     // Get the alias of n. It is just a union-find set, so path contraction can be applied.
     private VirtualRegister getAlias(VirtualRegister n) {
         if (coalescedNodes.contains(n)) {
-            VirtualRegister alias = getAlias(n.getAlias());
-            n.setAlias(alias);
-            return alias;
+            VirtualRegister res = getAlias(alias.get(n));
+            alias.put(n, res);
+            return res;
         } else
             return n;
     }
@@ -436,7 +496,7 @@ public class RegisterAllocator extends ASMPass {
         double minRatio = Double.POSITIVE_INFINITY;
         VirtualRegister spilledVR = null;
         for (VirtualRegister vr : spillWorkList) {
-            double spillRatio = vr.computeSpillRatio();
+            double spillRatio = computeSpillRatio(vr);
             if (spillRatio <= minRatio) {
                 minRatio = spillRatio;
                 spilledVR = vr;
@@ -450,11 +510,11 @@ public class RegisterAllocator extends ASMPass {
         while (!selectStack.isEmpty()) {
             VirtualRegister n = selectStack.pop();
             Set<PhysicalRegister> okColors = new LinkedHashSet<>(PhysicalRegister.allocatablePRs.values());
-            for (VirtualRegister w : n.getAdjList()) {
-                Set<VirtualRegister> union = new HashSet<>(coloredNodes);
-                union.addAll(preColored);
-                if (union.contains(getAlias(w)))
-                    okColors.remove(getAlias(w).getColorPR());
+            int id = graph.getId(n);
+            for (int i = 0; i < graph.getAdjListSize(id); i++) {
+                VirtualRegister w = getAlias(graph.getVR(graph.getAdjacent(id, i)));
+                if (coloredNodes.contains(w) || preColored.contains(w))
+                    okColors.remove(w.getColorPR());
             }
 
             if (okColors.isEmpty())
@@ -479,12 +539,14 @@ public class RegisterAllocator extends ASMPass {
         return okColors.iterator().next();
     }
 
-    private void rewriteProgram() {
+    // Spilled VRs are stored to stack after every def and loaded from stack before every use.
+    // It is shared by LinearScanAllocator.
+    static void rewriteProgram(Function function, Set<VirtualRegister> spilledNodes) {
         for (VirtualRegister vr : spilledNodes) {
             StackLocation stackLocation = new StackLocation(vr.getName());
             function.getStackFrame().getSpillLocations().put(vr, stackLocation);
-            Set<ASMInstruction> defs = new HashSet<>(vr.getDef().keySet());
-            Set<ASMInstruction> uses = new HashSet<>(vr.getUse().keySet());
+            Set<ASMInstruction> defs = new LinkedHashSet<>(vr.getDef().keySet());
+            Set<ASMInstruction> uses = new LinkedHashSet<>(vr.getUse().keySet());
 
             int cnt = 0;
             for (ASMInstruction inst : defs) {
@@ -510,7 +572,17 @@ public class RegisterAllocator extends ASMPass {
         }
     }
 
-    private void checkEveryVRHasAColor() {
+    // Every VR has been colored. Remove moves between the same registers, save registers and allocate the
+    // stack frame.
+    static void finishAllocation(Function function) {
+        checkEveryVRHasAColor(function);
+        removeRedundantMoveInst(function);
+        saveRegisters(function);
+        function.getStackFrame().computeFrameSize();
+        moveStackPointer(function);
+    }
+
+    static private void checkEveryVRHasAColor(Function function) {
         ArrayList<BasicBlock> dfsOrder = function.getDFSOrder();
         for (BasicBlock block : dfsOrder) {
             ASMInstruction ptr = block.getInstHead();
@@ -524,7 +596,7 @@ public class RegisterAllocator extends ASMPass {
         }
     }
 
-    private void removeRedundantMoveInst() {
+    static private void removeRedundantMoveInst(Function function) {
         ArrayList<BasicBlock> dfsOrder = function.getDFSOrder();
         for (BasicBlock block : dfsOrder) {
             ASMInstruction ptr = block.getInstHead();
@@ -539,7 +611,51 @@ public class RegisterAllocator extends ASMPass {
         }
     }
 
-    private void moveStackPointer() {
+    // ra and callee-save registers written by the function(including ra written by calls) are stored to the
+    // stack at the entrance, and loaded before the return and before every tail call. Registers which are never
+    // written are neither stored nor loaded.
+    static private void saveRegisters(Function function) {
+        Set<PhysicalRegister> written = new HashSet<>();
+        for (BasicBlock block : function.getBlocks()) {
+            ASMInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                for (VirtualRegister vr : ptr.getDef())
+                    written.add(vr.getColorPR());
+                ptr = ptr.getNextInst();
+            }
+        }
+
+        ArrayList<VirtualRegister> saved = new ArrayList<>();
+        if (written.contains(PhysicalRegister.raVR.getColorPR()))
+            saved.add(PhysicalRegister.raVR);
+        for (VirtualRegister vr : PhysicalRegister.calleeSaveVRs) {
+            if (written.contains(vr.getColorPR()))
+                saved.add(vr);
+        }
+        if (saved.isEmpty())
+            return;
+
+        Map<PhysicalRegister, StackLocation> locations = function.getStackFrame().getSavedRegisterLocations();
+        for (VirtualRegister vr : saved)
+            locations.put(vr.getColorPR(), new StackLocation(vr.getColorPR().getName() + ".save"));
+
+        BasicBlock entrance = function.getEntranceBlock();
+        for (int i = saved.size() - 1; i >= 0; i--) {
+            VirtualRegister vr = saved.get(i);
+            entrance.addInstructionAtFront(new StoreInst(entrance, vr, StoreInst.ByteSize.sw,
+                    locations.get(vr.getColorPR())));
+        }
+        for (BasicBlock block : function.getBlocks()) {
+            if (block.getInstTail() instanceof ReturnInst || block.getInstTail() instanceof TailCallInst) {
+                for (VirtualRegister vr : saved) {
+                    block.addInstructionPrev(block.getInstTail(), new LoadInst(block, vr, LoadInst.ByteSize.lw,
+                            locations.get(vr.getColorPR())));
+                }
+            }
+        }
+    }
+
+    static private void moveStackPointer(Function function) {
         int frameSize = function.getStackFrame().getSize();
         if (frameSize == 0)
             return;
@@ -548,11 +664,11 @@ public class RegisterAllocator extends ASMPass {
         function.getEntranceBlock().addInstructionAtFront(new ITypeBinary(function.getEntranceBlock(),
                 ITypeBinary.OpName.addi, sp, new IntImmediate(-frameSize * 4), sp));
 
+        // The frame is released before the return and before every tail call.
         for (BasicBlock block : function.getBlocks()) {
-            if (block.getInstTail() instanceof ReturnInst) {
+            if (block.getInstTail() instanceof ReturnInst || block.getInstTail() instanceof TailCallInst) {
                 block.addInstructionPrev(block.getInstTail(), new ITypeBinary(block,
                         ITypeBinary.OpName.addi, sp, new IntImmediate(frameSize * 4), sp));
-                break;
             }
         }
     }
@@ -0,0 +1,163 @@
+package MxCompiler.Backend;
+
+import MxCompiler.RISCV.BasicBlock;
+import MxCompiler.RISCV.Function;
+import MxCompiler.RISCV.Instruction.ASMInstruction;
+import MxCompiler.RISCV.Instruction.CallInst;
+import MxCompiler.RISCV.Instruction.TailCallInst;
+import MxCompiler.RISCV.Module;
+import MxCompiler.RISCV.Operand.Register.PhysicalRegister;
+import MxCompiler.RISCV.Operand.Register.VirtualRegister;
+
+import java.util.*;
+
+// Interprocedural register usage: the caller-save registers which may be changed by a call to every function,
+// computed bottom-up over the call graph after register allocation.
+// Functions are split into levels, where a function is in a higher level than every function it calls outside
+// its strongly connected component, and RegisterAllocator allocates functions level by level. Before a function
+// is allocated, its calls to functions of lower levels are restricted to the registers changed by the callees
+// (see CallInst.restrictDefs()), so that values live across these calls may stay in the other caller-save
+// registers instead of callee-save registers or the stack. Calls to external functions and to functions of the
+// same level(e.g. recursive calls) still change every caller-save register.
+public class RegisterUsage {
+    private Module module;
+
+    private Map<Function, Set<Function>> callees;
+    private Map<Function, Integer> level;
+    private Map<Function, Set<PhysicalRegister>> clobbered;
+    private final Set<PhysicalRegister> callerSavePRs;
+
+    // ------ Tarjan's algorithm ------
+    private Map<Function, Integer> dfn;
+    private Map<Function, Integer> low;
+    private Stack<Function> stack;
+    private Set<Function> onStack;
+
+    public RegisterUsage(Module module) {
+        this.module = module;
+        clobbered = new LinkedHashMap<>();
+        callerSavePRs = new LinkedHashSet<>(PhysicalRegister.callerSavePRs.values());
+    }
+
+    // Return the functions of every level from the lowest one, in the order of the function map in a level.
+    public ArrayList<ArrayList<Function>> computeLevels() {
+        callees = new LinkedHashMap<>();
+        for (Function function : module.getFunctionMap().values())
+            callees.put(function, computeCallees(function));
+
+        level = new LinkedHashMap<>();
+        dfn = new LinkedHashMap<>();
+        low = new LinkedHashMap<>();
+        stack = new Stack<>();
+        onStack = new HashSet<>();
+        for (Function function : module.getFunctionMap().values()) {
+            if (!dfn.containsKey(function))
+                tarjan(function);
+        }
+
+        ArrayList<ArrayList<Function>> levels = new ArrayList<>();
+        for (Function function : module.getFunctionMap().values()) {
+            int l = level.get(function);
+            while (levels.size() <= l)
+                levels.add(new ArrayList<>());
+            levels.get(l).add(function);
+        }
+        return levels;
+    }
+
+    // Functions in the module called by function(external functions are ignored).
+    private Set<Function> computeCallees(Function function) {
+        Set<Function> res = new LinkedHashSet<>();
+        for (BasicBlock block : function.getBlocks()) {
+            ASMInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                Function callee = null;
+                if (ptr instanceof CallInst)
+                    callee = ((CallInst) ptr).getCallee();
+                else if (ptr instanceof TailCallInst)
+                    callee = ((TailCallInst) ptr).getCallee();
+                if (callee != null && module.getFunctionMap().get(callee.getName()) == callee)
+                    res.add(callee);
+                ptr = ptr.getNextInst();
+            }
+        }
+        return res;
+    }
+
+    private void tarjan(Function function) {
+        dfn.put(function, dfn.size() + 1);
+        low.put(function, dfn.get(function));
+        stack.push(function);
+        onStack.add(function);
+        for (Function callee : callees.get(function)) {
+            if (!dfn.containsKey(callee)) {
+                tarjan(callee);
+                low.put(function, Integer.min(low.get(function), low.get(callee)));
+            } else if (onStack.contains(callee))
+                low.put(function, Integer.min(low.get(function), dfn.get(callee)));
+        }
+
+        if (low.get(function).equals(dfn.get(function))) {
+            Set<Function> component = new LinkedHashSet<>();
+            Function member;
+            do {
+                member = stack.pop();
+                onStack.remove(member);
+                component.add(member);
+            } while (member != function);
+
+            // Every callee outside the component is in a component found earlier, whose level is known.
+            int componentLevel = 0;
+            for (Function f : component) {
+                for (Function callee : callees.get(f)) {
+                    if (!component.contains(callee))
+                        componentLevel = Integer.max(componentLevel, level.get(callee) + 1);
+                }
+            }
+            for (Function f : component)
+                level.put(f, componentLevel);
+        }
+    }
+
+    // Registers which may be changed by a call to function, including ra written by the call itself.
+    // Every caller-save register if the function is external or has not been allocated.
+    public Set<PhysicalRegister> getClobberedRegisters(Function function) {
+        return clobbered.getOrDefault(function, callerSavePRs);
+    }
+
+    // It must be called before function is allocated.
+    public void restrictCalls(Function function) {
+        for (BasicBlock block : function.getBlocks()) {
+            ASMInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                if (ptr instanceof CallInst)
+                    ((CallInst) ptr).restrictDefs(getClobberedRegisters(((CallInst) ptr).getCallee()));
+                ptr = ptr.getNextInst();
+            }
+        }
+    }
+
+    // It must be called after function is allocated. Callee-save registers are restored before the function
+    // returns(see RegisterAllocator.saveRegisters()), so only caller-save registers are recorded. The
+    // registers changed by calls are defined by the calls, except that tail calls have no defs.
+    public void summarize(Function function) {
+        Set<PhysicalRegister> registers = new LinkedHashSet<>();
+        registers.add(PhysicalRegister.prs.get("ra"));
+        for (BasicBlock block : function.getBlocks()) {
+            ASMInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                for (VirtualRegister vr : ptr.getDef()) {
+                    if (callerSavePRs.contains(vr.getColorPR()))
+                        registers.add(vr.getColorPR());
+                }
+                if (ptr instanceof TailCallInst) {
+                    // "tail" jumps through t1 if the callee is out of the range of jal.
+                    registers.add(PhysicalRegister.prs.get("t1"));
+                    registers.addAll(getClobberedRegisters(((TailCallInst) ptr).getCallee()));
+                }
+                ptr = ptr.getNextInst();
+            }
+        }
+        clobbered.put(function, registers);
+    }
+}
@@ -0,0 +1,204 @@
+package MxCompiler;
+
+import MxCompiler.Backend.CodeEmitter;
+import MxCompiler.Backend.ObjectEmitter;
+import MxCompiler.Utilities.CompilationContext;
+import MxCompiler.Utilities.CompilationError;
+import MxCompiler.Utilities.ErrorHandler;
+import MxCompiler.Utilities.Options;
+import MxCompiler.Utilities.Profiler;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Compile many programs in one process, which saves JVM start-up and JIT warm-up for every program like
+// CompileServer. An input is an .mx file, or a directory searched recursively for .mx files. The assembly of
+// "<input directory>/a/b.mx" is written to "<output directory>/a/b.s", and that of an .mx file given directly
+// is written to "<output directory>/<file name>.s"(.o instead with --object).
+// Programs are compiled by a fixed number of jobs sharing one Compiler(see CompilationContext). As soon as a
+// program is compiled, its diagnostics are printed to err and a line with its status and compile time to out.
+public class BatchCompiler {
+    static private class Task {
+        private Path input;
+        private Path output;
+
+        public Task(Path input, Path output) {
+            this.input = input;
+            this.output = output;
+        }
+    }
+
+    private Options options;
+    private Compiler compiler;
+    private Profiler profiler;
+    private PrintStream out;
+    private PrintStream err;
+
+    // Every program is profiled by its own profiler, which is merged into profiler when it is compiled.
+    public BatchCompiler(Options options, ForkJoinPool pool, Profiler profiler, PrintStream out, PrintStream err) {
+        this.options = options;
+        this.compiler = new Compiler(options, pool);
+        this.profiler = profiler;
+        this.out = out;
+        this.err = err;
+    }
+
+    // Return the number of programs which fail to compile.
+    public int run() throws IOException {
+        ArrayList<Task> tasks = collectTasks();
+        if (tasks.isEmpty())
+            throw new RuntimeException("No .mx file to compile.");
+
+        long startTime = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(options.getJobs(), tasks.size()));
+        ArrayList<Future<Boolean>> results = new ArrayList<>();
+        for (Task task : tasks)
+            results.add(executor.submit(() -> compile(task)));
+
+        int failed = 0;
+        try {
+            for (Future<Boolean> result : results) {
+                if (!result.get())
+                    failed++;
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+        long time = System.nanoTime() - startTime;
+
+        out.println(tasks.size() + " program(s), " + failed + " failed, in "
+                + toMilliseconds(time) + " ms with " + options.getJobs() + " job(s).");
+        out.flush();
+        if (options.isProfiling())
+            profiler.writeReport(options.getProfileFile());
+        return failed;
+    }
+
+    private ArrayList<Task> collectTasks() throws IOException {
+        Path outputDirectory = Paths.get(options.getOutputDirectory());
+        Map<Path, Task> tasks = new LinkedHashMap<>(); // output -> task
+        for (String name : options.getInputs()) {
+            Path input = Paths.get(name);
+            if (Files.isDirectory(input)) {
+                ArrayList<Path> files;
+                try (Stream<Path> stream = Files.walk(input)) {
+                    files = stream.filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".mx"))
+                            .sorted()
+                            .collect(Collectors.toCollection(ArrayList::new));
+                }
+                for (Path file : files)
+                    addTask(tasks, file, outputDirectory.resolve(toOutputName(input.relativize(file))));
+            } else
+                addTask(tasks, input, outputDirectory.resolve(toOutputName(input.getFileName())));
+        }
+        return new ArrayList<>(tasks.values());
+    }
+
+    static private void addTask(Map<Path, Task> tasks, Path input, Path output) {
+        Path key = output.toAbsolutePath().normalize();
+        if (tasks.containsKey(key)) {
+            Path other = tasks.get(key).input;
+            if (other.toAbsolutePath().normalize().equals(input.toAbsolutePath().normalize()))
+                return;
+            throw new RuntimeException("Both \"" + other + "\" and \"" + input
+                    + "\" would be compiled to \"" + output + "\".");
+        }
+        tasks.put(key, new Task(input, output));
+    }
+
+    private Path toOutputName(Path path) {
+        String name = path.toString();
+        if (name.endsWith(".mx"))
+            name = name.substring(0, name.length() - ".mx".length());
+        return Paths.get(name + (options.isObject() ? ".o" : ".s"));
+    }
+
+    // Return whether the program is compiled successfully. The output of a failed program is removed, so that
+    // an out-of-date assembly is never left.
+    private boolean compile(Task task) {
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        ErrorHandler errorHandler = new ErrorHandler(new PrintStream(diagnostics, true));
+        Profiler taskProfiler = new Profiler(options.isProfiling());
+        long startTime = System.nanoTime();
+
+        boolean success = false;
+        CharStream input = null;
+        try {
+            input = CharStreams.fromPath(task.input);
+        } catch (IOException e) {
+            errorHandler.error("Cannot open file \"" + task.input + "\".");
+            errorHandler.print();
+        }
+        if (input != null) {
+            try {
+                MxCompiler.RISCV.Module ASMModule = compiler.compile(input,
+                        new CompilationContext(errorHandler, taskProfiler));
+                Path parent = task.output.toAbsolutePath().getParent();
+                if (parent != null)
+                    Files.createDirectories(parent);
+                // As in the compile server, a program which cannot be lowered gets an empty assembly.
+                try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(task.output))) {
+                    if (ASMModule != null && options.isObject()) {
+                        taskProfiler.start("ObjectEmitter");
+                        new ObjectEmitter(os).run(ASMModule);
+                        taskProfiler.end(false);
+                    } else if (ASMModule != null) {
+                        taskProfiler.start("CodeEmitter");
+                        new CodeEmitter(os, true).run(ASMModule);
+                        taskProfiler.end(false);
+                    }
+                }
+                success = true;
+            } catch (CompilationError e) {
+                errorHandler.print();
+            } catch (IOException e) {
+                errorHandler.error("Cannot write file \"" + task.output + "\".");
+                errorHandler.print();
+            } catch (RuntimeException | AssertionError | StackOverflowError e) {
+                // An internal error must not stop compiling other programs.
+                errorHandler.error("Internal compiler error: " + e);
+                errorHandler.print();
+            }
+        }
+        if (!success) {
+            try {
+                Files.deleteIfExists(task.output);
+            } catch (IOException ignored) {
+            }
+        }
+        long time = System.nanoTime() - startTime;
+
+        report(task, success, time, diagnostics.toByteArray(), taskProfiler);
+        return success;
+    }
+
+    synchronized private void report(Task task, boolean success, long time, byte[] diagnostics,
+                                     Profiler taskProfiler) {
+        if (diagnostics.length > 0) {
+            err.println(task.input + ":");
+            err.write(diagnostics, 0, diagnostics.length);
+            err.flush();
+        }
+        out.println(String.format(Locale.ROOT, "%-5s %10s ms  %s", success ? "OK" : "ERROR",
+                toMilliseconds(time), task.input) + (success ? " -> " + task.output : ""));
+        out.flush();
+        profiler.merge(taskProfiler);
+    }
+
+    static private String toMilliseconds(long nanoseconds) {
+        return String.format(Locale.ROOT, "%.3f", nanoseconds / 1e6);
+    }
+}
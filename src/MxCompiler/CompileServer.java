@@ -0,0 +1,110 @@
+package MxCompiler;
+
+import MxCompiler.Backend.CodeEmitter;
+import MxCompiler.Backend.ObjectEmitter;
+import MxCompiler.Utilities.CompilationContext;
+import MxCompiler.Utilities.CompilationError;
+import MxCompiler.Utilities.ErrorHandler;
+import MxCompiler.Utilities.Options;
+import MxCompiler.Utilities.Profiler;
+import org.antlr.v4.runtime.CharStreams;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+
+// A long-lived compiler process, which saves JVM start-up and JIT warm-up for every program.
+// Requests and responses are framed on stdin/stdout:
+//   request:  "<n>\n" followed by n bytes of Mx source code
+//   response: "OK <n>\n" followed by n bytes of RISC-V assembly(or ELF object with --object), or
+//             "ERROR <n>\n" followed by n bytes of diagnostics.
+// The server exits at the end of stdin.
+public class CompileServer {
+    private InputStream in;
+    private OutputStream out;
+    private Options options;
+    private Compiler compiler;
+    private Profiler profiler;
+
+    // The profile of all compilations so far is written after every request if profiling is on.
+    public CompileServer(InputStream in, OutputStream out, Options options, ForkJoinPool pool, Profiler profiler) {
+        this.in = new BufferedInputStream(in);
+        this.out = new BufferedOutputStream(out);
+        this.options = options;
+        this.compiler = new Compiler(options, pool);
+        this.profiler = profiler;
+    }
+
+    public void run() throws IOException {
+        String header;
+        while ((header = readLine()) != null) {
+            if (header.isBlank())
+                continue;
+
+            int length;
+            try {
+                length = Integer.parseInt(header.strip());
+            } catch (NumberFormatException e) {
+                respond("ERROR", ("Error: Invalid request header \"" + header + "\".\n").getBytes());
+                continue;
+            }
+            byte[] source = in.readNBytes(length);
+            if (source.length < length)
+                break;
+
+            compile(source);
+            if (options.isProfiling())
+                profiler.writeReport(options.getProfileFile());
+        }
+    }
+
+    private void compile(byte[] source) throws IOException {
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        ErrorHandler errorHandler = new ErrorHandler(new PrintStream(diagnostics, true));
+
+        MxCompiler.RISCV.Module ASMModule;
+        try {
+            ASMModule = compiler.compile(CharStreams.fromStream(new ByteArrayInputStream(source)),
+                    new CompilationContext(errorHandler, profiler));
+        } catch (CompilationError e) {
+            errorHandler.print();
+            respond("ERROR", diagnostics.toByteArray());
+            return;
+        } catch (RuntimeException | AssertionError | StackOverflowError e) {
+            // An internal error must not kill the server.
+            errorHandler.error("Internal compiler error: " + e);
+            errorHandler.print();
+            respond("ERROR", diagnostics.toByteArray());
+            return;
+        }
+
+        ByteArrayOutputStream asm = new ByteArrayOutputStream();
+        if (ASMModule != null && options.isObject()) {
+            profiler.start("ObjectEmitter");
+            new ObjectEmitter(asm).run(ASMModule);
+            profiler.end(false);
+        } else if (ASMModule != null) {
+            profiler.start("CodeEmitter");
+            new CodeEmitter(asm, true).run(ASMModule);
+            profiler.end(false);
+        }
+        respond("OK", asm.toByteArray());
+    }
+
+    private void respond(String status, byte[] content) throws IOException {
+        out.write((status + " " + content.length + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(content);
+        out.flush();
+    }
+
+    // Return null at the end of stream.
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n')
+            line.write(c);
+        if (c == -1 && line.size() == 0)
+            return null;
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+}
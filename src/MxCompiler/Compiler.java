@@ -0,0 +1,245 @@
+package MxCompiler;
+
+import MxCompiler.AST.ProgramNode;
+import MxCompiler.Backend.CodeEmitter;
+import MxCompiler.Backend.InstructionScheduler;
+import MxCompiler.Backend.InstructionSelector;
+import MxCompiler.Backend.PeepholeOptimization;
+import MxCompiler.Backend.RegisterAllocator;
+import MxCompiler.Frontend.ASTBuilder;
+import MxCompiler.Frontend.Checker;
+import MxCompiler.IR.Function;
+import MxCompiler.IR.IRBuilder;
+import MxCompiler.IR.IRPrinter;
+import MxCompiler.IR.Module;
+import MxCompiler.Optim.*;
+import MxCompiler.Optim.LoopOptim.LICM;
+import MxCompiler.Optim.LoopOptim.LoopAnalysis;
+import MxCompiler.Optim.LoopOptim.LoopUnroller;
+import MxCompiler.Optim.LoopOptim.StrengthReduction;
+import MxCompiler.Optim.PGO.ProfileAnnotator;
+import MxCompiler.Optim.PGO.ProfileData;
+import MxCompiler.Optim.PGO.ProfileInstrumenter;
+import MxCompiler.Optim.SSA.SSAConstructor;
+import MxCompiler.Optim.SSA.SSADestructor;
+import MxCompiler.Parser.MxErrorListener;
+import MxCompiler.Parser.MxLexer;
+import MxCompiler.Parser.MxParser;
+import MxCompiler.Utilities.CompilationContext;
+import MxCompiler.Utilities.CompilationError;
+import MxCompiler.Utilities.ErrorHandler;
+import MxCompiler.Utilities.Options;
+import MxCompiler.Utilities.Profiler;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+// A Compiler is never changed by compilations, so that one Compiler may compile many programs on different
+// threads at the same time, each with its own context(see CompilationContext).
+public class Compiler {
+    private Options options;
+    private ForkJoinPool pool;
+
+    public Compiler() {
+        this(new Options(), null);
+    }
+
+    // Functions are optimized in parallel on pool(null means sequentially).
+    // The pool may be shared by compilations running at the same time.
+    public Compiler(Options options, ForkJoinPool pool) {
+        this.options = options;
+        this.pool = pool;
+    }
+
+    // Compile a whole Mx program into a RISC-V module.
+    // Errors are reported to the error handler of context, and passes are recorded in its profiler(see Profiler).
+    // Return null if the program is semantically correct but cannot be lowered(see Function.isNotFunctional()).
+    public MxCompiler.RISCV.Module compile(CharStream input, CompilationContext context) throws CompilationError {
+        context.getProfiler().startCompilation();
+        try {
+            return runPipeline(input, context);
+        } finally {
+            context.getProfiler().endCompilation();
+        }
+    }
+
+    private MxCompiler.RISCV.Module runPipeline(CharStream input, CompilationContext context)
+            throws CompilationError {
+        ErrorHandler errorHandler = context.getErrorHandler();
+        Profiler profiler = context.getProfiler();
+        MxLexer lexer;
+        CommonTokenStream tokens;
+        MxParser parser;
+        ParseTree parseTreeEntrance;
+
+        profiler.start("Parser");
+        lexer = new MxLexer(input);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(new MxErrorListener(errorHandler));
+        tokens = new CommonTokenStream(lexer);
+        parser = new MxParser(tokens);
+        parser.removeErrorListeners();
+        parser.addErrorListener(new MxErrorListener(errorHandler));
+        parseTreeEntrance = parser.program();
+        profiler.end(false);
+        if (errorHandler.hasError())
+            throw new CompilationError();
+
+
+        profiler.start("ASTBuilder");
+        ASTBuilder astBuilder = new ASTBuilder(errorHandler);
+        ProgramNode astRoot;
+        astRoot = (ProgramNode) astBuilder.visit(parseTreeEntrance); // throws no error
+        profiler.end(false);
+
+        profiler.start("Checker");
+        Checker semanticChecker = new Checker(errorHandler);
+        astRoot.accept(semanticChecker);
+        profiler.end(false);
+
+
+        IRBuilder irBuilder = new IRBuilder(semanticChecker.getGlobalScope(),
+                semanticChecker.getTypeTable(),
+                context,
+                options.isPrefixedStrings());
+        profiler.start("IRBuilder");
+        astRoot.accept(irBuilder);
+        profiler.end(false, irBuilder.getModule());
+        if (errorHandler.hasError())
+            throw new CompilationError();
+
+
+        // ------ Optimizations ------
+        Module module = irBuilder.getModule();
+        PassManager passManager = new PassManager(module, pool, profiler);
+
+        // ------ Simplify CFG, construct Dominator Tree & run SSAConstructor(mem2reg) ------
+        CFGSimplifier cfgSimplifier = new CFGSimplifier(module);
+        passManager.run(cfgSimplifier);
+        DominatorTreeConstructor dominatorTreeConstructor = new DominatorTreeConstructor(module);
+        passManager.run(dominatorTreeConstructor);
+        SSAConstructor ssaConstructor = new SSAConstructor(module);
+        passManager.run(ssaConstructor);
+
+        for (Function function : module.getFunctionMap().values()) {
+            if (function.isNotFunctional()) {
+//                new IRPrinter("test/test.ll").run(module);
+                return null;
+            }
+        }
+
+        // ------ Profile-guided optimization ------
+        if (options.isPGOInstrumenting())
+            passManager.run(new ProfileInstrumenter(module));
+        else if (options.getPGOProfileFile() != null) {
+            try {
+                ProfileData profile = ProfileData.read(options.getPGOProfileFile());
+                passManager.run(new ProfileAnnotator(module, profile, errorHandler));
+            } catch (IOException e) {
+                errorHandler.warning("Cannot read profile \"" + options.getPGOProfileFile() + "\", and it is ignored.");
+            }
+        }
+
+        Andersen andersen = new Andersen(module);
+        SideEffectChecker sideEffectChecker = new SideEffectChecker(module);
+        LoopAnalysis loopAnalysis = new LoopAnalysis(module);
+        DeadCodeEliminator deadCodeEliminator = new DeadCodeEliminator(module, sideEffectChecker, loopAnalysis);
+        SCCP sccp = new SCCP(module);
+        TailRecursionEliminator tailRecursionEliminator = new TailRecursionEliminator(module);
+        GVN gvn = new GVN(module);
+        LoadEliminator loadEliminator = new LoadEliminator(module, andersen, sideEffectChecker);
+        ScalarReplacement scalarReplacement = new ScalarReplacement(module, andersen);
+        LICM licm = new LICM(module, loopAnalysis, sideEffectChecker, andersen);
+        StrengthReduction strengthReduction = new StrengthReduction(module, loopAnalysis);
+        LoopUnroller loopUnroller = new LoopUnroller(module, loopAnalysis,
+                options.getUnrollFactor(), options.isPeeling());
+        InstructionCombiner instructionCombiner = new InstructionCombiner(module);
+        InlineExpander inlineExpander = new InlineExpander(module);
+        FunctionRemover functionRemover = new FunctionRemover(module);
+        passManager.watch(andersen);
+        passManager.watch(sideEffectChecker);
+        passManager.nextRound();
+        boolean unrolled = false;
+        while (true) {
+            boolean changed;
+            profiler.addIteration();
+            passManager.run(dominatorTreeConstructor);
+            changed = passManager.run(sccp);
+            changed |= passManager.run(deadCodeEliminator);
+            changed |= passManager.run(cfgSimplifier);
+            changed |= passManager.run(tailRecursionEliminator);
+            passManager.run(andersen);
+            passManager.run(dominatorTreeConstructor);
+            changed |= passManager.run(gvn);
+            changed |= passManager.run(loadEliminator);
+            changed |= passManager.run(scalarReplacement);
+            passManager.run(loopAnalysis);
+            changed |= passManager.run(licm);
+            changed |= passManager.run(strengthReduction);
+            changed |= passManager.run(inlineExpander);
+            changed |= passManager.run(instructionCombiner);
+            changed |= passManager.run(cfgSimplifier);
+            changed |= passManager.run(functionRemover);
+
+            // Functions affected by changed analysis results are optimized once more even if nothing changed.
+            boolean dirty = passManager.nextRound();
+            if (!changed && !dirty) {
+                // Loops are unrolled once when the loop converges, since the unrolled loops would be unrolled
+                // again in every round. Then the unrolled code is optimized.
+                if (unrolled)
+                    break;
+                unrolled = true;
+                passManager.markAllDirty();
+                passManager.run(dominatorTreeConstructor);
+                passManager.run(loopAnalysis);
+                if (!passManager.run(loopUnroller))
+                    break;
+                passManager.nextRound();
+            }
+        }
+
+        // Print LLVM IR.
+//        new IRPrinter("test/test.ll").run(module);
+
+        passManager.run(new SSADestructor(module));
+
+        // Print IR after SSA destruction.
+//        new IRPrinter("test/postIR.ll").run(module);
+
+        InstructionSelector instructionSelector = new InstructionSelector();
+        profiler.start("InstructionSelector", module);
+        module.accept(instructionSelector);
+
+        MxCompiler.RISCV.Module ASMModule = instructionSelector.getASMModule();
+        profiler.end(true, ASMModule);
+//        new CodeEmitter("test/preASM.s", false).run(ASMModule);
+
+        if (options.isPreRAScheduling()) {
+            profiler.start("PreRAScheduler", ASMModule);
+            new InstructionScheduler(ASMModule, options.getLatencyModel(), false).run();
+            profiler.end(true, ASMModule);
+        }
+
+        passManager.run(dominatorTreeConstructor);
+        passManager.run(loopAnalysis);
+
+        profiler.start("RegisterAllocator", ASMModule);
+        new RegisterAllocator(ASMModule, loopAnalysis, pool, options.isLinearScan()).run();
+        profiler.end(true, ASMModule);
+        profiler.start("PeepholeOptimization", ASMModule);
+        new PeepholeOptimization(ASMModule).run();
+        profiler.end(true, ASMModule);
+        if (options.isPostRAScheduling()) {
+            profiler.start("PostRAScheduler", ASMModule);
+            new InstructionScheduler(ASMModule, options.getLatencyModel(), true).run();
+            profiler.end(true, ASMModule);
+        }
+//        new CodeEmitter("test/test.s", true).run(ASMModule);
+
+//        System.out.println(andersen.getMayAliasRate());
+        return ASMModule;
+    }
+}
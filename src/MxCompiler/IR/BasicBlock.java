@@ -45,9 +45,12 @@ public class BasicBlock extends IRObject implements Cloneable {
     private HashSet<BasicBlock> DF; // Dominance Frontier
     private HashSet<BasicBlock> postDF;
 
+    private long profileCount; // -1 if unknown(see ProfileAnnotator)
+
     public BasicBlock(Function function, String name) {
         this.function = function;
         this.name = name;
+        profileCount = -1;
 
         instHead = null;
         instTail = null;
@@ -346,6 +349,14 @@ public class BasicBlock extends IRObject implements Cloneable {
         this.postDF = postDF;
     }
 
+    public long getProfileCount() {
+        return profileCount;
+    }
+
+    public void setProfileCount(long profileCount) {
+        this.profileCount = profileCount;
+    }
+
     public ParallelCopyInst getParallelCopy() {
         IRInstruction ptr = this.getInstTail();
         while (ptr != null && !(ptr instanceof ParallelCopyInst))
@@ -435,6 +446,7 @@ public class BasicBlock extends IRObject implements Cloneable {
     public BasicBlock split(IRInstruction instruction) {
         BasicBlock splitBlock = new BasicBlock(function, "inlineMergedBlock");
         function.getSymbolTable().put(splitBlock.getName(), splitBlock);
+        splitBlock.setProfileCount(profileCount);
 
         splitBlock.setInstHead(instruction.getInstNext());
         splitBlock.setInstTail(this.instTail);
@@ -526,8 +538,8 @@ public class BasicBlock extends IRObject implements Cloneable {
         }
         block.prev = this.prev;
         block.next = this.next;
-        block.predecessors = new HashSet<>(this.predecessors);
-        block.successors = new HashSet<>(this.successors);
+        block.predecessors = new LinkedHashSet<>(this.predecessors);
+        block.successors = new LinkedHashSet<>(this.successors);
         return block;
     }
 
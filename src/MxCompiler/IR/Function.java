@@ -15,6 +15,7 @@ import MxCompiler.Utilities.SymbolTable;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 
 public class Function extends IRObject {
     private Module module;
@@ -229,7 +230,7 @@ public class Function extends IRObject {
 
     public ArrayList<BasicBlock> getDFSOrder() {
         dfsOrder = new ArrayList<>();
-        dfsVisit = new HashSet<>();
+        dfsVisit = new LinkedHashSet<>();
         entranceBlock.setDfsFather(null);
         dfsBasicBlocks(entranceBlock);
         return dfsOrder;
@@ -249,7 +250,7 @@ public class Function extends IRObject {
 
     public ArrayList<BasicBlock> getReverseDFSOrder() {
         reverseDfsOrder = new ArrayList<>();
-        dfsVisit = new HashSet<>();
+        dfsVisit = new LinkedHashSet<>();
         exitBlock.setReverseDfsFather(null);
         reverseDfsBasicBlocks(exitBlock);
         return reverseDfsOrder;
@@ -10,6 +10,7 @@ import MxCompiler.IR.TypeSystem.*;
 import MxCompiler.IR.TypeSystem.VoidType;
 import MxCompiler.Type.*;
 import MxCompiler.Type.ArrayType;
+import MxCompiler.Utilities.CompilationContext;
 import MxCompiler.Utilities.CompilationError;
 import MxCompiler.Utilities.ErrorHandler;
 import MxCompiler.Utilities.Pair;
@@ -33,8 +34,10 @@ public class IRBuilder implements ASTVisitor {
 
     private ErrorHandler errorHandler;
 
-    public IRBuilder(Scope globalScope, TypeTable astTypeTable, ErrorHandler errorHandler) {
-        module = new Module(astTypeTable);
+    // With prefixedStrings, the length of a string is stored in the 4 bytes before its characters, like the size
+    // of an array, so that string.length() is a load. Strings are still terminated by '\0' for the runtime.
+    public IRBuilder(Scope globalScope, TypeTable astTypeTable, CompilationContext context, boolean prefixedStrings) {
+        module = new Module(astTypeTable, context, prefixedStrings);
 
         this.globalScope = globalScope;
         this.astTypeTable = astTypeTable;
@@ -49,7 +52,7 @@ public class IRBuilder implements ASTVisitor {
         initializer.initialize();
         module.addFunction(initializer);
 
-        this.errorHandler = errorHandler;
+        this.errorHandler = context.getErrorHandler();
     }
 
     public Module getModule() {
@@ -600,7 +603,7 @@ public class IRBuilder implements ASTVisitor {
                     currentFunction.getSymbolTable().put(result.getName(), result);
                 } else {
                     // str1 + str2  for string
-                    Function function = module.getExternalFunctionMap().get("__string_concatenate");
+                    Function function = getStringFunction("concatenate");
                     ArrayList<Operand> parameters = new ArrayList<>();
                     parameters.add(lhsResult);
                     parameters.add(rhsResult);
@@ -626,7 +629,7 @@ public class IRBuilder implements ASTVisitor {
                     currentFunction.getSymbolTable().put(result.getName(), result);
                 } else {
                     // str1 < str2  for string
-                    Function function = module.getExternalFunctionMap().get("__string_lessThan");
+                    Function function = getStringFunction("lessThan");
                     ArrayList<Operand> parameters = new ArrayList<>();
                     parameters.add(lhsResult);
                     parameters.add(rhsResult);
@@ -652,7 +655,7 @@ public class IRBuilder implements ASTVisitor {
                     currentFunction.getSymbolTable().put(result.getName(), result);
                 } else {
                     // str1 > str2  for string
-                    Function function = module.getExternalFunctionMap().get("__string_greaterThan");
+                    Function function = getStringFunction("greaterThan");
                     ArrayList<Operand> parameters = new ArrayList<>();
                     parameters.add(lhsResult);
                     parameters.add(rhsResult);
@@ -678,7 +681,7 @@ public class IRBuilder implements ASTVisitor {
                     currentFunction.getSymbolTable().put(result.getName(), result);
                 } else {
                     // str1 < str2  for string
-                    Function function = module.getExternalFunctionMap().get("__string_lessEqual");
+                    Function function = getStringFunction("lessEqual");
                     ArrayList<Operand> parameters = new ArrayList<>();
                     parameters.add(lhsResult);
                     parameters.add(rhsResult);
@@ -704,7 +707,7 @@ public class IRBuilder implements ASTVisitor {
                     currentFunction.getSymbolTable().put(result.getName(), result);
                 } else {
                     // str1 >= str2  for string
-                    Function function = module.getExternalFunctionMap().get("__string_greaterEqual");
+                    Function function = getStringFunction("greaterEqual");
                     ArrayList<Operand> parameters = new ArrayList<>();
                     parameters.add(lhsResult);
                     parameters.add(rhsResult);
@@ -741,7 +744,7 @@ public class IRBuilder implements ASTVisitor {
                     currentFunction.getSymbolTable().put(result.getName(), result);
                 } else if ((lType instanceof StringType) && (rType instanceof StringType)) {
                     // str1 == str2  for string
-                    Function function = module.getExternalFunctionMap().get("__string_equal");
+                    Function function = getStringFunction("equal");
                     ArrayList<Operand> parameters = new ArrayList<>();
                     parameters.add(lhsResult);
                     parameters.add(rhsResult);
@@ -816,7 +819,7 @@ public class IRBuilder implements ASTVisitor {
                     currentFunction.getSymbolTable().put(result.getName(), result);
                 } else if ((lType instanceof StringType) && (rType instanceof StringType)) {
                     // str1 != str2  for string
-                    Function function = module.getExternalFunctionMap().get("__string_notEqual");
+                    Function function = getStringFunction("notEqual");
                     ArrayList<Operand> parameters = new ArrayList<>();
                     parameters.add(lhsResult);
                     parameters.add(rhsResult);
@@ -1031,26 +1034,11 @@ public class IRBuilder implements ASTVisitor {
             expr.accept(this); // visit ExprNode
             Operand ptrResult = expr.getResult();
             if (type instanceof ArrayType) {
-                Register pointer;
-                if (!ptrResult.getType().equals(new PointerType(new IntegerType(IntegerType.BitWidth.int32)))) {
-                    pointer = new Register(new PointerType(new IntegerType(IntegerType.BitWidth.int32)), "cast");
-                    currentBlock.addInstruction(new BitCastToInst(currentBlock, ptrResult,
-                            new PointerType(new IntegerType(IntegerType.BitWidth.int32)), pointer));
-                    currentFunction.getSymbolTable().put(pointer.getName(), pointer);
-                } else
-                    pointer = (Register) ptrResult;
-                ArrayList<Operand> index = new ArrayList<>();
-                index.add(new ConstInt(IntegerType.BitWidth.int32, -1));
-                Register result = new Register(pointer.getType(), "elementPtr");
-                Register size = new Register(new IntegerType(IntegerType.BitWidth.int32), "arraySize");
-                currentBlock.addInstruction(new GetElementPtrInst(currentBlock, pointer, index, result));
-                currentBlock.addInstruction(new LoadInst(currentBlock,
-                        new IntegerType(IntegerType.BitWidth.int32), result, size));
-
-                node.setResult(size);
+                node.setResult(loadLengthHeader(ptrResult, "arraySize"));
+                node.setLvalueResult(null);
+            } else if (type instanceof StringType && name.equals("length") && module.hasPrefixedStrings()) {
+                node.setResult(loadLengthHeader(ptrResult, "stringLength"));
                 node.setLvalueResult(null);
-                currentFunction.getSymbolTable().put(result.getName(), result);
-                currentFunction.getSymbolTable().put(size.getName(), size);
             } else {
                 if (type instanceof StringType) {
                     function = module.getExternalFunctionMap().get("__string_" + name);
@@ -1222,6 +1210,33 @@ public class IRBuilder implements ASTVisitor {
         node.setLvalueResult(null);
     }
 
+    // Load the 4-byte length before an array or a length-prefixed string.
+    private Register loadLengthHeader(Operand ptrResult, String name) {
+        Register pointer;
+        if (!ptrResult.getType().equals(new PointerType(new IntegerType(IntegerType.BitWidth.int32)))) {
+            pointer = new Register(new PointerType(new IntegerType(IntegerType.BitWidth.int32)), "cast");
+            currentBlock.addInstruction(new BitCastToInst(currentBlock, ptrResult,
+                    new PointerType(new IntegerType(IntegerType.BitWidth.int32)), pointer));
+            currentFunction.getSymbolTable().put(pointer.getName(), pointer);
+        } else
+            pointer = (Register) ptrResult;
+        ArrayList<Operand> index = new ArrayList<>();
+        index.add(new ConstInt(IntegerType.BitWidth.int32, -1));
+        Register result = new Register(pointer.getType(), "elementPtr");
+        Register size = new Register(new IntegerType(IntegerType.BitWidth.int32), name);
+        currentBlock.addInstruction(new GetElementPtrInst(currentBlock, pointer, index, result));
+        currentBlock.addInstruction(new LoadInst(currentBlock,
+                new IntegerType(IntegerType.BitWidth.int32), result, size));
+        currentFunction.getSymbolTable().put(result.getName(), result);
+        currentFunction.getSymbolTable().put(size.getName(), size);
+        return size;
+    }
+
+    // With length-prefixed strings, concatenation and comparisons use the lengths(see Module).
+    private Function getStringFunction(String name) {
+        return module.getExternalFunctionMap().get((module.hasPrefixedStrings() ? "__lstring_" : "__string_") + name);
+    }
+
     @Override
     public void visit(StringLiteralNode node) {
         GlobalVariable string = module.addConstString(node.getValue());
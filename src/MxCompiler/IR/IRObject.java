@@ -4,34 +4,27 @@ import MxCompiler.IR.Instruction.BranchInst;
 import MxCompiler.IR.Instruction.IRInstruction;
 import MxCompiler.IR.Operand.Operand;
 
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.Map;
 
 
 abstract public class IRObject implements Cloneable {
-    private Map<IRInstruction, Integer> use;
+    private UseList use;
 
     public IRObject() {
-        use = new LinkedHashMap<>();
+        use = new UseList();
     }
 
-    public void addUse(IRInstruction instruction) {
-        if (!use.containsKey(instruction))
-            use.put(instruction, 1);
-        else
-            use.replace(instruction, use.get(instruction) + 1);
+    // Functions, global variables and constants may be used by several functions which are optimized
+    // in parallel(see Optim.PassManager), so updating the use map is synchronized.
+    public synchronized void addUse(IRInstruction instruction) {
+        use.add(instruction);
     }
 
-    public void removeUse(IRInstruction instruction) {
-        int cnt = use.get(instruction);
-        assert use.containsKey(instruction) && cnt > 0;
-        if (cnt == 1)
-            use.remove(instruction);
-        else
-            use.replace(instruction, cnt - 1);
+    public synchronized void removeUse(IRInstruction instruction) {
+        use.remove(instruction);
     }
 
+    // The use list must not be modified while iterating over it(see UseList).
     public Map<IRInstruction, Integer> getUse() {
         return use;
     }
@@ -39,9 +32,11 @@ abstract public class IRObject implements Cloneable {
     public boolean onlyHaveOneBranchUse() {
         if (use.size() > 1)
             return false;
-        for (Map.Entry<IRInstruction, Integer> entry : use.entrySet())
-            if (!(entry.getKey() instanceof BranchInst) || entry.getValue() > 1)
+        for (int i = 0; i < use.getSlots(); i++) {
+            IRInstruction instruction = use.getUser(i);
+            if (instruction != null && (!(instruction instanceof BranchInst) || use.getCount(i) > 1))
                 return false;
+        }
         return true;
     }
 
@@ -49,9 +44,14 @@ abstract public class IRObject implements Cloneable {
         assert (this instanceof Operand && newUse instanceof Operand)
                 || (this instanceof BasicBlock && newUse instanceof BasicBlock)
                 || (this instanceof Function && newUse instanceof Function);
-        ArrayList<IRInstruction> instructions = new ArrayList<>(use.keySet());
-        for (IRInstruction instruction : instructions)
-            instruction.replaceUse(this, newUse);
+        assert newUse != this;
+        // instruction.replaceUse() removes instruction from the use list, which only leaves a hole in its slot,
+        // so the slots can be visited in place.
+        for (int i = 0; i < use.getSlots(); i++) {
+            IRInstruction instruction = use.getUser(i);
+            if (instruction != null)
+                instruction.replaceUse(this, newUse);
+        }
         use.clear();
     }
 
@@ -64,7 +64,7 @@ abstract public class IRObject implements Cloneable {
             e.printStackTrace();
             throw new RuntimeException(e.getMessage());
         }
-        irObject.use = new LinkedHashMap<>();
+        irObject.use = new UseList();
         return irObject;
     }
 }
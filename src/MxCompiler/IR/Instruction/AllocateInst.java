@@ -9,7 +9,7 @@ import MxCompiler.IR.Operand.Register;
 import MxCompiler.IR.TypeSystem.PointerType;
 import MxCompiler.IR.TypeSystem.IRType;
 import MxCompiler.Optim.Andersen;
-import MxCompiler.Optim.CSE;
+import MxCompiler.Optim.GVN;
 import MxCompiler.Optim.LoopOptim.LICM;
 import MxCompiler.Optim.LoopOptim.LoopAnalysis;
 import MxCompiler.Optim.SCCP;
@@ -68,7 +68,7 @@ public class AllocateInst extends IRInstruction {
     }
 
     @Override
-    public CSE.Expression convertToExpression() {
+    public GVN.Expression convertToExpression(GVN.ValueTable valueTable) {
         throw new RuntimeException("Convert alloca to expression.");
     }
 
@@ -82,7 +82,7 @@ public class AllocateInst extends IRInstruction {
         assert nodeMap.containsKey(result);
         Andersen.Node pointer = nodeMap.get(result);
         Andersen.Node pointTo = new Andersen.Node(pointer.getName() + ".alloca");
-        pointer.getPointsTo().add(pointTo);
+        pointer.addPointsTo(pointTo);
         nodes.add(pointTo);
     }
 
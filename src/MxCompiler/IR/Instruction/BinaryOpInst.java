@@ -8,13 +8,12 @@ import MxCompiler.IR.Operand.*;
 import MxCompiler.IR.TypeSystem.IntegerType;
 import MxCompiler.IR.TypeSystem.PointerType;
 import MxCompiler.Optim.Andersen;
-import MxCompiler.Optim.CSE;
+import MxCompiler.Optim.GVN;
 import MxCompiler.Optim.LoopOptim.LICM;
 import MxCompiler.Optim.LoopOptim.LoopAnalysis;
 import MxCompiler.Optim.SCCP;
 import MxCompiler.Optim.SideEffectChecker;
 
-import java.util.ArrayList;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
@@ -380,7 +379,7 @@ public class BinaryOpInst extends IRInstruction {
         if (rhs.equals(new ConstInt(IntegerType.BitWidth.int32, -1))) {
             Operand newLhs = new ConstInt(IntegerType.BitWidth.int32, 0);
             Operand newRhs = lhs;
-            op = BinaryOpName.mul;
+            op = BinaryOpName.sub;
             replaceLhs(newLhs);
             replaceRhs(newRhs);
             pushResultInQueue(queue, inQueue);
@@ -673,12 +672,9 @@ public class BinaryOpInst extends IRInstruction {
     }
 
     @Override
-    public CSE.Expression convertToExpression() {
-        String instructionName = op.name();
-        ArrayList<String> operands = new ArrayList<>();
-        operands.add(lhs.toString());
-        operands.add(rhs.toString());
-        return new CSE.Expression(instructionName, operands);
+    public GVN.Expression convertToExpression(GVN.ValueTable valueTable) {
+        int[] operands = new int[]{valueTable.getValueNumber(lhs), valueTable.getValueNumber(rhs)};
+        return new GVN.Expression(op.name(), operands, null);
     }
 
     @Override
@@ -11,13 +11,12 @@ import MxCompiler.IR.Operand.Register;
 import MxCompiler.IR.TypeSystem.IRType;
 import MxCompiler.IR.TypeSystem.PointerType;
 import MxCompiler.Optim.Andersen;
-import MxCompiler.Optim.CSE;
+import MxCompiler.Optim.GVN;
 import MxCompiler.Optim.LoopOptim.LICM;
 import MxCompiler.Optim.LoopOptim.LoopAnalysis;
 import MxCompiler.Optim.SCCP;
 import MxCompiler.Optim.SideEffectChecker;
 
-import java.util.ArrayList;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
@@ -89,12 +88,9 @@ public class BitCastToInst extends IRInstruction {
     }
 
     @Override
-    public CSE.Expression convertToExpression() {
-        String instructionName = "bitcast";
-        ArrayList<String> operands = new ArrayList<>();
-        operands.add(src.toString());
-        operands.add(objectType.toString());
-        return new CSE.Expression(instructionName, operands);
+    public GVN.Expression convertToExpression(GVN.ValueTable valueTable) {
+        int[] operands = new int[]{valueTable.getValueNumber(src)};
+        return new GVN.Expression("bitcast", operands, objectType);
     }
 
     @Override
@@ -112,7 +108,7 @@ public class BitCastToInst extends IRInstruction {
         if (!(src instanceof ConstNull)) {
             assert nodeMap.containsKey(result);
             assert nodeMap.containsKey(src);
-            nodeMap.get(src).getInclusiveEdge().add(nodeMap.get(result));
+            nodeMap.get(src).addInclusiveEdge(nodeMap.get(result));
         }
     }
 
@@ -9,7 +9,7 @@ import MxCompiler.IR.Operand.Parameter;
 import MxCompiler.IR.Operand.Register;
 import MxCompiler.IR.TypeSystem.IntegerType;
 import MxCompiler.Optim.Andersen;
-import MxCompiler.Optim.CSE;
+import MxCompiler.Optim.GVN;
 import MxCompiler.Optim.LoopOptim.LICM;
 import MxCompiler.Optim.LoopOptim.LoopAnalysis;
 import MxCompiler.Optim.SCCP;
@@ -163,7 +163,7 @@ public class BranchInst extends IRInstruction {
     }
 
     @Override
-    public CSE.Expression convertToExpression() {
+    public GVN.Expression convertToExpression(GVN.ValueTable valueTable) {
         throw new RuntimeException("Convert branch instruction to expression.");
     }
 
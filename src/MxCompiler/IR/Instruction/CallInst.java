@@ -11,7 +11,7 @@ import MxCompiler.IR.Operand.Register;
 import MxCompiler.IR.TypeSystem.PointerType;
 import MxCompiler.IR.TypeSystem.VoidType;
 import MxCompiler.Optim.Andersen;
-import MxCompiler.Optim.CSE;
+import MxCompiler.Optim.GVN;
 import MxCompiler.Optim.LoopOptim.LICM;
 import MxCompiler.Optim.LoopOptim.LoopAnalysis;
 import MxCompiler.Optim.SCCP;
@@ -27,11 +27,14 @@ public class CallInst extends IRInstruction {
     private ArrayList<Operand> parameters;
     private Register result;
 
+    private long profileCount; // -1 if unknown(see ProfileAnnotator)
+
     public CallInst(BasicBlock basicBlock, Function function, ArrayList<Operand> parameters, Register result) {
         super(basicBlock);
         this.function = function;
         this.parameters = parameters;
         this.result = result;
+        profileCount = -1;
 
         if (result != null)
             assert result.getType().equals(function.getFunctionType().getReturnType());
@@ -76,6 +79,14 @@ public class CallInst extends IRInstruction {
         return result;
     }
 
+    public long getProfileCount() {
+        return profileCount;
+    }
+
+    public void setProfileCount(long profileCount) {
+        this.profileCount = profileCount;
+    }
+
     public boolean isVoidCall() {
         return result == null;
     }
@@ -124,7 +135,7 @@ public class CallInst extends IRInstruction {
     }
 
     @Override
-    public CSE.Expression convertToExpression() {
+    public GVN.Expression convertToExpression(GVN.ValueTable valueTable) {
         throw new RuntimeException("Convert call instruction to expression.");
     }
 
@@ -149,7 +160,7 @@ public class CallInst extends IRInstruction {
                 Andersen.Node pointer = nodeMap.get(result);
                 Andersen.Node pointTo = new Andersen.Node(pointer.getName()
                         + ".returnValue:" + function.getName());
-                pointer.getPointsTo().add(pointTo);
+                pointer.addPointsTo(pointTo);
                 nodes.add(pointTo);
             }
         } else {
@@ -161,7 +172,7 @@ public class CallInst extends IRInstruction {
                     if (!(actual instanceof ConstNull)) {
                         assert nodeMap.containsKey(actual);
                         assert nodeMap.containsKey(formal);
-                        nodeMap.get(actual).getInclusiveEdge().add(nodeMap.get(formal));
+                        nodeMap.get(actual).addInclusiveEdge(nodeMap.get(formal));
                     }
                 } else
                     assert !(formal.getType() instanceof PointerType);
@@ -173,7 +184,7 @@ public class CallInst extends IRInstruction {
                 if (!(returnValue instanceof ConstNull)) {
                     assert nodeMap.containsKey(result);
                     assert nodeMap.containsKey(returnValue);
-                    nodeMap.get(returnValue).getInclusiveEdge().add(nodeMap.get(result));
+                    nodeMap.get(returnValue).addInclusiveEdge(nodeMap.get(result));
                 }
             }
         }
@@ -10,7 +10,7 @@ import MxCompiler.IR.TypeSystem.IRType;
 import MxCompiler.IR.TypeSystem.IntegerType;
 import MxCompiler.IR.TypeSystem.PointerType;
 import MxCompiler.Optim.Andersen;
-import MxCompiler.Optim.CSE;
+import MxCompiler.Optim.GVN;
 import MxCompiler.Optim.LoopOptim.LICM;
 import MxCompiler.Optim.LoopOptim.LoopAnalysis;
 import MxCompiler.Optim.SCCP;
@@ -105,13 +105,13 @@ public class GetElementPtrInst extends IRInstruction {
     }
 
     @Override
-    public CSE.Expression convertToExpression() {
-        String instructionName = "getelementptr";
-        ArrayList<String> operands = new ArrayList<>();
-        operands.add(pointer.toString());
-        for (Operand operand : index)
-            operands.add(operand.toString());
-        return new CSE.Expression(instructionName, operands);
+    public GVN.Expression convertToExpression(GVN.ValueTable valueTable) {
+        int[] operands = new int[index.size() + 1];
+        operands[0] = valueTable.getValueNumber(pointer);
+        for (int i = 0; i < index.size(); i++)
+            operands[i + 1] = valueTable.getValueNumber(index.get(i));
+        // Pointers of different types may have the same value, e.g. null.
+        return new GVN.Expression("getelementptr", operands, result.getType());
     }
 
     @Override
@@ -138,7 +138,7 @@ public class GetElementPtrInst extends IRInstruction {
         if (!(pointer instanceof ConstNull)) {
             assert nodeMap.containsKey(result);
             assert nodeMap.containsKey(pointer);
-            nodeMap.get(pointer).getInclusiveEdge().add(nodeMap.get(result));
+            nodeMap.get(pointer).addInclusiveEdge(nodeMap.get(result));
         }
     }
 
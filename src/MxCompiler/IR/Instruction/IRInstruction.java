@@ -7,7 +7,7 @@ import MxCompiler.IR.IRVisitor;
 import MxCompiler.IR.Operand.Operand;
 import MxCompiler.IR.Operand.Register;
 import MxCompiler.Optim.Andersen;
-import MxCompiler.Optim.CSE;
+import MxCompiler.Optim.GVN;
 import MxCompiler.Optim.LoopOptim.LICM;
 import MxCompiler.Optim.LoopOptim.LoopAnalysis;
 import MxCompiler.Optim.SCCP;
@@ -18,15 +18,26 @@ import java.util.Queue;
 import java.util.Set;
 
 abstract public class IRInstruction implements Cloneable {
+    // Dense id for hashing in use lists(see IR.UseList), counted by the compilation(see CompilationContext).
+    private int id;
     private BasicBlock basicBlock;
 
     private IRInstruction instPrev;
     private IRInstruction instNext;
 
     public IRInstruction(BasicBlock basicBlock) {
+        this.id = nextId(basicBlock);
         this.basicBlock = basicBlock;
     }
 
+    static private int nextId(BasicBlock basicBlock) {
+        return basicBlock.getFunction().getModule().getContext().nextInstructionId();
+    }
+
+    public int getId() {
+        return id;
+    }
+
     public void setBasicBlock(BasicBlock basicBlock) {
         this.basicBlock = basicBlock;
     }
@@ -112,11 +123,10 @@ abstract public class IRInstruction implements Cloneable {
         return this instanceof BinaryOpInst
                 || this instanceof BitCastToInst
                 || this instanceof GetElementPtrInst
-                || this instanceof IcmpInst
-                || this instanceof LoadInst;
+                || this instanceof IcmpInst;
     }
 
-    abstract public CSE.Expression convertToExpression();
+    abstract public GVN.Expression convertToExpression(GVN.ValueTable valueTable);
 
     abstract public void clonedUseReplace(Map<BasicBlock, BasicBlock> blockMap, Map<Operand, Operand> operandMap);
 
@@ -144,6 +154,7 @@ abstract public class IRInstruction implements Cloneable {
             throw new RuntimeException(e.getMessage());
         }
 
+        instruction.id = nextId(this.basicBlock);
         instruction.basicBlock = this.basicBlock;
         instruction.instPrev = this.instPrev;
         instruction.instNext = this.instNext;
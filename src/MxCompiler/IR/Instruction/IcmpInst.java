@@ -9,13 +9,12 @@ import MxCompiler.IR.TypeSystem.IRType;
 import MxCompiler.IR.TypeSystem.IntegerType;
 import MxCompiler.IR.TypeSystem.PointerType;
 import MxCompiler.Optim.Andersen;
-import MxCompiler.Optim.CSE;
+import MxCompiler.Optim.GVN;
 import MxCompiler.Optim.LoopOptim.LICM;
 import MxCompiler.Optim.LoopOptim.LoopAnalysis;
 import MxCompiler.Optim.SCCP;
 import MxCompiler.Optim.SideEffectChecker;
 
-import java.util.ArrayList;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
@@ -148,12 +147,9 @@ public class IcmpInst extends IRInstruction {
     }
 
     @Override
-    public CSE.Expression convertToExpression() {
-        String instructionName = operator.name();
-        ArrayList<String> operands = new ArrayList<>();
-        operands.add(op1.toString());
-        operands.add(op2.toString());
-        return new CSE.Expression(instructionName, operands);
+    public GVN.Expression convertToExpression(GVN.ValueTable valueTable) {
+        int[] operands = new int[]{valueTable.getValueNumber(op1), valueTable.getValueNumber(op2)};
+        return new GVN.Expression(operator.name(), operands, null);
     }
 
     @Override
@@ -10,13 +10,12 @@ import MxCompiler.IR.TypeSystem.IntegerType;
 import MxCompiler.IR.TypeSystem.PointerType;
 import MxCompiler.IR.TypeSystem.StructureType;
 import MxCompiler.Optim.Andersen;
-import MxCompiler.Optim.CSE;
+import MxCompiler.Optim.GVN;
 import MxCompiler.Optim.LoopOptim.LICM;
 import MxCompiler.Optim.LoopOptim.LoopAnalysis;
 import MxCompiler.Optim.SCCP;
 import MxCompiler.Optim.SideEffectChecker;
 
-import java.util.ArrayList;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
@@ -93,11 +92,8 @@ public class LoadInst extends IRInstruction {
     }
 
     @Override
-    public CSE.Expression convertToExpression() {
-        String instructionName = "load";
-        ArrayList<String> operands = new ArrayList<>();
-        operands.add(pointer.toString());
-        return new CSE.Expression(instructionName, operands);
+    public GVN.Expression convertToExpression(GVN.ValueTable valueTable) {
+        throw new RuntimeException("Convert load instruction to expression.");
     }
 
     @Override
@@ -117,7 +113,7 @@ public class LoadInst extends IRInstruction {
         if (!(pointer instanceof ConstNull)) {
             assert nodeMap.containsKey(pointer);
             assert nodeMap.containsKey(result);
-            nodeMap.get(pointer).getDereferenceLhs().add(nodeMap.get(result));
+            nodeMap.get(pointer).addDereferenceLhs(nodeMap.get(result));
         }
     }
 
@@ -7,7 +7,7 @@ import MxCompiler.IR.IRVisitor;
 import MxCompiler.IR.Operand.*;
 import MxCompiler.IR.TypeSystem.PointerType;
 import MxCompiler.Optim.Andersen;
-import MxCompiler.Optim.CSE;
+import MxCompiler.Optim.GVN;
 import MxCompiler.Optim.LoopOptim.LICM;
 import MxCompiler.Optim.LoopOptim.LoopAnalysis;
 import MxCompiler.Optim.SCCP;
@@ -70,7 +70,7 @@ public class MoveInst extends IRInstruction {
     }
 
     @Override
-    public CSE.Expression convertToExpression() {
+    public GVN.Expression convertToExpression(GVN.ValueTable valueTable) {
         return null;
     }
 
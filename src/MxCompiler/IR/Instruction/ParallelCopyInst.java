@@ -7,7 +7,7 @@ import MxCompiler.IR.IRVisitor;
 import MxCompiler.IR.Operand.Operand;
 import MxCompiler.IR.Operand.Register;
 import MxCompiler.Optim.Andersen;
-import MxCompiler.Optim.CSE;
+import MxCompiler.Optim.GVN;
 import MxCompiler.Optim.LoopOptim.LICM;
 import MxCompiler.Optim.LoopOptim.LoopAnalysis;
 import MxCompiler.Optim.SCCP;
@@ -20,7 +20,7 @@ public class ParallelCopyInst extends IRInstruction {
 
     public ParallelCopyInst(BasicBlock basicBlock) {
         super(basicBlock);
-        moves = new HashSet<>();
+        moves = new LinkedHashSet<>();
     }
 
     public void appendMove(MoveInst moveInst) {
@@ -85,7 +85,7 @@ public class ParallelCopyInst extends IRInstruction {
     }
 
     @Override
-    public CSE.Expression convertToExpression() {
+    public GVN.Expression convertToExpression(GVN.ValueTable valueTable) {
         return null;
     }
 
@@ -10,7 +10,7 @@ import MxCompiler.IR.Operand.Parameter;
 import MxCompiler.IR.Operand.Register;
 import MxCompiler.IR.TypeSystem.PointerType;
 import MxCompiler.Optim.Andersen;
-import MxCompiler.Optim.CSE;
+import MxCompiler.Optim.GVN;
 import MxCompiler.Optim.LoopOptim.LICM;
 import MxCompiler.Optim.LoopOptim.LoopAnalysis;
 import MxCompiler.Optim.SCCP;
@@ -127,7 +127,7 @@ public class PhiInst extends IRInstruction {
     }
 
     @Override
-    public CSE.Expression convertToExpression() {
+    public GVN.Expression convertToExpression(GVN.ValueTable valueTable) {
         throw new RuntimeException("Convert phi instruction to expression");
     }
 
@@ -162,7 +162,7 @@ public class PhiInst extends IRInstruction {
             Operand operand = pair.getFirst();
             if (!(operand instanceof ConstNull)) {
                 assert nodeMap.containsKey(operand);
-                nodeMap.get(operand).getInclusiveEdge().add(nodeMap.get(result));
+                nodeMap.get(operand).addInclusiveEdge(nodeMap.get(result));
             }
         }
     }
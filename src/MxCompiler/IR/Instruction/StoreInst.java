@@ -7,7 +7,7 @@ import MxCompiler.IR.IRVisitor;
 import MxCompiler.IR.Operand.*;
 import MxCompiler.IR.TypeSystem.PointerType;
 import MxCompiler.Optim.Andersen;
-import MxCompiler.Optim.CSE;
+import MxCompiler.Optim.GVN;
 import MxCompiler.Optim.LoopOptim.LICM;
 import MxCompiler.Optim.LoopOptim.LoopAnalysis;
 import MxCompiler.Optim.SCCP;
@@ -88,7 +88,7 @@ public class StoreInst extends IRInstruction {
     }
 
     @Override
-    public CSE.Expression convertToExpression() {
+    public GVN.Expression convertToExpression(GVN.ValueTable valueTable) {
         throw new RuntimeException("Convert store instruction to expression.");
     }
 
@@ -114,7 +114,7 @@ public class StoreInst extends IRInstruction {
         if (!(pointer instanceof ConstNull) && !(value instanceof ConstNull)) {
             assert nodeMap.containsKey(pointer);
             assert nodeMap.containsKey(value);
-            nodeMap.get(pointer).getDereferenceRhs().add(nodeMap.get(value));
+            nodeMap.get(pointer).addDereferenceRhs(nodeMap.get(value));
         }
     }
 
@@ -5,6 +5,7 @@ import MxCompiler.IR.Operand.GlobalVariable;
 import MxCompiler.IR.Operand.Parameter;
 import MxCompiler.IR.TypeSystem.*;
 import MxCompiler.Type.TypeTable;
+import MxCompiler.Utilities.CompilationContext;
 
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
@@ -19,7 +20,14 @@ public class Module {
 
     private IRTypeTable irTypeTable;
 
-    public Module(TypeTable astTypeTable) {
+    private CompilationContext context;
+
+    // Whether strings are length-prefixed(see IRBuilder).
+    private boolean prefixedStrings;
+
+    public Module(TypeTable astTypeTable, CompilationContext context, boolean prefixedStrings) {
+        this.context = context;
+        this.prefixedStrings = prefixedStrings;
         functionMap = new LinkedHashMap<>();
         globalVariableMap = new LinkedHashMap<>();
         structureMap = new LinkedHashMap<>();
@@ -152,6 +160,27 @@ public class Module {
         externalFunctionMap.put(function.getName(), function);
         function.setSideEffect(false);
 
+        // Operations on length-prefixed strings, which compare lengths first and characters a word at a time.
+        // string __lstring_concatenate(string str1, string str2);
+        returnType = new PointerType(new IntegerType(IntegerType.BitWidth.int8));
+        parameters = new ArrayList<>();
+        parameters.add(new Parameter(new PointerType(new IntegerType(IntegerType.BitWidth.int8)), "str1"));
+        parameters.add(new Parameter(new PointerType(new IntegerType(IntegerType.BitWidth.int8)), "str2"));
+        function = new Function(this, "__lstring_concatenate", returnType, parameters, true);
+        externalFunctionMap.put(function.getName(), function);
+        function.setSideEffect(false);
+
+        // bool __lstring_equal(string str1, string str2); and so on.
+        for (String name : new String[]{"equal", "notEqual", "lessThan", "greaterThan", "lessEqual", "greaterEqual"}) {
+            returnType = new IntegerType(IntegerType.BitWidth.int1);
+            parameters = new ArrayList<>();
+            parameters.add(new Parameter(new PointerType(new IntegerType(IntegerType.BitWidth.int8)), "str1"));
+            parameters.add(new Parameter(new PointerType(new IntegerType(IntegerType.BitWidth.int8)), "str2"));
+            function = new Function(this, "__lstring_" + name, returnType, parameters, true);
+            externalFunctionMap.put(function.getName(), function);
+            function.setSideEffect(false);
+        }
+
         // int string.length(string str);
         returnType = new IntegerType(IntegerType.BitWidth.int32);
         parameters = new ArrayList<>();
@@ -194,6 +223,13 @@ public class Module {
         function = new Function(this, "__array_size", returnType, parameters, true);
         externalFunctionMap.put(function.getName(), function);
         function.setSideEffect(false);
+
+        // void __pgo_write(int value); Append a value to the profile of an instrumented program.
+        returnType = new VoidType();
+        parameters = new ArrayList<>();
+        parameters.add(new Parameter(new IntegerType(IntegerType.BitWidth.int32), "value"));
+        function = new Function(this, "__pgo_write", returnType, parameters, true);
+        externalFunctionMap.put(function.getName(), function);
     }
 
     public Map<String, Function> getFunctionMap() {
@@ -212,6 +248,14 @@ public class Module {
         return externalFunctionMap;
     }
 
+    public CompilationContext getContext() {
+        return context;
+    }
+
+    public boolean hasPrefixedStrings() {
+        return prefixedStrings;
+    }
+
     public IRTypeTable getIrTypeTable() {
         return irTypeTable;
     }
@@ -6,7 +6,7 @@ import MxCompiler.Type.*;
 import MxCompiler.Type.VoidType;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class IRTypeTable {
@@ -15,7 +15,7 @@ public class IRTypeTable {
 
     public IRTypeTable(Module module, TypeTable astTypeTable) {
         this.module = module;
-        typeTable = new HashMap<>();
+        typeTable = new LinkedHashMap<>();
 
         for (Type astType : astTypeTable.getTypeTable().values()) {
             if (astType instanceof IntType)
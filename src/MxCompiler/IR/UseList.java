@@ -0,0 +1,295 @@
+package MxCompiler.IR;
+
+import MxCompiler.IR.Instruction.IRInstruction;
+
+import java.util.*;
+
+// Use list of an IRObject: instruction -> number of its operands which are the object.
+// It behaves like the LinkedHashMap it replaces(iteration in insertion order, fail-fast iterators),
+// but is stored in two parallel arrays. Removed users leave holes, which are squeezed out when the
+// arrays are full. A list with more than linearSearchLimit slots is indexed by an open-addressing
+// table of slot numbers, hashed by the dense id of instructions(see IRInstruction.getId()).
+// Updating a use list allocates nothing unless the arrays grow.
+public class UseList extends AbstractMap<IRInstruction, Integer> {
+    static final private IRInstruction[] emptyUsers = new IRInstruction[0];
+    static final private int[] emptyCounts = new int[0];
+    static final private int linearSearchLimit = 8;
+
+    private IRInstruction[] users;
+    private int[] counts;
+    private int slots; // users[0 .. slots - 1] are in use, some of which may be holes(null).
+    private int size;
+    private int[] index; // slot + 1, 0 for empty. null if slots <= linearSearchLimit.
+    private int modCount;
+
+    private Set<IRInstruction> keySet;
+    private Set<Entry<IRInstruction, Integer>> entrySet;
+
+    public UseList() {
+        users = emptyUsers;
+        counts = emptyCounts;
+        slots = 0;
+        size = 0;
+        index = null;
+        modCount = 0;
+    }
+
+    public void add(IRInstruction instruction) {
+        int slot = find(instruction);
+        if (slot != -1) {
+            counts[slot]++;
+            return;
+        }
+
+        if (slots == users.length) {
+            if (size <= slots / 2 && slots > 0)
+                squeeze();
+            else
+                grow();
+        }
+        users[slots] = instruction;
+        counts[slots] = 1;
+        slots++;
+        size++;
+        modCount++;
+        if (index != null)
+            insertIndex(slots - 1);
+        else if (slots > linearSearchLimit)
+            rebuildIndex();
+    }
+
+    public void remove(IRInstruction instruction) {
+        int slot = find(instruction);
+        assert slot != -1 && counts[slot] > 0;
+        if (--counts[slot] > 0)
+            return;
+
+        if (index != null)
+            deleteIndex(slot);
+        users[slot] = null;
+        size--;
+        modCount++;
+        if (size == 0)
+            clear();
+    }
+
+    // Number of slots, including holes. Used for iterating without an iterator(see IRObject.replaceUse()).
+    int getSlots() {
+        return slots;
+    }
+
+    // null if the slot is a hole.
+    IRInstruction getUser(int slot) {
+        return users[slot];
+    }
+
+    int getCount(int slot) {
+        return counts[slot];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof IRInstruction && find((IRInstruction) key) != -1;
+    }
+
+    @Override
+    public Integer get(Object key) {
+        if (!(key instanceof IRInstruction))
+            return null;
+        int slot = find((IRInstruction) key);
+        return slot == -1 ? null : counts[slot];
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(users, 0, slots, null);
+        slots = 0;
+        size = 0;
+        index = null;
+        modCount++;
+    }
+
+    @Override
+    public Set<IRInstruction> keySet() {
+        if (keySet == null) {
+            keySet = new AbstractSet<IRInstruction>() {
+                @Override
+                public Iterator<IRInstruction> iterator() {
+                    return new UseIterator<IRInstruction>() {
+                        @Override
+                        IRInstruction get(int slot) {
+                            return users[slot];
+                        }
+                    };
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return containsKey(o);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return keySet;
+    }
+
+    @Override
+    public Set<Entry<IRInstruction, Integer>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<IRInstruction, Integer>>() {
+                @Override
+                public Iterator<Entry<IRInstruction, Integer>> iterator() {
+                    return new UseIterator<Entry<IRInstruction, Integer>>() {
+                        @Override
+                        Entry<IRInstruction, Integer> get(int slot) {
+                            return new SimpleImmutableEntry<>(users[slot], counts[slot]);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    abstract private class UseIterator<T> implements Iterator<T> {
+        private int next;
+        private int expectedModCount;
+
+        UseIterator() {
+            next = 0;
+            expectedModCount = modCount;
+            skipHoles();
+        }
+
+        abstract T get(int slot);
+
+        private void skipHoles() {
+            while (next < slots && users[next] == null)
+                next++;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < slots;
+        }
+
+        @Override
+        public T next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (next >= slots)
+                throw new NoSuchElementException();
+            T res = get(next);
+            next++;
+            skipHoles();
+            return res;
+        }
+    }
+
+    // Return the slot of instruction, or -1.
+    private int find(IRInstruction instruction) {
+        if (index == null) {
+            for (int i = 0; i < slots; i++) {
+                if (users[i] == instruction)
+                    return i;
+            }
+            return -1;
+        }
+
+        int mask = index.length - 1;
+        int pos = hash(instruction) & mask;
+        while (index[pos] != 0) {
+            int slot = index[pos] - 1;
+            if (users[slot] == instruction)
+                return slot;
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    static private int hash(IRInstruction instruction) {
+        return instruction.getId() * 0x9E3779B9 >>> 7;
+    }
+
+    private void grow() {
+        int capacity = Math.max(4, users.length * 2);
+        users = Arrays.copyOf(users, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        if (index != null)
+            rebuildIndex();
+    }
+
+    // Remove holes, keeping the order of users.
+    private void squeeze() {
+        int cnt = 0;
+        for (int i = 0; i < slots; i++) {
+            if (users[i] != null) {
+                users[cnt] = users[i];
+                counts[cnt] = counts[i];
+                cnt++;
+            }
+        }
+        Arrays.fill(users, cnt, slots, null);
+        slots = cnt;
+        if (slots > linearSearchLimit)
+            rebuildIndex();
+        else
+            index = null;
+    }
+
+    private void rebuildIndex() {
+        // The load factor is at most 1 / 2.
+        int capacity = users.length * 2;
+        if (index == null || index.length != capacity)
+            index = new int[capacity];
+        else
+            Arrays.fill(index, 0);
+        for (int i = 0; i < slots; i++) {
+            if (users[i] != null)
+                insertIndex(i);
+        }
+    }
+
+    private void insertIndex(int slot) {
+        int mask = index.length - 1;
+        int pos = hash(users[slot]) & mask;
+        while (index[pos] != 0)
+            pos = (pos + 1) & mask;
+        index[pos] = slot + 1;
+    }
+
+    // Linear probing with backward shift deletion, so that no tombstone is needed.
+    private void deleteIndex(int slot) {
+        int mask = index.length - 1;
+        int pos = hash(users[slot]) & mask;
+        while (index[pos] != slot + 1)
+            pos = (pos + 1) & mask;
+
+        int hole = pos;
+        pos = (pos + 1) & mask;
+        while (index[pos] != 0) {
+            int home = hash(users[index[pos] - 1]) & mask;
+            // Move the entry into the hole if its home is not in (hole, pos].
+            if (((pos - home) & mask) >= ((pos - hole) & mask)) {
+                index[hole] = index[pos];
+                hole = pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        index[hole] = 0;
+    }
+}
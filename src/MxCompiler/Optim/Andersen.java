@@ -8,45 +8,65 @@ import MxCompiler.IR.Operand.*;
 import MxCompiler.IR.TypeSystem.PointerType;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class Andersen extends Pass {
-    // TOT and CNT are used for calculating may-alias rate.
-    static public int TOT = 0;
-    static public int CNT = 0;
+// Inclusion-based points-to analysis.
+// Constraints are collected on Nodes(see IRInstruction.addConstraintsForAndersen()), and then solved on
+// dense node ids: memory locations(targets of "a -> b if loc(b) is in pts(a)") are numbered first, so
+// that a points-to set is a short BitSet of location ids.
+// The solver is a worklist algorithm with
+//   - difference propagation: a node only propagates locations added since it was last processed.
+//   - lazy cycle detection(Hardekopf & Lin, PLDI 2007): when a node and its successor have the same
+//     points-to set, cycles of inclusion edges are searched from the successor(Tarjan), and every cycle
+//     is collapsed into one node(union-find).
+public class Andersen extends Pass implements InterproceduralAnalysis {
+    // aliasQueries and mayAliasCnt are used for calculating may-alias rate(see getMayAliasRate()).
+    // mayAlias is queried in parallel, so they are atomic.
+    private AtomicLong aliasQueries;
+    private AtomicLong mayAliasCnt;
 
     public static class Node {
         private String name;
-        private Set<Node> pointsTo;         // a -> b if loc(b) is in pts(a)
-        private Set<Node> inclusiveEdge;    // a -> b if a <= b
-        private Set<Node> dereferenceLhs;   // a -> b if *a <= b
-        private Set<Node> dereferenceRhs;   // a -> b if b <= *a
+        private int id;
+        private boolean location;
+        private ArrayList<Node> pointsTo;         // a -> b if loc(b) is in pts(a)
+        private ArrayList<Node> inclusiveEdge;    // a -> b if a <= b
+        private ArrayList<Node> dereferenceLhs;   // a -> b if *a <= b
+        private ArrayList<Node> dereferenceRhs;   // a -> b if b <= *a
+
+        // Solution, shared by all nodes of a collapsed cycle.
+        private BitSet solution;
 
         public Node(String name) {
             this.name = name;
-            pointsTo = new HashSet<>();
-            inclusiveEdge = new HashSet<>();
-            dereferenceLhs = new HashSet<>();
-            dereferenceRhs = new HashSet<>();
         }
 
         public String getName() {
             return name;
         }
 
-        public Set<Node> getPointsTo() {
-            return pointsTo;
+        public void addPointsTo(Node node) {
+            pointsTo = addNode(pointsTo, node);
+            node.location = true;
+        }
+
+        public void addInclusiveEdge(Node node) {
+            inclusiveEdge = addNode(inclusiveEdge, node);
         }
 
-        public Set<Node> getInclusiveEdge() {
-            return inclusiveEdge;
+        public void addDereferenceLhs(Node node) {
+            dereferenceLhs = addNode(dereferenceLhs, node);
         }
 
-        public Set<Node> getDereferenceLhs() {
-            return dereferenceLhs;
+        public void addDereferenceRhs(Node node) {
+            dereferenceRhs = addNode(dereferenceRhs, node);
         }
 
-        public Set<Node> getDereferenceRhs() {
-            return dereferenceRhs;
+        static private ArrayList<Node> addNode(ArrayList<Node> list, Node node) {
+            if (list == null)
+                list = new ArrayList<>();
+            list.add(node);
+            return list;
         }
 
         @Override
@@ -55,11 +75,117 @@ public class Andersen extends Pass {
         }
     }
 
+    static private class IntList {
+        private int[] elements = new int[4];
+        private int size = 0;
+
+        void add(int x) {
+            if (size == elements.length)
+                elements = Arrays.copyOf(elements, size * 2);
+            elements[size++] = x;
+        }
+
+        void addAll(IntList list) {
+            for (int i = 0; i < list.size; i++)
+                add(list.elements[i]);
+        }
+
+        int get(int i) {
+            return elements[i];
+        }
+
+        int top() {
+            return elements[size - 1];
+        }
+
+        void setTop(int x) {
+            elements[size - 1] = x;
+        }
+
+        int pop() {
+            return elements[--size];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
+    // Set of edges(pairs of ids), by open addressing.
+    static private class EdgeSet {
+        private long[] table = new long[16];
+        private int size = 0;
+
+        EdgeSet() {
+            Arrays.fill(table, -1);
+        }
+
+        // Return false if the edge is already in the set.
+        boolean add(int from, int to) {
+            if (size * 2 >= table.length)
+                rehash();
+            long key = ((long) from << 32) | to;
+            int mask = table.length - 1;
+            int pos = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+            while (table[pos] != -1) {
+                if (table[pos] == key)
+                    return false;
+                pos = (pos + 1) & mask;
+            }
+            table[pos] = key;
+            size++;
+            return true;
+        }
+
+        private void rehash() {
+            long[] old = table;
+            table = new long[old.length * 2];
+            Arrays.fill(table, -1);
+            size = 0;
+            for (long key : old) {
+                if (key != -1)
+                    add((int) (key >>> 32), (int) key);
+            }
+        }
+    }
+
     private Set<Node> nodes;
     private Map<Operand, Node> nodeMap;
 
+    // Solver state, indexed by node id. Only representatives(rep[x] == x) have their own sets.
+    private Node[] idNodeMap;
+    private int locationCnt;
+    private int[] rep;
+    private BitSet[] pts;
+    private BitSet[] propagated;
+    private IntList[] inclusiveEdges;
+    private IntList[] loads;        // x -> y if *x <= y
+    private IntList[] stores;       // x -> y if y <= *x
+    private EdgeSet edgeSet;
+    private EdgeSet checkedEdges;   // Edges which have triggered cycle detection.
+    private IntList worklist;
+    private boolean[] inWorklist;
+    private int[] dfn;              // for cycle detection, 0 if not visited
+    private int[] low;
+    private boolean[] onStack;
+
+    // Digests of points-to sets used by every function, for finding the functions whose alias
+    // information changed since the last run(see pollAffectedFunctions()).
+    private Map<Function, Long> digestMap;
+    private Set<Function> affectedFunctions;
+
     public Andersen(Module module) {
         super(module);
+        aliasQueries = new AtomicLong();
+        mayAliasCnt = new AtomicLong();
+    }
+
+    public double getMayAliasRate() {
+        return 1.0 * mayAliasCnt.get() / aliasQueries.get();
     }
 
     @Override
@@ -69,14 +195,29 @@ public class Andersen extends Pass {
                 return false;
         }
 
-        nodes = new HashSet<>();
-        nodeMap = new HashMap<>();
+        nodes = new LinkedHashSet<>();
+        nodeMap = new LinkedHashMap<>();
         constructNode();
         addConstraints();
         runAndersen();
+        computeDigests();
         return false;
     }
 
+    @Override
+    public Set<Function> getChangedFunctions() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Function> pollAffectedFunctions() {
+        if (affectedFunctions == null)
+            return Collections.emptySet();
+        Set<Function> res = affectedFunctions;
+        affectedFunctions = new LinkedHashSet<>();
+        return res;
+    }
+
     private void constructNode() {
         for (GlobalVariable globalVariable : module.getGlobalVariableMap().values()) {
             Node node = new Node(globalVariable.getFullName());
@@ -114,7 +255,7 @@ public class Andersen extends Pass {
         for (GlobalVariable globalVariable : module.getGlobalVariableMap().values()) {
             Node pointer = nodeMap.get(globalVariable);
             Node pointTo = new Node(pointer.getName() + ".globalValue");
-            pointer.getPointsTo().add(pointTo);
+            pointer.addPointsTo(pointTo);
             nodes.add(pointTo);
         }
 
@@ -130,60 +271,313 @@ public class Andersen extends Pass {
     }
 
     private void runAndersen() {
-        Queue<Node> queue = new LinkedList<>();
-        Set<Node> inQueue = new HashSet<>();
+        numberNodes();
+        worklist = new IntList();
+        inWorklist = new boolean[idNodeMap.length];
+        for (int i = 0; i < idNodeMap.length; i++) {
+            if (!pts[i].isEmpty())
+                push(i);
+        }
+
+        while (!worklist.isEmpty()) {
+            IntList current = worklist;
+            worklist = new IntList();
+            for (int i = 0; i < current.size(); i++) {
+                int x = current.get(i);
+                inWorklist[x] = false;
+                if (rep[x] == x)
+                    propagate(x);
+            }
+        }
+
         for (Node node : nodes) {
-            if (!node.getPointsTo().isEmpty()) {
-                queue.offer(node);
-                inQueue.add(node);
-            }
-        }
-        while (!queue.isEmpty()) {
-            Node node = queue.poll();
-            inQueue.remove(node);
-            for (Node pointTo : node.getPointsTo()) {
-                for (Node lhs : node.getDereferenceLhs()) {
-                    if (!pointTo.getInclusiveEdge().contains(lhs)) {
-                        pointTo.getInclusiveEdge().add(lhs);
-                        if (!inQueue.contains(pointTo)) {
-                            queue.offer(pointTo);
-                            inQueue.add(pointTo);
-                        }
-                    }
-                }
-                for (Node rhs : node.getDereferenceRhs()) {
-                    if (!rhs.getInclusiveEdge().contains(pointTo)) {
-                        rhs.getInclusiveEdge().add(pointTo);
-                        if (!inQueue.contains(rhs)) {
-                            queue.offer(rhs);
-                            inQueue.add(rhs);
-                        }
-                    }
+            node.solution = pts[find(node.id)];
+            node.pointsTo = null;
+            node.inclusiveEdge = null;
+            node.dereferenceLhs = null;
+            node.dereferenceRhs = null;
+        }
+        rep = null;
+        pts = null;
+        propagated = null;
+        inclusiveEdges = null;
+        loads = null;
+        stores = null;
+        edgeSet = null;
+        checkedEdges = null;
+        worklist = null;
+        inWorklist = null;
+        dfn = null;
+        low = null;
+        onStack = null;
+    }
+
+    // Locations first, then the other nodes.
+    private void numberNodes() {
+        int n = nodes.size();
+        idNodeMap = new Node[n];
+        int cnt = 0;
+        for (Node node : nodes) {
+            if (node.location) {
+                node.id = cnt;
+                idNodeMap[cnt++] = node;
+            }
+        }
+        locationCnt = cnt;
+        for (Node node : nodes) {
+            if (!node.location) {
+                node.id = cnt;
+                idNodeMap[cnt++] = node;
+            }
+        }
+
+        rep = new int[n];
+        pts = new BitSet[n];
+        propagated = new BitSet[n];
+        inclusiveEdges = new IntList[n];
+        loads = new IntList[n];
+        stores = new IntList[n];
+        edgeSet = new EdgeSet();
+        checkedEdges = new EdgeSet();
+        dfn = new int[n];
+        low = new int[n];
+        onStack = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            rep[i] = i;
+            pts[i] = new BitSet();
+            propagated[i] = new BitSet();
+            inclusiveEdges[i] = new IntList();
+            loads[i] = new IntList();
+            stores[i] = new IntList();
+        }
+        for (Node node : nodes) {
+            int x = node.id;
+            if (node.pointsTo != null) {
+                for (Node pointTo : node.pointsTo)
+                    pts[x].set(pointTo.id);
+            }
+            if (node.inclusiveEdge != null) {
+                for (Node inclusive : node.inclusiveEdge) {
+                    if (inclusive.id != x && edgeSet.add(x, inclusive.id))
+                        inclusiveEdges[x].add(inclusive.id);
                 }
             }
-            for (Node inclusive : node.getInclusiveEdge()) {
-                if (inclusive.pointsTo.addAll(node.pointsTo)) {
-                    if (!inQueue.contains(inclusive)) {
-                        queue.offer(inclusive);
-                        inQueue.add(inclusive);
-                    }
+            if (node.dereferenceLhs != null) {
+                for (Node lhs : node.dereferenceLhs)
+                    loads[x].add(lhs.id);
+            }
+            if (node.dereferenceRhs != null) {
+                for (Node rhs : node.dereferenceRhs)
+                    stores[x].add(rhs.id);
+            }
+        }
+    }
+
+    private int find(int x) {
+        int root = x;
+        while (rep[root] != root)
+            root = rep[root];
+        while (rep[x] != root) {
+            int next = rep[x];
+            rep[x] = root;
+            x = next;
+        }
+        return root;
+    }
+
+    private void push(int x) {
+        x = find(x);
+        if (!inWorklist[x]) {
+            inWorklist[x] = true;
+            worklist.add(x);
+        }
+    }
+
+    // pts[to] |= set. Return true if pts[to] is changed.
+    private boolean union(int to, BitSet set) {
+        int cardinality = pts[to].cardinality();
+        pts[to].or(set);
+        return pts[to].cardinality() != cardinality;
+    }
+
+    // Add from <= to. The whole points-to set of from is propagated through the new edge.
+    private void addInclusiveEdge(int from, int to) {
+        from = find(from);
+        to = find(to);
+        if (from == to || !edgeSet.add(from, to))
+            return;
+        inclusiveEdges[from].add(to);
+        if (union(to, pts[from]))
+            push(to);
+    }
+
+    private void propagate(int x) {
+        BitSet delta = (BitSet) pts[x].clone();
+        delta.andNot(propagated[x]);
+        if (delta.isEmpty())
+            return;
+        propagated[x].or(delta);
+
+        for (int location = delta.nextSetBit(0); location >= 0; location = delta.nextSetBit(location + 1)) {
+            for (int i = 0; i < loads[x].size(); i++)
+                addInclusiveEdge(location, loads[x].get(i));
+            for (int i = 0; i < stores[x].size(); i++)
+                addInclusiveEdge(stores[x].get(i), location);
+        }
+
+        IntList edges = inclusiveEdges[x];
+        for (int i = 0; i < edges.size(); i++) {
+            int y = find(edges.get(i));
+            if (y == x)
+                continue;
+            if (union(y, delta))
+                push(y);
+            if (pts[y].equals(pts[x]) && checkedEdges.add(x, y)) {
+                collapseCycles(y);
+                if (find(x) != x)
+                    return; // x is collapsed, and its representative is in the worklist.
+            }
+        }
+    }
+
+    // Tarjan's algorithm on inclusion edges from start, collapsing every strongly connected component.
+    private void collapseCycles(int start) {
+        IntList visited = new IntList();
+        IntList stack = new IntList();
+        IntList callStack = new IntList();
+        IntList edgeIndex = new IntList();
+
+        visit(start, visited, stack, callStack, edgeIndex);
+        while (!callStack.isEmpty()) {
+            int x = callStack.top();
+            int i = edgeIndex.top();
+            if (i < inclusiveEdges[x].size()) {
+                edgeIndex.setTop(i + 1);
+                int y = find(inclusiveEdges[x].get(i));
+                if (dfn[y] == 0)
+                    visit(y, visited, stack, callStack, edgeIndex);
+                else if (onStack[y])
+                    low[x] = Math.min(low[x], dfn[y]);
+                continue;
+            }
+
+            callStack.pop();
+            edgeIndex.pop();
+            if (!callStack.isEmpty()) {
+                int father = callStack.top();
+                low[father] = Math.min(low[father], low[x]);
+            }
+            if (low[x] == dfn[x]) {
+                int y;
+                do {
+                    y = stack.pop();
+                    onStack[y] = false;
+                    if (y != x)
+                        merge(x, y);
+                } while (y != x);
+            }
+        }
+
+        for (int i = 0; i < visited.size(); i++)
+            dfn[visited.get(i)] = 0;
+    }
+
+    private void visit(int x, IntList visited, IntList stack, IntList callStack, IntList edgeIndex) {
+        visited.add(x);
+        dfn[x] = visited.size();
+        low[x] = visited.size();
+        stack.add(x);
+        onStack[x] = true;
+        callStack.add(x);
+        edgeIndex.add(0);
+    }
+
+    // Collapse y into x.
+    private void merge(int x, int y) {
+        rep[y] = x;
+        pts[x].or(pts[y]);
+        // Locations in pts[y] have not been propagated through edges of x, so propagate everything again.
+        propagated[x].clear();
+        inclusiveEdges[x].addAll(inclusiveEdges[y]);
+        loads[x].addAll(loads[y]);
+        stores[x].addAll(stores[y]);
+        pts[y] = null;
+        propagated[y] = null;
+        inclusiveEdges[y] = null;
+        loads[y] = null;
+        stores[y] = null;
+        push(x);
+    }
+
+    private void computeDigests() {
+        if (digestMap == null)
+            digestMap = new LinkedHashMap<>();
+        if (affectedFunctions == null)
+            affectedFunctions = new LinkedHashSet<>();
+
+        // Every function may use global variables.
+        long globalDigest = 0;
+        for (GlobalVariable globalVariable : module.getGlobalVariableMap().values())
+            globalDigest += computeDigest(nodeMap.get(globalVariable));
+
+        Map<Function, Long> newDigestMap = new LinkedHashMap<>();
+        for (Function function : module.getFunctionMap().values()) {
+            long digest = globalDigest;
+            for (Parameter parameter : function.getParameters()) {
+                if (nodeMap.containsKey(parameter))
+                    digest += computeDigest(nodeMap.get(parameter));
+            }
+            for (BasicBlock block : function.getBlocks()) {
+                IRInstruction ptr = block.getInstHead();
+                while (ptr != null) {
+                    if (ptr.hasResult() && nodeMap.containsKey(ptr.getResult()))
+                        digest += computeDigest(nodeMap.get(ptr.getResult()));
+                    ptr = ptr.getInstNext();
                 }
             }
+            newDigestMap.put(function, digest);
+
+            // A function changed by other passes is optimized again anyway.
+            if (digestMap.containsKey(function) && digestMap.get(function) != digest)
+                affectedFunctions.add(function);
         }
+        digestMap = newDigestMap;
+    }
+
+    // Names of nodes are unique in a module, so the digest does not depend on the numbering of nodes.
+    private long computeDigest(Node node) {
+        long res = 0;
+        for (int i = node.solution.nextSetBit(0); i >= 0; i = node.solution.nextSetBit(i + 1))
+            res += idNodeMap[i].getName().hashCode();
+        return res * 31 + node.getName().hashCode();
     }
 
+    // Points-to sets are read only after solving, so that mayAlias may be queried in parallel.
     public boolean mayAlias(Operand op1, Operand op2) {
         if (op1 instanceof ConstNull || op2 instanceof ConstNull)
             return false;
-//        TOT++;
+//        aliasQueries.incrementAndGet();
         if (!op1.getType().equals(op2.getType()))
             return false;
         assert nodeMap.containsKey(op1);
         assert nodeMap.containsKey(op2);
-        Set<Node> pointsTo1 = nodeMap.get(op1).getPointsTo();
-        Set<Node> pointsTo2 = nodeMap.get(op2).getPointsTo();
-//        if (!Collections.disjoint(pointsTo1, pointsTo2))
-//            CNT++;
-        return !Collections.disjoint(pointsTo1, pointsTo2);
+        BitSet pointsTo1 = nodeMap.get(op1).solution;
+        BitSet pointsTo2 = nodeMap.get(op2).solution;
+//        if (pointsTo1.intersects(pointsTo2))
+//            mayAliasCnt.incrementAndGet();
+        return pointsTo1.intersects(pointsTo2);
+    }
+
+    // Location ids in the points-to set of op, or null if op is unknown to the last run.
+    // The returned set must not be modified.
+    public BitSet getPointsTo(Operand op) {
+        if (op instanceof ConstNull || nodeMap == null || !nodeMap.containsKey(op))
+            return null;
+        return nodeMap.get(op).solution;
+    }
+
+    // Location ids are in [0, getLocationCount()).
+    public int getLocationCount() {
+        return locationCnt;
     }
 }
@@ -10,26 +10,14 @@ import MxCompiler.IR.Operand.ConstBool;
 
 import java.util.ArrayList;
 
-public class CFGSimplifier extends Pass {
+public class CFGSimplifier extends FunctionPass {
     public CFGSimplifier(Module module) {
         super(module);
         changed = false;
     }
 
     @Override
-    public boolean run() {
-        for (Function function : module.getFunctionMap().values()) {
-            if (function.isNotFunctional())
-                return false;
-        }
-
-        changed = false;
-        for (Function function : module.getFunctionMap().values())
-            changed |= functionSimplify(function);
-        return changed;
-    }
-
-    private boolean functionSimplify(Function function) {
+    protected boolean runOnFunction(Function function) {
         boolean changed = false;
         while (true) {
             boolean loopChanged;
@@ -6,13 +6,13 @@ import MxCompiler.IR.Instruction.*;
 import MxCompiler.IR.Module;
 import MxCompiler.Optim.LoopOptim.LoopAnalysis;
 
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.Queue;
 import java.util.Set;
 
 
-public class DeadCodeEliminator extends Pass {
+public class DeadCodeEliminator extends FunctionPass {
     private SideEffectChecker sideEffectChecker;
     private LoopAnalysis loopAnalysis;
 
@@ -23,24 +23,19 @@ public class DeadCodeEliminator extends Pass {
     }
 
     @Override
-    public boolean run() {
-        for (Function function : module.getFunctionMap().values()) {
-            if (function.isNotFunctional())
-                return false;
-        }
+    protected boolean initialize() {
+        if (!super.initialize())
+            return false;
 
-        changed = false;
         sideEffectChecker.setIgnoreIO(false);
         sideEffectChecker.setIgnoreLoad(true);
         sideEffectChecker.run();
-
-        for (Function function : module.getFunctionMap().values())
-            changed |= deadCodeElimination(function);
-        return changed;
+        return true;
     }
 
-    private boolean deadCodeElimination(Function function) {
-        Set<IRInstruction> live = new HashSet<>();
+    @Override
+    protected boolean runOnFunction(Function function) {
+        Set<IRInstruction> live = new LinkedHashSet<>();
         Queue<IRInstruction> queue = new LinkedList<>();
         for (BasicBlock block : function.getBlocks())
             addLiveInstructions(block, live, queue);
@@ -11,38 +11,38 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.*;
 
-public class DominatorTreeConstructor extends Pass {
-    private Map<BasicBlock, Pair<BasicBlock, BasicBlock>> disjointSet; // first for father
-                                                                       // second for the min semi dom dfn node.
-
+public class DominatorTreeConstructor extends FunctionPass {
     public DominatorTreeConstructor(Module module) {
         super(module);
     }
 
     @Override
-    public boolean run() {
-        for (Function function : module.getFunctionMap().values()) {
-            if (function.isNotFunctional())
-                return false;
-        }
+    protected boolean runOnFunction(Function function) {
+        constructDominatorTree(function);
+        constructDominanceFrontier(function);
+        constructPostDominatorTree(function);
+        constructPostDominanceFrontier(function);
+        return true;
+    }
 
-        for (Function function : module.getFunctionMap().values()) {
-            constructDominatorTree(function);
-            constructDominanceFrontier(function);
-        }
-        for (Function function : module.getFunctionMap().values()) {
-            constructPostDominatorTree(function);
-            constructPostDominanceFrontier(function);
-        }
+    @Override
+    protected boolean finish(boolean changed) {
 //        print();
         return true;
     }
 
-    private Pair<BasicBlock, BasicBlock> updateDisjointSet(BasicBlock block) {
+    @Override
+    public boolean isCFGAnalysis() {
+        return true;
+    }
+
+    // disjointSet: first for father, second for the min semi dom dfn node.
+    private Pair<BasicBlock, BasicBlock> updateDisjointSet(BasicBlock block,
+                                                           Map<BasicBlock, Pair<BasicBlock, BasicBlock>> disjointSet) {
         Pair<BasicBlock, BasicBlock> pair = disjointSet.get(block);
         if (pair.getFirst() == block)
             return new Pair<>(block, block);
-        Pair<BasicBlock, BasicBlock> res = updateDisjointSet(pair.getFirst());
+        Pair<BasicBlock, BasicBlock> res = updateDisjointSet(pair.getFirst(), disjointSet);
         BasicBlock father = res.getFirst();
         BasicBlock minSemiDomDfnNode = res.getSecond();
 
@@ -54,7 +54,7 @@ public class DominatorTreeConstructor extends Pass {
 
     private void constructDominatorTree(Function function) {
         ArrayList<BasicBlock> dfsOrder = function.getDFSOrder();
-        disjointSet = new HashMap<>();
+        Map<BasicBlock, Pair<BasicBlock, BasicBlock>> disjointSet = new LinkedHashMap<>();
         for (BasicBlock block : dfsOrder) {
             disjointSet.put(block, new Pair<>(block, block));
             block.setIdom(null);
@@ -71,7 +71,7 @@ public class DominatorTreeConstructor extends Pass {
                     if (predecessor.getDfn() < block.getSemiDom().getDfn())
                         block.setSemiDom(predecessor);
                 } else {
-                    Pair<BasicBlock, BasicBlock> updateResult = updateDisjointSet(predecessor);
+                    Pair<BasicBlock, BasicBlock> updateResult = updateDisjointSet(predecessor, disjointSet);
                     if (updateResult.getSecond().getSemiDom().getDfn() < block.getSemiDom().getDfn())
                         block.setSemiDom(updateResult.getSecond().getSemiDom());
                 }
@@ -82,7 +82,7 @@ public class DominatorTreeConstructor extends Pass {
             disjointSet.get(block).setFirst(father);
 
             for (BasicBlock semiDomChild : father.getSemiDomChildren()) {
-                Pair<BasicBlock, BasicBlock> updateResult = updateDisjointSet(semiDomChild);
+                Pair<BasicBlock, BasicBlock> updateResult = updateDisjointSet(semiDomChild, disjointSet);
                 if (updateResult.getSecond().getSemiDom() == semiDomChild.getSemiDom())
                     semiDomChild.setIdom(semiDomChild.getSemiDom());
                 else
@@ -96,7 +96,7 @@ public class DominatorTreeConstructor extends Pass {
                 block.setIdom(block.getIdom().getIdom());
         }
         for (BasicBlock block : dfsOrder) {
-            HashSet<BasicBlock> strictDominators = new HashSet<>();
+            HashSet<BasicBlock> strictDominators = new LinkedHashSet<>();
             BasicBlock ptr = block.getIdom();
             while (ptr != null) {
                 strictDominators.add(ptr);
@@ -109,7 +109,7 @@ public class DominatorTreeConstructor extends Pass {
     private void constructDominanceFrontier(Function function) {
         ArrayList<BasicBlock> blocks = function.getBlocks();
         for (BasicBlock block : blocks)
-            block.setDF(new HashSet<>());
+            block.setDF(new LinkedHashSet<>());
 
         for (BasicBlock block : blocks)
             for (BasicBlock predecessor : block.getPredecessors()) {
@@ -123,7 +123,7 @@ public class DominatorTreeConstructor extends Pass {
 
     private void constructPostDominatorTree(Function function) {
         ArrayList<BasicBlock> reverseDfsOrder = function.getReverseDFSOrder();
-        disjointSet = new HashMap<>();
+        Map<BasicBlock, Pair<BasicBlock, BasicBlock>> disjointSet = new LinkedHashMap<>();
         for (BasicBlock block : reverseDfsOrder) {
             disjointSet.put(block, new Pair<>(block, block));
             block.setPostIdom(null);
@@ -140,7 +140,7 @@ public class DominatorTreeConstructor extends Pass {
                     if (successor.getReverseDfn() < block.getPostSemiDom().getReverseDfn())
                         block.setPostSemiDom(successor);
                 } else {
-                    Pair<BasicBlock, BasicBlock> updateResult = updateDisjointSet(successor);
+                    Pair<BasicBlock, BasicBlock> updateResult = updateDisjointSet(successor, disjointSet);
                     if (updateResult.getSecond().getPostSemiDom().getReverseDfn()
                             < block.getPostSemiDom().getReverseDfn())
                         block.setPostSemiDom(updateResult.getSecond().getPostSemiDom());
@@ -152,7 +152,7 @@ public class DominatorTreeConstructor extends Pass {
             disjointSet.get(block).setFirst(father);
 
             for (BasicBlock postSemiDomChild : father.getPostSemiDomChildren()) {
-                Pair<BasicBlock, BasicBlock> updateResult = updateDisjointSet(postSemiDomChild);
+                Pair<BasicBlock, BasicBlock> updateResult = updateDisjointSet(postSemiDomChild, disjointSet);
                 if (updateResult.getSecond().getPostSemiDom() == postSemiDomChild.getPostSemiDom())
                     postSemiDomChild.setPostIdom(postSemiDomChild.getPostSemiDom());
                 else
@@ -166,7 +166,7 @@ public class DominatorTreeConstructor extends Pass {
                 block.setPostIdom(block.getPostIdom().getPostIdom());
         }
         for (BasicBlock block : reverseDfsOrder) {
-            HashSet<BasicBlock> postStrictDominators = new HashSet<>();
+            HashSet<BasicBlock> postStrictDominators = new LinkedHashSet<>();
             BasicBlock ptr = block.getPostIdom();
             while (ptr != null) {
                 postStrictDominators.add(ptr);
@@ -179,7 +179,7 @@ public class DominatorTreeConstructor extends Pass {
     private void constructPostDominanceFrontier(Function function) {
         ArrayList<BasicBlock> blocks = function.getBlocks();
         for (BasicBlock block : blocks)
-            block.setPostDF(new HashSet<>());
+            block.setPostDF(new LinkedHashSet<>());
 
         for (BasicBlock block : blocks)
             for (BasicBlock successor : block.getSuccessors()) {
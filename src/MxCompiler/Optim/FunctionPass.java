@@ -0,0 +1,41 @@
+package MxCompiler.Optim;
+
+import MxCompiler.IR.Function;
+import MxCompiler.IR.Module;
+
+// A pass which transforms every function without looking into other functions.
+// PassManager may call runOnFunction() on different functions in parallel, so any per-function
+// state must be kept in local variables(or in concurrent containers).
+abstract public class FunctionPass extends Pass {
+    public FunctionPass(Module module) {
+        super(module);
+    }
+
+    // Called once before any function is visited. Module-level work(e.g. running SideEffectChecker)
+    // belongs here. Return false to skip the whole pass.
+    protected boolean initialize() {
+        for (Function function : module.getFunctionMap().values()) {
+            if (function.isNotFunctional())
+                return false;
+        }
+        return true;
+    }
+
+    abstract protected boolean runOnFunction(Function function);
+
+    // Compute the return value of run() from whether any function changed.
+    protected boolean finish(boolean changed) {
+        return changed;
+    }
+
+    @Override
+    public boolean run() {
+        if (!initialize())
+            return false;
+
+        changed = false;
+        for (Function function : module.getFunctionMap().values())
+            changed |= runOnFunction(function);
+        return finish(changed);
+    }
+}
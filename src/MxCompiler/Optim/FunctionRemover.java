@@ -16,7 +16,7 @@ public class FunctionRemover extends Pass {
     @Override
     public boolean run() {
         Function mainFunction = module.getFunctionMap().get("main");
-        Set<Function> functionSet = new HashSet<>();
+        Set<Function> functionSet = new LinkedHashSet<>();
         Queue<Function> queue = new LinkedList<>();
         functionSet.add(mainFunction);
         queue.offer(mainFunction);
@@ -39,7 +39,7 @@ public class FunctionRemover extends Pass {
         }
 
         changed = false;
-        Set<String> removeSet = new HashSet<>();
+        Set<String> removeSet = new LinkedHashSet<>();
         for (Map.Entry<String, Function> entry : module.getFunctionMap().entrySet()) {
             if (!functionSet.contains(entry.getValue()))
                 removeSet.add(entry.getKey());
@@ -48,4 +48,10 @@ public class FunctionRemover extends Pass {
             module.getFunctionMap().remove(name);
         return changed;
     }
+
+    @Override
+    public Set<Function> getChangedFunctions() {
+        // Removed functions are never visited again, and the others are not changed.
+        return Collections.emptySet();
+    }
 }
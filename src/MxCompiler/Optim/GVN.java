@@ -0,0 +1,352 @@
+// ------ Global Value Numbering ------
+
+package MxCompiler.Optim;
+
+import MxCompiler.IR.BasicBlock;
+import MxCompiler.IR.Function;
+import MxCompiler.IR.Instruction.*;
+import MxCompiler.IR.Module;
+import MxCompiler.IR.Operand.*;
+import MxCompiler.IR.TypeSystem.IntegerType;
+import MxCompiler.Utilities.Pair;
+
+import java.util.*;
+
+// Optimistic value numbering over the whole function(Simpson's RPO algorithm, in the DFS order of blocks,
+// where definitions come before uses except in phis), followed by elimination in the dominator tree.
+// Every operand has a dense id. The value number of an operand is the id of the first operand computing
+// the same value, or TOP(not known yet, assumed to be equal to anything).
+//   - Expressions(see IRInstruction.convertToExpression()) are keyed by value numbers of operands, with
+//     commutative operations ordered.
+//   - Operations on constants are folded as in SCCP.
+//   - A phi whose incoming values are all the same(ignoring TOP and itself) has that value. Phis in the same
+//     block with the same incoming values are congruent.
+// The numbering is repeated until no value number changes, so that values flowing around loops are handled.
+// Loads are eliminated by LoadEliminator instead.
+public class GVN extends FunctionPass {
+    static final public int TOP = -1;
+    static final private int maxIterations = 64;
+
+    static public class Expression {
+        private String instructionName;
+        private int[] operands;
+        private Object attribute; // e.g. the result type of bitcast, or the block of phi
+        private int hash;
+
+        public Expression(String instructionName, int[] operands, Object attribute) {
+            this.instructionName = instructionName;
+            this.operands = operands;
+            this.attribute = attribute;
+            // attribute is left out, since types are compared by strings(see IRType.equals()).
+            this.hash = instructionName.hashCode() * 31 + Arrays.hashCode(operands);
+        }
+
+        public String getInstructionName() {
+            return instructionName;
+        }
+
+        private boolean hasTop() {
+            for (int operand : operands) {
+                if (operand == TOP)
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Expression))
+                return false;
+            Expression other = ((Expression) obj);
+            return hash == other.hash
+                    && instructionName.equals(other.instructionName)
+                    && Arrays.equals(operands, other.operands)
+                    && Objects.equals(attribute, other.attribute);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return instructionName + " " + Arrays.toString(operands);
+        }
+    }
+
+    // Ids and value numbers of operands in one function.
+    static public class ValueTable {
+        private Map<Operand, Integer> idMap;
+        private Map<Object, Integer> constantIdMap;
+        private ArrayList<Operand> operands;
+        private int[] valueNumbers;
+
+        ValueTable() {
+            idMap = new LinkedHashMap<>();
+            constantIdMap = new LinkedHashMap<>();
+            operands = new ArrayList<>();
+            valueNumbers = new int[16];
+        }
+
+        private int newId(Operand operand, int valueNumber) {
+            int id = operands.size();
+            operands.add(operand);
+            if (id == valueNumbers.length)
+                valueNumbers = Arrays.copyOf(valueNumbers, id * 2);
+            valueNumbers[id] = valueNumber;
+            return id;
+        }
+
+        int getId(Operand operand) {
+            if (operand instanceof Constant) {
+                Object key;
+                if (operand instanceof ConstInt) {
+                    // Bit width is kept, so that i8 and i32 constants are not mixed up.
+                    IntegerType type = ((IntegerType) operand.getType());
+                    key = ((ConstInt) operand).getValue() * 4 + type.getBitWidth().ordinal();
+                } else if (operand instanceof ConstBool)
+                    key = ((ConstBool) operand).getValue();
+                else if (operand instanceof ConstNull)
+                    key = ConstNull.class;
+                else
+                    key = operand;
+                Integer id = constantIdMap.get(key);
+                if (id == null) {
+                    id = newId(operand, operands.size());
+                    constantIdMap.put(key, id);
+                }
+                return id;
+            }
+
+            Integer id = idMap.get(operand);
+            if (id == null) {
+                // Parameters and global variables are values of their own, while registers start from TOP.
+                id = newId(operand, operand instanceof Register ? TOP : operands.size());
+                idMap.put(operand, id);
+            }
+            return id;
+        }
+
+        public int getValueNumber(Operand operand) {
+            int id = getId(operand); // valueNumbers may grow.
+            return valueNumbers[id];
+        }
+
+        // Return true if the value number changes.
+        private boolean setValueNumber(Operand operand, int valueNumber) {
+            int id = getId(operand);
+            if (valueNumbers[id] == valueNumber)
+                return false;
+            valueNumbers[id] = valueNumber;
+            return true;
+        }
+
+        private Operand getOperand(int valueNumber) {
+            return operands.get(valueNumber);
+        }
+
+        private Constant getConstant(int valueNumber) {
+            Operand operand = operands.get(valueNumber);
+            return operand instanceof Constant ? ((Constant) operand) : null;
+        }
+    }
+
+    public GVN(Module module) {
+        super(module);
+    }
+
+    @Override
+    protected boolean runOnFunction(Function function) {
+        if (function.isNotFunctional())
+            return false;
+        ValueTable valueTable = new ValueTable();
+        ArrayList<BasicBlock> blocks = function.getDFSOrder();
+        if (!numberValues(blocks, valueTable))
+            return false;
+        return eliminate(blocks, valueTable);
+    }
+
+    // Return false if the numbering does not converge, which has not been observed.
+    private boolean numberValues(ArrayList<BasicBlock> blocks, ValueTable valueTable) {
+        for (int i = 0; i < maxIterations; i++) {
+            boolean changed = false;
+            Map<Expression, Integer> expressionMap = new LinkedHashMap<>();
+            for (BasicBlock block : blocks) {
+                IRInstruction ptr = block.getInstHead();
+                while (ptr != null) {
+                    if (ptr.hasResult())
+                        changed |= valueTable.setValueNumber(ptr.getResult(),
+                                numberInstruction(ptr, valueTable, expressionMap));
+                    ptr = ptr.getInstNext();
+                }
+            }
+            if (!changed)
+                return true;
+        }
+        return false;
+    }
+
+    private int numberInstruction(IRInstruction instruction, ValueTable valueTable,
+                                  Map<Expression, Integer> expressionMap) {
+        int self = valueTable.getId(instruction.getResult());
+        Expression expression;
+        if (instruction instanceof PhiInst)
+            return numberPhi(((PhiInst) instruction), self, valueTable, expressionMap);
+        else if (instruction.canConvertToExpression()) {
+            expression = instruction.convertToExpression(valueTable);
+            if (expression.hasTop())
+                return TOP;
+            Constant constant = foldConstant(instruction, expression, valueTable);
+            if (constant != null)
+                return valueTable.getId(constant);
+            expression = getCanonicalForm(expression);
+        } else
+            return self;
+        return lookupExpression(expression, self, expressionMap);
+    }
+
+    private int lookupExpression(Expression expression, int self, Map<Expression, Integer> expressionMap) {
+        Integer valueNumber = expressionMap.get(expression);
+        if (valueNumber == null) {
+            expressionMap.put(expression, self);
+            return self;
+        }
+        return valueNumber;
+    }
+
+    private int numberPhi(PhiInst phi, int self, ValueTable valueTable, Map<Expression, Integer> expressionMap) {
+        BasicBlock block = phi.getBasicBlock();
+        // Incoming values in the order of predecessors, so that phis in the same block can be compared.
+        int[] incoming = new int[block.getPredecessors().size()];
+        int cnt = 0;
+        for (BasicBlock predecessor : block.getPredecessors()) {
+            incoming[cnt] = TOP;
+            for (Pair<Operand, BasicBlock> pair : phi.getBranch()) {
+                if (pair.getSecond() == predecessor) {
+                    incoming[cnt] = valueTable.getValueNumber(pair.getFirst());
+                    break;
+                }
+            }
+            cnt++;
+        }
+
+        int value = TOP;
+        boolean same = true;
+        boolean hasTop = false;
+        for (int valueNumber : incoming) {
+            if (valueNumber == TOP)
+                hasTop = true;
+            else if (valueNumber != self) {
+                if (value == TOP)
+                    value = valueNumber;
+                else if (value != valueNumber)
+                    same = false;
+            }
+        }
+        if (same)
+            return value;
+        if (hasTop)
+            return self;
+        return lookupExpression(new Expression("phi", incoming, block), self, expressionMap);
+    }
+
+    private Constant foldConstant(IRInstruction instruction, Expression expression, ValueTable valueTable) {
+        if (instruction instanceof BinaryOpInst || instruction instanceof IcmpInst) {
+            Constant lhs = valueTable.getConstant(expression.operands[0]);
+            Constant rhs = valueTable.getConstant(expression.operands[1]);
+            if (lhs == null || rhs == null)
+                return null;
+            // If the binary operation will cause any error, the result will be null.
+            return SCCP.foldConstant(instruction, lhs, rhs);
+        } else if (instruction instanceof BitCastToInst) {
+            Constant src = valueTable.getConstant(expression.operands[0]);
+            if (src == null)
+                return null;
+            return src instanceof ConstNull
+                    ? new ConstNull()
+                    : src.castToType(((BitCastToInst) instruction).getObjectType());
+        }
+        return null;
+    }
+
+    static private boolean isCommutable(String instructionName) {
+        return instructionName.equals("add")
+                || instructionName.equals("mul")
+                || instructionName.equals("and")
+                || instructionName.equals("or")
+                || instructionName.equals("xor")
+                || instructionName.equals("eq")
+                || instructionName.equals("ne")
+                || instructionName.equals("sgt")
+                || instructionName.equals("sge")
+                || instructionName.equals("slt")
+                || instructionName.equals("sle");
+    }
+
+    // Order the operands of a commutable operation by value number.
+    private Expression getCanonicalForm(Expression expression) {
+        if (!isCommutable(expression.instructionName))
+            return expression;
+        assert expression.operands.length == 2;
+        if (expression.operands[0] <= expression.operands[1])
+            return expression;
+        int[] operands = new int[]{expression.operands[1], expression.operands[0]};
+        switch (expression.instructionName) {
+            case "sgt":
+                return new Expression("slt", operands, expression.attribute);
+            case "sge":
+                return new Expression("sle", operands, expression.attribute);
+            case "slt":
+                return new Expression("sgt", operands, expression.attribute);
+            case "sle":
+                return new Expression("sge", operands, expression.attribute);
+            default:
+                return new Expression(expression.instructionName, operands, expression.attribute);
+        }
+    }
+
+    private boolean eliminate(ArrayList<BasicBlock> blocks, ValueTable valueTable) {
+        boolean changed = false;
+        Map<Integer, ArrayList<Register>> leaderMap = new LinkedHashMap<>();
+        for (BasicBlock block : blocks) {
+            IRInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                IRInstruction next = ptr.getInstNext();
+                if (ptr.hasResult()) {
+                    Register result = ptr.getResult();
+                    int valueNumber = valueTable.getValueNumber(result);
+                    int self = valueTable.getId(result);
+                    Operand leader = null;
+                    if (valueNumber != TOP && valueNumber != self) {
+                        Operand operand = valueTable.getOperand(valueNumber);
+                        if (!(operand instanceof Register))
+                            leader = operand; // a constant, a parameter or a global variable
+                        else
+                            leader = lookupLeader(block, leaderMap.get(valueNumber));
+                    }
+
+                    if (leader != null) {
+                        result.replaceUse(leader);
+                        ptr.removeFromBlock();
+                        changed = true;
+                    } else if (valueNumber != TOP) {
+                        leaderMap.computeIfAbsent(valueNumber, k -> new ArrayList<>()).add(result);
+                    }
+                }
+                ptr = next;
+            }
+        }
+        return changed;
+    }
+
+    private Register lookupLeader(BasicBlock block, ArrayList<Register> registers) {
+        if (registers == null)
+            return null;
+        for (Register register : registers) {
+            if (register.getDef().getBasicBlock().dominate(block))
+                return register;
+        }
+        return null;
+    }
+}
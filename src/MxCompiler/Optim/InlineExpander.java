@@ -15,10 +15,18 @@ import MxCompiler.Utilities.Pair;
 import java.util.*;
 
 public class InlineExpander extends Pass {
-    private final int instructionLimit = 120;
-
+    static final public int instructionLimit = 120;
+    // With a profile(see ProfileAnnotator), callees of hot call sites may be larger unless the caller is large,
+    // while cold(never executed) call sites are only inlined if the callee is tiny.
+    static final private int hotInstructionLimit = 3 * instructionLimit;
+    static final private int hotCallerLimit = 8 * instructionLimit;
+    static final private int coldInstructionLimit = 16;
+    static final private int hotRatio = 10;
+
+    private long maxCallCount;
     private Map<Function, Integer> instructionCnt;
     private Map<Function, Set<Function>> recursiveCalleeMap;
+    private Set<Function> changedFunctions;
 
     public InlineExpander(Module module) {
         super(module);
@@ -31,11 +39,13 @@ public class InlineExpander extends Pass {
                 return false;
         }
 
-        instructionCnt = new HashMap<>();
-        recursiveCalleeMap = new HashMap<>();
+        instructionCnt = new LinkedHashMap<>();
+        recursiveCalleeMap = new LinkedHashMap<>();
+        changedFunctions = new LinkedHashSet<>();
         for (Function function : module.getFunctionMap().values())
-            recursiveCalleeMap.put(function, new HashSet<>());
+            recursiveCalleeMap.put(function, new LinkedHashSet<>());
 
+        maxCallCount = 0;
         for (Function function : module.getFunctionMap().values())
             countInstructionsAndCalls(function);
         for (Function function : module.getFunctionMap().values())
@@ -47,6 +57,11 @@ public class InlineExpander extends Pass {
         return false;
     }
 
+    @Override
+    public Set<Function> getChangedFunctions() {
+        return changedFunctions;
+    }
+
     private void countInstructionsAndCalls(Function function) {
         int instructionCnt = 0;
         for (BasicBlock block : function.getBlocks()) {
@@ -55,8 +70,10 @@ public class InlineExpander extends Pass {
                 instructionCnt++;
                 if (ptr instanceof CallInst) {
                     Function callee = ((CallInst) ptr).getFunction();
-                    if (!module.getExternalFunctionMap().containsValue(callee))
+                    if (!module.getExternalFunctionMap().containsValue(callee)) {
                         recursiveCalleeMap.get(function).add(callee);
+                        maxCallCount = Long.max(maxCallCount, ((CallInst) ptr).getProfileCount());
+                    }
                 }
                 ptr = ptr.getInstNext();
             }
@@ -81,26 +98,56 @@ public class InlineExpander extends Pass {
         }
     }
 
-    private boolean canBeNonRecursiveInlined(Function callee, Function caller) {
+    private int getInstructionLimit(CallInst callInst, Function caller) {
+        long count = callInst.getProfileCount();
+        if (count < 0)
+            return instructionLimit;
+        else if (count == 0)
+            return coldInstructionLimit;
+        else if (count * hotRatio >= maxCallCount && instructionCnt.get(caller) < hotCallerLimit)
+            return hotInstructionLimit;
+        else
+            return instructionLimit;
+    }
+
+    private boolean canBeNonRecursiveInlined(Function callee, Function caller, CallInst callInst) {
         if (caller.isNotFunctional() || callee.isNotFunctional())
             return false;
-        return instructionCnt.get(callee) < instructionLimit
+        return instructionCnt.get(callee) < getInstructionLimit(callInst, caller)
                 && callee != caller
                 && !recursiveCalleeMap.get(callee).contains(callee);
     }
 
-    private boolean canBeRecursiveInlined(Function callee, Function caller) {
+    private boolean canBeRecursiveInlined(Function callee, Function caller, CallInst callInst) {
         if (caller.isNotFunctional() || callee.isNotFunctional())
             return false;
-        return instructionCnt.get(callee) < instructionLimit
+        return instructionCnt.get(callee) < Integer.min(instructionLimit, getInstructionLimit(callInst, caller))
                 && callee == caller;
     }
 
+    // Scale the counts of an inlined copy of callee by the count of the call site.
+    private void scaleProfileCounts(ArrayList<BasicBlock> clonedBlocks, Function callee, CallInst callInst) {
+        long entranceCount = callee.getEntranceBlock().getProfileCount();
+        if (callInst.getProfileCount() < 0 || entranceCount <= 0)
+            return;
+        double scale = ((double) callInst.getProfileCount()) / entranceCount;
+        for (BasicBlock block : clonedBlocks) {
+            if (block.getProfileCount() >= 0)
+                block.setProfileCount(Math.round(block.getProfileCount() * scale));
+            IRInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                if (ptr instanceof CallInst && ((CallInst) ptr).getProfileCount() >= 0)
+                    ((CallInst) ptr).setProfileCount(Math.round(((CallInst) ptr).getProfileCount() * scale));
+                ptr = ptr.getInstNext();
+            }
+        }
+    }
+
     private Pair<ArrayList<BasicBlock>, ReturnInst> cloneCallee(Function caller,
                                                              Function callee,
                                                              ArrayList<Operand> actualParameters) {
-        Map<BasicBlock, BasicBlock> blockMap = new HashMap<>();
-        Map<Operand, Operand> operandMap = new HashMap<>();
+        Map<BasicBlock, BasicBlock> blockMap = new LinkedHashMap<>();
+        Map<Operand, Operand> operandMap = new LinkedHashMap<>();
 
         for (int i = 0; i < actualParameters.size(); i++)
             operandMap.put(callee.getParameters().get(i), actualParameters.get(i));
@@ -175,9 +222,11 @@ public class InlineExpander extends Pass {
     private IRInstruction inlineFunction(CallInst callInst) {
         Function caller = callInst.getBasicBlock().getFunction();
         Function callee = callInst.getFunction();
+        changedFunctions.add(caller);
         Pair<ArrayList<BasicBlock>, ReturnInst> cloneResult = cloneCallee(caller, callee, callInst.getParameters());
         ArrayList<BasicBlock> clonedBlocks = cloneResult.getFirst();
         ReturnInst returnInst = cloneResult.getSecond();
+        scaleProfileCounts(clonedBlocks, callee, callInst);
 
         BasicBlock inlineDivergedBlock = callInst.getBasicBlock();
         BasicBlock inlineMergedBlock = inlineDivergedBlock.split(callInst);
@@ -216,7 +265,7 @@ public class InlineExpander extends Pass {
                         if (ptr instanceof CallInst) {
                             Function callee = ((CallInst) ptr).getFunction();
                             if (module.getFunctionMap().containsValue(callee)
-                                    && canBeNonRecursiveInlined(callee, function)) {
+                                    && canBeNonRecursiveInlined(callee, function, ((CallInst) ptr))) {
                                 next = inlineFunction(((CallInst) ptr));
                                 instructionCnt.replace(function,
                                         instructionCnt.get(function) + instructionCnt.get(callee) - 2);
@@ -247,7 +296,7 @@ public class InlineExpander extends Pass {
                         if (ptr instanceof CallInst) {
                             Function callee = ((CallInst) ptr).getFunction();
                             if (module.getFunctionMap().containsValue(callee)
-                                    && canBeRecursiveInlined(callee, function)) {
+                                    && canBeRecursiveInlined(callee, function, ((CallInst) ptr))) {
                                 next = inlineFunction(((CallInst) ptr));
                                 instructionCnt.replace(function,
                                         instructionCnt.get(function) + instructionCnt.get(callee) - 2);
@@ -5,29 +5,21 @@ import MxCompiler.IR.Function;
 import MxCompiler.IR.Instruction.*;
 import MxCompiler.IR.Module;
 
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.Queue;
 import java.util.Set;
 
-public class InstructionCombiner extends Pass {
-    private Queue<IRInstruction> queue;
-    private Set<IRInstruction> inQueue;
-
+public class InstructionCombiner extends FunctionPass {
     public InstructionCombiner(Module module) {
         super(module);
     }
 
     @Override
-    public boolean run() {
-        for (Function function : module.getFunctionMap().values()) {
-            if (function.isNotFunctional())
-                return false;
-        }
-
-        queue = new LinkedList<>();
-        inQueue = new HashSet<>();
-        addInstructions();
+    protected boolean runOnFunction(Function function) {
+        Queue<IRInstruction> queue = new LinkedList<>();
+        Set<IRInstruction> inQueue = new LinkedHashSet<>();
+        addInstructions(function, queue, inQueue);
 
         boolean changed = false;
         while (!queue.isEmpty()) {
@@ -38,19 +30,17 @@ public class InstructionCombiner extends Pass {
         return changed;
     }
 
-    private void addInstructions() {
-        for (Function function : module.getFunctionMap().values()) {
-            for (BasicBlock block : function.getBlocks()) {
-                IRInstruction ptr = block.getInstHead();
-                while (ptr != null) {
-                    if (ptr instanceof BinaryOpInst || ptr instanceof BitCastToInst
-                            || ptr instanceof BranchInst || ptr instanceof IcmpInst
-                            || ptr instanceof GetElementPtrInst) {
-                        queue.offer(ptr);
-                        inQueue.add(ptr);
-                    }
-                    ptr = ptr.getInstNext();
+    private void addInstructions(Function function, Queue<IRInstruction> queue, Set<IRInstruction> inQueue) {
+        for (BasicBlock block : function.getBlocks()) {
+            IRInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                if (ptr instanceof BinaryOpInst || ptr instanceof BitCastToInst
+                        || ptr instanceof BranchInst || ptr instanceof IcmpInst
+                        || ptr instanceof GetElementPtrInst) {
+                    queue.offer(ptr);
+                    inQueue.add(ptr);
                 }
+                ptr = ptr.getInstNext();
             }
         }
     }
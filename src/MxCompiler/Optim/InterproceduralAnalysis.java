@@ -0,0 +1,12 @@
+package MxCompiler.Optim;
+
+import MxCompiler.IR.Function;
+
+import java.util.Set;
+
+// An analysis whose results may change although a function is not changed, e.g. a function has no side
+// effect any more after its callee is optimized. Such functions are optimized again by PassManager.
+public interface InterproceduralAnalysis {
+    // Return the functions affected by changed results since the last call.
+    Set<Function> pollAffectedFunctions();
+}
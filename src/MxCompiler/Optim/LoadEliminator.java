@@ -0,0 +1,91 @@
+// ------ Redundant Load Elimination ------
+
+package MxCompiler.Optim;
+
+import MxCompiler.IR.BasicBlock;
+import MxCompiler.IR.Function;
+import MxCompiler.IR.Instruction.IRInstruction;
+import MxCompiler.IR.Instruction.LoadInst;
+import MxCompiler.IR.Instruction.StoreInst;
+import MxCompiler.IR.Module;
+import MxCompiler.IR.Operand.Operand;
+
+import java.util.*;
+
+// Eliminate loads on the memory SSA(see MemorySSA). For a load from pointer p whose clobbering access is C:
+//   - If C is a store to p, the load is replaced with the stored value(store-to-load forwarding).
+//   - Otherwise an earlier load from p with the same clobbering access, which dominates the load,
+//     reads the same value.
+// The clobbering access sees through stores which cannot alias p, and through MemoryPhis whose incoming
+// accesses agree, so the two loads need not be in the same block.
+public class LoadEliminator extends FunctionPass {
+    private Andersen andersen;
+    private SideEffectChecker sideEffectChecker;
+
+    public LoadEliminator(Module module, Andersen andersen, SideEffectChecker sideEffectChecker) {
+        super(module);
+        this.andersen = andersen;
+        this.sideEffectChecker = sideEffectChecker;
+    }
+
+    @Override
+    protected boolean initialize() {
+        if (!super.initialize())
+            return false;
+
+        sideEffectChecker.setIgnoreIO(true);
+        sideEffectChecker.setIgnoreLoad(true);
+        sideEffectChecker.run();
+        return true;
+    }
+
+    @Override
+    protected boolean runOnFunction(Function function) {
+        if (function.isNotFunctional())
+            return false;
+        boolean changed = false;
+        MemorySSA memorySSA = new MemorySSA(function, andersen, sideEffectChecker);
+        // clobbering access -> pointer -> loads
+        Map<MemorySSA.MemoryAccess, Map<Operand, ArrayList<LoadInst>>> loadMap = new LinkedHashMap<>();
+
+        // Loads are in the preorder of the dominator tree, so dominating loads are visited first.
+        for (LoadInst loadInst : memorySSA.getLoads()) {
+            MemorySSA.MemoryAccess clobber = memorySSA.getClobberingAccess(loadInst);
+            Operand pointer = loadInst.getPointer();
+
+            if (clobber instanceof MemorySSA.MemoryDef) {
+                IRInstruction def = ((MemorySSA.MemoryDef) clobber).getInstruction();
+                if (def instanceof StoreInst && ((StoreInst) def).getPointer() == pointer) {
+                    loadInst.getResult().replaceUse(((StoreInst) def).getValue());
+                    loadInst.removeFromBlock();
+                    changed = true;
+                    continue;
+                }
+            }
+
+            ArrayList<LoadInst> loads = loadMap.computeIfAbsent(clobber, k -> new LinkedHashMap<>())
+                    .computeIfAbsent(pointer, k -> new ArrayList<>());
+            LoadInst available = lookupLoad(loadInst.getBasicBlock(), loads);
+            if (available != null) {
+                loadInst.getResult().replaceUse(available.getResult());
+                loadInst.removeFromBlock();
+                changed = true;
+            } else
+                loads.add(loadInst);
+        }
+        return changed;
+    }
+
+    @Override
+    protected boolean finish(boolean changed) {
+        return changed;
+    }
+
+    private LoadInst lookupLoad(BasicBlock block, ArrayList<LoadInst> loads) {
+        for (LoadInst loadInst : loads) {
+            if (loadInst.getBasicBlock().dominate(block))
+                return loadInst;
+        }
+        return null;
+    }
+}
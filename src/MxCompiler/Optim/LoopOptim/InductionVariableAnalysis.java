@@ -0,0 +1,274 @@
+package MxCompiler.Optim.LoopOptim;
+
+import MxCompiler.IR.BasicBlock;
+import MxCompiler.IR.Instruction.BinaryOpInst;
+import MxCompiler.IR.Instruction.IRInstruction;
+import MxCompiler.IR.Instruction.PhiInst;
+import MxCompiler.IR.Operand.ConstInt;
+import MxCompiler.IR.Operand.Operand;
+import MxCompiler.IR.Operand.Register;
+import MxCompiler.IR.TypeSystem.IntegerType;
+import MxCompiler.Utilities.Pair;
+
+import java.util.*;
+
+// Induction variables of a loop with a pre-header(see LoopAnalysis).
+//   Basic induction variable:   i = phi [init, preHeader], [i + step, latch], where step is a constant.
+//   Derived induction variable: an affine function of a basic one, scale * i + sum(coefficient * x) + constant,
+//                               where every x is defined out of the loop.
+// Affine functions are computed through add, sub, mul and shl by constants. Arithmetic is in int, which wraps
+// around like i32 in IR, so an affine function is exact even if it overflows.
+public class InductionVariableAnalysis {
+    static public class InductionVariable {
+        private PhiInst phi;
+        private Operand init;
+        private int step;
+        private BinaryOpInst increment;
+        private BasicBlock latch;
+
+        InductionVariable(PhiInst phi, Operand init, int step, BinaryOpInst increment, BasicBlock latch) {
+            this.phi = phi;
+            this.init = init;
+            this.step = step;
+            this.increment = increment;
+            this.latch = latch;
+        }
+
+        public PhiInst getPhi() {
+            return phi;
+        }
+
+        public Operand getInit() {
+            return init;
+        }
+
+        public int getStep() {
+            return step;
+        }
+
+        public BinaryOpInst getIncrement() {
+            return increment;
+        }
+
+        public BasicBlock getLatch() {
+            return latch;
+        }
+
+        @Override
+        public String toString() {
+            return "{" + init + ", +, " + step + "}";
+        }
+    }
+
+    static public class AffineExpression {
+        private InductionVariable inductionVariable; // null if the expression is loop-invariant
+        private int scale;
+        private LinkedHashMap<Operand, Integer> terms;
+        private int constant;
+
+        AffineExpression(InductionVariable inductionVariable, int scale,
+                         LinkedHashMap<Operand, Integer> terms, int constant) {
+            this.inductionVariable = inductionVariable;
+            this.scale = scale;
+            this.terms = terms;
+            this.constant = constant;
+        }
+
+        public InductionVariable getInductionVariable() {
+            return inductionVariable;
+        }
+
+        public int getScale() {
+            return scale;
+        }
+
+        public Map<Operand, Integer> getTerms() {
+            return terms;
+        }
+
+        public int getConstant() {
+            return constant;
+        }
+
+        // The same expression except the constant.
+        public boolean sameVariablePart(AffineExpression other) {
+            return inductionVariable == other.inductionVariable
+                    && scale == other.scale
+                    && terms.equals(other.terms);
+        }
+
+        private AffineExpression add(AffineExpression other, int sign) {
+            InductionVariable inductionVariable;
+            if (this.inductionVariable == null)
+                inductionVariable = other.inductionVariable;
+            else if (other.inductionVariable == null || other.inductionVariable == this.inductionVariable)
+                inductionVariable = this.inductionVariable;
+            else
+                return null;
+
+            LinkedHashMap<Operand, Integer> terms = new LinkedHashMap<>(this.terms);
+            for (Map.Entry<Operand, Integer> entry : other.terms.entrySet()) {
+                int coefficient = terms.getOrDefault(entry.getKey(), 0) + sign * entry.getValue();
+                if (coefficient == 0)
+                    terms.remove(entry.getKey());
+                else
+                    terms.put(entry.getKey(), coefficient);
+            }
+            return new AffineExpression(inductionVariable, scale + sign * other.scale,
+                    terms, constant + sign * other.constant);
+        }
+
+        private AffineExpression multiply(int factor) {
+            LinkedHashMap<Operand, Integer> terms = new LinkedHashMap<>();
+            if (factor != 0) {
+                for (Map.Entry<Operand, Integer> entry : this.terms.entrySet()) {
+                    if (entry.getValue() * factor != 0)
+                        terms.put(entry.getKey(), entry.getValue() * factor);
+                }
+            }
+            return new AffineExpression(factor == 0 ? null : inductionVariable, scale * factor,
+                    terms, constant * factor);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder res = new StringBuilder();
+            if (inductionVariable != null)
+                res.append(scale).append(" * ").append(inductionVariable.phi.getResult()).append(" + ");
+            for (Map.Entry<Operand, Integer> entry : terms.entrySet())
+                res.append(entry.getValue()).append(" * ").append(entry.getKey()).append(" + ");
+            return res.append(constant).toString();
+        }
+    }
+
+    private LoopAnalysis.LoopNode loop;
+    private ArrayList<InductionVariable> inductionVariables;
+    private Map<Register, AffineExpression> affineMap;
+
+    // dfsOrder: blocks of the function in DFS order(see Function.getDFSOrder()).
+    public InductionVariableAnalysis(LoopAnalysis.LoopNode loop, ArrayList<BasicBlock> dfsOrder) {
+        this.loop = loop;
+        inductionVariables = new ArrayList<>();
+        affineMap = new LinkedHashMap<>();
+
+        findBasicInductionVariables();
+        if (!inductionVariables.isEmpty())
+            findDerivedInductionVariables(dfsOrder);
+    }
+
+    public ArrayList<InductionVariable> getInductionVariables() {
+        return inductionVariables;
+    }
+
+    // Return null if operand is not an affine function of a basic induction variable.
+    public AffineExpression getAffineExpression(Operand operand) {
+        AffineExpression res = getAffineOrInvariant(operand);
+        return res == null || res.inductionVariable == null || res.scale == 0 ? null : res;
+    }
+
+    private AffineExpression getAffineOrInvariant(Operand operand) {
+        if (operand instanceof ConstInt)
+            return new AffineExpression(null, 0, new LinkedHashMap<>(), ((int) ((ConstInt) operand).getValue()));
+        if (loop.defOutOfLoop(operand)) {
+            LinkedHashMap<Operand, Integer> terms = new LinkedHashMap<>();
+            terms.put(operand, 1);
+            return new AffineExpression(null, 0, terms, 0);
+        }
+        return affineMap.get(operand);
+    }
+
+    private void findBasicInductionVariables() {
+        BasicBlock header = loop.getHeader();
+        BasicBlock latch = null;
+        for (BasicBlock predecessor : header.getPredecessors()) {
+            if (!loop.getLoopBlocks().contains(predecessor))
+                continue;
+            if (latch != null)
+                return;
+            latch = predecessor;
+        }
+        if (latch == null || header.getPredecessors().size() != 2)
+            return;
+
+        IRInstruction ptr = header.getInstHead();
+        while (ptr instanceof PhiInst) {
+            Operand init = null;
+            Operand next = null;
+            for (Pair<Operand, BasicBlock> pair : ((PhiInst) ptr).getBranch()) {
+                if (pair.getSecond() == latch)
+                    next = pair.getFirst();
+                else
+                    init = pair.getFirst();
+            }
+            if (init != null && ptr.getResult().getType().equals(new IntegerType(IntegerType.BitWidth.int32))
+                    && next instanceof Register
+                    && ((Register) next).getDef() instanceof BinaryOpInst) {
+                BinaryOpInst increment = ((BinaryOpInst) ((Register) next).getDef());
+                Integer step = getStep(increment, ptr.getResult());
+                if (step != null && step != 0 && loop.getLoopBlocks().contains(increment.getBasicBlock()))
+                    inductionVariables.add(new InductionVariable(((PhiInst) ptr), init, step, increment, latch));
+            }
+            ptr = ptr.getInstNext();
+        }
+    }
+
+    // Return step if increment is phi + step or phi - (-step).
+    private Integer getStep(BinaryOpInst increment, Register phi) {
+        if (increment.getOp() == BinaryOpInst.BinaryOpName.add) {
+            if (increment.getLhs() == phi && increment.getRhs() instanceof ConstInt)
+                return ((int) ((ConstInt) increment.getRhs()).getValue());
+            if (increment.getRhs() == phi && increment.getLhs() instanceof ConstInt)
+                return ((int) ((ConstInt) increment.getLhs()).getValue());
+        } else if (increment.getOp() == BinaryOpInst.BinaryOpName.sub) {
+            if (increment.getLhs() == phi && increment.getRhs() instanceof ConstInt)
+                return -((int) ((ConstInt) increment.getRhs()).getValue());
+        }
+        return null;
+    }
+
+    private void findDerivedInductionVariables(ArrayList<BasicBlock> dfsOrder) {
+        for (InductionVariable inductionVariable : inductionVariables)
+            affineMap.put(inductionVariable.phi.getResult(),
+                    new AffineExpression(inductionVariable, 1, new LinkedHashMap<>(), 0));
+
+        // Definitions come before uses in the DFS order, except in phis.
+        for (BasicBlock block : dfsOrder) {
+            if (!loop.getLoopBlocks().contains(block))
+                continue;
+            IRInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                if (ptr instanceof BinaryOpInst) {
+                    AffineExpression affine = computeAffineExpression(((BinaryOpInst) ptr));
+                    if (affine != null && affine.inductionVariable != null)
+                        affineMap.put(ptr.getResult(), affine);
+                }
+                ptr = ptr.getInstNext();
+            }
+        }
+    }
+
+    private AffineExpression computeAffineExpression(BinaryOpInst inst) {
+        AffineExpression lhs = getAffineOrInvariant(inst.getLhs());
+        AffineExpression rhs = getAffineOrInvariant(inst.getRhs());
+        if (lhs == null || rhs == null)
+            return null;
+        switch (inst.getOp()) {
+            case add:
+                return lhs.add(rhs, 1);
+            case sub:
+                return lhs.add(rhs, -1);
+            case mul:
+                if (inst.getRhs() instanceof ConstInt)
+                    return lhs.multiply(rhs.constant);
+                if (inst.getLhs() instanceof ConstInt)
+                    return rhs.multiply(lhs.constant);
+                return null;
+            case shl:
+                if (inst.getRhs() instanceof ConstInt && rhs.constant >= 0 && rhs.constant < 32)
+                    return lhs.multiply(1 << rhs.constant);
+                return null;
+            default:
+                return null;
+        }
+    }
+}
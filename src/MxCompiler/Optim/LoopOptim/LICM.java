@@ -6,12 +6,13 @@ import MxCompiler.IR.Instruction.*;
 import MxCompiler.IR.Module;
 import MxCompiler.IR.Operand.*;
 import MxCompiler.Optim.Andersen;
-import MxCompiler.Optim.Pass;
+import MxCompiler.Optim.FunctionPass;
 import MxCompiler.Optim.SideEffectChecker;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class LICM extends Pass {
+public class LICM extends FunctionPass {
     private LoopAnalysis loopAnalysis;
     private SideEffectChecker sideEffectChecker;
     private SideEffectChecker sideEffectCheckerIgnoreLoad;
@@ -76,11 +77,9 @@ public class LICM extends Pass {
     }
 
     @Override
-    public boolean run() {
-        for (Function function : module.getFunctionMap().values()) {
-            if (function.isNotFunctional())
-                return false;
-        }
+    protected boolean initialize() {
+        if (!super.initialize())
+            return false;
 
         sideEffectChecker.setIgnoreIO(false);
         sideEffectChecker.setIgnoreLoad(false);
@@ -89,18 +88,20 @@ public class LICM extends Pass {
         sideEffectCheckerIgnoreLoad.setIgnoreLoad(true);
         sideEffectCheckerIgnoreLoad.run();
 
-        loopInvariant = new HashSet<>();
-        storeMap = new HashMap<>();
-        sideEffectCall = new HashSet<>();
+        // Loops of different functions may be visited in parallel.
+        loopInvariant = ConcurrentHashMap.newKeySet();
+        storeMap = new ConcurrentHashMap<>();
+        sideEffectCall = ConcurrentHashMap.newKeySet();
+        return true;
+    }
 
-        changed = false;
-        for (Function function : module.getFunctionMap().values())
-            changed |= dfsLicm(loopAnalysis.getLoopRoot().get(function));
-        return changed;
+    @Override
+    protected boolean runOnFunction(Function function) {
+        return dfsLicm(loopAnalysis.getLoopRoot().get(function));
     }
 
     private boolean dfsLicm(LoopAnalysis.LoopNode loop) {
-        Set<StoreInst> stores = new HashSet<>();
+        Set<StoreInst> stores = new LinkedHashSet<>();
         boolean changed = false;
         boolean sideEffectCall = false;
         for (LoopAnalysis.LoopNode child : loop.getChildren()) {
@@ -7,14 +7,15 @@ import MxCompiler.IR.Instruction.IRInstruction;
 import MxCompiler.IR.Instruction.PhiInst;
 import MxCompiler.IR.Module;
 import MxCompiler.IR.Operand.*;
-import MxCompiler.Optim.Pass;
+import MxCompiler.Optim.FunctionPass;
 import MxCompiler.Utilities.Pair;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class LoopAnalysis extends Pass {
+public class LoopAnalysis extends FunctionPass {
     static public class LoopNode {
-        static LoopAnalysis loopAnalysis;
+        private LoopAnalysis loopAnalysis;
 
         private BasicBlock header;
         private Set<BasicBlock> loopBlocks;
@@ -28,9 +29,10 @@ public class LoopAnalysis extends Pass {
 
         private BasicBlock preHeader;
 
-        public LoopNode(BasicBlock header) {
+        public LoopNode(LoopAnalysis loopAnalysis, BasicBlock header) {
+            this.loopAnalysis = loopAnalysis;
             this.header = header;
-            this.loopBlocks = new HashSet<>();
+            this.loopBlocks = new LinkedHashSet<>();
             this.uniqueLoopBlocks = null;
             this.exitBlocks = null;
             this.father = null;
@@ -39,6 +41,10 @@ public class LoopAnalysis extends Pass {
             this.preHeader = null;
         }
 
+        public BasicBlock getHeader() {
+            return header;
+        }
+
         public void addLoopBlock(BasicBlock block) {
             this.loopBlocks.add(block);
         }
@@ -184,6 +190,21 @@ public class LoopAnalysis extends Pass {
             uniqueLoopBlocks.removeAll(child.loopBlocks);
         }
 
+        // The header is the only block leaving the loop.
+        public boolean exitsOnlyFromHeader() {
+            for (BasicBlock block : loopBlocks) {
+                if (block == header)
+                    continue;
+                if (!block.isNotExitBlock())
+                    return false;
+                for (BasicBlock successor : block.getSuccessors()) {
+                    if (!loopBlocks.contains(successor))
+                        return false;
+                }
+            }
+            return true;
+        }
+
         public boolean defOutOfLoop(Operand operand) {
             if (operand instanceof Parameter || operand instanceof Constant || operand instanceof GlobalVariable)
                 return true;
@@ -204,7 +225,6 @@ public class LoopAnalysis extends Pass {
 
     public LoopAnalysis(Module module) {
         super(module);
-        LoopNode.loopAnalysis = this;
     }
 
     public Map<Function, LoopNode> getLoopRoot() {
@@ -225,29 +245,40 @@ public class LoopAnalysis extends Pass {
     }
 
     @Override
-    public boolean run() {
-        for (Function function : module.getFunctionMap().values()) {
-            if (function.isNotFunctional())
-                return false;
+    protected boolean initialize() {
+        if (!super.initialize())
+            return false;
+
+        // Loop trees of different functions may be constructed in parallel.
+        // Loop trees of other functions are kept, since PassManager only visits functions whose CFG changed.
+        if (loopRoot == null) {
+            loopRoot = new ConcurrentHashMap<>();
+            blockNodeMap = new ConcurrentHashMap<>();
+            headerNodeMap = new ConcurrentHashMap<>();
+            preHeaders = ConcurrentHashMap.newKeySet();
         }
+        return true;
+    }
 
-        loopRoot = new HashMap<>();
-        blockNodeMap = new HashMap<>();
-        headerNodeMap = new HashMap<>();
-        preHeaders = new HashSet<>();
-        for (Function function : module.getFunctionMap().values())
-            loopRoot.put(function, constructLoopTree(function));
-
-
+    @Override
+    protected boolean runOnFunction(Function function) {
+        headerNodeMap.keySet().removeIf(header -> header.getFunction() == function);
+        preHeaders.removeIf(preHeader -> preHeader.getFunction() == function);
+        loopRoot.put(function, constructLoopTree(function));
         return false;
     }
 
+    @Override
+    public boolean isCFGAnalysis() {
+        return true;
+    }
+
     private LoopNode constructLoopTree(Function function) {
-        LoopNode root = new LoopNode(function.getEntranceBlock());
+        LoopNode root = new LoopNode(this, function.getEntranceBlock());
         loopRoot.put(function, root);
 
-        dfsDetectNaturalLoop(function.getEntranceBlock(), new HashSet<>(), root);
-        dfsConstructLoopTree(function.getEntranceBlock(), new HashSet<>(), root);
+        dfsDetectNaturalLoop(function.getEntranceBlock(), new LinkedHashSet<>(), root);
+        dfsConstructLoopTree(function.getEntranceBlock(), new LinkedHashSet<>(), root);
         root.setDepth(0);
         dfsLoopTree(root);
 
@@ -267,9 +298,9 @@ public class LoopAnalysis extends Pass {
     }
 
     private void extractNaturalLoop(BasicBlock header, BasicBlock end) {
-        LoopNode loop = new LoopNode(header);
+        LoopNode loop = new LoopNode(this, header);
 
-        HashSet<BasicBlock> visit = new HashSet<>();
+        HashSet<BasicBlock> visit = new LinkedHashSet<>();
         Queue<BasicBlock> queue = new LinkedList<>();
         queue.offer(end);
         visit.add(end);
@@ -299,14 +330,14 @@ public class LoopAnalysis extends Pass {
         LoopNode child = null;
         if (block == currentLoop.header) {
             // block == entrance block
-            currentLoop.uniqueLoopBlocks = new HashSet<>(currentLoop.loopBlocks);
+            currentLoop.uniqueLoopBlocks = new LinkedHashSet<>(currentLoop.loopBlocks);
         } else if (headerNodeMap.containsKey(block)) {
             child = headerNodeMap.get(block);
             child.setFather(currentLoop);
             currentLoop.addChild(child);
 
             currentLoop.removeUniqueLoopBlocks(child);
-            child.uniqueLoopBlocks = new HashSet<>(child.loopBlocks);
+            child.uniqueLoopBlocks = new LinkedHashSet<>(child.loopBlocks);
         }
 
         for (BasicBlock successor : block.getSuccessors()) {
@@ -332,7 +363,7 @@ public class LoopAnalysis extends Pass {
         if (loop.hasFather() && !loop.hasPreHeader(blockNodeMap))
             loop.addPreHeader(blockNodeMap);
 
-        Set<BasicBlock> exitBlocks = new HashSet<>();
+        Set<BasicBlock> exitBlocks = new LinkedHashSet<>();
         if (loop.hasFather()) {
             for (LoopNode child : loop.children) {
                 for (BasicBlock exit : child.exitBlocks) {
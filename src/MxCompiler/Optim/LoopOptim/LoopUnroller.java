@@ -0,0 +1,493 @@
+package MxCompiler.Optim.LoopOptim;
+
+import MxCompiler.IR.BasicBlock;
+import MxCompiler.IR.Function;
+import MxCompiler.IR.Instruction.*;
+import MxCompiler.IR.Module;
+import MxCompiler.IR.Operand.*;
+import MxCompiler.IR.TypeSystem.IntegerType;
+import MxCompiler.Optim.FunctionPass;
+import MxCompiler.Optim.InlineExpander;
+import MxCompiler.Utilities.Pair;
+
+import java.util.*;
+
+// Unroll innermost loops of the form
+//     preHeader -> header: i = phi [init, preHeader], [i + step, latch]; br (icmp op i, n), body, exit
+// where the header is the only exit, op is slt/sle for step > 0(sgt/sge for step < 0), and n is
+// loop-invariant(see InductionVariableAnalysis). Code growth of a loop is bounded by the size limit of
+// InlineExpander.
+//   - Full unrolling: if init and n are constants, the trip count is known. Every iteration is peeled off
+//     without the exit test, and the loop left is removed by SCCP since its test is always false.
+//   - Partial unrolling by unrollFactor: a main loop runs unrollFactor iterations at a time while
+//     "i + (unrollFactor - 1) * step op n", i.e. "i op n - (unrollFactor - 1) * step", with only one test.
+//     The original loop runs the remaining iterations. The main loop is skipped if the limit overflows.
+//   - First-iteration peeling(optional): if a header phi takes a loop-invariant value from the latch, the
+//     first iteration is peeled off, so that the phi becomes invariant in the loop.
+// The pass runs once after the optimization loop converges, and the result is optimized again.
+public class LoopUnroller extends FunctionPass {
+    // A loop in the form above.
+    static private class Candidate {
+        private LoopAnalysis.LoopNode loop;
+        private BasicBlock header;
+        private BasicBlock latch;
+        private BasicBlock body; // the successor of header in the loop
+        private BasicBlock exit;
+        private IcmpInst icmp;
+        private InductionVariableAnalysis.InductionVariable inductionVariable;
+        private int size;
+    }
+
+    private LoopAnalysis loopAnalysis;
+    private int unrollFactor;
+    private boolean peeling;
+
+    public LoopUnroller(Module module, LoopAnalysis loopAnalysis, int unrollFactor, boolean peeling) {
+        super(module);
+        this.loopAnalysis = loopAnalysis;
+        this.unrollFactor = unrollFactor;
+        this.peeling = peeling;
+    }
+
+    @Override
+    protected boolean runOnFunction(Function function) {
+        if (function.isNotFunctional())
+            return false;
+        ArrayList<LoopAnalysis.LoopNode> innermostLoops = new ArrayList<>();
+        collectInnermostLoops(loopAnalysis.getLoopRoot().get(function), innermostLoops);
+        if (innermostLoops.isEmpty())
+            return false;
+
+        // Innermost loops do not overlap, so transforming one of them does not affect the others.
+        ArrayList<BasicBlock> dfsOrder = function.getDFSOrder();
+        boolean changed = false;
+        for (LoopAnalysis.LoopNode loop : innermostLoops) {
+            Candidate candidate = analyze(loop, dfsOrder);
+            if (candidate == null)
+                continue;
+
+            long tripCount = computeTripCount(candidate);
+            if (tripCount > 0 && tripCount * candidate.size <= InlineExpander.instructionLimit) {
+                peel(candidate, ((int) tripCount), false);
+                changed = true;
+            } else if (peeling && candidate.size <= InlineExpander.instructionLimit
+                    && candidate.exit.getPredecessors().size() == 1 && shouldPeel(candidate)) {
+                peel(candidate, 1, true);
+                changed = true;
+            } else if (unrollFactor > 1 && candidate.size * unrollFactor <= InlineExpander.instructionLimit)
+                changed |= unroll(candidate);
+        }
+        return changed;
+    }
+
+    private void collectInnermostLoops(LoopAnalysis.LoopNode loop, ArrayList<LoopAnalysis.LoopNode> res) {
+        if (loop.hasFather() && loop.getChildren().isEmpty())
+            res.add(loop);
+        for (LoopAnalysis.LoopNode child : loop.getChildren())
+            collectInnermostLoops(child, res);
+    }
+
+    private Candidate analyze(LoopAnalysis.LoopNode loop, ArrayList<BasicBlock> dfsOrder) {
+        BasicBlock header = loop.getHeader();
+        if (loop.getPreHeader() == null || !header.getPredecessors().contains(loop.getPreHeader())
+                || !loop.exitsOnlyFromHeader() || !(header.getInstTail() instanceof BranchInst))
+            return null;
+        BranchInst branch = ((BranchInst) header.getInstTail());
+        if (!branch.isConditional() || !(branch.getCond() instanceof Register)
+                || !(((Register) branch.getCond()).getDef() instanceof IcmpInst)
+                || !loop.getLoopBlocks().contains(branch.getThenBlock())
+                || loop.getLoopBlocks().contains(branch.getElseBlock()))
+            return null;
+        IcmpInst icmp = ((IcmpInst) ((Register) branch.getCond()).getDef());
+        if (icmp.getBasicBlock() != header || !loop.defOutOfLoop(icmp.getOp2()))
+            return null;
+
+        InductionVariableAnalysis analysis = new InductionVariableAnalysis(loop, dfsOrder);
+        InductionVariableAnalysis.InductionVariable inductionVariable = null;
+        for (InductionVariableAnalysis.InductionVariable variable : analysis.getInductionVariables()) {
+            if (variable.getPhi().getResult() == icmp.getOp1())
+                inductionVariable = variable;
+        }
+        if (inductionVariable == null)
+            return null;
+        IcmpInst.IcmpName operator = icmp.getOperator();
+        if (inductionVariable.getStep() > 0
+                ? operator != IcmpInst.IcmpName.slt && operator != IcmpInst.IcmpName.sle
+                : operator != IcmpInst.IcmpName.sgt && operator != IcmpInst.IcmpName.sge)
+            return null;
+        BasicBlock latch = inductionVariable.getLatch();
+        if (!(latch.getInstTail() instanceof BranchInst) || ((BranchInst) latch.getInstTail()).isConditional())
+            return null;
+
+        Candidate candidate = new Candidate();
+        candidate.loop = loop;
+        candidate.header = header;
+        candidate.latch = latch;
+        candidate.body = branch.getThenBlock();
+        candidate.exit = branch.getElseBlock();
+        candidate.icmp = icmp;
+        candidate.inductionVariable = inductionVariable;
+        candidate.size = 0;
+        for (BasicBlock block : loop.getLoopBlocks()) {
+            IRInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                candidate.size++;
+                ptr = ptr.getInstNext();
+            }
+        }
+        return candidate;
+    }
+
+    // Return -1 if the trip count is unknown.
+    private long computeTripCount(Candidate candidate) {
+        if (!(candidate.inductionVariable.getInit() instanceof ConstInt)
+                || !(candidate.icmp.getOp2() instanceof ConstInt))
+            return -1;
+        long init = ((ConstInt) candidate.inductionVariable.getInit()).getValue();
+        long bound = ((ConstInt) candidate.icmp.getOp2()).getValue();
+        long step = candidate.inductionVariable.getStep();
+        long tripCount;
+        switch (candidate.icmp.getOperator()) {
+            case slt:
+                tripCount = init < bound ? (bound - init + step - 1) / step : 0;
+                break;
+            case sle:
+                tripCount = init <= bound ? (bound - init) / step + 1 : 0;
+                break;
+            case sgt:
+                tripCount = init > bound ? (init - bound - step - 1) / (-step) : 0;
+                break;
+            case sge:
+                tripCount = init >= bound ? (init - bound) / (-step) + 1 : 0;
+                break;
+            default:
+                return -1;
+        }
+        // i must not overflow before the loop exits.
+        long last = init + tripCount * step;
+        return last < Integer.MIN_VALUE || last > Integer.MAX_VALUE ? -1 : tripCount;
+    }
+
+    // A header phi whose value from the latch is loop-invariant(and different from the initial value).
+    private boolean shouldPeel(Candidate candidate) {
+        IRInstruction ptr = candidate.header.getInstHead();
+        while (ptr instanceof PhiInst) {
+            Operand init = getIncoming(((PhiInst) ptr), candidate.loop.getPreHeader());
+            Operand next = getIncoming(((PhiInst) ptr), candidate.latch);
+            if (next != ptr.getResult() && candidate.loop.defOutOfLoop(next) && !next.equals(init))
+                return true;
+            ptr = ptr.getInstNext();
+        }
+        return false;
+    }
+
+    static private Operand getIncoming(PhiInst phi, BasicBlock block) {
+        for (Pair<Operand, BasicBlock> pair : phi.getBranch()) {
+            if (pair.getSecond() == block)
+                return pair.getFirst();
+        }
+        throw new RuntimeException("No incoming value of " + block + " in " + phi + ".");
+    }
+
+    static private ArrayList<PhiInst> getHeaderPhis(BasicBlock header) {
+        ArrayList<PhiInst> phis = new ArrayList<>();
+        IRInstruction ptr = header.getInstHead();
+        while (ptr instanceof PhiInst) {
+            phis.add(((PhiInst) ptr));
+            ptr = ptr.getInstNext();
+        }
+        return phis;
+    }
+
+    // Operands defined out of loop, which are not replaced when cloning the loop.
+    static private Map<Operand, Operand> getOperandsOutOfLoop(Function function, LoopAnalysis.LoopNode loop) {
+        Map<Operand, Operand> operandMap = new LinkedHashMap<>();
+        for (Parameter parameter : function.getParameters())
+            operandMap.put(parameter, parameter);
+        for (BasicBlock block : function.getBlocks()) {
+            if (loop.getLoopBlocks().contains(block))
+                continue;
+            IRInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                if (ptr.hasResult() && ptr.getResult() != null)
+                    operandMap.put(ptr.getResult(), ptr.getResult());
+                ptr = ptr.getInstNext();
+            }
+        }
+        return operandMap;
+    }
+
+    // Clone the blocks of loop for one iteration, and put them before the header. Phis of the header are not
+    // cloned, and operandMap should map them to their values in the iteration. Results of the cloned
+    // instructions are put into operandMap.
+    // The cloned header has no predecessor, and the cloned latch jumps to the cloned header.
+    private Map<BasicBlock, BasicBlock> cloneIteration(Candidate candidate, Map<Operand, Operand> operandMap) {
+        BasicBlock header = candidate.header;
+        Function function = header.getFunction();
+        Map<BasicBlock, BasicBlock> blockMap = new LinkedHashMap<>();
+        for (BasicBlock block : function.getBlocks())
+            blockMap.put(block, block);
+
+        ArrayList<BasicBlock> clonedBlocks = new ArrayList<>();
+        for (BasicBlock block : function.getBlocks()) {
+            if (!candidate.loop.getLoopBlocks().contains(block))
+                continue;
+            BasicBlock clonedBlock = (BasicBlock) block.clone();
+            clonedBlocks.add(clonedBlock);
+            blockMap.put(block, clonedBlock);
+            function.getSymbolTable().put(clonedBlock.getNameWithoutDot(), clonedBlock);
+
+            IRInstruction ptr = block.getInstHead();
+            IRInstruction clonedPtr = clonedBlock.getInstHead();
+            while (ptr != null && clonedPtr != null) {
+                if (ptr.hasResult() && !(block == header && ptr instanceof PhiInst)) {
+                    Register result = ptr.getResult();
+                    Register clonedResult = clonedPtr.getResult();
+                    if (result != null) {
+                        operandMap.put(result, clonedResult);
+                        function.getSymbolTable().put(clonedResult.getNameWithoutDot(), clonedResult);
+                    }
+                }
+                ptr = ptr.getInstNext();
+                clonedPtr = clonedPtr.getInstNext();
+            }
+            assert ptr == null && clonedPtr == null;
+        }
+
+        // Drop the phis of the cloned header.
+        BasicBlock clonedHeader = blockMap.get(header);
+        IRInstruction ptr = clonedHeader.getInstHead();
+        while (ptr instanceof PhiInst)
+            ptr = ptr.getInstNext();
+        assert ptr != null;
+        ptr.setInstPrev(null);
+        clonedHeader.setInstHead(ptr);
+
+        for (BasicBlock clonedBlock : clonedBlocks) {
+            Set<BasicBlock> predecessors = new LinkedHashSet<>();
+            Set<BasicBlock> successors = new LinkedHashSet<>();
+            if (clonedBlock != clonedHeader) {
+                for (BasicBlock predecessor : clonedBlock.getPredecessors())
+                    predecessors.add(blockMap.get(predecessor));
+            }
+            for (BasicBlock successor : clonedBlock.getSuccessors())
+                successors.add(blockMap.get(successor));
+            clonedBlock.setPredecessors(predecessors);
+            clonedBlock.setSuccessors(successors);
+
+            IRInstruction clonedPtr = clonedBlock.getInstHead();
+            while (clonedPtr != null) {
+                clonedPtr.clonedUseReplace(blockMap, operandMap);
+                clonedPtr = clonedPtr.getInstNext();
+            }
+            function.addBasicBlockPrev(header, clonedBlock);
+        }
+        return blockMap;
+    }
+
+    // Redirect the edge block -> oldTarget to newTarget.
+    static private void redirect(BasicBlock block, BasicBlock oldTarget, BasicBlock newTarget) {
+        block.getInstTail().replaceUse(oldTarget, newTarget);
+        block.getSuccessors().remove(oldTarget);
+        block.getSuccessors().add(newTarget);
+        oldTarget.getPredecessors().remove(block);
+        newTarget.getPredecessors().add(block);
+    }
+
+    // Values of the header phis in the next iteration.
+    static private Map<Operand, Operand> getNextValues(ArrayList<PhiInst> phis, BasicBlock latch,
+                                                       Map<Operand, Operand> operandMap) {
+        Map<Operand, Operand> values = new LinkedHashMap<>();
+        for (PhiInst phi : phis) {
+            Operand next = getIncoming(phi, latch);
+            values.put(phi.getResult(), operandMap.getOrDefault(next, next));
+        }
+        return values;
+    }
+
+    // Peel count iterations off the front of the loop. If exitTest is false, the iterations are known to run,
+    // so their exit tests are removed.
+    private void peel(Candidate candidate, int count, boolean exitTest) {
+        BasicBlock header = candidate.header;
+        BasicBlock preHeader = candidate.loop.getPreHeader();
+        Function function = header.getFunction();
+        ArrayList<PhiInst> phis = getHeaderPhis(header);
+        Map<Operand, Operand> operandsOutOfLoop = getOperandsOutOfLoop(function, candidate.loop);
+
+        Map<Operand, Operand> values = new LinkedHashMap<>();
+        for (PhiInst phi : phis)
+            values.put(phi.getResult(), getIncoming(phi, preHeader));
+        ArrayList<Pair<BasicBlock, Map<Operand, Operand>>> exitingIterations = new ArrayList<>();
+        BasicBlock prev = preHeader;
+        for (int i = 0; i < count; i++) {
+            Map<Operand, Operand> operandMap = new LinkedHashMap<>(operandsOutOfLoop);
+            operandMap.putAll(values);
+            Map<BasicBlock, BasicBlock> blockMap = cloneIteration(candidate, operandMap);
+            BasicBlock clonedHeader = blockMap.get(header);
+            BasicBlock clonedLatch = blockMap.get(candidate.latch);
+
+            redirect(prev, header, clonedHeader);
+            redirect(clonedLatch, clonedHeader, header);
+            if (exitTest) {
+                candidate.exit.getPredecessors().add(clonedHeader);
+                exitingIterations.add(new Pair<>(clonedHeader, operandMap));
+            } else
+                ((BranchInst) clonedHeader.getInstTail()).setUnconditionalBranch(blockMap.get(candidate.body));
+
+            values = getNextValues(phis, candidate.latch, operandMap);
+            prev = clonedLatch;
+        }
+
+        // The loop is entered from the last peeled iteration.
+        for (PhiInst phi : phis) {
+            phi.removeIncomingBlock(preHeader);
+            phi.addBranch(values.get(phi.getResult()), prev);
+        }
+        if (exitTest)
+            addExitPhis(candidate, exitingIterations);
+    }
+
+    // The exit block has the header as its only predecessor before peeling. Now it is also reached from the
+    // peeled headers, so values of the header used out of the loop are merged by phis in the exit block.
+    private void addExitPhis(Candidate candidate, ArrayList<Pair<BasicBlock, Map<Operand, Operand>>> iterations) {
+        BasicBlock header = candidate.header;
+        BasicBlock exit = candidate.exit;
+        Function function = header.getFunction();
+
+        IRInstruction ptr = exit.getInstHead();
+        while (ptr instanceof PhiInst) {
+            Operand value = getIncoming(((PhiInst) ptr), header);
+            for (Pair<BasicBlock, Map<Operand, Operand>> iteration : iterations)
+                ((PhiInst) ptr).addBranch(iteration.getSecond().getOrDefault(value, value), iteration.getFirst());
+            ptr = ptr.getInstNext();
+        }
+
+        ptr = header.getInstHead();
+        while (ptr != null) {
+            if (ptr.hasResult() && ptr.getResult() != null) {
+                Register result = ptr.getResult();
+                ArrayList<IRInstruction> uses = new ArrayList<>();
+                for (IRInstruction use : result.getUse().keySet()) {
+                    if (!candidate.loop.getLoopBlocks().contains(use.getBasicBlock())
+                            && !(use instanceof PhiInst && use.getBasicBlock() == exit))
+                        uses.add(use);
+                }
+                if (!uses.isEmpty()) {
+                    Register merged = new Register(result.getType(), result.getNameWithoutDot());
+                    function.getSymbolTable().put(merged.getName(), merged);
+                    Set<Pair<Operand, BasicBlock>> branch = new LinkedHashSet<>();
+                    branch.add(new Pair<>(result, header));
+                    for (Pair<BasicBlock, Map<Operand, Operand>> iteration : iterations)
+                        branch.add(new Pair<>(iteration.getSecond().get(result), iteration.getFirst()));
+                    for (IRInstruction use : uses)
+                        use.replaceUse(result, merged);
+                    exit.addInstructionAtFront(new PhiInst(exit, branch, merged));
+                }
+            }
+            ptr = ptr.getInstNext();
+        }
+    }
+
+    // Return false if the limit of the main loop always overflows.
+    private boolean unroll(Candidate candidate) {
+        BasicBlock header = candidate.header;
+        BasicBlock preHeader = candidate.loop.getPreHeader();
+        Function function = header.getFunction();
+        IcmpInst.IcmpName operator = candidate.icmp.getOperator();
+        long step = candidate.inductionVariable.getStep();
+        long distance = (unrollFactor - 1) * step;
+        if (distance < Integer.MIN_VALUE || distance > Integer.MAX_VALUE)
+            return false;
+
+        // limit = n - distance, which overflows iff it is not on the same side of n as i.
+        Operand bound = candidate.icmp.getOp2();
+        Operand limit;
+        Operand noOverflow;
+        if (bound instanceof ConstInt) {
+            long value = ((ConstInt) bound).getValue() - distance;
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+                return false;
+            limit = new ConstInt(IntegerType.BitWidth.int32, value);
+            noOverflow = null;
+        } else {
+            limit = new Register(new IntegerType(IntegerType.BitWidth.int32), "unrollLimit");
+            function.getSymbolTable().put(((Register) limit).getName(), limit);
+            preHeader.addInstructionPrev(preHeader.getInstTail(), new BinaryOpInst(preHeader,
+                    BinaryOpInst.BinaryOpName.sub, bound, new ConstInt(IntegerType.BitWidth.int32, distance),
+                    ((Register) limit)));
+            noOverflow = new Register(new IntegerType(IntegerType.BitWidth.int1), "unrollNoOverflow");
+            function.getSymbolTable().put(((Register) noOverflow).getName(), noOverflow);
+            preHeader.addInstructionPrev(preHeader.getInstTail(), new IcmpInst(preHeader,
+                    step > 0 ? IcmpInst.IcmpName.sle : IcmpInst.IcmpName.sge,
+                    new IntegerType(IntegerType.BitWidth.int32), limit, bound, ((Register) noOverflow)));
+        }
+
+        // Phis of the main loop.
+        ArrayList<PhiInst> phis = getHeaderPhis(header);
+        Map<Operand, Operand> values = new LinkedHashMap<>();
+        for (PhiInst phi : phis) {
+            Register result = new Register(phi.getResult().getType(), phi.getResult().getNameWithoutDot());
+            function.getSymbolTable().put(result.getName(), result);
+            values.put(phi.getResult(), result);
+        }
+        Map<Operand, Operand> mainPhis = values;
+
+        Map<Operand, Operand> operandsOutOfLoop = getOperandsOutOfLoop(function, candidate.loop);
+        BasicBlock mainHeader = null;
+        BasicBlock prevHeader = null;
+        BasicBlock prevLatch = null;
+        for (int i = 0; i < unrollFactor; i++) {
+            Map<Operand, Operand> operandMap = new LinkedHashMap<>(operandsOutOfLoop);
+            operandMap.putAll(values);
+            Map<BasicBlock, BasicBlock> blockMap = cloneIteration(candidate, operandMap);
+            BasicBlock clonedHeader = blockMap.get(header);
+            BasicBlock clonedLatch = blockMap.get(candidate.latch);
+            BranchInst branch = ((BranchInst) clonedHeader.getInstTail());
+
+            if (i == 0) {
+                // The only test of the main loop. The loop left runs the remaining iterations.
+                mainHeader = clonedHeader;
+                Register cond = new Register(new IntegerType(IntegerType.BitWidth.int1), "unrollCond");
+                function.getSymbolTable().put(cond.getName(), cond);
+                mainHeader.addInstructionPrev(branch, new IcmpInst(mainHeader, operator,
+                        new IntegerType(IntegerType.BitWidth.int32),
+                        mainPhis.get(candidate.icmp.getOp1()), limit, cond));
+                branch.replaceUse(branch.getCond(), cond);
+                redirect(mainHeader, candidate.exit, header);
+            } else {
+                branch.setUnconditionalBranch(blockMap.get(candidate.body));
+                redirect(prevLatch, prevHeader, clonedHeader);
+            }
+
+            values = getNextValues(phis, candidate.latch, operandMap);
+            prevHeader = clonedHeader;
+            prevLatch = clonedLatch;
+        }
+        redirect(prevLatch, prevHeader, mainHeader);
+
+        for (PhiInst phi : phis) {
+            Set<Pair<Operand, BasicBlock>> branch = new LinkedHashSet<>();
+            branch.add(new Pair<>(getIncoming(phi, preHeader), preHeader));
+            branch.add(new Pair<>(values.get(phi.getResult()), prevLatch));
+            mainHeader.addInstructionAtFront(new PhiInst(mainHeader, branch,
+                    ((Register) mainPhis.get(phi.getResult()))));
+        }
+
+        // Enter the main loop if its limit does not overflow.
+        if (noOverflow == null) {
+            redirect(preHeader, header, mainHeader);
+            for (PhiInst phi : phis) {
+                phi.removeIncomingBlock(preHeader);
+                phi.addBranch(mainPhis.get(phi.getResult()), mainHeader);
+            }
+        } else {
+            preHeader.getInstTail().removeFromBlock();
+            preHeader.getSuccessors().remove(header);
+            header.getPredecessors().remove(preHeader);
+            preHeader.addInstruction(new BranchInst(preHeader, noOverflow, mainHeader, header));
+            for (PhiInst phi : phis)
+                phi.addBranch(mainPhis.get(phi.getResult()), mainHeader);
+        }
+        return true;
+    }
+}
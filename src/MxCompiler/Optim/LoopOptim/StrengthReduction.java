@@ -0,0 +1,398 @@
+package MxCompiler.Optim.LoopOptim;
+
+import MxCompiler.IR.BasicBlock;
+import MxCompiler.IR.Function;
+import MxCompiler.IR.Instruction.*;
+import MxCompiler.IR.Module;
+import MxCompiler.IR.Operand.*;
+import MxCompiler.IR.TypeSystem.IntegerType;
+import MxCompiler.Optim.FunctionPass;
+import MxCompiler.Utilities.Pair;
+
+import java.util.*;
+
+// Strength reduction of induction variables(see InductionVariableAnalysis), on loops from inner to outer:
+//   - Address reduction: GEPs "gep base, scale * i + x + c" with the same variable part share a pointer
+//     p = phi [gep base, scale * init + x, preHeader], [gep p, scale * step, latch], and become "gep p, c".
+//   - Multiplication reduction: "mul" of induction variables become integer phis stepped by additions.
+//   - Linear-function test replacement: the exit test "i < n" in the header is rewritten as a test on a
+//     reduced variable, so that i is no longer needed.
+//   - Dead induction variables, which are only used by their own increments, are removed.
+// Test replacement is done only if init and n are constants, since whether the new limit overflows cannot be
+// decided at compile time otherwise.
+public class StrengthReduction extends FunctionPass {
+    // A phi created by strength reduction, whose value is "affine" in the header.
+    static private class ReducedVariable {
+        private InductionVariableAnalysis.AffineExpression affine;
+        private Operand base; // null for integer variables
+        private Register result;
+        private boolean accessed; // the pointer is loaded or stored in every iteration
+
+        ReducedVariable(InductionVariableAnalysis.AffineExpression affine, Operand base, Register result) {
+            this.affine = affine;
+            this.base = base;
+            this.result = result;
+            this.accessed = false;
+        }
+    }
+
+    private LoopAnalysis loopAnalysis;
+
+    public StrengthReduction(Module module, LoopAnalysis loopAnalysis) {
+        super(module);
+        this.loopAnalysis = loopAnalysis;
+    }
+
+    @Override
+    protected boolean runOnFunction(Function function) {
+        if (function.isNotFunctional())
+            return false;
+        return dfsReduce(loopAnalysis.getLoopRoot().get(function), function.getDFSOrder());
+    }
+
+    private boolean dfsReduce(LoopAnalysis.LoopNode loop, ArrayList<BasicBlock> dfsOrder) {
+        boolean changed = false;
+        for (LoopAnalysis.LoopNode child : loop.getChildren())
+            changed |= dfsReduce(child, dfsOrder);
+        if (loop.hasFather() && loop.getPreHeader() != null
+                && loop.getHeader().getPredecessors().contains(loop.getPreHeader()))
+            changed |= reduce(loop, dfsOrder);
+        return changed;
+    }
+
+    private boolean reduce(LoopAnalysis.LoopNode loop, ArrayList<BasicBlock> dfsOrder) {
+        InductionVariableAnalysis analysis = new InductionVariableAnalysis(loop, dfsOrder);
+        if (analysis.getInductionVariables().isEmpty())
+            return false;
+
+        ArrayList<ReducedVariable> reducedVariables = new ArrayList<>();
+        boolean changed = reduceAddresses(loop, analysis, reducedVariables);
+        removeDeadDerivedVariables(loop, analysis);
+        changed |= reduceMultiplications(loop, analysis, reducedVariables);
+        changed |= replaceExitTest(loop, reducedVariables);
+        changed |= removeDeadInductionVariables(analysis);
+        return changed;
+    }
+
+    private boolean reduceAddresses(LoopAnalysis.LoopNode loop, InductionVariableAnalysis analysis,
+                                    ArrayList<ReducedVariable> reducedVariables) {
+        // Group GEPs by base and the variable part of the index.
+        ArrayList<Pair<ReducedVariable, ArrayList<GetElementPtrInst>>> groups = new ArrayList<>();
+        for (BasicBlock block : loop.getLoopBlocks()) {
+            IRInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                if (ptr instanceof GetElementPtrInst && ((GetElementPtrInst) ptr).getIndex().size() == 1) {
+                    GetElementPtrInst gep = ((GetElementPtrInst) ptr);
+                    Operand base = gep.getPointer();
+                    InductionVariableAnalysis.AffineExpression affine
+                            = analysis.getAffineExpression(gep.getIndex().get(0));
+                    if (affine != null && (base instanceof Register || base instanceof Parameter)
+                            && loop.defOutOfLoop(base)) {
+                        ArrayList<GetElementPtrInst> group = null;
+                        for (Pair<ReducedVariable, ArrayList<GetElementPtrInst>> pair : groups) {
+                            if (pair.getFirst().base == base && pair.getFirst().affine.sameVariablePart(affine)) {
+                                group = pair.getSecond();
+                                break;
+                            }
+                        }
+                        if (group == null) {
+                            group = new ArrayList<>();
+                            groups.add(new Pair<>(new ReducedVariable(affine, base, null), group));
+                        }
+                        group.add(gep);
+                    }
+                }
+                ptr = ptr.getInstNext();
+            }
+        }
+
+        for (Pair<ReducedVariable, ArrayList<GetElementPtrInst>> pair : groups) {
+            ReducedVariable variable = pair.getFirst();
+            variable.result = createPointerVariable(loop, variable.affine, variable.base);
+            BasicBlock latch = variable.affine.getInductionVariable().getLatch();
+            for (GetElementPtrInst gep : pair.getSecond()) {
+                int constant = analysis.getAffineExpression(gep.getIndex().get(0)).getConstant();
+                if (gep.getBasicBlock().dominate(latch) && isAccessed(gep.getResult()))
+                    variable.accessed = true;
+                if (constant == 0) {
+                    gep.getResult().replaceUse(variable.result);
+                    gep.removeFromBlock();
+                } else {
+                    gep.replaceUse(gep.getIndex().get(0), new ConstInt(IntegerType.BitWidth.int32, constant));
+                    gep.replaceUse(variable.base, variable.result);
+                }
+            }
+            reducedVariables.add(variable);
+        }
+        return !groups.isEmpty();
+    }
+
+    static private boolean isAccessed(Register pointer) {
+        for (IRInstruction use : pointer.getUse().keySet()) {
+            if ((use instanceof LoadInst && ((LoadInst) use).getPointer() == pointer)
+                    || (use instanceof StoreInst && ((StoreInst) use).getPointer() == pointer))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean reduceMultiplications(LoopAnalysis.LoopNode loop, InductionVariableAnalysis analysis,
+                                          ArrayList<ReducedVariable> reducedVariables) {
+        ArrayList<ReducedVariable> variables = new ArrayList<>();
+        boolean changed = false;
+        for (BasicBlock block : loop.getLoopBlocks()) {
+            IRInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                IRInstruction next = ptr.getInstNext();
+                if (ptr instanceof BinaryOpInst && ((BinaryOpInst) ptr).getOp() == BinaryOpInst.BinaryOpName.mul) {
+                    InductionVariableAnalysis.AffineExpression affine = analysis.getAffineExpression(ptr.getResult());
+                    if (affine != null && !ptr.getResult().getUse().isEmpty()) {
+                        ReducedVariable variable = null;
+                        for (ReducedVariable reducedVariable : variables) {
+                            if (reducedVariable.affine.sameVariablePart(affine)) {
+                                variable = reducedVariable;
+                                break;
+                            }
+                        }
+                        if (variable == null) {
+                            variable = new ReducedVariable(affine, null, createIntegerVariable(loop, affine));
+                            variables.add(variable);
+                        }
+
+                        Operand value = variable.result;
+                        if (affine.getConstant() != 0) {
+                            Register result = newRegister(block.getFunction(), ptr.getResult());
+                            block.addInstructionPrev(ptr, new BinaryOpInst(block, BinaryOpInst.BinaryOpName.add,
+                                    variable.result, new ConstInt(IntegerType.BitWidth.int32,
+                                    affine.getConstant()), result));
+                            value = result;
+                        }
+                        ptr.getResult().replaceUse(value);
+                        ptr.removeFromBlock();
+                        changed = true;
+                    }
+                }
+                ptr = next;
+            }
+        }
+        reducedVariables.addAll(variables);
+        return changed;
+    }
+
+    // p = phi [gep base, scale * init + x, preHeader], [gep p, scale * step, latch]
+    private Register createPointerVariable(LoopAnalysis.LoopNode loop,
+                                           InductionVariableAnalysis.AffineExpression affine, Operand base) {
+        Function function = loop.getHeader().getFunction();
+        BasicBlock preHeader = loop.getPreHeader();
+        InductionVariableAnalysis.InductionVariable inductionVariable = affine.getInductionVariable();
+
+        Operand initIndex = emitVariablePart(preHeader, affine, inductionVariable.getInit());
+        Register init = new Register(base.getType(), "ivPointerInit");
+        function.getSymbolTable().put(init.getName(), init);
+        preHeader.addInstructionPrev(preHeader.getInstTail(),
+                new GetElementPtrInst(preHeader, base, new ArrayList<>(Collections.singletonList(initIndex)), init));
+
+        Register result = new Register(base.getType(), "ivPointer");
+        Register next = new Register(base.getType(), "ivPointerNext");
+        function.getSymbolTable().put(result.getName(), result);
+        function.getSymbolTable().put(next.getName(), next);
+        BasicBlock latch = inductionVariable.getLatch();
+        addHeaderPhi(loop, latch, result, init, next);
+        ConstInt step = new ConstInt(IntegerType.BitWidth.int32,
+                affine.getScale() * inductionVariable.getStep());
+        latch.addInstructionPrev(latch.getInstTail(),
+                new GetElementPtrInst(latch, result, new ArrayList<>(Collections.singletonList(step)), next));
+        return result;
+    }
+
+    // j = phi [scale * init + x, preHeader], [j + scale * step, latch]
+    private Register createIntegerVariable(LoopAnalysis.LoopNode loop,
+                                           InductionVariableAnalysis.AffineExpression affine) {
+        Function function = loop.getHeader().getFunction();
+        InductionVariableAnalysis.InductionVariable inductionVariable = affine.getInductionVariable();
+        Operand init = emitVariablePart(loop.getPreHeader(), affine, inductionVariable.getInit());
+
+        Register result = new Register(new IntegerType(IntegerType.BitWidth.int32), "iv");
+        Register next = new Register(new IntegerType(IntegerType.BitWidth.int32), "ivNext");
+        function.getSymbolTable().put(result.getName(), result);
+        function.getSymbolTable().put(next.getName(), next);
+        BasicBlock latch = inductionVariable.getLatch();
+        addHeaderPhi(loop, latch, result, init, next);
+        ConstInt step = new ConstInt(IntegerType.BitWidth.int32,
+                affine.getScale() * inductionVariable.getStep());
+        latch.addInstructionPrev(latch.getInstTail(),
+                new BinaryOpInst(latch, BinaryOpInst.BinaryOpName.add, result, step, next));
+        return result;
+    }
+
+    private void addHeaderPhi(LoopAnalysis.LoopNode loop, BasicBlock latch,
+                              Register result, Operand init, Register next) {
+        BasicBlock header = loop.getHeader();
+        Set<Pair<Operand, BasicBlock>> branch = new LinkedHashSet<>();
+        branch.add(new Pair<>(init, loop.getPreHeader()));
+        branch.add(new Pair<>(next, latch));
+        header.addInstructionAtFront(new PhiInst(header, branch, result));
+    }
+
+    // Emit scale * value + x before the terminator of block, where x is the sum of invariant terms of affine.
+    private Operand emitVariablePart(BasicBlock block, InductionVariableAnalysis.AffineExpression affine,
+                                     Operand value) {
+        Operand res = emitMultiply(block, value, affine.getScale());
+        for (Map.Entry<Operand, Integer> entry : affine.getTerms().entrySet())
+            res = emitAdd(block, res, emitMultiply(block, entry.getKey(), entry.getValue()));
+        return res;
+    }
+
+    // A negative factor is emitted as "0 - operand * (-factor)" instead of a multiplication by a negative
+    // constant, e.g. for the invariant term -n of a[i - n].
+    private Operand emitMultiply(BasicBlock block, Operand operand, int factor) {
+        if (factor == 1)
+            return operand;
+        if (operand instanceof ConstInt)
+            return new ConstInt(IntegerType.BitWidth.int32, ((int) ((ConstInt) operand).getValue()) * factor);
+        if (factor < 0 && factor != Integer.MIN_VALUE) {
+            Register result = new Register(new IntegerType(IntegerType.BitWidth.int32), "ivNeg");
+            block.getFunction().getSymbolTable().put(result.getName(), result);
+            block.addInstructionPrev(block.getInstTail(), new BinaryOpInst(block, BinaryOpInst.BinaryOpName.sub,
+                    new ConstInt(IntegerType.BitWidth.int32, 0), emitMultiply(block, operand, -factor), result));
+            return result;
+        }
+        Register result = new Register(new IntegerType(IntegerType.BitWidth.int32), "ivMul");
+        block.getFunction().getSymbolTable().put(result.getName(), result);
+        block.addInstructionPrev(block.getInstTail(), new BinaryOpInst(block, BinaryOpInst.BinaryOpName.mul,
+                operand, new ConstInt(IntegerType.BitWidth.int32, factor), result));
+        return result;
+    }
+
+    private Operand emitAdd(BasicBlock block, Operand lhs, Operand rhs) {
+        if (lhs instanceof ConstInt && rhs instanceof ConstInt)
+            return new ConstInt(IntegerType.BitWidth.int32,
+                    ((int) ((ConstInt) lhs).getValue()) + ((int) ((ConstInt) rhs).getValue()));
+        if (lhs instanceof ConstInt && ((ConstInt) lhs).getValue() == 0)
+            return rhs;
+        if (rhs instanceof ConstInt && ((ConstInt) rhs).getValue() == 0)
+            return lhs;
+        Register result = new Register(new IntegerType(IntegerType.BitWidth.int32), "ivAdd");
+        block.getFunction().getSymbolTable().put(result.getName(), result);
+        block.addInstructionPrev(block.getInstTail(), new BinaryOpInst(block, BinaryOpInst.BinaryOpName.add,
+                lhs, rhs, result));
+        return result;
+    }
+
+    static private Register newRegister(Function function, Register origin) {
+        Register result = new Register(origin.getType(), origin.getNameWithoutDot());
+        function.getSymbolTable().put(result.getName(), result);
+        return result;
+    }
+
+    // Derived induction variables whose uses are all reduced.
+    private void removeDeadDerivedVariables(LoopAnalysis.LoopNode loop, InductionVariableAnalysis analysis) {
+        Queue<IRInstruction> queue = new LinkedList<>();
+        for (BasicBlock block : loop.getLoopBlocks()) {
+            IRInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                if (ptr instanceof BinaryOpInst && ptr.getResult().getUse().isEmpty()
+                        && analysis.getAffineExpression(ptr.getResult()) != null)
+                    queue.offer(ptr);
+                ptr = ptr.getInstNext();
+            }
+        }
+        while (!queue.isEmpty()) {
+            BinaryOpInst inst = ((BinaryOpInst) queue.poll());
+            inst.removeFromBlock();
+            for (Operand operand : new Operand[]{inst.getLhs(), inst.getRhs()}) {
+                if (operand instanceof Register && operand.getUse().isEmpty()
+                        && ((Register) operand).getDef() instanceof BinaryOpInst
+                        && loop.getLoopBlocks().contains(((Register) operand).getDef().getBasicBlock())
+                        && analysis.getAffineExpression(operand) != null)
+                    queue.offer(((Register) operand).getDef());
+            }
+        }
+    }
+
+    // Rewrite "br (icmp slt/sle i, n)" in the header as a test on a reduced variable v = scale * i + x:
+    //   i < n  <=>  v < scale * n + x,  if scale > 0 and v does not overflow.
+    // For integer variables, x must be empty, and the bounds are checked for overflow. For pointers, p must be
+    // accessed in every iteration, so that the values of p lie in one object. A signed comparison of pointers
+    // is wrong for an object across 0x80000000, and the IR has no unsigned comparison, so p is compared by
+    // "ne" with its value in the first iteration which exits: i takes init, init + step, ... and exits at the
+    // first value e >= n(> n for sle), so i < n  <=>  i != e  <=>  p != scale * e + x.
+    private boolean replaceExitTest(LoopAnalysis.LoopNode loop, ArrayList<ReducedVariable> reducedVariables) {
+        BasicBlock header = loop.getHeader();
+        if (!(header.getInstTail() instanceof BranchInst) || !loop.exitsOnlyFromHeader())
+            return false;
+        Operand cond = ((BranchInst) header.getInstTail()).getCond();
+        if (!(cond instanceof Register) || !(((Register) cond).getDef() instanceof IcmpInst))
+            return false;
+        IcmpInst icmp = ((IcmpInst) ((Register) cond).getDef());
+        if (icmp.getBasicBlock() != header || !(icmp.getOp2() instanceof ConstInt)
+                || (icmp.getOperator() != IcmpInst.IcmpName.slt && icmp.getOperator() != IcmpInst.IcmpName.sle))
+            return false;
+
+        for (ReducedVariable variable : reducedVariables) {
+            InductionVariableAnalysis.InductionVariable inductionVariable = variable.affine.getInductionVariable();
+            if (inductionVariable.getPhi().getResult() != icmp.getOp1()
+                    || !(inductionVariable.getInit() instanceof ConstInt)
+                    || inductionVariable.getStep() <= 0 || variable.affine.getScale() <= 0)
+                continue;
+
+            long init = ((ConstInt) inductionVariable.getInit()).getValue();
+            long bound = ((ConstInt) icmp.getOp2()).getValue();
+            long scale = variable.affine.getScale();
+            if (variable.base == null) {
+                // i takes values in [init, bound + step], so v is in [scale * init, scale * (bound + step)].
+                if (!variable.affine.getTerms().isEmpty()
+                        || scale * Math.min(init, bound) < Integer.MIN_VALUE
+                        || scale * (Math.max(init, bound) + inductionVariable.getStep()) > Integer.MAX_VALUE)
+                    continue;
+            } else if (!variable.accessed || init >= bound)
+                continue;
+
+            Operand limit;
+            IcmpInst.IcmpName operator = icmp.getOperator();
+            if (variable.base == null)
+                limit = emitVariablePart(loop.getPreHeader(), variable.affine, icmp.getOp2());
+            else {
+                long step = inductionVariable.getStep();
+                long end = operator == IcmpInst.IcmpName.sle ? bound + 1 : bound;
+                long exit = init + (end - init + step - 1) / step * step;
+                if (exit > Integer.MAX_VALUE)
+                    continue;
+                limit = emitVariablePart(loop.getPreHeader(), variable.affine,
+                        new ConstInt(IntegerType.BitWidth.int32, exit));
+                operator = IcmpInst.IcmpName.ne;
+            }
+            if (variable.base != null) {
+                Register pointer = new Register(variable.base.getType(), "ivLimit");
+                header.getFunction().getSymbolTable().put(pointer.getName(), pointer);
+                loop.getPreHeader().addInstructionPrev(loop.getPreHeader().getInstTail(),
+                        new GetElementPtrInst(loop.getPreHeader(), variable.base,
+                                new ArrayList<>(Collections.singletonList(limit)), pointer));
+                limit = pointer;
+            }
+            Register result = newRegister(header.getFunction(), icmp.getResult());
+            header.addInstructionPrev(icmp, new IcmpInst(header, operator, variable.result.getType(),
+                    variable.result, limit, result));
+            icmp.getResult().replaceUse(result);
+            icmp.removeFromBlock();
+            return true;
+        }
+        return false;
+    }
+
+    // i = phi [init, preHeader], [i.next, latch], where i is only used by i.next and i.next only by i.
+    private boolean removeDeadInductionVariables(InductionVariableAnalysis analysis) {
+        boolean changed = false;
+        for (InductionVariableAnalysis.InductionVariable inductionVariable : analysis.getInductionVariables()) {
+            PhiInst phi = inductionVariable.getPhi();
+            BinaryOpInst increment = inductionVariable.getIncrement();
+            if (phi.getResult().getUse().keySet().equals(Collections.singleton(increment))
+                    && increment.getResult().getUse().keySet().equals(Collections.singleton(phi))) {
+                phi.removeFromBlock();
+                increment.removeFromBlock();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,321 @@
+package MxCompiler.Optim;
+
+import MxCompiler.IR.BasicBlock;
+import MxCompiler.IR.Function;
+import MxCompiler.IR.Instruction.CallInst;
+import MxCompiler.IR.Instruction.IRInstruction;
+import MxCompiler.IR.Instruction.LoadInst;
+import MxCompiler.IR.Instruction.StoreInst;
+import MxCompiler.IR.Operand.Operand;
+
+import java.util.*;
+
+// Memory SSA of a function, built on the dominator tree(see DominatorTreeConstructor).
+// Memory is partitioned into alias classes: two locations are in the same class if a pointer loaded
+// or stored in the function may point to both of them(see Andersen). Every class has its own versions:
+//   MemoryDef:   a store to the class, or a call with side effects(or a store through an unknown
+//                pointer), which defines every class
+//   MemoryPhi:   at the iterated dominance frontier of MemoryDefs of the class
+//   liveOnEntry: memory at the entrance of the function
+// Every load uses the version of its class reaching it. Only classes which are loaded are built.
+public class MemorySSA {
+    static final private int phiWalkLimit = 100;
+
+    static abstract public class MemoryAccess {
+    }
+
+    static public class LiveOnEntry extends MemoryAccess {
+        @Override
+        public String toString() {
+            return "liveOnEntry";
+        }
+    }
+
+    static public class MemoryDef extends MemoryAccess {
+        private IRInstruction instruction;
+        private MemoryAccess definingAccess;
+
+        MemoryDef(IRInstruction instruction, MemoryAccess definingAccess) {
+            this.instruction = instruction;
+            this.definingAccess = definingAccess;
+        }
+
+        public IRInstruction getInstruction() {
+            return instruction;
+        }
+
+        public MemoryAccess getDefiningAccess() {
+            return definingAccess;
+        }
+
+        @Override
+        public String toString() {
+            return "MemoryDef(" + instruction + ")";
+        }
+    }
+
+    static public class MemoryPhi extends MemoryAccess {
+        private BasicBlock block;
+        private int aliasClass;
+        private Map<BasicBlock, MemoryAccess> incoming;
+
+        MemoryPhi(BasicBlock block, int aliasClass) {
+            this.block = block;
+            this.aliasClass = aliasClass;
+            this.incoming = new LinkedHashMap<>();
+        }
+
+        public BasicBlock getBlock() {
+            return block;
+        }
+
+        public Map<BasicBlock, MemoryAccess> getIncoming() {
+            return incoming;
+        }
+
+        @Override
+        public String toString() {
+            return "MemoryPhi(" + block + ")";
+        }
+    }
+
+    private Function function;
+    private Andersen andersen;
+    private SideEffectChecker sideEffectChecker;
+
+    // location id -> father in union-find of locations
+    private int[] father;
+    // representative location -> index of the alias class
+    private Map<Integer, Integer> classIndex;
+    private int classCnt;
+
+    private Map<LoadInst, Integer> loadClass;
+    private Map<StoreInst, Integer> storeClass; // -1 if the pointer is unknown, -2 if no class is loaded.
+    private Map<BasicBlock, ArrayList<MemoryPhi>> phiMap;
+    private Map<LoadInst, MemoryAccess> useMap;
+    private ArrayList<LoadInst> loads;
+    private int phiBudget;
+
+    public MemorySSA(Function function, Andersen andersen, SideEffectChecker sideEffectChecker) {
+        this.function = function;
+        this.andersen = andersen;
+        this.sideEffectChecker = sideEffectChecker;
+        build();
+    }
+
+    // Loads with a version, in the preorder of the dominator tree.
+    public ArrayList<LoadInst> getLoads() {
+        return loads;
+    }
+
+    public MemoryAccess getDefiningAccess(LoadInst loadInst) {
+        return useMap.get(loadInst);
+    }
+
+    // Skip stores which cannot alias the pointer of loadInst. A MemoryPhi is skipped as well if all of its
+    // incoming accesses have the same clobbering access, where paths looping back to a MemoryPhi being walked
+    // are ignored: such a cycle does not clobber the pointer.
+    public MemoryAccess getClobberingAccess(LoadInst loadInst) {
+        phiBudget = phiWalkLimit;
+        MemoryAccess access = walk(useMap.get(loadInst), loadInst.getPointer(), new LinkedHashSet<>());
+        assert access != null;
+        return access;
+    }
+
+    // Return null if the access loops back to a MemoryPhi in walking.
+    // A MemoryPhi itself is always a correct answer, so it is returned when the walk is too long.
+    private MemoryAccess walk(MemoryAccess access, Operand pointer, Set<MemoryPhi> walking) {
+        while (access instanceof MemoryDef && ((MemoryDef) access).instruction instanceof StoreInst) {
+            StoreInst storeInst = ((StoreInst) ((MemoryDef) access).instruction);
+            if (storeClass.get(storeInst) < 0 || andersen.mayAlias(storeInst.getPointer(), pointer))
+                break;
+            access = ((MemoryDef) access).definingAccess;
+        }
+        if (!(access instanceof MemoryPhi))
+            return access;
+
+        MemoryPhi phi = ((MemoryPhi) access);
+        if (walking.contains(phi))
+            return null;
+        if (--phiBudget < 0)
+            return phi;
+        walking.add(phi);
+        MemoryAccess res = null;
+        for (MemoryAccess incoming : phi.incoming.values()) {
+            MemoryAccess clobber = walk(incoming, pointer, walking);
+            if (clobber == null)
+                continue;
+            if (res == null)
+                res = clobber;
+            else if (res != clobber) {
+                res = phi;
+                break;
+            }
+        }
+        walking.remove(phi);
+        return res == null && walking.isEmpty() ? phi : res;
+    }
+
+    private boolean isClobber(IRInstruction instruction) {
+        return instruction instanceof CallInst
+                && sideEffectChecker.hasSideEffect(((CallInst) instruction).getFunction());
+    }
+
+    private void build() {
+        father = new int[andersen.getLocationCount()];
+        for (int i = 0; i < father.length; i++)
+            father[i] = i;
+        classIndex = new LinkedHashMap<>();
+        classCnt = 0;
+        loadClass = new LinkedHashMap<>();
+        storeClass = new LinkedHashMap<>();
+        phiMap = new LinkedHashMap<>();
+        useMap = new LinkedHashMap<>();
+        loads = new ArrayList<>();
+
+        computeAliasClasses();
+        placeMemoryPhi();
+        rename();
+    }
+
+    private int find(int x) {
+        while (father[x] != x) {
+            father[x] = father[father[x]];
+            x = father[x];
+        }
+        return x;
+    }
+
+    // Return the representative location of the points-to set of pointer, -1 if it is unknown, or
+    // -2 if it points to nothing.
+    private int unionPointsTo(Operand pointer) {
+        BitSet pointsTo = andersen.getPointsTo(pointer);
+        if (pointsTo == null)
+            return -1;
+        int first = pointsTo.nextSetBit(0);
+        if (first < 0)
+            return -2;
+        for (int i = pointsTo.nextSetBit(first + 1); i >= 0; i = pointsTo.nextSetBit(i + 1))
+            father[find(i)] = find(first);
+        return first;
+    }
+
+    private void computeAliasClasses() {
+        Map<LoadInst, Integer> loadLocation = new LinkedHashMap<>();
+        Map<StoreInst, Integer> storeLocation = new LinkedHashMap<>();
+        for (BasicBlock block : function.getBlocks()) {
+            IRInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                if (ptr instanceof LoadInst) {
+                    int location = unionPointsTo(((LoadInst) ptr).getPointer());
+                    if (location >= 0)
+                        loadLocation.put((LoadInst) ptr, location);
+                } else if (ptr instanceof StoreInst)
+                    storeLocation.put((StoreInst) ptr, unionPointsTo(((StoreInst) ptr).getPointer()));
+                ptr = ptr.getInstNext();
+            }
+        }
+
+        for (Map.Entry<LoadInst, Integer> entry : loadLocation.entrySet()) {
+            int representative = find(entry.getValue());
+            if (!classIndex.containsKey(representative))
+                classIndex.put(representative, classCnt++);
+            loadClass.put(entry.getKey(), classIndex.get(representative));
+        }
+        for (Map.Entry<StoreInst, Integer> entry : storeLocation.entrySet()) {
+            int location = entry.getValue();
+            if (location == -1)
+                storeClass.put(entry.getKey(), -1);
+            else if (location == -2 || !classIndex.containsKey(find(location)))
+                storeClass.put(entry.getKey(), -2);
+            else
+                storeClass.put(entry.getKey(), classIndex.get(find(location)));
+        }
+    }
+
+    private void placeMemoryPhi() {
+        ArrayList<Set<BasicBlock>> defBlocks = new ArrayList<>();
+        for (int i = 0; i < classCnt; i++)
+            defBlocks.add(new LinkedHashSet<>());
+        for (BasicBlock block : function.getBlocks()) {
+            IRInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                if (ptr instanceof StoreInst && storeClass.get(ptr) >= 0)
+                    defBlocks.get(storeClass.get(ptr)).add(block);
+                else if (isClobber(ptr) || (ptr instanceof StoreInst && storeClass.get(ptr) == -1)) {
+                    for (int i = 0; i < classCnt; i++)
+                        defBlocks.get(i).add(block);
+                }
+                ptr = ptr.getInstNext();
+            }
+        }
+
+        for (int i = 0; i < classCnt; i++) {
+            Queue<BasicBlock> queue = new LinkedList<>(defBlocks.get(i));
+            Set<BasicBlock> hasPhi = new LinkedHashSet<>();
+            while (!queue.isEmpty()) {
+                BasicBlock block = queue.poll();
+                for (BasicBlock frontier : block.getDF()) {
+                    if (hasPhi.add(frontier)) {
+                        phiMap.computeIfAbsent(frontier, k -> new ArrayList<>()).add(new MemoryPhi(frontier, i));
+                        if (!defBlocks.get(i).contains(frontier))
+                            queue.offer(frontier);
+                    }
+                }
+            }
+        }
+    }
+
+    // Walk the dominator tree iteratively, since it may be deep after inlining.
+    private void rename() {
+        Map<BasicBlock, ArrayList<BasicBlock>> children = new LinkedHashMap<>();
+        for (BasicBlock block : function.getBlocks()) {
+            if (block.getIdom() != null)
+                children.computeIfAbsent(block.getIdom(), k -> new ArrayList<>()).add(block);
+        }
+
+        MemoryAccess[] current = new MemoryAccess[classCnt];
+        LiveOnEntry liveOnEntry = new LiveOnEntry();
+        Arrays.fill(current, liveOnEntry);
+
+        // Every frame is a block, together with the versions before visiting it.
+        Deque<BasicBlock> blockStack = new ArrayDeque<>();
+        Deque<MemoryAccess[]> savedStack = new ArrayDeque<>();
+        blockStack.push(function.getEntranceBlock());
+        savedStack.push(current.clone());
+        while (!blockStack.isEmpty()) {
+            BasicBlock block = blockStack.pop();
+            current = savedStack.pop();
+            renameBlock(block, current);
+            for (BasicBlock child : children.getOrDefault(block, new ArrayList<>())) {
+                blockStack.push(child);
+                savedStack.push(current.clone());
+            }
+        }
+    }
+
+    private void renameBlock(BasicBlock block, MemoryAccess[] current) {
+        for (MemoryPhi phi : phiMap.getOrDefault(block, new ArrayList<>()))
+            current[phi.aliasClass] = phi;
+
+        IRInstruction ptr = block.getInstHead();
+        while (ptr != null) {
+            if (ptr instanceof LoadInst && loadClass.containsKey(ptr)) {
+                useMap.put((LoadInst) ptr, current[loadClass.get(ptr)]);
+                loads.add((LoadInst) ptr);
+            } else if (ptr instanceof StoreInst && storeClass.get(ptr) >= 0) {
+                int aliasClass = storeClass.get(ptr);
+                current[aliasClass] = new MemoryDef(ptr, current[aliasClass]);
+            } else if (isClobber(ptr) || (ptr instanceof StoreInst && storeClass.get(ptr) == -1)) {
+                for (int i = 0; i < classCnt; i++)
+                    current[i] = new MemoryDef(ptr, current[i]);
+            }
+            ptr = ptr.getInstNext();
+        }
+
+        for (BasicBlock successor : block.getSuccessors()) {
+            for (MemoryPhi phi : phiMap.getOrDefault(successor, new ArrayList<>()))
+                phi.incoming.put(block, current[phi.aliasClass]);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package MxCompiler.Optim.PGO;
+
+import MxCompiler.IR.BasicBlock;
+import MxCompiler.IR.Function;
+import MxCompiler.IR.Instruction.CallInst;
+import MxCompiler.IR.Instruction.IRInstruction;
+import MxCompiler.IR.Module;
+import MxCompiler.Optim.Pass;
+import MxCompiler.Utilities.ErrorHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+
+// Annotate blocks and call sites with the counts of a profile(--pgo-use), at the same point as
+// ProfileInstrumenter. Counts are used by InlineExpander, PeepholeOptimization(block layout) and
+// RegisterAllocator(spill costs). Blocks created later keep the count of the block they are split or cloned
+// from, and the others are unknown(-1).
+public class ProfileAnnotator extends Pass {
+    private ProfileData profile;
+    private ErrorHandler errorHandler;
+
+    public ProfileAnnotator(Module module, ProfileData profile, ErrorHandler errorHandler) {
+        super(module);
+        this.profile = profile;
+        this.errorHandler = errorHandler;
+    }
+
+    @Override
+    public boolean run() {
+        ArrayList<BasicBlock> blocks = ProfileData.getCountedBlocks(module);
+        if (profile.getCounts().length != blocks.size()
+                || profile.getChecksum() != ProfileData.computeChecksum(blocks)) {
+            errorHandler.warning("The profile does not match the program, and it is ignored.");
+            return false;
+        }
+
+        long[] counts = profile.getCounts();
+        for (int i = 0; i < blocks.size(); i++) {
+            BasicBlock block = blocks.get(i);
+            block.setProfileCount(counts[i]);
+            IRInstruction ptr = block.getInstHead();
+            while (ptr != null) {
+                if (ptr instanceof CallInst)
+                    ((CallInst) ptr).setProfileCount(counts[i]);
+                ptr = ptr.getInstNext();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Set<Function> getChangedFunctions() {
+        return Collections.emptySet();
+    }
+}
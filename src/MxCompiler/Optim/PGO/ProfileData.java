@@ -0,0 +1,67 @@
+package MxCompiler.Optim.PGO;
+
+import MxCompiler.IR.BasicBlock;
+import MxCompiler.IR.Function;
+import MxCompiler.IR.Module;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+// Block counts of a run of an instrumented program(see ProfileInstrumenter).
+// The profile is a list of unsigned integers written by __pgo_write in builtin.s:
+//   checksum n count_0 count_1 ... count_{n-1}
+// where count_i is the number of executions of the i-th block of getCountedBlocks().
+public class ProfileData {
+    private int checksum;
+    private long[] counts;
+
+    public ProfileData(int checksum, long[] counts) {
+        this.checksum = checksum;
+        this.counts = counts;
+    }
+
+    static public ProfileData read(String fileName) throws IOException {
+        try (Scanner scanner = new Scanner(new FileInputStream(fileName))) {
+            if (!scanner.hasNextLong())
+                throw new IOException("Profile \"" + fileName + "\" is empty.");
+            int checksum = (int) scanner.nextLong();
+            int n = (int) scanner.nextLong();
+            long[] counts = new long[n];
+            for (int i = 0; i < n; i++) {
+                if (!scanner.hasNextLong())
+                    throw new IOException("Profile \"" + fileName + "\" is truncated.");
+                counts[i] = scanner.nextLong();
+            }
+            return new ProfileData(checksum, counts);
+        }
+    }
+
+    public int getChecksum() {
+        return checksum;
+    }
+
+    public long[] getCounts() {
+        return counts;
+    }
+
+    // Blocks which have counters, i.e. every block right after SSA construction.
+    // The instrumented build and the profile-use build compute the same list, since the compiler is deterministic.
+    static public ArrayList<BasicBlock> getCountedBlocks(Module module) {
+        ArrayList<BasicBlock> blocks = new ArrayList<>();
+        for (Function function : module.getFunctionMap().values())
+            blocks.addAll(function.getBlocks());
+        return blocks;
+    }
+
+    // A profile matches a program only if the checksums of their counted blocks are equal.
+    static public int computeChecksum(ArrayList<BasicBlock> blocks) {
+        int checksum = blocks.size();
+        for (BasicBlock block : blocks) {
+            checksum = checksum * 31 + block.getFunction().getName().hashCode();
+            checksum = checksum * 31 + block.getName().hashCode();
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,83 @@
+package MxCompiler.Optim.PGO;
+
+import MxCompiler.IR.BasicBlock;
+import MxCompiler.IR.Function;
+import MxCompiler.IR.Instruction.*;
+import MxCompiler.IR.Module;
+import MxCompiler.IR.Operand.ConstInt;
+import MxCompiler.IR.Operand.GlobalVariable;
+import MxCompiler.IR.Operand.Operand;
+import MxCompiler.IR.Operand.Register;
+import MxCompiler.IR.TypeSystem.IntegerType;
+import MxCompiler.Optim.Pass;
+
+import java.util.ArrayList;
+
+// Instrument the program for profile-guided optimization(--pgo-generate).
+// Every block right after SSA construction increases its own counter(a global i32 variable), and main writes
+// the counters by __pgo_write before it returns(see ProfileData for the format).
+// Since counters are inserted before any optimization, inlined and unrolled copies of a block increase
+// the same counter, so the counts are exact for the original CFG. A call site is counted by its block,
+// and an edge by its target if the target has only one predecessor.
+public class ProfileInstrumenter extends Pass {
+    public ProfileInstrumenter(Module module) {
+        super(module);
+    }
+
+    @Override
+    public boolean run() {
+        ArrayList<BasicBlock> blocks = ProfileData.getCountedBlocks(module);
+        ArrayList<GlobalVariable> counters = new ArrayList<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            GlobalVariable counter = new GlobalVariable(new IntegerType(IntegerType.BitWidth.int32),
+                    "__pgo." + i, new ConstInt(IntegerType.BitWidth.int32, 0));
+            module.addGlobalVariable(counter);
+            counters.add(counter);
+            addIncrement(blocks.get(i), counter);
+        }
+        addDump(ProfileData.computeChecksum(blocks), counters);
+        return true;
+    }
+
+    private void addIncrement(BasicBlock block, GlobalVariable counter) {
+        Function function = block.getFunction();
+        IRInstruction ptr = block.getInstHead();
+        while (ptr instanceof PhiInst)
+            ptr = ptr.getInstNext();
+        assert ptr != null;
+
+        Register count = new Register(new IntegerType(IntegerType.BitWidth.int32), "pgoCount");
+        Register countNext = new Register(new IntegerType(IntegerType.BitWidth.int32), "pgoCountNext");
+        function.getSymbolTable().put(count.getName(), count);
+        function.getSymbolTable().put(countNext.getName(), countNext);
+        block.addInstructionPrev(ptr, new LoadInst(block, new IntegerType(IntegerType.BitWidth.int32),
+                counter, count));
+        block.addInstructionPrev(ptr, new BinaryOpInst(block, BinaryOpInst.BinaryOpName.add,
+                count, new ConstInt(IntegerType.BitWidth.int32, 1), countNext));
+        block.addInstructionPrev(ptr, new StoreInst(block, countNext, counter));
+    }
+
+    private void addDump(int checksum, ArrayList<GlobalVariable> counters) {
+        Function mainFunction = module.getFunctionMap().get("main");
+        Function write = module.getExternalFunctionMap().get("__pgo_write");
+        BasicBlock exitBlock = mainFunction.getExitBlock();
+        assert exitBlock.getInstTail() instanceof ReturnInst;
+        IRInstruction returnInst = exitBlock.getInstTail();
+
+        addWrite(exitBlock, returnInst, write, new ConstInt(IntegerType.BitWidth.int32, checksum));
+        addWrite(exitBlock, returnInst, write, new ConstInt(IntegerType.BitWidth.int32, counters.size()));
+        for (GlobalVariable counter : counters) {
+            Register count = new Register(new IntegerType(IntegerType.BitWidth.int32), "pgoCount");
+            mainFunction.getSymbolTable().put(count.getName(), count);
+            exitBlock.addInstructionPrev(returnInst, new LoadInst(exitBlock,
+                    new IntegerType(IntegerType.BitWidth.int32), counter, count));
+            addWrite(exitBlock, returnInst, write, count);
+        }
+    }
+
+    private void addWrite(BasicBlock block, IRInstruction returnInst, Function write, Operand value) {
+        ArrayList<Operand> parameters = new ArrayList<>();
+        parameters.add(value);
+        block.addInstructionPrev(returnInst, new CallInst(block, write, parameters, null));
+    }
+}
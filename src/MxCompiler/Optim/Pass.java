@@ -1,7 +1,10 @@
 package MxCompiler.Optim;
 
+import MxCompiler.IR.Function;
 import MxCompiler.IR.Module;
 
+import java.util.Set;
+
 abstract public class Pass {
     protected Module module;
     protected boolean changed;
@@ -12,4 +15,16 @@ abstract public class Pass {
     }
 
     abstract public boolean run();
+
+    // A CFG analysis computes information depending only on the CFG of every function(e.g. dominator tree),
+    // so PassManager runs it again only on functions whose CFG changed.
+    public boolean isCFGAnalysis() {
+        return false;
+    }
+
+    // Functions changed by the last run, or null if unknown(i.e. every function may be changed).
+    // It is only used for passes other than FunctionPasses(see PassManager).
+    public Set<Function> getChangedFunctions() {
+        return null;
+    }
 }
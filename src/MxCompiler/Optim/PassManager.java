@@ -0,0 +1,192 @@
+package MxCompiler.Optim;
+
+import MxCompiler.IR.BasicBlock;
+import MxCompiler.IR.Function;
+import MxCompiler.IR.Module;
+import MxCompiler.Utilities.Profiler;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+// Run FunctionPasses with one task per function on a ForkJoinPool.
+// Other passes(Andersen, InlineExpander, FunctionRemover, ...) are interprocedural,
+// so they run sequentially and act as barriers.
+//
+// Passes are scheduled incrementally in rounds(iterations of the optimization loop):
+// - A FunctionPass which transforms the IR only visits dirty functions, i.e. functions changed in the
+//   last round(see nextRound()). In the first round every function is dirty.
+// - A CFG analysis only visits functions whose CFG changed since its last run on them. The CFG of every
+//   function is recorded after the analysis, and compared exactly before the next one.
+// - Functions affected by interprocedural analyses(see watch()) are dirty in the next round as well.
+//   If such an analysis is run by PassManager, its consumers run after it in every round, so functions
+//   changed since its last run are not counted: they are dirty anyway.
+public class PassManager {
+    private Module module;
+    private ForkJoinPool pool;
+    private Profiler profiler;
+
+    private Set<Function> dirtyFunctions;
+    private Set<Function> changedFunctions;
+    private Map<Pass, Map<Function, CFGSnapshot>> cfgSnapshots;
+    private Set<Function> affectedFunctions;
+    // analysis -> functions changed since its last run by PassManager
+    private Map<InterproceduralAnalysis, Set<Function>> interproceduralAnalyses;
+
+    // pool == null means running every pass sequentially.
+    // Every pass is recorded in profiler under its class name.
+    public PassManager(Module module, ForkJoinPool pool, Profiler profiler) {
+        this.module = module;
+        this.pool = pool;
+        this.profiler = profiler;
+
+        dirtyFunctions = new LinkedHashSet<>(module.getFunctionMap().values());
+        changedFunctions = new LinkedHashSet<>();
+        cfgSnapshots = new LinkedHashMap<>();
+        affectedFunctions = new LinkedHashSet<>();
+        interproceduralAnalyses = new LinkedHashMap<>();
+    }
+
+    // Re-optimize functions affected by the analysis in the next round.
+    public void watch(InterproceduralAnalysis analysis) {
+        interproceduralAnalyses.put(analysis, new LinkedHashSet<>());
+    }
+
+    // Start a new round, in which the functions changed in this round are dirty.
+    // Return false if no function is dirty.
+    public boolean nextRound() {
+        dirtyFunctions = changedFunctions;
+        changedFunctions = new LinkedHashSet<>();
+        dirtyFunctions.addAll(affectedFunctions);
+        affectedFunctions = new LinkedHashSet<>();
+        // Analyses run by other passes, e.g. SideEffectChecker.
+        for (InterproceduralAnalysis analysis : interproceduralAnalyses.keySet())
+            dirtyFunctions.addAll(analysis.pollAffectedFunctions());
+
+        // Drop removed functions(see FunctionRemover).
+        Collection<Function> functions = module.getFunctionMap().values();
+        dirtyFunctions.retainAll(functions);
+        for (Map<Function, CFGSnapshot> snapshots : cfgSnapshots.values())
+            snapshots.keySet().retainAll(functions);
+        return !dirtyFunctions.isEmpty();
+    }
+
+    // Make every function dirty in this round, e.g. before a pass which runs once(see LoopUnroller).
+    public void markAllDirty() {
+        dirtyFunctions = new LinkedHashSet<>(module.getFunctionMap().values());
+    }
+
+    public boolean run(Pass pass) {
+        profiler.start(pass.getClass().getSimpleName(), module);
+        boolean changed;
+        if (pass.isCFGAnalysis())
+            changed = runCFGAnalysis(((FunctionPass) pass));
+        else if (pass instanceof FunctionPass)
+            changed = runFunctionPass(((FunctionPass) pass));
+        else {
+            changed = pass.run();
+            Set<Function> changedFunctions = pass.getChangedFunctions();
+            if (changedFunctions == null)
+                markChanged(module.getFunctionMap().values());
+            else
+                markChanged(changedFunctions);
+        }
+
+        if (interproceduralAnalyses.containsKey(pass)) {
+            Set<Function> affected = ((InterproceduralAnalysis) pass).pollAffectedFunctions();
+            Set<Function> changedSinceLastRun = interproceduralAnalyses.get(pass);
+            for (Function function : affected) {
+                if (!changedSinceLastRun.contains(function))
+                    affectedFunctions.add(function);
+            }
+            changedSinceLastRun.clear();
+        }
+        profiler.end(changed, module);
+        return changed;
+    }
+
+    private boolean runFunctionPass(FunctionPass pass) {
+        if (!pass.initialize())
+            return false;
+
+        ArrayList<Function> functions = new ArrayList<>();
+        for (Function function : module.getFunctionMap().values()) {
+            if (dirtyFunctions.contains(function))
+                functions.add(function);
+        }
+        List<Function> changedFunctions = runOnFunctions(pass, functions);
+        markChanged(changedFunctions);
+        return pass.finish(!changedFunctions.isEmpty());
+    }
+
+    private boolean runCFGAnalysis(FunctionPass pass) {
+        if (!pass.initialize())
+            return false;
+
+        Map<Function, CFGSnapshot> snapshots = cfgSnapshots.computeIfAbsent(pass, k -> new LinkedHashMap<>());
+        ArrayList<Function> functions = new ArrayList<>();
+        for (Function function : module.getFunctionMap().values()) {
+            CFGSnapshot snapshot = new CFGSnapshot(function);
+            if (!snapshot.sameAs(snapshots.get(function))) {
+                functions.add(function);
+                snapshots.put(function, snapshot);
+            }
+        }
+        boolean changed = !runOnFunctions(pass, functions).isEmpty();
+
+        // An analysis may change the CFG as well, e.g. LoopAnalysis adds pre-headers.
+        for (Function function : functions) {
+            CFGSnapshot snapshot = new CFGSnapshot(function);
+            if (!snapshots.get(function).sameAs(snapshot)) {
+                markChanged(Collections.singleton(function));
+                snapshots.put(function, snapshot);
+            }
+        }
+        return pass.finish(changed);
+    }
+
+    // Return the functions changed by pass.
+    private List<Function> runOnFunctions(FunctionPass pass, ArrayList<Function> functions) {
+        if (pool == null) {
+            ArrayList<Function> res = new ArrayList<>();
+            for (Function function : functions) {
+                if (pass.runOnFunction(function))
+                    res.add(function);
+            }
+            return res;
+        } else {
+            return pool.submit(() -> functions.parallelStream()
+                    .filter(pass::runOnFunction)
+                    .collect(Collectors.toList())).join();
+        }
+    }
+
+    private void markChanged(Collection<Function> functions) {
+        changedFunctions.addAll(functions);
+        for (Set<Function> changedSinceLastRun : interproceduralAnalyses.values())
+            changedSinceLastRun.addAll(functions);
+        // CFG analyses are not invalidated here, since their snapshots are compared before every run.
+    }
+
+    // Blocks of a function in order, together with their successors.
+    static private class CFGSnapshot {
+        private final ArrayList<BasicBlock> blocks;
+        private final ArrayList<Set<BasicBlock>> successors;
+        private final BasicBlock exitBlock;
+
+        CFGSnapshot(Function function) {
+            blocks = function.getBlocks();
+            successors = new ArrayList<>();
+            for (BasicBlock block : blocks)
+                successors.add(new LinkedHashSet<>(block.getSuccessors()));
+            exitBlock = function.getExitBlock();
+        }
+
+        boolean sameAs(CFGSnapshot other) {
+            return other != null
+                    && exitBlock == other.exitBlock
+                    && blocks.equals(other.blocks)
+                    && successors.equals(other.successors);
+        }
+    }
+}
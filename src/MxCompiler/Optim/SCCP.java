@@ -13,7 +13,7 @@ import MxCompiler.Utilities.Pair;
 
 import java.util.*;
 
-public class SCCP extends Pass implements IRVisitor {
+public class SCCP extends FunctionPass implements IRVisitor {
     public static class Status {
         public enum OperandStatus {
             undefined, constant, multiDefined
@@ -54,11 +54,16 @@ public class SCCP extends Pass implements IRVisitor {
     }
 
     @Override
-    public boolean run() {
-        changed = false;
-        for (Function function : module.getFunctionMap().values())
-            visit(function);
-        return changed;
+    protected boolean initialize() {
+        return true;
+    }
+
+    @Override
+    protected boolean runOnFunction(Function function) {
+        // The lattice is shared by all visit methods, so every function is visited by its own SCCP.
+        SCCP sccp = new SCCP(module);
+        sccp.visit(function);
+        return sccp.changed;
     }
 
     private void markExecutable(BasicBlock block) {
@@ -118,8 +123,8 @@ public class SCCP extends Pass implements IRVisitor {
     public void visit(Function function) {
         registerQueue = new LinkedList<>();
         blockQueue = new LinkedList<>();
-        operandLattice = new HashMap<>();
-        blockExecutable = new HashSet<>();
+        operandLattice = new LinkedHashMap<>();
+        blockExecutable = new LinkedHashSet<>();
 
         markExecutable(function.getEntranceBlock());
         while (!registerQueue.isEmpty() || !blockQueue.isEmpty()) {
@@ -288,7 +293,7 @@ public class SCCP extends Pass implements IRVisitor {
         // Do nothing.
     }
 
-    private Constant foldConstant(IRInstruction inst, Constant lhs, Constant rhs) {
+    static Constant foldConstant(IRInstruction inst, Constant lhs, Constant rhs) {
         assert inst instanceof BinaryOpInst || inst instanceof IcmpInst;
         Constant result;
         if (inst instanceof BinaryOpInst) {
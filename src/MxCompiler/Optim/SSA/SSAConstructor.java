@@ -33,16 +33,17 @@ public class SSAConstructor extends Pass {
         return true;
     }
 
-    private void constructSSA(Function function) {
+    // Promote every alloca of the function. Dominance frontiers must be valid(see ScalarReplacement).
+    public void constructSSA(Function function) {
         allocaInst = function.getAllocaInstructions();
-        phiInstMap = new HashMap<>();
-        useAlloca = new HashMap<>();
-        defAlloca = new HashMap<>();
-        renameTable = new HashMap<>();
+        phiInstMap = new LinkedHashMap<>();
+        useAlloca = new LinkedHashMap<>();
+        defAlloca = new LinkedHashMap<>();
+        renameTable = new LinkedHashMap<>();
 
         for (BasicBlock block : function.getBlocks()) {
-            phiInstMap.put(block, new HashMap<>());
-            renameTable.put(block, new HashMap<>());
+            phiInstMap.put(block, new LinkedHashMap<>());
+            renameTable.put(block, new LinkedHashMap<>());
         }
 
         for (AllocateInst alloca : allocaInst) {
@@ -58,8 +59,8 @@ public class SSAConstructor extends Pass {
             }
 
             Queue<BasicBlock> queue = new LinkedList<>();
-            HashSet<BasicBlock> visitSet = new HashSet<>();
-            HashSet<BasicBlock> phiSet = new HashSet<>();
+            HashSet<BasicBlock> visitSet = new LinkedHashSet<>();
+            HashSet<BasicBlock> phiSet = new LinkedHashSet<>();
             for (StoreInst def : defs) {
                 queue.offer(def.getBasicBlock());
                 visitSet.add(def.getBasicBlock());
@@ -88,15 +89,18 @@ public class SSAConstructor extends Pass {
         // Why? Avoid using a variable before any of its definition.
         loadInstElimination(function);
 
-        visit = new HashSet<>();
+        visit = new LinkedHashSet<>();
         rename(function.getEntranceBlock(), null);
     }
 
     private void addPhiInst(BasicBlock block, AllocateInst alloca) {
         String name = alloca.getResult().getName().split("\\$")[0];
         Register result = new Register(alloca.getType(), name);
-        phiInstMap.get(block).put(alloca, new PhiInst(block, new LinkedHashSet<>(), result));
+        PhiInst phiInst = new PhiInst(block, new LinkedHashSet<>(), result);
+        phiInstMap.get(block).put(alloca, phiInst);
         block.getFunction().getSymbolTable().put(result.getName(), result);
+        // Add the phi before renaming, so that its incoming values are added to use lists only once(by addBranch).
+        block.addInstructionAtFront(phiInst);
     }
 
     private void loadInstElimination(Function function) {
@@ -156,8 +160,5 @@ public class SSAConstructor extends Pass {
 
         for (BasicBlock successor : block.getSuccessors())
             rename(successor, block);
-
-        for (PhiInst phiInst : map.values())
-            block.addInstructionAtFront(phiInst);
     }
 }
@@ -10,7 +10,7 @@ import MxCompiler.Optim.Pass;
 import MxCompiler.Utilities.Pair;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 public class SSADestructor extends Pass {
@@ -30,7 +30,7 @@ public class SSADestructor extends Pass {
 
     private void splitCriticalEdges(Function function) {
         for (BasicBlock block : function.getDFSOrder()) {
-            Set<BasicBlock> predecessors = new HashSet<>(block.getPredecessors());
+            Set<BasicBlock> predecessors = new LinkedHashSet<>(block.getPredecessors());
             if (predecessors.size() == 0)
                 continue;
 
@@ -0,0 +1,162 @@
+// ------ Escape Analysis and Scalar Replacement ------
+
+package MxCompiler.Optim;
+
+import MxCompiler.IR.BasicBlock;
+import MxCompiler.IR.Function;
+import MxCompiler.IR.Instruction.*;
+import MxCompiler.IR.Module;
+import MxCompiler.IR.Operand.*;
+import MxCompiler.IR.TypeSystem.IRType;
+import MxCompiler.IR.TypeSystem.PointerType;
+import MxCompiler.IR.TypeSystem.StructureType;
+import MxCompiler.Optim.SSA.SSAConstructor;
+
+import java.util.*;
+
+// Replace class objects which never escape the function with one register per field.
+// An object created by "new"(malloc + bitcast to a class pointer) does not escape if every address derived from
+// it(by bitcasts and constant getelementptrs) is only used
+//   - as the pointer of a load or a store, or
+//   - in an eq/ne icmp with null or with a pointer whose points-to set(see Andersen) does not include it.
+// i.e. it is never stored, passed, returned or merged by a phi, so no other pointer can reach it. Every accessed
+// field becomes an alloca, which is reset to the default value at the malloc site and promoted by
+// SSAConstructor at once. The object is then removed along with the malloc.
+// Objects passed to their constructors or to other functions are found after inlining.
+public class ScalarReplacement extends FunctionPass {
+    private Andersen andersen;
+
+    public ScalarReplacement(Module module, Andersen andersen) {
+        super(module);
+        this.andersen = andersen;
+    }
+
+    @Override
+    protected boolean runOnFunction(Function function) {
+        if (function.isNotFunctional())
+            return false;
+        Function malloc = module.getExternalFunctionMap().get("malloc");
+        boolean changed = false;
+        for (BasicBlock block : function.getBlocks()) {
+            for (IRInstruction instruction : block.getInstructions()) {
+                if (instruction instanceof CallInst && ((CallInst) instruction).getFunction() == malloc)
+                    changed |= replaceObject((CallInst) instruction);
+            }
+        }
+
+        // Promote the allocas of fields. Dominance frontiers are still valid, since the CFG is unchanged.
+        if (changed)
+            new SSAConstructor(module).constructSSA(function);
+        return changed;
+    }
+
+    private boolean replaceObject(CallInst mallocInst) {
+        Register object = mallocInst.getResult();
+        StructureType structure = null;
+        for (IRInstruction useInst : object.getUse().keySet()) {
+            if (!(useInst instanceof BitCastToInst))
+                return false;
+            IRType type = ((PointerType) ((BitCastToInst) useInst).getObjectType()).getBaseType();
+            if (!(type instanceof StructureType) || (structure != null && !structure.equals(type)))
+                return false;
+            structure = (StructureType) type;
+        }
+        if (structure == null)
+            return false;
+
+        // address -> index of the field, or -1 for the whole object
+        Map<Register, Integer> addresses = new LinkedHashMap<>();
+        ArrayList<IRInstruction> accesses = new ArrayList<>();
+        ArrayList<IcmpInst> comparisons = new ArrayList<>();
+        for (IRInstruction useInst : object.getUse().keySet())
+            addresses.put(useInst.getResult(), -1);
+        if (!analyzeEscape(mallocInst, structure, addresses, accesses, comparisons))
+            return false;
+
+        // Allocate the fields.
+        Function function = mallocInst.getBasicBlock().getFunction();
+        BasicBlock entranceBlock = function.getEntranceBlock();
+        Map<Integer, AllocateInst> fields = new LinkedHashMap<>();
+        for (Register address : addresses.keySet()) {
+            int index = addresses.get(address);
+            if (index == -1 || fields.containsKey(index))
+                continue;
+            IRType type = structure.getMemberList().get(index);
+            Register result = new Register(new PointerType(type), address.getName().split("\\$")[0] + "$addr");
+            AllocateInst alloca = new AllocateInst(entranceBlock, result, type);
+            entranceBlock.addInstructionAtFront(alloca);
+            function.getSymbolTable().put(result.getName(), result);
+            mallocInst.getBasicBlock().addInstructionPrev(mallocInst,
+                    new StoreInst(mallocInst.getBasicBlock(), type.getDefaultValue(), result));
+            fields.put(index, alloca);
+        }
+
+        for (IRInstruction access : accesses) {
+            Operand pointer = access instanceof LoadInst
+                    ? ((LoadInst) access).getPointer() : ((StoreInst) access).getPointer();
+            access.replaceUse(pointer, fields.get(addresses.get(pointer)).getResult());
+        }
+        for (IcmpInst comparison : comparisons) {
+            comparison.getResult().replaceUse(new ConstBool(comparison.getOperator() == IcmpInst.IcmpName.ne));
+            comparison.removeFromBlock();
+        }
+
+        // Addresses are derived in order, so they are removed backwards.
+        ArrayList<Register> derived = new ArrayList<>(addresses.keySet());
+        Collections.reverse(derived);
+        for (Register address : derived)
+            address.getDef().removeFromBlock();
+        mallocInst.removeFromBlock();
+        return true;
+    }
+
+    // Return true if the object does not escape, and collect its addresses, accesses and comparisons.
+    private boolean analyzeEscape(CallInst mallocInst, StructureType structure, Map<Register, Integer> addresses,
+                                  ArrayList<IRInstruction> accesses, ArrayList<IcmpInst> comparisons) {
+        BitSet location = andersen.getPointsTo(mallocInst.getResult());
+        Queue<Register> queue = new LinkedList<>(addresses.keySet());
+        while (!queue.isEmpty()) {
+            Register address = queue.poll();
+            int index = addresses.get(address);
+            for (IRInstruction useInst : address.getUse().keySet()) {
+                if (useInst instanceof LoadInst && index != -1)
+                    accesses.add(useInst);
+                else if (useInst instanceof StoreInst && index != -1
+                        && ((StoreInst) useInst).getPointer() == address
+                        && ((StoreInst) useInst).getValue() != address)
+                    accesses.add(useInst);
+                else if (useInst instanceof IcmpInst) {
+                    IcmpInst icmpInst = ((IcmpInst) useInst);
+                    Operand other = icmpInst.getOp1() == address ? icmpInst.getOp2() : icmpInst.getOp1();
+                    if (icmpInst.getOperator() != IcmpInst.IcmpName.eq
+                            && icmpInst.getOperator() != IcmpInst.IcmpName.ne)
+                        return false;
+                    if (!(other instanceof ConstNull)) {
+                        BitSet pointsTo = andersen.getPointsTo(other);
+                        if (location == null || location.isEmpty() || pointsTo == null
+                                || pointsTo.intersects(location))
+                            return false;
+                    }
+                    comparisons.add(icmpInst);
+                } else if (useInst instanceof BitCastToInst && index == -1) {
+                    // The first field.
+                    IRType type = ((PointerType) ((BitCastToInst) useInst).getObjectType()).getBaseType();
+                    if (!type.equals(structure.getMemberList().get(0)))
+                        return false;
+                    addresses.put(useInst.getResult(), 0);
+                    queue.offer(useInst.getResult());
+                } else if (useInst instanceof GetElementPtrInst && index == -1) {
+                    ArrayList<Operand> indices = ((GetElementPtrInst) useInst).getIndex();
+                    if (indices.size() != 2 || !(indices.get(0) instanceof ConstInt)
+                            || ((ConstInt) indices.get(0)).getValue() != 0
+                            || !(indices.get(1) instanceof ConstInt))
+                        return false;
+                    addresses.put(useInst.getResult(), (int) ((ConstInt) indices.get(1)).getValue());
+                    queue.offer(useInst.getResult());
+                } else
+                    return false;
+            }
+        }
+        return true;
+    }
+}
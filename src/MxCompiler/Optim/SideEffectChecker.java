@@ -10,7 +10,7 @@ import MxCompiler.IR.TypeSystem.VoidType;
 
 import java.util.*;
 
-public class SideEffectChecker extends Pass {
+public class SideEffectChecker extends Pass implements InterproceduralAnalysis {
     public enum Scope {
         undefined, local, outer
     }
@@ -21,6 +21,12 @@ public class SideEffectChecker extends Pass {
     private Boolean ignoreIO;
     private Boolean ignoreLoad;
 
+    // Results of the last run with every (ignoreIO, ignoreLoad), for finding the callers whose
+    // optimization opportunities changed(see pollAffectedFunctions()).
+    private Map<Integer, Set<Function>> lastSideEffect;
+    private Map<Function, Scope> lastReturnValueScope;
+    private Set<Function> affectedFunctions;
+
     public SideEffectChecker(Module module) {
         super(module);
     }
@@ -54,11 +60,64 @@ public class SideEffectChecker extends Pass {
         assert ignoreLoad != null;
         computeScope();
         checkSideEffect();
+        collectAffectedFunctions();
         ignoreIO = null;
         ignoreLoad = null;
         return false;
     }
 
+    @Override
+    public Set<Function> getChangedFunctions() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Function> pollAffectedFunctions() {
+        if (affectedFunctions == null)
+            return Collections.emptySet();
+        Set<Function> res = affectedFunctions;
+        affectedFunctions = new LinkedHashSet<>();
+        return res;
+    }
+
+    private void collectAffectedFunctions() {
+        if (lastSideEffect == null) {
+            lastSideEffect = new LinkedHashMap<>();
+            affectedFunctions = new LinkedHashSet<>();
+        }
+
+        Set<Function> flipped = new LinkedHashSet<>();
+        int key = (ignoreIO ? 2 : 0) | (ignoreLoad ? 1 : 0);
+        Set<Function> last = lastSideEffect.get(key);
+        if (last != null) {
+            for (Function function : sideEffect) {
+                if (!last.contains(function))
+                    flipped.add(function);
+            }
+            for (Function function : last) {
+                if (!sideEffect.contains(function))
+                    flipped.add(function);
+            }
+        }
+        lastSideEffect.put(key, sideEffect);
+        if (lastReturnValueScope != null) {
+            for (Function function : returnValueScope.keySet()) {
+                if (lastReturnValueScope.containsKey(function)
+                        && lastReturnValueScope.get(function) != returnValueScope.get(function))
+                    flipped.add(function);
+            }
+        }
+        lastReturnValueScope = returnValueScope;
+
+        // Removed functions have no callers.
+        for (Function function : flipped) {
+            for (IRInstruction callInst : function.getUse().keySet()) {
+                assert callInst instanceof CallInst;
+                affectedFunctions.add(callInst.getBasicBlock().getFunction());
+            }
+        }
+    }
+
     static public Scope getOperandScope(Operand operand) {
         assert operand instanceof Parameter || operand instanceof Register;
         if (operand.getType() instanceof PointerType)
@@ -68,10 +127,10 @@ public class SideEffectChecker extends Pass {
     }
 
     private void computeScope() {
-        scopeMap = new HashMap<>();
-        returnValueScope = new HashMap<>();
+        scopeMap = new LinkedHashMap<>();
+        returnValueScope = new LinkedHashMap<>();
         Queue<Function> queue = new LinkedList<>();
-        Set<Function> inQueue = new HashSet<>();
+        Set<Function> inQueue = new LinkedHashSet<>();
 
         for (GlobalVariable globalVariable : module.getGlobalVariableMap().values())
             scopeMap.put(globalVariable, Scope.outer);
@@ -142,7 +201,7 @@ public class SideEffectChecker extends Pass {
 
     private void computeScopeInFunction(Function function) {
         Queue<BasicBlock> queue = new LinkedList<>();
-        Set<BasicBlock> visit = new HashSet<>();
+        Set<BasicBlock> visit = new LinkedHashSet<>();
 
         queue.offer(function.getEntranceBlock());
         visit.add(function.getEntranceBlock());
@@ -176,7 +235,7 @@ public class SideEffectChecker extends Pass {
     }
 
     private void checkSideEffect() {
-        sideEffect = new HashSet<>();
+        sideEffect = new LinkedHashSet<>();
         Queue<Function> queue = new LinkedList<>();
 
         if (!ignoreIO) {
@@ -0,0 +1,115 @@
+// ------ Tail Recursion Elimination ------
+
+package MxCompiler.Optim;
+
+import MxCompiler.IR.BasicBlock;
+import MxCompiler.IR.Function;
+import MxCompiler.IR.Instruction.*;
+import MxCompiler.IR.Module;
+import MxCompiler.IR.Operand.Operand;
+import MxCompiler.IR.Operand.Parameter;
+import MxCompiler.IR.Operand.Register;
+import MxCompiler.Utilities.Pair;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+// Turn self tail calls into a loop. A call to the function itself is a tail call if it is followed by
+// "br exitBlock" only, and the exit block returns its result(through the phi of the return value) or returns void.
+// The old entrance block becomes the loop header, where every parameter is replaced with a phi of the
+// parameter(from a new entrance block) and the arguments of the tail calls, and tail calls become branches
+// to the header.
+// Other calls in tail position are left to the backend(see InstructionSelector).
+public class TailRecursionEliminator extends FunctionPass {
+    public TailRecursionEliminator(Module module) {
+        super(module);
+    }
+
+    @Override
+    protected boolean runOnFunction(Function function) {
+        if (function.isNotFunctional())
+            return false;
+        BasicBlock exitBlock = function.getExitBlock();
+        ArrayList<CallInst> tailCalls = new ArrayList<>();
+        for (BasicBlock predecessor : exitBlock.getPredecessors()) {
+            if (isTailCall(predecessor, function))
+                tailCalls.add((CallInst) predecessor.getInstTail().getInstPrev());
+        }
+        // The exit block must be reachable without recursion.
+        if (tailCalls.isEmpty() || tailCalls.size() == exitBlock.getPredecessors().size())
+            return false;
+
+        BasicBlock header = function.getEntranceBlock();
+        BasicBlock entranceBlock = new BasicBlock(function, "entranceBlock");
+        function.getSymbolTable().put(entranceBlock.getName(), entranceBlock);
+        entranceBlock.setNext(header);
+        header.setPrev(entranceBlock);
+        function.setEntranceBlock(entranceBlock);
+        entranceBlock.addInstruction(new BranchInst(entranceBlock, null, header, null));
+        entranceBlock.setProfileCount(computeEntranceCount(header, tailCalls));
+
+        ArrayList<PhiInst> phis = new ArrayList<>();
+        for (Parameter parameter : function.getParameters()) {
+            Register result = new Register(parameter.getType(), parameter.getNameWithoutDot());
+            function.getSymbolTable().put(result.getName(), result);
+            PhiInst phi = new PhiInst(header, new LinkedHashSet<>(), result);
+            header.addInstructionAtFront(phi);
+            parameter.replaceUse(result);
+            phi.addBranch(parameter, entranceBlock);
+            phis.add(phi);
+        }
+
+        for (CallInst callInst : tailCalls) {
+            BasicBlock block = callInst.getBasicBlock();
+            ArrayList<Operand> arguments = callInst.getParameters();
+            for (int i = 0; i < phis.size(); i++)
+                phis.get(i).addBranch(arguments.get(i), block);
+
+            exitBlock.removePhiIncomingBlock(block);
+            block.getInstTail().replaceUse(exitBlock, header);
+            block.getSuccessors().remove(exitBlock);
+            block.getSuccessors().add(header);
+            exitBlock.getPredecessors().remove(block);
+            header.getPredecessors().add(block);
+            callInst.removeFromBlock();
+        }
+        return true;
+    }
+
+    private boolean isTailCall(BasicBlock block, Function function) {
+        IRInstruction branch = block.getInstTail();
+        if (!(branch instanceof BranchInst) || ((BranchInst) branch).isConditional()
+                || !(branch.getInstPrev() instanceof CallInst))
+            return false;
+        CallInst callInst = ((CallInst) branch.getInstPrev());
+        if (callInst.getFunction() != function)
+            return false;
+
+        IRInstruction ptr = ((BranchInst) branch).getThenBlock().getInstHead();
+        if (callInst.isVoidCall())
+            return ptr instanceof ReturnInst;
+        // ret (phi [result, block], ...)
+        if (!(ptr instanceof PhiInst) || !(ptr.getInstNext() instanceof ReturnInst)
+                || ((ReturnInst) ptr.getInstNext()).getReturnValue() != ptr.getResult())
+            return false;
+        Register result = callInst.getResult();
+        if (result.getUse().size() != 1 || !result.getUse().containsKey(ptr))
+            return false;
+        for (Pair<Operand, BasicBlock> pair : ((PhiInst) ptr).getBranch()) {
+            if (pair.getSecond() == block)
+                return pair.getFirst() == result;
+        }
+        return false;
+    }
+
+    // Count of the new entrance block, i.e. calls from other functions, or -1 if unknown.
+    private long computeEntranceCount(BasicBlock header, ArrayList<CallInst> tailCalls) {
+        long count = header.getProfileCount();
+        for (CallInst callInst : tailCalls) {
+            if (count == -1 || callInst.getProfileCount() == -1)
+                return -1;
+            count -= callInst.getProfileCount();
+        }
+        return count;
+    }
+}
@@ -31,4 +31,5 @@ public interface ASMVisitor {
     void visit(UnaryBranch inst);
     void visit(CallInst inst);
     void visit(ReturnInst inst);
+    void visit(TailCallInst inst);
 }
@@ -62,6 +62,11 @@ public class BasicBlock {
         return irBlock;
     }
 
+    // -1 if unknown(see ProfileAnnotator).
+    public long getProfileCount() {
+        return irBlock.getProfileCount();
+    }
+
     public boolean isEmpty() {
         return instHead == instTail && instHead == null;
     }
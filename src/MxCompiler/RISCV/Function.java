@@ -33,13 +33,13 @@ public class Function {
         if (IRFunction == null)
             return;
 
-        usedCalleeRegister = new HashSet<>();
-        gepAddrMap = new HashMap<>();
+        usedCalleeRegister = new LinkedHashSet<>();
+        gepAddrMap = new LinkedHashMap<>();
 
 
         int functionCnt = module.getFunctionMap().size();
         int blockCnt = 0;
-        blockMap = new HashMap<>();
+        blockMap = new LinkedHashMap<>();
         ArrayList<MxCompiler.IR.BasicBlock> IRBlocks = IRFunction.getBlocks();
         for (MxCompiler.IR.BasicBlock IRBlock : IRBlocks) {
             BasicBlock block = new BasicBlock(this, IRBlock, IRBlock.getName(),
@@ -177,7 +177,7 @@ public class Function {
 
     public ArrayList<BasicBlock> getDFSOrder() {
         ArrayList<BasicBlock> dfsOrder = new ArrayList<>();
-        Set<BasicBlock> dfsVisit = new HashSet<>();
+        Set<BasicBlock> dfsVisit = new LinkedHashSet<>();
         dfsBasicBlocks(entranceBlock, dfsOrder, dfsVisit);
         return dfsOrder;
     }
@@ -120,7 +120,7 @@ abstract public class ASMInstruction {
     }
 
     public Set<VirtualRegister> getDefUseUnion() {
-        Set<VirtualRegister> union = new HashSet<>(getDef());
+        Set<VirtualRegister> union = new LinkedHashSet<>(getDef());
         union.addAll(getUse());
         return union;
     }
@@ -129,7 +129,14 @@ abstract public class ASMInstruction {
 
     }
 
-    abstract public String emitCode();
+    // Append the code of the instruction to builder, without building intermediate strings(see CodeEmitter).
+    abstract public void emitCode(StringBuilder builder);
+
+    public String emitCode() {
+        StringBuilder builder = new StringBuilder();
+        emitCode(builder);
+        return builder.toString();
+    }
 
     @Override
     abstract public String toString();
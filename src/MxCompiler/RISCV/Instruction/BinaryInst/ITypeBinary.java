@@ -20,10 +20,22 @@ public class ITypeBinary extends BinaryInst {
         this.immediate = immediate;
     }
 
+    public OpName getOp() {
+        return op;
+    }
+
+    public Immediate getImmediate() {
+        return immediate;
+    }
+
     @Override
-    public String emitCode() {
-        return "\t" + op.name() + "\t"
-                + getRd().emitCode() + ", " + getRs1().emitCode() + ", " + immediate.emitCode();
+    public void emitCode(StringBuilder builder) {
+        builder.append('\t').append(op.name()).append('\t');
+        getRd().emitCode(builder);
+        builder.append(", ");
+        getRs1().emitCode(builder);
+        builder.append(", ");
+        immediate.emitCode(builder);
     }
 
     @Override
@@ -24,6 +24,14 @@ public class RTypeBinary extends BinaryInst {
         this.addUse(this.rs2);
     }
 
+    public VirtualRegister getRs2() {
+        return rs2;
+    }
+
+    public OpName getOp() {
+        return op;
+    }
+
     @Override
     public void addToUEVarAndVarKill(Set<VirtualRegister> UEVar, Set<VirtualRegister> varKill) {
         if (!varKill.contains(rs2))
@@ -39,8 +47,13 @@ public class RTypeBinary extends BinaryInst {
     }
 
     @Override
-    public String emitCode() {
-        return "\t" + op.name() + "\t" + getRd().emitCode() + ", " + getRs1().emitCode() + ", " + rs2.emitCode();
+    public void emitCode(StringBuilder builder) {
+        builder.append('\t').append(op.name()).append('\t');
+        getRd().emitCode(builder);
+        builder.append(", ");
+        getRs1().emitCode(builder);
+        builder.append(", ");
+        rs2.emitCode(builder);
     }
 
     @Override
@@ -24,6 +24,24 @@ public class BinaryBranch extends Branch {
         this.addUse(this.rs2);
     }
 
+    public OpName getOp() {
+        return op;
+    }
+
+    public VirtualRegister getRs2() {
+        return rs2;
+    }
+
+    @Override
+    public void negate() {
+        op = op == OpName.beq ? OpName.bne
+                : op == OpName.bne ? OpName.beq
+                : op == OpName.blt ? OpName.bge
+                : op == OpName.bge ? OpName.blt
+                : op == OpName.ble ? OpName.bgt
+                : OpName.ble;
+    }
+
     @Override
     public void addToUEVarAndVarKill(Set<VirtualRegister> UEVar, Set<VirtualRegister> varKill) {
         super.addToUEVarAndVarKill(UEVar, varKill);
@@ -39,9 +57,12 @@ public class BinaryBranch extends Branch {
     }
 
     @Override
-    public String emitCode() {
-        return "\t" + op.name() + "\t"
-                + getRs1().emitCode() + ", " + rs2.emitCode() + ", " + getThenBlock().emitCode();
+    public void emitCode(StringBuilder builder) {
+        builder.append('\t').append(op.name()).append('\t');
+        getRs1().emitCode(builder);
+        builder.append(", ");
+        rs2.emitCode(builder);
+        builder.append(", ").append(getThenBlock().emitCode());
     }
 
     @Override
@@ -27,6 +27,13 @@ abstract public class Branch extends ASMInstruction {
         return thenBlock;
     }
 
+    public void setThenBlock(BasicBlock thenBlock) {
+        this.thenBlock = thenBlock;
+    }
+
+    // Invert the condition of the branch.
+    abstract public void negate();
+
     @Override
     public void addToUEVarAndVarKill(Set<VirtualRegister> UEVar, Set<VirtualRegister> varKill) {
         if (!varKill.contains(rs1))
@@ -16,9 +16,25 @@ public class UnaryBranch extends Branch {
         this.op = op;
     }
 
+    public OpName getOp() {
+        return op;
+    }
+
+    @Override
+    public void negate() {
+        op = op == OpName.beqz ? OpName.bnez
+                : op == OpName.bnez ? OpName.beqz
+                : op == OpName.bltz ? OpName.bgez
+                : op == OpName.bgez ? OpName.bltz
+                : op == OpName.blez ? OpName.bgtz
+                : OpName.blez;
+    }
+
     @Override
-    public String emitCode() {
-        return "\t" + op.name() + "\t" + getRs1().emitCode() + ", " + getThenBlock().emitCode();
+    public void emitCode(StringBuilder builder) {
+        builder.append('\t').append(op.name()).append('\t');
+        getRs1().emitCode(builder);
+        builder.append(", ").append(getThenBlock().emitCode());
     }
 
     @Override
@@ -6,24 +6,55 @@ import MxCompiler.RISCV.Function;
 import MxCompiler.RISCV.Operand.Register.PhysicalRegister;
 import MxCompiler.RISCV.Operand.Register.VirtualRegister;
 
-import java.util.Map;
+import java.util.Set;
 
 public class CallInst extends ASMInstruction {
     private Function callee;
 
-    public CallInst(BasicBlock basicBlock, Function callee) {
+    // A call uses the arguments in registers and defines every caller-save register, until it is known which
+    // registers the callee changes(see RegisterUsage).
+    public CallInst(BasicBlock basicBlock, Function callee, int parameterCnt) {
         super(basicBlock);
         this.callee = callee;
 
+        for (int i = 0; i < parameterCnt; i++) {
+            PhysicalRegister.argVR.get(i).addUse(this);
+            this.addUse(PhysicalRegister.argVR.get(i));
+        }
         for (String name : PhysicalRegister.callerSavePRNames) {
             PhysicalRegister.vrs.get(name).addDef(this);
             this.addDef(PhysicalRegister.vrs.get(name));
         }
     }
 
+    public Function getCallee() {
+        return callee;
+    }
+
+    // Only caller-save registers in clobbered are defined by the call afterwards. ra is always defined,
+    // since the call itself writes the return address.
+    public void restrictDefs(Set<PhysicalRegister> clobbered) {
+        for (String name : PhysicalRegister.callerSavePRNames) {
+            VirtualRegister vr = PhysicalRegister.vrs.get(name);
+            if (vr != PhysicalRegister.raVR && !clobbered.contains(vr.getColorPR()) && getDef().contains(vr)) {
+                vr.removeDef(this);
+                this.removeDef(vr);
+            }
+        }
+    }
+
+    @Override
+    public void addToUEVarAndVarKill(Set<VirtualRegister> UEVar, Set<VirtualRegister> varKill) {
+        for (VirtualRegister vr : this.getUse()) {
+            if (!varKill.contains(vr))
+                UEVar.add(vr);
+        }
+        varKill.addAll(this.getDef());
+    }
+
     @Override
-    public String emitCode() {
-        return "\tcall\t" + callee.getName();
+    public void emitCode(StringBuilder builder) {
+        builder.append("\tcall\t").append(callee.getName());
     }
 
     @Override
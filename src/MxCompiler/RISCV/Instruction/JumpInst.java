@@ -20,9 +20,9 @@ public class JumpInst extends ASMInstruction {
     }
 
     @Override
-    public String emitCode() {
+    public void emitCode(StringBuilder builder) {
         assert dest != null;
-        return "\tj\t" + dest.emitCode();
+        builder.append("\tj\t").append(dest.emitCode());
     }
 
     @Override
@@ -20,6 +20,14 @@ public class LoadAddressInst extends ASMInstruction {
         this.addDef(this.rd);
     }
 
+    public VirtualRegister getRd() {
+        return rd;
+    }
+
+    public GlobalVariable getGlobalVariable() {
+        return globalVariable;
+    }
+
     @Override
     public void addToUEVarAndVarKill(Set<VirtualRegister> UEVar, Set<VirtualRegister> varKill) {
         varKill.add(rd);
@@ -33,8 +41,10 @@ public class LoadAddressInst extends ASMInstruction {
     }
 
     @Override
-    public String emitCode() {
-        return "\tla\t" + rd.emitCode() + ", " + globalVariable.getName();
+    public void emitCode(StringBuilder builder) {
+        builder.append("\tla\t");
+        rd.emitCode(builder);
+        builder.append(", ").append(globalVariable.getName());
     }
 
     @Override
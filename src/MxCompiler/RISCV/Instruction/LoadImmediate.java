@@ -20,6 +20,14 @@ public class LoadImmediate extends ASMInstruction {
         this.addDef(this.rd);
     }
 
+    public VirtualRegister getRd() {
+        return rd;
+    }
+
+    public Immediate getImmediate() {
+        return immediate;
+    }
+
     @Override
     public void replaceDef(VirtualRegister oldVR, VirtualRegister newVR) {
         assert rd == oldVR;
@@ -33,8 +41,11 @@ public class LoadImmediate extends ASMInstruction {
     }
 
     @Override
-    public String emitCode() {
-        return "\tli\t" + rd.emitCode() + ", " + immediate.emitCode();
+    public void emitCode(StringBuilder builder) {
+        builder.append("\tli\t");
+        rd.emitCode(builder);
+        builder.append(", ");
+        immediate.emitCode(builder);
     }
 
     @Override
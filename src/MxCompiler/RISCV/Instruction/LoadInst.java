@@ -27,6 +27,10 @@ public class LoadInst extends ASMInstruction {
         this.addr.addBaseUse(this);
     }
 
+    public ByteSize getByteSize() {
+        return byteSize;
+    }
+
     public VirtualRegister getRd() {
         return rd;
     }
@@ -72,8 +76,11 @@ public class LoadInst extends ASMInstruction {
     }
 
     @Override
-    public String emitCode() {
-        return "\t" + byteSize.name() + "\t" + rd.emitCode() + ", " + addr.emitCode();
+    public void emitCode(StringBuilder builder) {
+        builder.append('\t').append(byteSize.name()).append('\t');
+        rd.emitCode(builder);
+        builder.append(", ");
+        addr.emitCode(builder);
     }
 
     @Override
@@ -20,6 +20,14 @@ public class LoadUpperImmediate extends ASMInstruction {
         this.addDef(this.rd);
     }
 
+    public VirtualRegister getRd() {
+        return rd;
+    }
+
+    public Immediate getImmediate() {
+        return immediate;
+    }
+
     @Override
     public void addToUEVarAndVarKill(Set<VirtualRegister> UEVar, Set<VirtualRegister> varKill) {
         varKill.add(rd);
@@ -33,8 +41,11 @@ public class LoadUpperImmediate extends ASMInstruction {
     }
 
     @Override
-    public String emitCode() {
-        return "\tlui\t" + rd.emitCode() + ", " + immediate.emitCode();
+    public void emitCode(StringBuilder builder) {
+        builder.append("\tlui\t");
+        rd.emitCode(builder);
+        builder.append(", ");
+        immediate.emitCode(builder);
     }
 
     @Override
@@ -69,8 +69,11 @@ public class MoveInst extends ASMInstruction {
     }
 
     @Override
-    public String emitCode() {
-        return "\tmv\t" + rd.emitCode() + ", " + rs.emitCode();
+    public void emitCode(StringBuilder builder) {
+        builder.append("\tmv\t");
+        rd.emitCode(builder);
+        builder.append(", ");
+        rs.emitCode(builder);
     }
 
     @Override
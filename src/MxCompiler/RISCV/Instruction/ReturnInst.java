@@ -9,8 +9,8 @@ public class ReturnInst extends ASMInstruction {
     }
 
     @Override
-    public String emitCode() {
-        return "\tret";
+    public void emitCode(StringBuilder builder) {
+        builder.append("\tret");
     }
 
     @Override
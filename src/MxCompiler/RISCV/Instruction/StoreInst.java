@@ -27,6 +27,10 @@ public class StoreInst extends ASMInstruction {
         this.addr.addBaseUse(this);
     }
 
+    public ByteSize getByteSize() {
+        return byteSize;
+    }
+
     public VirtualRegister getRs() {
         return rs;
     }
@@ -51,8 +55,11 @@ public class StoreInst extends ASMInstruction {
     }
 
     @Override
-    public String emitCode() {
-        return "\t" + byteSize.name() + "\t" + rs.emitCode() + ", " + addr.emitCode();
+    public void emitCode(StringBuilder builder) {
+        builder.append('\t').append(byteSize.name()).append('\t');
+        rs.emitCode(builder);
+        builder.append(", ");
+        addr.emitCode(builder);
     }
 
     @Override
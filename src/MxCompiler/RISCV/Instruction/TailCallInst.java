@@ -0,0 +1,53 @@
+package MxCompiler.RISCV.Instruction;
+
+import MxCompiler.RISCV.ASMVisitor;
+import MxCompiler.RISCV.BasicBlock;
+import MxCompiler.RISCV.Function;
+import MxCompiler.RISCV.Operand.Register.PhysicalRegister;
+import MxCompiler.RISCV.Operand.Register.VirtualRegister;
+
+import java.util.Set;
+
+// "tail callee": jump to callee after the frame of the caller is released, so that callee returns to the caller
+// of the caller. It ends a block like ReturnInst(see InstructionSelector), and ra is restored before it like
+// before a return(see RegisterAllocator.saveRegisters()).
+public class TailCallInst extends ASMInstruction {
+    private Function callee;
+
+    public TailCallInst(BasicBlock basicBlock, Function callee, int parameterCnt) {
+        super(basicBlock);
+        this.callee = callee;
+
+        for (int i = 0; i < parameterCnt; i++) {
+            PhysicalRegister.argVR.get(i).addUse(this);
+            this.addUse(PhysicalRegister.argVR.get(i));
+        }
+    }
+
+    public Function getCallee() {
+        return callee;
+    }
+
+    @Override
+    public void addToUEVarAndVarKill(Set<VirtualRegister> UEVar, Set<VirtualRegister> varKill) {
+        for (VirtualRegister vr : this.getUse()) {
+            if (!varKill.contains(vr))
+                UEVar.add(vr);
+        }
+    }
+
+    @Override
+    public void emitCode(StringBuilder builder) {
+        builder.append("\ttail\t").append(callee.getName());
+    }
+
+    @Override
+    public String toString() {
+        return "tail " + callee.getName();
+    }
+
+    @Override
+    public void accept(ASMVisitor visitor) {
+        visitor.visit(this);
+    }
+}
@@ -27,6 +27,18 @@ public class UnaryInst extends ASMInstruction {
         this.addDef(this.rd);
     }
 
+    public OpName getOp() {
+        return op;
+    }
+
+    public VirtualRegister getRd() {
+        return rd;
+    }
+
+    public VirtualRegister getRs() {
+        return rs;
+    }
+
     @Override
     public void addToUEVarAndVarKill(Set<VirtualRegister> UEVar, Set<VirtualRegister> varKill) {
         if (!varKill.contains(rs))
@@ -49,8 +61,11 @@ public class UnaryInst extends ASMInstruction {
     }
 
     @Override
-    public String emitCode() {
-        return "\t" + op.name() + "\t" + rd.emitCode() + ", " + rs.emitCode();
+    public void emitCode(StringBuilder builder) {
+        builder.append('\t').append(op.name()).append('\t');
+        rd.emitCode(builder);
+        builder.append(", ");
+        rs.emitCode(builder);
     }
 
     @Override
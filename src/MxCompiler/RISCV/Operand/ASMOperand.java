@@ -3,6 +3,12 @@ package MxCompiler.RISCV.Operand;
 abstract public class ASMOperand {
     abstract public String emitCode();
 
+    // Append the code to builder(see CodeEmitter). Operands whose code is not kept as a string override it,
+    // so that no intermediate string is built.
+    public void emitCode(StringBuilder builder) {
+        builder.append(emitCode());
+    }
+
     @Override
     abstract public String toString();
 }
@@ -24,6 +24,9 @@ abstract public class Address {
 
     abstract public String emitCode();
 
+    // Append the code to builder without building an intermediate string(see CodeEmitter).
+    abstract public void emitCode(StringBuilder builder);
+
     @Override
     abstract public String toString();
 
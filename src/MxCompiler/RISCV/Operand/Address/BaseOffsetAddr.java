@@ -15,6 +15,14 @@ public class BaseOffsetAddr extends Address {
         this.offset = offset;
     }
 
+    public VirtualRegister getBase() {
+        return base;
+    }
+
+    public Immediate getOffset() {
+        return offset;
+    }
+
     @Override
     public void addToUEVarAndVarKill(Set<VirtualRegister> UEVar, Set<VirtualRegister> varKill) {
         if (!varKill.contains(base))
@@ -45,6 +53,14 @@ public class BaseOffsetAddr extends Address {
         return offset.emitCode() + "(" + base.emitCode() + ")";
     }
 
+    @Override
+    public void emitCode(StringBuilder builder) {
+        offset.emitCode(builder);
+        builder.append('(');
+        base.emitCode(builder);
+        builder.append(')');
+    }
+
     @Override
     public String toString() {
         return offset + "(" + base + ")";
@@ -14,11 +14,21 @@ public class StackLocation extends Address {
         this.offset = offset;
     }
 
+    // -1 before the frame is allocated(see StackFrame.computeFrameSize()).
+    public int getOffset() {
+        return offset;
+    }
+
     @Override
     public String emitCode() {
         return offset + "(sp)";
     }
 
+    @Override
+    public void emitCode(StringBuilder builder) {
+        builder.append(offset).append("(sp)");
+    }
+
     @Override
     public String toString() {
         return name + "(sp)";
@@ -2,11 +2,14 @@ package MxCompiler.RISCV.Operand;
 
 import MxCompiler.RISCV.ASMVisitor;
 
+import java.nio.charset.Charset;
+
 public class GlobalVariable extends ASMOperand {
     private String name;
 
     private boolean isString;
     private String string;
+    private boolean lengthPrefixed;
 
     private boolean isInt;
     private int word;
@@ -19,6 +22,7 @@ public class GlobalVariable extends ASMOperand {
 
         isString = false;
         string = null;
+        lengthPrefixed = false;
         isInt = false;
         word = 0;
         isBool = false;
@@ -38,6 +42,42 @@ public class GlobalVariable extends ASMOperand {
         return isString;
     }
 
+    // The length is emitted right before the label(see IRBuilder).
+    public void setLengthPrefixed() {
+        lengthPrefixed = true;
+    }
+
+    public boolean isLengthPrefixed() {
+        return lengthPrefixed;
+    }
+
+    // Number of bytes without the terminating '\0'. Characters are written in the default charset(see
+    // CodeEmitter and ObjectEmitter), so a non-ASCII character may take more than one byte.
+    public int getStringLength() {
+        return string.getBytes(Charset.defaultCharset()).length - 1;
+    }
+
+    // The string ends with '\0', and .asciz appends one more(see emitCode()).
+    public String getString() {
+        return string;
+    }
+
+    public boolean isInt() {
+        return isInt;
+    }
+
+    public int getWord() {
+        return word;
+    }
+
+    public boolean isBool() {
+        return isBool;
+    }
+
+    public int getBoolByte() {
+        return boolByte;
+    }
+
     public void setInt(int word) {
         isInt = true;
         this.word = word;
@@ -50,20 +90,45 @@ public class GlobalVariable extends ASMOperand {
 
     @Override
     public String emitCode() {
-        if (isBool)
-            return "\t.byte\t" + boolByte + " ".repeat(36 - 13) + "# " + (boolByte == 1);
-        else if (isInt) {
-            return "\t.word\t" + Integer.toUnsignedLong(word)
-                    + " ".repeat(24 - Integer.toUnsignedString(word).length()) + "# " + word;
+        StringBuilder builder = new StringBuilder();
+        emitCode(builder);
+        return builder.toString();
+    }
+
+    @Override
+    public void emitCode(StringBuilder builder) {
+        if (isBool) {
+            builder.append("\t.byte\t").append(boolByte);
+            appendSpaces(builder, 36 - 13);
+            builder.append("# ").append(boolByte == 1);
+        } else if (isInt) {
+            int start = builder.length();
+            builder.append("\t.word\t").append(Integer.toUnsignedLong(word));
+            appendSpaces(builder, 24 - (builder.length() - start - "\t.word\t".length()));
+            builder.append("# ").append(word);
         } else if (isString) {
-            String res = string.replace("\\", "\\\\");
-            res = res.replace("\n", "\\n");
-            res = res.replace("\"", "\\\"");
-            return "\t.asciz\t\"" + res + "\"";
+            builder.append("\t.asciz\t\"");
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                if (c == '\\')
+                    builder.append("\\\\");
+                else if (c == '\n')
+                    builder.append("\\n");
+                else if (c == '"')
+                    builder.append("\\\"");
+                else
+                    builder.append(c);
+            }
+            builder.append('"');
         } else
             throw new RuntimeException();
     }
 
+    static private void appendSpaces(StringBuilder builder, int cnt) {
+        for (int i = 0; i < cnt; i++)
+            builder.append(' ');
+    }
+
     @Override
     public String toString() {
         return name;
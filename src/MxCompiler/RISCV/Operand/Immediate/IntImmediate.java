@@ -8,6 +8,10 @@ public class IntImmediate extends Immediate {
         this.value = ((int) value);
     }
 
+    public int getValue() {
+        return value;
+    }
+
     public void minusImmediate() {
         this.value = -this.value;
     }
@@ -17,6 +21,11 @@ public class IntImmediate extends Immediate {
         return String.valueOf(value);
     }
 
+    @Override
+    public void emitCode(StringBuilder builder) {
+        builder.append(value);
+    }
+
     @Override
     public String toString() {
         return String.valueOf(value);
@@ -15,11 +15,24 @@ public class RelocationImmediate extends Immediate {
         this.globalVariable = globalVariable;
     }
 
+    public Type getType() {
+        return type;
+    }
+
+    public GlobalVariable getGlobalVariable() {
+        return globalVariable;
+    }
+
     @Override
     public String emitCode() {
         return "%" + (type == Type.high ? "hi" : "lo") + "(" + globalVariable.getName() + ")";
     }
 
+    @Override
+    public void emitCode(StringBuilder builder) {
+        builder.append(type == Type.high ? "%hi(" : "%lo(").append(globalVariable.getName()).append(')');
+    }
+
     @Override
     public String toString() {
         return "%" + (type == Type.high ? "hi" : "lo") + "(" + globalVariable.getName() + ")";
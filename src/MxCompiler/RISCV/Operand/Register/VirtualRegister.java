@@ -2,7 +2,6 @@ package MxCompiler.RISCV.Operand.Register;
 
 import MxCompiler.RISCV.Instruction.ASMInstruction;
 import MxCompiler.RISCV.Instruction.LoadInst;
-import MxCompiler.RISCV.Instruction.MoveInst;
 import MxCompiler.RISCV.Instruction.StoreInst;
 
 import java.util.*;
@@ -14,27 +13,18 @@ public class VirtualRegister extends Register {
     private Map<ASMInstruction, Integer> def;
 
     // Member used for Register Allocator.
-    private ArrayList<VirtualRegister> adjList;
-    private int degree;
-    private Set<MoveInst> moveList;
-    private VirtualRegister alias;
+    // Other members(adjList, degree, moveList, alias and spill cost) are kept in RegisterAllocator.
     private boolean colorFixed;
     private PhysicalRegister colorPR;
-    private double spillCost;
 
     public VirtualRegister(String name) {
         this.name = name;
 
-        use = new HashMap<>();
-        def = new HashMap<>();
+        use = new LinkedHashMap<>();
+        def = new LinkedHashMap<>();
 
-        adjList = new ArrayList<>();
-        degree = 0;
-        moveList = new HashSet<>();
-        alias = null;
         colorFixed = false;
         colorPR = null;
-        spillCost = 0;
     }
 
     public String getName() {
@@ -46,6 +36,8 @@ public class VirtualRegister extends Register {
     }
 
     public void addUse(ASMInstruction instruction) {
+        if (colorFixed)
+            return;
         if (use.containsKey(instruction))
             use.replace(instruction, use.get(instruction) + 1);
         else
@@ -53,6 +45,8 @@ public class VirtualRegister extends Register {
     }
 
     public void removeUse(ASMInstruction instruction) {
+        if (colorFixed)
+            return;
         assert use.containsKey(instruction);
         if (use.get(instruction) == 1)
             use.remove(instruction);
@@ -61,6 +55,8 @@ public class VirtualRegister extends Register {
     }
 
     public void addDef(ASMInstruction instruction) {
+        if (colorFixed)
+            return;
         if (def.containsKey(instruction))
             def.replace(instruction, def.get(instruction) + 1);
         else
@@ -68,6 +64,8 @@ public class VirtualRegister extends Register {
     }
 
     public void removeDef(ASMInstruction instruction) {
+        if (colorFixed)
+            return;
         assert def.containsKey(instruction);
         if (def.get(instruction) == 1)
             def.remove(instruction);
@@ -83,6 +81,8 @@ public class VirtualRegister extends Register {
         return def;
     }
 
+    // Pre-colored VRs are shared by every function(and every compilation), so their
+    // use/def information is never recorded: they are never spilled anyway.
     public void fixColor(PhysicalRegister pr) {
         colorFixed = true;
         colorPR = pr;
@@ -91,40 +91,7 @@ public class VirtualRegister extends Register {
     public void clearColoringData() {
         assert !colorFixed;
 
-        adjList = new ArrayList<>();
-        degree = 0;
-        moveList = new HashSet<>();
-        alias = null;
         colorPR = null;
-        spillCost = 0;
-    }
-
-    public ArrayList<VirtualRegister> getAdjList() {
-        return adjList;
-    }
-
-    public int getDegree() {
-        return degree;
-    }
-
-    public void increaseDegree() {
-        degree++;
-    }
-
-    public void setDegree(int degree) {
-        this.degree = degree;
-    }
-
-    public Set<MoveInst> getMoveList() {
-        return moveList;
-    }
-
-    public VirtualRegister getAlias() {
-        return alias;
-    }
-
-    public void setAlias(VirtualRegister alias) {
-        this.alias = alias;
     }
 
     public PhysicalRegister getColorPR() {
@@ -141,10 +108,6 @@ public class VirtualRegister extends Register {
         this.colorPR = colorPR;
     }
 
-    public void increaseSpillCost(double cost) {
-        spillCost += cost;
-    }
-
     private boolean haveNegativeSpillCosts() {
         if (getDef().size() == 1 && getUse().size() == 1) {
             ASMInstruction def = getDef().keySet().iterator().next();
@@ -160,7 +123,7 @@ public class VirtualRegister extends Register {
                 && getDef().keySet().iterator().next().getNextInst() == getUse().keySet().iterator().next();
     }
 
-    public double computeSpillRatio() {
+    public double computeSpillRatio(double spillCost, int degree) {
         if (haveNegativeSpillCosts())
             return Double.NEGATIVE_INFINITY;
         else if (haveInfiniteSpillCosts())
@@ -5,7 +5,6 @@ import MxCompiler.RISCV.Operand.Register.PhysicalRegister;
 import MxCompiler.RISCV.Operand.Register.VirtualRegister;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -15,6 +14,8 @@ public class StackFrame {
     int size;
 
     private final Map<VirtualRegister, StackLocation> spillLocations;
+    // ra and callee-save registers which are written by the function.
+    private final Map<PhysicalRegister, StackLocation> savedRegisterLocations;
     private final ArrayList<StackLocation> formalParameterLocations; // Fetch from caller's stack frame.
     private final Map<Function, ArrayList<StackLocation>> parameterLocation;
 
@@ -23,8 +24,9 @@ public class StackFrame {
         size = 0;
 
         spillLocations = new LinkedHashMap<>();
+        savedRegisterLocations = new LinkedHashMap<>();
         formalParameterLocations = new ArrayList<>();
-        parameterLocation = new HashMap<>();
+        parameterLocation = new LinkedHashMap<>();
     }
 
     public int getSize() {
@@ -35,6 +37,10 @@ public class StackFrame {
         return spillLocations;
     }
 
+    public Map<PhysicalRegister, StackLocation> getSavedRegisterLocations() {
+        return savedRegisterLocations;
+    }
+
     public void addFormalParameterLocation(StackLocation stackLocation) {
         formalParameterLocations.add(stackLocation);
     }
@@ -45,7 +51,7 @@ public class StackFrame {
 
     public void computeFrameSize() {
         int maxSpilledActualParameter = 0;
-        int spilledVRCnt = spillLocations.size();
+        int spilledVRCnt = spillLocations.size() + savedRegisterLocations.size();
         for (ArrayList<StackLocation> parameters : parameterLocation.values())
             maxSpilledActualParameter = Integer.max(maxSpilledActualParameter, parameters.size());
 
@@ -60,6 +66,10 @@ public class StackFrame {
             stackLocation.setOffset((j + maxSpilledActualParameter) * 4);
             j++;
         }
+        for (StackLocation stackLocation : savedRegisterLocations.values()) {
+            stackLocation.setOffset((j + maxSpilledActualParameter) * 4);
+            j++;
+        }
         for (ArrayList<StackLocation> parameters : parameterLocation.values()) {
             for (int k = 0; k < parameters.size(); k++) {
                 StackLocation stackLocation = parameters.get(k);
@@ -0,0 +1,39 @@
+package MxCompiler.Utilities;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Mutable state of one compilation(see Compiler). Compiler itself is never changed by compilations, and every
+// object built by a compilation(AST, IR, RISC-V module) only refers to its own context, so compilations with
+// different contexts may run on different threads at the same time.
+// Pre-colored VRs(see PhysicalRegister) are shared by all compilations, but they are never changed either.
+public class CompilationContext {
+    private ErrorHandler errorHandler;
+    // A profiler may be shared by compilations one after another(e.g. in the compile server), but not at the same time.
+    private Profiler profiler;
+
+    // Ids of IR instructions(see IRInstruction.getId()).
+    // Instructions may be created by passes running in parallel(see Optim.PassManager).
+    private AtomicInteger instructionIdCounter;
+
+    public CompilationContext(ErrorHandler errorHandler) {
+        this(errorHandler, new Profiler(false));
+    }
+
+    public CompilationContext(ErrorHandler errorHandler, Profiler profiler) {
+        this.errorHandler = errorHandler;
+        this.profiler = profiler;
+        this.instructionIdCounter = new AtomicInteger();
+    }
+
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    public int nextInstructionId() {
+        return instructionIdCounter.getAndIncrement();
+    }
+}
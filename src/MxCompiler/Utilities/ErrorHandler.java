@@ -13,6 +13,12 @@ public class ErrorHandler {
         warningCnt = 0;
     }
 
+    public ErrorHandler(PrintStream printStream) {
+        this.printStream = printStream;
+        errorCnt = 0;
+        warningCnt = 0;
+    }
+
     public void error(String msg) {
         errorCnt++;
         printStream.println("Error: " + msg);
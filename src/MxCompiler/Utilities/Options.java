@@ -0,0 +1,197 @@
+package MxCompiler.Utilities;
+
+import MxCompiler.Backend.LatencyModel;
+
+import java.util.ArrayList;
+
+// Command line options of the compiler.
+//   --server        run as a compile server(see CompileServer)
+//   --batch         compile every input(an .mx file, or a directory searched for .mx files) instead of code.txt
+//                   (see BatchCompiler)
+//   -o DIR          write the assembly of batch compilation to DIR(default ".")
+//   --jobs N        compile N inputs of batch compilation at the same time(default: number of processors)
+//   -j N, -jN       optimize and allocate registers of functions with N threads
+//   --linear-scan   allocate registers of every function by linear scan instead of graph coloring
+//   --profile FILE  write the compile-time profile of every pass to FILE in JSON(see Profiler)
+//   --unroll N      partially unroll loops by N(default 4), where N <= 1 turns it off(see LoopUnroller)
+//   --peel          peel the first iteration off loops if it makes a phi loop-invariant
+//   --pgo-generate  instrument the program, which writes its profile to mx.profdata(see ProfileInstrumenter)
+//   --pgo-use FILE  optimize with the profile in FILE(see ProfileAnnotator)
+//   --schedule MODE schedule instructions before(pre, default) or after(post) register allocation, both or
+//                   none(see InstructionScheduler)
+//   --latency SPEC  latencies of the pipeline to schedule for, e.g. "load=2,div=34"(see LatencyModel)
+//   --prefixed-strings
+//                   store the length of every string before its characters(see IRBuilder)
+//   --object        write a relocatable ELF object(output.o, or .o files of batch compilation) instead of
+//                   the assembly(see ObjectEmitter)
+public class Options {
+    private boolean server;
+    private boolean batch;
+    private String outputDirectory;
+    private int jobs;
+    private ArrayList<String> inputs;
+    private int threads;
+    private boolean linearScan;
+    private String profileFile;
+    private int unrollFactor;
+    private boolean peeling;
+    private boolean pgoInstrumenting;
+    private String pgoProfileFile;
+    private boolean preRAScheduling;
+    private boolean postRAScheduling;
+    private LatencyModel latencyModel;
+    private boolean prefixedStrings;
+    private boolean object;
+
+    public Options() {
+        server = false;
+        batch = false;
+        outputDirectory = ".";
+        jobs = Runtime.getRuntime().availableProcessors();
+        inputs = new ArrayList<>();
+        threads = 1;
+        linearScan = false;
+        profileFile = null;
+        unrollFactor = 4;
+        peeling = false;
+        pgoInstrumenting = false;
+        pgoProfileFile = null;
+        preRAScheduling = true;
+        postRAScheduling = false;
+        latencyModel = new LatencyModel();
+        prefixedStrings = false;
+        object = false;
+    }
+
+    static public Options parse(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--server"))
+                options.server = true;
+            else if (args[i].equals("--batch"))
+                options.batch = true;
+            else if (args[i].equals("-o") && i + 1 < args.length)
+                options.outputDirectory = args[++i];
+            else if (args[i].equals("--jobs") && i + 1 < args.length)
+                options.jobs = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--linear-scan"))
+                options.linearScan = true;
+            else if (args[i].equals("--profile") && i + 1 < args.length)
+                options.profileFile = args[++i];
+            else if (args[i].equals("--unroll") && i + 1 < args.length)
+                options.unrollFactor = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--peel"))
+                options.peeling = true;
+            else if (args[i].equals("--pgo-generate"))
+                options.pgoInstrumenting = true;
+            else if (args[i].equals("--pgo-use") && i + 1 < args.length)
+                options.pgoProfileFile = args[++i];
+            else if (args[i].equals("--schedule") && i + 1 < args.length) {
+                String mode = args[++i];
+                if (!mode.equals("pre") && !mode.equals("post") && !mode.equals("both") && !mode.equals("none"))
+                    throw new RuntimeException("Unknown scheduling mode \"" + mode + "\".");
+                options.preRAScheduling = mode.equals("pre") || mode.equals("both");
+                options.postRAScheduling = mode.equals("post") || mode.equals("both");
+            } else if (args[i].equals("--latency") && i + 1 < args.length)
+                options.latencyModel = LatencyModel.parse(args[++i]);
+            else if (args[i].equals("--prefixed-strings"))
+                options.prefixedStrings = true;
+            else if (args[i].equals("--object"))
+                options.object = true;
+            else if (args[i].equals("-j") && i + 1 < args.length)
+                options.threads = Integer.parseInt(args[++i]);
+            else if (args[i].startsWith("-j"))
+                options.threads = Integer.parseInt(args[i].substring(2));
+            else if (!args[i].startsWith("-"))
+                options.inputs.add(args[i]);
+            else
+                throw new RuntimeException("Unknown option \"" + args[i] + "\".");
+        }
+        if (!options.batch && !options.inputs.isEmpty())
+            throw new RuntimeException("Unknown option \"" + options.inputs.get(0) + "\".");
+        if (options.batch && options.inputs.isEmpty())
+            throw new RuntimeException("No input for batch compilation.");
+        if (options.jobs < 1)
+            throw new RuntimeException("Invalid number of jobs " + options.jobs + ".");
+        return options;
+    }
+
+    public boolean isServer() {
+        return server;
+    }
+
+    public boolean isBatch() {
+        return batch;
+    }
+
+    public String getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    // Files and directories given to batch compilation.
+    public ArrayList<String> getInputs() {
+        return inputs;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean isLinearScan() {
+        return linearScan;
+    }
+
+    public void setLinearScan(boolean linearScan) {
+        this.linearScan = linearScan;
+    }
+
+    public int getUnrollFactor() {
+        return unrollFactor;
+    }
+
+    public boolean isPeeling() {
+        return peeling;
+    }
+
+    public boolean isPGOInstrumenting() {
+        return pgoInstrumenting;
+    }
+
+    // Return null if there is no profile to use.
+    public String getPGOProfileFile() {
+        return pgoProfileFile;
+    }
+
+    public boolean isPreRAScheduling() {
+        return preRAScheduling;
+    }
+
+    public boolean isPostRAScheduling() {
+        return postRAScheduling;
+    }
+
+    public LatencyModel getLatencyModel() {
+        return latencyModel;
+    }
+
+    public boolean isPrefixedStrings() {
+        return prefixedStrings;
+    }
+
+    public boolean isObject() {
+        return object;
+    }
+
+    public boolean isProfiling() {
+        return profileFile != null;
+    }
+
+    // Return null if profiling is off.
+    public String getProfileFile() {
+        return profileFile;
+    }
+}
@@ -0,0 +1,228 @@
+package MxCompiler.Utilities;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Compile-time profiler. Every pass(or front-end/back-end phase) is recorded between start() and end()
+// with its wall time, allocated bytes, instruction counts before/after and whether it changed anything.
+// Records with the same name(e.g. SCCP in every iteration of the optimization loop) are accumulated,
+// and so are multiple compilations in the compile server.
+// A disabled profiler does nothing, so that it can be called unconditionally.
+public class Profiler {
+    static private class Record {
+        private int runs;
+        private int changedRuns;
+        private long time; // in nanoseconds
+        private long allocatedBytes;
+        private long instructionsBefore;
+        private long instructionsAfter;
+    }
+
+    private final boolean enabled;
+    private final com.sun.management.ThreadMXBean threadMXBean;
+
+    private final Map<String, Record> records;
+    private int compilations;
+    private int iterations;
+    private long totalTime;
+
+    private long compilationStartTime;
+    private String currentName;
+    private long currentStartTime;
+    private long currentStartBytes;
+    private long currentInstructions;
+
+    public Profiler(boolean enabled) {
+        this.enabled = enabled;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (enabled && bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported())
+            threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        else
+            threadMXBean = null;
+
+        records = new LinkedHashMap<>();
+        compilations = 0;
+        iterations = 0;
+        totalTime = 0;
+        currentName = null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void startCompilation() {
+        if (!enabled)
+            return;
+        compilations++;
+        compilationStartTime = System.nanoTime();
+        currentName = null; // A record left open by a failed compilation is dropped.
+    }
+
+    public void endCompilation() {
+        if (!enabled)
+            return;
+        totalTime += System.nanoTime() - compilationStartTime;
+    }
+
+    // Count an iteration of the optimization loop.
+    public void addIteration() {
+        if (enabled)
+            iterations++;
+    }
+
+    public void start(String name) {
+        if (enabled)
+            start(name, 0);
+    }
+
+    public void start(String name, MxCompiler.IR.Module module) {
+        if (enabled)
+            start(name, countInstructions(module));
+    }
+
+    public void start(String name, MxCompiler.RISCV.Module module) {
+        if (enabled)
+            start(name, countInstructions(module));
+    }
+
+    public void end(boolean changed) {
+        if (enabled)
+            end(changed, 0);
+    }
+
+    public void end(boolean changed, MxCompiler.IR.Module module) {
+        if (enabled)
+            end(changed, countInstructions(module));
+    }
+
+    public void end(boolean changed, MxCompiler.RISCV.Module module) {
+        if (enabled)
+            end(changed, countInstructions(module));
+    }
+
+    private void start(String name, long instructions) {
+        currentName = name;
+        currentInstructions = instructions;
+        currentStartBytes = getAllocatedBytes();
+        currentStartTime = System.nanoTime();
+    }
+
+    private void end(boolean changed, long instructions) {
+        long time = System.nanoTime() - currentStartTime;
+        assert currentName != null;
+        Record record = records.computeIfAbsent(currentName, k -> new Record());
+        record.runs++;
+        if (changed)
+            record.changedRuns++;
+        record.time += time;
+        record.allocatedBytes += getAllocatedBytes() - currentStartBytes;
+        record.instructionsBefore += currentInstructions;
+        record.instructionsAfter += instructions;
+        currentName = null;
+    }
+
+    // Add everything recorded by other, e.g. by a compilation with its own profiler(see BatchCompiler).
+    public void merge(Profiler other) {
+        if (!enabled || !other.enabled)
+            return;
+        for (Map.Entry<String, Record> entry : other.records.entrySet()) {
+            Record record = records.computeIfAbsent(entry.getKey(), k -> new Record());
+            Record otherRecord = entry.getValue();
+            record.runs += otherRecord.runs;
+            record.changedRuns += otherRecord.changedRuns;
+            record.time += otherRecord.time;
+            record.allocatedBytes += otherRecord.allocatedBytes;
+            record.instructionsBefore += otherRecord.instructionsBefore;
+            record.instructionsAfter += otherRecord.instructionsAfter;
+        }
+        compilations += other.compilations;
+        iterations += other.iterations;
+        totalTime += other.totalTime;
+    }
+
+    // Bytes allocated by all live threads, so that passes running on a ForkJoinPool are counted as well.
+    private long getAllocatedBytes() {
+        if (threadMXBean == null)
+            return 0;
+        long res = 0;
+        for (long bytes : threadMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds())) {
+            if (bytes > 0)
+                res += bytes;
+        }
+        return res;
+    }
+
+    static private long countInstructions(MxCompiler.IR.Module module) {
+        long res = 0;
+        for (MxCompiler.IR.Function function : module.getFunctionMap().values()) {
+            for (MxCompiler.IR.BasicBlock block : function.getBlocks()) {
+                MxCompiler.IR.Instruction.IRInstruction ptr = block.getInstHead();
+                while (ptr != null) {
+                    res++;
+                    ptr = ptr.getInstNext();
+                }
+            }
+        }
+        return res;
+    }
+
+    static private long countInstructions(MxCompiler.RISCV.Module module) {
+        long res = 0;
+        for (MxCompiler.RISCV.Function function : module.getFunctionMap().values()) {
+            for (MxCompiler.RISCV.BasicBlock block : function.getBlocks()) {
+                MxCompiler.RISCV.Instruction.ASMInstruction ptr = block.getInstHead();
+                while (ptr != null) {
+                    res++;
+                    ptr = ptr.getNextInst();
+                }
+            }
+        }
+        return res;
+    }
+
+    // Wall time(in nanoseconds) of every pass recorded so far.
+    public Map<String, Long> getTimes() {
+        Map<String, Long> times = new LinkedHashMap<>();
+        for (Map.Entry<String, Record> entry : records.entrySet())
+            times.put(entry.getKey(), entry.getValue().time);
+        return times;
+    }
+
+    // Write the report in JSON. Times are in milliseconds.
+    public void writeReport(String fileName) {
+        try (PrintStream os = new PrintStream(new FileOutputStream(fileName))) {
+            os.println("{");
+            os.println("  \"compilations\": " + compilations + ",");
+            os.println("  \"optimizationIterations\": " + iterations + ",");
+            os.println("  \"totalTime\": " + toMilliseconds(totalTime) + ",");
+            os.println("  \"passes\": [");
+            int cnt = 0;
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+                Record record = entry.getValue();
+                os.print("    {\"name\": \"" + entry.getKey() + "\""
+                        + ", \"runs\": " + record.runs
+                        + ", \"changed\": " + record.changedRuns
+                        + ", \"time\": " + toMilliseconds(record.time)
+                        + ", \"allocatedBytes\": " + record.allocatedBytes
+                        + ", \"instructionsBefore\": " + record.instructionsBefore
+                        + ", \"instructionsAfter\": " + record.instructionsAfter + "}");
+                os.println(++cnt < records.size() ? "," : "");
+            }
+            os.println("  ]");
+            os.println("}");
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    static private String toMilliseconds(long nanoseconds) {
+        return String.format(Locale.ROOT, "%.3f", nanoseconds / 1e6);
+    }
+}
@@ -75,7 +75,7 @@ public class SymbolTable {
     }
 
     public Set<VirtualRegister> getAllVRs() {
-        Set<VirtualRegister> VRs = new HashSet<>();
+        Set<VirtualRegister> VRs = new LinkedHashSet<>();
         for (ArrayList<Object> array : symbolTable.values()) {
             assert array.size() == 1;
             assert array.get(0) instanceof VirtualRegister;